@@ -1,3 +1,8 @@
+import glob
+import json
+import os
+
+import numpy as np
 import pandas as pd
 import plotly.graph_objects as go
 
@@ -9,22 +14,100 @@ output_html = 'output_sync_all_x_with_slider2.html'
 page_title = "所有图表联动X轴"
 header_title = "所有图表联动X轴"
 
-# 读取 Excel 文件的所有 sheet 名称
-xls = pd.ExcelFile(excel_file)
-sheet_names = xls.sheet_names
-
-# 读取第一个 sheet 的 X 轴数据（所有 sheet 第一列相同）
-df_first = pd.read_excel(excel_file, sheet_name=sheet_names[0])
-x = df_first.iloc[:, 0]
+# 大数据模式参数
+point_budget = 2000         # 每条曲线嵌入HTML的最大点数，超过时用LTTB降采样
+webgl_threshold = 10000     # 曲线原始点数超过该值时改用 Scattergl，并且只画线不画点
+detail_chunk_size = 50000   # 全分辨率数据按X切块写入 data_dir，缩放时只加载可见范围内的块
+data_dir = 'data'
+
+
+def lttb(x, y, threshold):
+    """Largest-Triangle-Three-Buckets 降采样，返回保留的点的下标（升序）
+
+    除首尾两点外把数据分成 threshold-2 个桶，每个桶保留与前一个保留点、
+    下一个桶平均点组成的三角形面积最大的点，峰谷比均匀抽样保留得更好。
+    """
+    n = len(x)
+    if threshold >= n or threshold < 3:
+        return np.arange(n)
+    every = (n - 2) / (threshold - 2)
+    sampled = np.empty(threshold, dtype=np.int64)
+    sampled[0] = 0
+    a = 0
+    for i in range(threshold - 2):
+        # 下一个桶的平均点
+        avg_start = int((i + 1) * every) + 1
+        avg_end = min(int((i + 2) * every) + 1, n)
+        avg_x = x[avg_start:avg_end].mean()
+        avg_y = y[avg_start:avg_end].mean()
+        # 当前桶内面积最大的点
+        range_start = int(i * every) + 1
+        range_end = int((i + 1) * every) + 1
+        area = np.abs((x[a] - avg_x) * (y[range_start:range_end] - y[a])
+                      - (x[a] - x[range_start:range_end]) * (avg_y - y[a]))
+        a = range_start + int(np.argmax(area))
+        sampled[i + 1] = a
+    sampled[-1] = n - 1
+    return sampled
+
+
+def downsample(x, y, threshold):
+    """对一条曲线降采样，NaN点不参与计算，返回 (x, y)"""
+    valid = ~(np.isnan(x) | np.isnan(y))
+    if valid.sum() <= threshold:
+        return x[valid], y[valid]
+    vx = x[valid]
+    vy = y[valid]
+    keep = lttb(vx, vy, threshold)
+    return vx[keep], vy[keep]
+
+
+def to_js_array(values):
+    """numpy数组转成JS数组字面量，NaN输出为null，Plotly会断开曲线"""
+    return json.dumps([None if v != v else v for v in values.tolist()], separators=(',', ':'))
+
+
+def write_detail_chunks(chart_id, x, series):
+    """把一个sheet的全分辨率数据按X切块写成js文件，返回块清单 [[x起点, x终点, 文件], ...]
+
+    用 <script> 加载而不是 fetch，直接用浏览器打开本地HTML文件时也能工作
+    """
+    os.makedirs(data_dir, exist_ok=True)
+    # 清理上次生成的同一图表的块
+    for old in glob.glob(os.path.join(data_dir, f'{chart_id}_*.js')):
+        os.remove(old)
+    chunks = []
+    for index, start in enumerate(range(0, len(x), detail_chunk_size)):
+        end = min(start + detail_chunk_size, len(x))
+        file_name = f'{data_dir}/{chart_id}_{index}.js'
+        ys = ','.join(f'{json.dumps(name)}:{to_js_array(values[start:end])}' for name, values in series)
+        with open(file_name, 'w', encoding='utf-8') as f:
+            f.write(f'chartDetail.register({json.dumps(file_name)},'
+                    f'{{"x":{to_js_array(x[start:end])},"y":{{{ys}}}}});\n')
+        chunks.append([float(x[start]), float(x[end - 1]), file_name])
+    return chunks
+
+
+# 一次读取所有 sheet，避免每个 sheet 重新解析整个工作簿
+sheets = pd.read_excel(excel_file, sheet_name=None)
+sheet_names = list(sheets.keys())
 
 # 创建每个图表
 chart_html_parts = []
 chart_ids = []
+detail_manifest = {}
 
 for sheet_name in sheet_names:
-    df = pd.read_excel(excel_file, sheet_name=sheet_name)
+    df = sheets[sheet_name]
+    # 第一列是X轴，去掉X为空的行并按X排序，降采样和按范围查找都依赖有序的X
+    x_column = df.columns[0]
+    df = df.assign(**{x_column: pd.to_numeric(df[x_column], errors='coerce')})
+    df = df[df[x_column].notna()].sort_values(x_column, kind='stable')
+    x = df[x_column].to_numpy(dtype=float)
     y_columns = df.columns[1:]
+    chart_id = f'chart_{sheet_name.replace(" ", "_")}'
 
+    large = len(x) > point_budget
     fig = go.Figure()
 
     # 设置统一的 layout
@@ -51,15 +134,32 @@ for sheet_name in sheet_names:
         height=400,
         margin=dict(l=50, r=50, t=80, b=50)
     )
+    if large:
+        # 缩放后曲线只包含可见范围的数据，滑块和复位需要固定的完整范围
+        full_range = [float(np.nanmin(x)), float(np.nanmax(x))]
+        fig.update_layout(xaxis=dict(range=full_range, rangeslider=dict(visible=True, range=full_range)))
 
     # 添加 trace
+    series = []
     for col in y_columns:
-        fig.add_trace(
-            go.Scatter(x=x, y=df[col], mode='lines+markers', name=col, hoverinfo='none')
-        )
+        y = pd.to_numeric(df[col], errors='coerce').to_numpy(dtype=float)
+        series.append((str(col), y))
+        if not large:
+            fig.add_trace(go.Scatter(x=x, y=y, mode='lines+markers', name=str(col), hoverinfo='none'))
+            continue
+        sx, sy = downsample(x, y, point_budget)
+        scatter = go.Scattergl if len(x) > webgl_threshold else go.Scatter
+        fig.add_trace(scatter(x=sx, y=sy, mode='lines', name=str(col), hoverinfo='none'))
+
+    if large:
+        detail_manifest[chart_id] = {
+            'budget': point_budget,
+            'range': full_range,
+            'traces': [name for name, _ in series],
+            'chunks': write_detail_chunks(chart_id, x, series),
+        }
 
     # 生成 HTML 并记录 chart_id
-    chart_id = f'chart_{sheet_name.replace(" ", "_")}'
     chart_html = fig.to_html(
         full_html=False,
         include_plotlyjs='cdn' if sheet_name == sheet_names[0] else False,
@@ -91,6 +191,8 @@ html_content += charts_content
 
 html_content += """
     </main>
+    <script>window.chartDetailManifest = """ + json.dumps(detail_manifest, ensure_ascii=False) + """;</script>
+    <script src="static/js/chart_detail_loader.js"></script>
     <script src="static/js/chart_interactions.js"></script>
 </body>
 </html>"""
@@ -100,3 +202,5 @@ with open(output_html, 'w', encoding='utf-8') as f:
     f.write(html_content)
 
 print(f"所有图表联动缩放的 HTML 已生成在 {output_html}")
+if detail_manifest:
+    print(f"{len(detail_manifest)} 个图表使用了降采样，全分辨率数据在 {data_dir}/ 目录")
@@ -0,0 +1,195 @@
+// 大数据图表的按需加载：HTML中只嵌入降采样后的曲线，缩放时加载可见范围内的全分辨率数据块
+// 数据块由 main.py 写入 data/ 目录，每个文件执行 chartDetail.register(文件名, {x: [...], y: {列名: [...]}})
+(function() {
+    const loadedChunks = new Map();   // 文件名 -> 数据
+    const pendingChunks = new Map();  // 文件名 -> Promise
+
+    // 数据块脚本执行时调用
+    function register(file, data) {
+        loadedChunks.set(file, data);
+    }
+
+    // 用 <script> 加载数据块，直接打开本地HTML时 fetch 不可用
+    function loadChunk(file) {
+        if (loadedChunks.has(file)) {
+            return Promise.resolve(loadedChunks.get(file));
+        }
+        if (!pendingChunks.has(file)) {
+            pendingChunks.set(file, new Promise((resolve, reject) => {
+                const script = document.createElement('script');
+                script.src = file;
+                script.onload = () => {
+                    pendingChunks.delete(file);
+                    script.remove();
+                    resolve(loadedChunks.get(file));
+                };
+                script.onerror = () => {
+                    pendingChunks.delete(file);
+                    script.remove();
+                    reject(new Error('加载失败: ' + file));
+                };
+                document.head.appendChild(script);
+            }));
+        }
+        return pendingChunks.get(file);
+    }
+
+    // 第一个 >= value（inclusive为false时 > value）的下标
+    function bound(xs, value, inclusive) {
+        let low = 0;
+        let high = xs.length;
+        while (low < high) {
+            const mid = (low + high) >>> 1;
+            if (xs[mid] < value || (!inclusive && xs[mid] === value)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Largest-Triangle-Three-Buckets 降采样，与 main.py 中的实现相同，null点不参与
+    function lttb(xs, ys, threshold) {
+        const x = [];
+        const y = [];
+        for (let i = 0; i < xs.length; i++) {
+            if (ys[i] !== null && !Number.isNaN(ys[i])) {
+                x.push(xs[i]);
+                y.push(ys[i]);
+            }
+        }
+        const n = x.length;
+        if (threshold >= n || threshold < 3) {
+            return {x: x, y: y};
+        }
+        const every = (n - 2) / (threshold - 2);
+        const outX = [x[0]];
+        const outY = [y[0]];
+        let a = 0;
+        for (let i = 0; i < threshold - 2; i++) {
+            const avgStart = Math.floor((i + 1) * every) + 1;
+            const avgEnd = Math.min(Math.floor((i + 2) * every) + 1, n);
+            let avgX = 0;
+            let avgY = 0;
+            for (let j = avgStart; j < avgEnd; j++) {
+                avgX += x[j];
+                avgY += y[j];
+            }
+            avgX /= (avgEnd - avgStart);
+            avgY /= (avgEnd - avgStart);
+            const rangeStart = Math.floor(i * every) + 1;
+            const rangeEnd = Math.floor((i + 1) * every) + 1;
+            let maxArea = -1;
+            let next = rangeStart;
+            for (let j = rangeStart; j < rangeEnd; j++) {
+                const area = Math.abs((x[a] - avgX) * (y[j] - y[a]) - (x[a] - x[j]) * (avgY - y[a]));
+                if (area > maxArea) {
+                    maxArea = area;
+                    next = j;
+                }
+            }
+            a = next;
+            outX.push(x[a]);
+            outY.push(y[a]);
+        }
+        outX.push(x[n - 1]);
+        outY.push(y[n - 1]);
+        return {x: outX, y: outY};
+    }
+
+    function attach(div, manifest) {
+        // 初始的降采样曲线，复位时恢复
+        const overview = div.data.map(trace => ({x: trace.x, y: trace.y}));
+        const traceIndices = div.data.map((trace, index) => index);
+        const [fullStart, fullEnd] = manifest.range;
+        let showingOverview = true;
+        let requestId = 0;
+
+        function showOverview() {
+            if (!showingOverview) {
+                showingOverview = true;
+                Plotly.restyle(div, {x: overview.map(t => t.x), y: overview.map(t => t.y)}, traceIndices);
+            }
+        }
+
+        function showRange(x0, x1) {
+            if (x0 <= fullStart && x1 >= fullEnd) {
+                showOverview();
+                return;
+            }
+            const id = ++requestId;
+            // 除了与范围重叠的块，还要加载两侧相邻的块，范围边缘外的第一个点可能在相邻块中
+            const chunkList = manifest.chunks;
+            let first = 0;
+            while (first + 1 < chunkList.length && chunkList[first + 1][0] <= x0) {
+                first++;
+            }
+            let last = chunkList.length - 1;
+            while (last > first && chunkList[last - 1][1] >= x1) {
+                last--;
+            }
+            const files = chunkList.slice(first, last + 1).map(chunk => chunk[2]);
+            Promise.all(files.map(loadChunk)).then(chunks => {
+                if (id !== requestId) {
+                    return; // 加载期间又缩放了，丢弃旧结果
+                }
+                let xs = [];
+                let ys = manifest.traces.map(() => []);
+                chunks.forEach(chunk => {
+                    // 每块多取范围两侧各一个点
+                    const from = Math.max(0, bound(chunk.x, x0, true) - 1);
+                    const to = Math.min(chunk.x.length, bound(chunk.x, x1, false) + 1);
+                    for (let i = from; i < to; i++) {
+                        xs.push(chunk.x[i]);
+                    }
+                    manifest.traces.forEach((name, t) => {
+                        const values = chunk.y[name];
+                        for (let i = from; i < to; i++) {
+                            ys[t].push(values[i]);
+                        }
+                    });
+                });
+                // 只保留范围内的点和两侧最近的各一个点，曲线能画到可见区域的边缘，
+                // 放大到两个采样点之间时也能看到连线
+                const low = Math.max(0, bound(xs, x0, true) - 1);
+                const high = Math.min(xs.length, bound(xs, x1, false) + 1);
+                xs = xs.slice(low, high);
+                ys = ys.map(y => y.slice(low, high));
+                // 可见范围内的点仍然太多时再降采样，保证每次重绘的点数有上限
+                const sampled = ys.map(y => lttb(xs, y, manifest.budget));
+                showingOverview = false;
+                Plotly.restyle(div, {x: sampled.map(s => s.x), y: sampled.map(s => s.y)}, traceIndices);
+            }).catch(error => console.error(error));
+        }
+
+        div.on('plotly_relayout', function(eventData) {
+            if (eventData['xaxis.autorange']) {
+                // 复位：恢复概览，并把范围设回完整范围（autorange会按当前的局部数据计算）
+                ++requestId;
+                showOverview();
+                Plotly.relayout(div, {'xaxis.range': [fullStart, fullEnd]});
+                return;
+            }
+            let range = eventData['xaxis.range'];
+            if (!range && eventData['xaxis.range[0]'] !== undefined) {
+                range = [eventData['xaxis.range[0]'], eventData['xaxis.range[1]']];
+            }
+            if (range) {
+                showRange(Number(range[0]), Number(range[1]));
+            }
+        });
+    }
+
+    window.chartDetail = {register: register};
+
+    document.addEventListener('DOMContentLoaded', function() {
+        const manifests = window.chartDetailManifest || {};
+        Object.keys(manifests).forEach(chartId => {
+            const div = document.getElementById(chartId);
+            if (div && div.on) {
+                attach(div, manifests[chartId]);
+            }
+        });
+    });
+})();
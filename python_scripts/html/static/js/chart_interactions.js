@@ -3,73 +3,191 @@ document.addEventListener('DOMContentLoaded', function() {
     // 获取所有图表容器
     const chartDivs = Array.from(document.getElementsByClassName('js-plotly-plot'));
 
+    // ---------- 联动缩放 ----------
+    // 同一帧内的多次缩放只同步最后一次；正在被同步的图表触发的 relayout 不再向外传播
+    const syncingDivs = new Set();
+    let pendingSync = null;
+
+    function readRange(eventData) {
+        if (eventData['xaxis.range']) {
+            return eventData['xaxis.range'];
+        }
+        if (eventData['xaxis.range[0]'] !== undefined && eventData['xaxis.range[1]'] !== undefined) {
+            return [eventData['xaxis.range[0]'], eventData['xaxis.range[1]']];
+        }
+        return null;
+    }
+
+    function flushSync() {
+        const {source, range} = pendingSync;
+        pendingSync = null;
+        const [x0, x1] = range;
+        chartDivs.forEach(targetDiv => {
+            if (targetDiv === source) {
+                return;
+            }
+            const current = targetDiv._fullLayout && targetDiv._fullLayout.xaxis.range;
+            if (current && current[0] === x0 && current[1] === x1) {
+                return; // 范围相同，不需要重绘
+            }
+            syncingDivs.add(targetDiv);
+            const done = () => syncingDivs.delete(targetDiv);
+            Plotly.relayout(targetDiv, {
+                'xaxis.range[0]': x0,
+                'xaxis.range[1]': x1
+            }).then(done, done);
+        });
+    }
+
     // 为每个图表绑定 relayout 事件，实现联动缩放
     chartDivs.forEach(div => {
         div.on('plotly_relayout', function(eventData) {
-            if (eventData['xaxis.range']) {
-                const [x0, x1] = eventData['xaxis.range'];
-
-                // 更新所有图表的 xaxis.range
-                chartDivs.forEach(targetDiv => {
-                    if (targetDiv !== div) {
-                        Plotly.relayout(targetDiv, {
-                            'xaxis.range[0]': x0,
-                            'xaxis.range[1]': x1
-                        });
-                    }
-                });
+            if (syncingDivs.has(div)) {
+                return; // 由联动引起，不再回传
+            }
+            const range = readRange(eventData);
+            if (!range) {
+                return;
+            }
+            const scheduled = pendingSync !== null;
+            pendingSync = {source: div, range: range};
+            if (!scheduled) {
+                requestAnimationFrame(flushSync);
             }
         });
     });
 
-    // 数据悬浮功能
-    chartDivs.forEach((div, index) => {
-        div.on('plotly_hover', function (data) {
-            const xVal = data.points[0].x;
+    // ---------- 数据悬浮 ----------
+    // 每条曲线的X排序索引，按X数组缓存；曲线数据被替换（例如缩放后加载明细）时自动重建
+    // 实时页面的曲线会被追加、截断，同一个数组的长度或首尾点变化时也重建
+    const xIndexCache = new WeakMap();
+
+    function toNumber(value) {
+        if (typeof value === 'number') {
+            return value;
+        }
+        if (value instanceof Date) {
+            return value.getTime();
+        }
+        const number = Number(value);
+        return Number.isNaN(number) ? Date.parse(value) : number;
+    }
 
-            // 清除之前的提示
-            chartDivs.forEach(d => {
-                d.querySelectorAll('.hover-tooltip').forEach(el => el.remove());
+    function getXIndex(xData) {
+        const n = xData.length;
+        let index = xIndexCache.get(xData);
+        if (index && index.length === n && index.first === xData[0] && index.last === xData[n - 1]) {
+            return index;
+        }
+        const keys = new Float64Array(n);
+        let sorted = true;
+        for (let i = 0; i < n; i++) {
+            keys[i] = toNumber(xData[i]);
+            if (i > 0 && !(keys[i] >= keys[i - 1])) {
+                sorted = false;
+            }
+        }
+        if (sorted) {
+            index = {keys: keys, order: null};
+        } else {
+            // 无序时按X排序，order[i] 是排序后第i个点在原数组中的下标；NaN排在最后
+            const order = new Int32Array(n);
+            for (let i = 0; i < n; i++) {
+                order[i] = i;
+            }
+            order.sort((a, b) => {
+                const ka = keys[a];
+                const kb = keys[b];
+                if (Number.isNaN(ka)) {
+                    return Number.isNaN(kb) ? 0 : 1;
+                }
+                return Number.isNaN(kb) ? -1 : ka - kb;
             });
+            const sortedKeys = new Float64Array(n);
+            for (let i = 0; i < n; i++) {
+                sortedKeys[i] = keys[order[i]];
+            }
+            index = {keys: sortedKeys, order: order};
+        }
+        index.length = n;
+        index.first = xData[0];
+        index.last = xData[n - 1];
+        xIndexCache.set(xData, index);
+        return index;
+    }
 
-            // 创建提示框
-            const tooltip = document.createElement('div');
-            tooltip.className = 'hover-tooltip';
-            tooltip.style.left = `${data.event.pageX + 10}px`;
-            tooltip.style.top = `${data.event.pageY - 30}px`;
+    // 二分查找X最接近 value 的点，返回原数组下标，没有数据时返回-1
+    function nearestIndex(xData, value) {
+        const {keys, order} = getXIndex(xData);
+        let high = keys.length;
+        while (high > 0 && Number.isNaN(keys[high - 1])) {
+            high--;
+        }
+        if (high === 0 || Number.isNaN(value)) {
+            return -1;
+        }
+        let low = 0;
+        let end = high;
+        while (low < end) {
+            const mid = (low + end) >>> 1;
+            if (keys[mid] < value) {
+                low = mid + 1;
+            } else {
+                end = mid;
+            }
+        }
+        let best = low;
+        if (best >= high || (best > 0 && value - keys[best - 1] <= keys[best] - value)) {
+            best -= 1;
+        }
+        return order ? order[best] : best;
+    }
+
+    // 整个页面只用一个提示框
+    const tooltip = document.createElement('div');
+    tooltip.className = 'hover-tooltip';
+
+    function hideTooltip() {
+        tooltip.remove();
+    }
+
+    chartDivs.forEach((div, index) => {
+        div.on('plotly_hover', function (data) {
+            const xVal = data.points[0].x;
+            const xNumber = toNumber(xVal);
 
             // 构建提示内容
             let tooltipText = `<strong>time: ${xVal}</strong><br>`;
             let hasData = false;
 
-            const plotlyInstance = div._fullLayout ? div : null;
-            if (plotlyInstance) {
-                const traces = plotlyInstance._fullData;
-                traces.forEach(trace => {
-                    const xData = trace.x;
-                    const yData = trace.y;
-                    const idx = xData.indexOf(xVal);
-
-                    if (idx !== -1) {
-                        hasData = true;
-                        const color = trace.line.color || '#000';
-                        tooltipText += `<span style="color: ${color};">${trace.name}: ${yData[idx]}</span><br>`;
-                    }
-                });
-            }
+            const traces = div._fullData || [];
+            traces.forEach(trace => {
+                const xData = trace.x;
+                const yData = trace.y;
+                if (!xData || !yData) {
+                    return;
+                }
+                const idx = nearestIndex(xData, xNumber);
+
+                if (idx !== -1) {
+                    hasData = true;
+                    const color = (trace.line && trace.line.color) || '#000';
+                    tooltipText += `<span style="color: ${color};">${trace.name}: ${yData[idx]}</span><br>`;
+                }
+            });
 
             if (!hasData) {
                 tooltipText += "没有找到对应的数据点。";
             }
 
+            tooltip.style.left = `${data.event.pageX + 10}px`;
+            tooltip.style.top = `${data.event.pageY - 30}px`;
             tooltip.innerHTML = tooltipText;
-            div.appendChild(tooltip);
+            if (tooltip.parentNode !== div) {
+                div.appendChild(tooltip);
+            }
         });
 
-        div.on('plotly_unhover', function () {
-            chartDivs.forEach(d => {
-                d.querySelectorAll('.hover-tooltip').forEach(el => el.remove());
-            });
-        });
+        div.on('plotly_unhover', hideTooltip);
     });
 });
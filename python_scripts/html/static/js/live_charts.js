@@ -0,0 +1,93 @@
+// 实时指标页面：由 MetricsDashboardServer 提供，配置在 window.liveChartConfig
+// 图表在脚本加载时同步创建，之后加载的 chart_interactions.js 在 DOMContentLoaded 时绑定联动缩放和悬浮
+// 数据通过 Server-Sent Events 推送，每个事件只包含新增的行：{start, t: [秒...], v: [[序列0...], ...]}
+// 重新开始采样后服务端先发 reset 事件，页面清空曲线再接收新数据；序列变化时重新加载页面
+(function() {
+    const config = window.liveChartConfig;
+    const container = document.getElementById('chart-container');
+    const charts = [];
+
+    config.sheets.forEach((sheet, index) => {
+        if (index > 0) {
+            container.appendChild(document.createElement('hr'));
+        }
+        const div = document.createElement('div');
+        div.id = 'chart_' + sheet.name.replace(/ /g, '_');
+        container.appendChild(div);
+        // 点数会一直增长，用 Scattergl 并且只画线
+        const traces = sheet.series.map(series => ({
+            type: 'scattergl', mode: 'lines', name: series.name, x: [], y: [], hoverinfo: 'none'
+        }));
+        Plotly.newPlot(div, traces, {
+            title: 'Sheet: ' + sheet.name,
+            xaxis: {
+                title: '时间(s)',
+                type: 'linear',
+                showspikes: true,
+                spikemode: 'across',
+                spikethickness: 1,
+                spikecolor: 'gray',
+                spikesnap: 'cursor'
+            },
+            yaxis: {
+                title: 'Values',
+                showspikes: true,
+                spikemode: 'across',
+                spikethickness: 1,
+                spikecolor: 'gray'
+            },
+            height: 400,
+            margin: {l: 50, r: 50, t: 80, b: 50}
+        });
+        charts.push({div: div, indices: sheet.series.map(series => series.index)});
+    });
+
+    // 同一帧内到达的多个事件合并成一次 extendTraces
+    let pending = null;
+
+    function flush() {
+        if (pending === null) {
+            return; // 这一帧的数据已被 reset 丢弃
+        }
+        const {t, v} = pending;
+        pending = null;
+        charts.forEach(chart => {
+            const xs = chart.indices.map(() => t);
+            const ys = chart.indices.map(index => v[index]);
+            Plotly.extendTraces(chart.div, {x: xs, y: ys}, chart.indices.map((_, i) => i), config.maxPoints);
+        });
+    }
+
+    const source = new EventSource(config.events);
+    source.onmessage = function(event) {
+        const delta = JSON.parse(event.data);
+        if (pending === null) {
+            pending = {t: delta.t, v: delta.v};
+            requestAnimationFrame(flush);
+        } else {
+            pending.t = pending.t.concat(delta.t);
+            pending.v = pending.v.map((values, index) => values.concat(delta.v[index]));
+        }
+    };
+    // 页面上的序列名，按序列下标排列，与 reset 事件中的比较
+    const seriesNames = [];
+    config.sheets.forEach(sheet => sheet.series.forEach(series => {
+        seriesNames[series.index] = series.name;
+    }));
+
+    source.addEventListener('reset', function(event) {
+        const info = JSON.parse(event.data);
+        if (info.series.join('\n') !== seriesNames.join('\n')) {
+            location.reload();
+            return;
+        }
+        pending = null;
+        charts.forEach(chart => {
+            Plotly.restyle(chart.div, {x: chart.indices.map(() => []), y: chart.indices.map(() => [])});
+        });
+    });
+    source.onerror = function() {
+        // EventSource 会按服务端的 retry 自动重连，并带上 Last-Event-ID 从断开的行继续
+        console.warn('实时数据连接断开，正在重连');
+    };
+})();
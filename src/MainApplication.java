@@ -1,19 +1,27 @@
 // MainApplication.java
 import Tabs.*;
-import Utils.CommandExecutor;
+import Utils.AdbClient;
+import Utils.AdbDevice;
+import Utils.AdbShellPool;
+import Utils.DeviceListQuery;
+import Utils.DevicePackageCache;
+import Utils.DeviceTracker;
 
 import javax.swing.*;
 import java.awt.*;
 import java.util.List;
 import java.util.ArrayList;
 
+import interfaces.DeviceChangeListener;
 import interfaces.DeviceSelectionListener;
 
-public class MainApplication {
+public class MainApplication implements DeviceChangeListener {
     private String selectedDeviceId = ""; // 全局变量存储选中的设备ID
     private JComboBox<String> deviceComboBox; // 设备选择下拉列表
     private DefaultComboBoxModel<String> deviceModel; // 下拉列表模型
+    private JList<String> deviceList; // 多设备模式下的设备多选列表
     private List<DeviceSelectionListener> deviceListeners = new ArrayList<>(); // 添加监听器列表
+    private final DeviceTracker deviceTracker = new DeviceTracker(AdbClient.getDefault()); // 后台设备跟踪
 
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> {
@@ -68,14 +76,40 @@ public class MainApplication {
 
         devicePanel.add(deviceControlPanel, BorderLayout.NORTH);
 
+        // 多设备模式：与下拉框共用同一个设备模型，可以多选，按钮命令在所有选中设备上并行执行
+        JCheckBox multiDeviceCheckBox = new JCheckBox("多设备");
+        deviceList = new JList<>(deviceModel);
+        deviceList.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+        deviceList.setVisibleRowCount(5);
+        deviceList.addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting() && multiDeviceCheckBox.isSelected()) {
+                notifyDevicesSelection(deviceList.getSelectedValuesList());
+            }
+        });
+        JScrollPane deviceListScrollPane = new JScrollPane(deviceList);
+        deviceListScrollPane.setVisible(false);
+
+        multiDeviceCheckBox.addActionListener(e -> {
+            boolean multi = multiDeviceCheckBox.isSelected();
+            deviceListScrollPane.setVisible(multi);
+            deviceComboBox.setEnabled(!multi);
+            notifyDevicesSelection(multi ? deviceList.getSelectedValuesList() : new ArrayList<>());
+            devicePanel.revalidate();
+        });
+
+        JPanel multiDevicePanel = new JPanel(new BorderLayout());
+        multiDevicePanel.add(multiDeviceCheckBox, BorderLayout.NORTH);
+        multiDevicePanel.add(deviceListScrollPane, BorderLayout.CENTER);
+        devicePanel.add(multiDevicePanel, BorderLayout.CENTER);
+
         // 创建功能列表项（放在下方）
         JPanel featurePanel = new JPanel(new BorderLayout());
         featurePanel.setBorder(BorderFactory.createTitledBorder("功能模块"));
 
-        String[] featureNames = {"文件选择器", "文本行选择器", "命令按钮面板", "PBTX处理器", "命令"};
-        JList<String> featureList = new JList<>(featureNames);
+        // 列表项在添加完Tab页后按Tab标题填充，两者的顺序和数量始终一致
+        DefaultListModel<String> featureModel = new DefaultListModel<>();
+        JList<String> featureList = new JList<>(featureModel);
         featureList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        featureList.setSelectedIndex(0);
 
         JScrollPane listScrollPane = new JScrollPane(featureList);
         featurePanel.add(listScrollPane, BorderLayout.CENTER);
@@ -85,21 +119,32 @@ public class MainApplication {
         leftPanel.add(featurePanel, BorderLayout.CENTER);
 
         // 右侧TabbedPane
+        // 各面板在第一次被选中时才创建，面板自己的文件和adb访问在后台完成
         JTabbedPane tabbedPane = new JTabbedPane();
-        DataCommandPanel dataCommandPanel = new DataCommandPanel();
-        FileSelectorPanel fileSelectorPanel = new FileSelectorPanel();
-        CommandButtonPanel commandButtonPanel = new CommandButtonPanel();
-        PBTXProcessorPanel pbtxProcessorPanel = new PBTXProcessorPanel();
+        LazyTab dataCommandPanel = new LazyTab(DataCommandPanel::new);
+        LazyTab fileSelectorPanel = new LazyTab(FileSelectorPanel::new);
+        LazyTab commandButtonPanel = new LazyTab(CommandButtonPanel::new);
+        LazyTab pbtxProcessorPanel = new LazyTab(PBTXProcessorPanel::new);
+        LazyTab metricSamplerPanel = new LazyTab(MetricSamplerPanel::new);
+        LazyTab logcatPanel = new LazyTab(LogcatPanel::new);
 
         addDeviceSelectionListener(dataCommandPanel);
         addDeviceSelectionListener(fileSelectorPanel);
         addDeviceSelectionListener(commandButtonPanel);
         addDeviceSelectionListener(pbtxProcessorPanel);
+        addDeviceSelectionListener(metricSamplerPanel);
+        addDeviceSelectionListener(logcatPanel);
 
         tabbedPane.addTab("命令", dataCommandPanel);
         tabbedPane.addTab("应用安装", fileSelectorPanel);
         tabbedPane.addTab("命令按钮面板", commandButtonPanel);
         tabbedPane.addTab("PBTX处理器", pbtxProcessorPanel);
+        tabbedPane.addTab("性能采样", metricSamplerPanel);
+        tabbedPane.addTab("日志", logcatPanel);
+        for (int i = 0; i < tabbedPane.getTabCount(); i++) {
+            featureModel.addElement(tabbedPane.getTitleAt(i));
+        }
+        featureList.setSelectedIndex(0);
 
         // 实现列表与Tab页的联动
         featureList.addListSelectionListener(e -> {
@@ -117,6 +162,7 @@ public class MainApplication {
             if (selectedIndex >= 0) {
                 featureList.setSelectedIndex(selectedIndex);
             }
+            loadSelectedTab(tabbedPane);
         });
 
         mainSplitPane.add(leftPanel);
@@ -125,8 +171,20 @@ public class MainApplication {
         frame.add(mainSplitPane);
         frame.setVisible(true);
 
-        // 初始化时加载设备列表
+        // 窗口显示后再创建当前选中的tab
+        SwingUtilities.invokeLater(() -> loadSelectedTab(tabbedPane));
+
+        // 初始化时加载设备列表，之后由track-devices长连接推送变化
+        deviceTracker.addDeviceChangeListener(this);
         refreshDeviceList();
+        deviceTracker.start();
+    }
+
+    private void loadSelectedTab(JTabbedPane tabbedPane) {
+        Component selected = tabbedPane.getSelectedComponent();
+        if (selected instanceof LazyTab) {
+            ((LazyTab) selected).ensureLoaded();
+        }
     }
 
     // 添加设备选择监听器
@@ -146,45 +204,64 @@ public class MainApplication {
         }
     }
 
+    // 通知所有监听器多设备选择已变化
+    private void notifyDevicesSelection(List<String> deviceIds) {
+        for (DeviceSelectionListener listener : deviceListeners) {
+            listener.onDevicesSelected(deviceIds);
+        }
+    }
+
     /**
      * 刷新设备列表
+     * 在后台线程查询，结果与当前列表比较后只更新变化的设备
      */
     private void refreshDeviceList() {
-        try {
-            // 执行adb devices命令
-            String result = CommandExecutor.executeCommand("adb devices");
-
-            // 清空现有列表
-            deviceModel.removeAllElements();
-
-            // 解析命令输出
-            String[] lines = result.split("\n");
-            boolean isFirstLine = true;
-
-            for (String line : lines) {
-                line = line.trim();
-                // 跳过标题行和空行
-                if (isFirstLine || line.isEmpty() || line.contains("List of devices")) {
-                    isFirstLine = false;
-                    continue;
-                }
+        // 与其他模块同时发起的查询会共享同一次adb访问
+        DeviceListQuery.query().whenComplete((devices, error) -> {
+            if (error != null) {
+                SwingUtilities.invokeLater(() ->
+                        JOptionPane.showMessageDialog(null, "刷新设备列表失败: " + error.getMessage(),
+                                "错误", JOptionPane.ERROR_MESSAGE));
+                return;
+            }
+            deviceTracker.applySnapshot(devices);
+        });
+    }
 
-                // 添加有效设备行
-                if (!line.startsWith("*") && line.contains("\t")) {
-                    deviceModel.addElement(line.split("\\s+")[0]);
-                }
+    @Override
+    public void onDeviceAdded(AdbDevice device) {
+        SwingUtilities.invokeLater(() -> {
+            // 列表为空时模型会自动选中新设备，并触发下拉框的选择事件
+            if (deviceModel.getIndexOf(device.getSerial()) < 0) {
+                deviceModel.addElement(device.getSerial());
             }
+        });
+    }
 
-            // 如果有设备，默认选择第一个
-            if (deviceModel.getSize() > 0) {
-                deviceComboBox.setSelectedIndex(0);
-            } else {
+    @Override
+    public void onDeviceRemoved(AdbDevice device) {
+        AdbShellPool.close(device.getSerial());
+        DevicePackageCache.invalidate(device.getSerial());
+        SwingUtilities.invokeLater(() -> {
+            deviceModel.removeElement(device.getSerial());
+            if (deviceModel.getSize() == 0 && !selectedDeviceId.isEmpty()) {
                 selectedDeviceId = "";
+                notifyDeviceSelection(selectedDeviceId);
             }
+        });
+    }
 
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(null, "刷新设备列表失败: " + e.getMessage(),
-                                        "错误", JOptionPane.ERROR_MESSAGE);
+    @Override
+    public void onDeviceChanged(AdbDevice oldDevice, AdbDevice newDevice) {
+        // 状态变化后旧的shell会话已不可用
+        if (!oldDevice.getState().equals(newDevice.getState())) {
+            AdbShellPool.close(newDevice.getSerial());
         }
+        SwingUtilities.invokeLater(() -> {
+            // 只有当前选中的设备变化时才重新通知，例如授权完成
+            if (newDevice.getSerial().equals(selectedDeviceId)) {
+                notifyDeviceSelection(selectedDeviceId);
+            }
+        });
     }
 }
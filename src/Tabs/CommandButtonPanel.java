@@ -1,13 +1,16 @@
 package Tabs;
 
 import Utils.CommandExecutor;
+import Utils.CommandResult;
 import javax.swing.*;
 import java.awt.*;
 
+import interfaces.CommandOutputListener;
 import interfaces.DeviceSelectionListener;
 
 public class CommandButtonPanel extends JPanel implements DeviceSelectionListener{
-    private JTextArea outputArea;
+    private OutputConsole outputArea;
+    private OutputPublisher outputPublisher;
     private String selectedDeviceId;
 
     public CommandButtonPanel() {
@@ -48,12 +51,11 @@ public class CommandButtonPanel extends JPanel implements DeviceSelectionListene
         buttonPanel.add(clearButton);
 
         // 创建输出区域
-        outputArea = new JTextArea(20, 50);
-        outputArea.setEditable(false);
-        outputArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        outputArea = new OutputConsole();
         outputArea.setBackground(Color.BLACK);
         outputArea.setForeground(Color.GREEN);
         outputArea.setMargin(new Insets(10, 10, 10, 10));
+        outputPublisher = new OutputPublisher(outputArea);
 
         JScrollPane scrollPane = new JScrollPane(outputArea);
         scrollPane.setBorder(BorderFactory.createTitledBorder("命令输出"));
@@ -81,15 +83,31 @@ public class CommandButtonPanel extends JPanel implements DeviceSelectionListene
     }
 
     private void executeAndDisplayCommand(String command) {
-        outputArea.append("执行命令: " + command + "\n");
-        outputArea.append("输出结果:\n");
-        outputArea.append(CommandExecutor.executeCommand(command));
-        outputArea.append("\n" + "=".repeat(50) + "\n");
-        outputArea.setCaretPosition(outputArea.getDocument().getLength());
+        appendToOutput("执行命令: " + command + "\n");
+        appendToOutput("输出结果:\n");
+
+        // 在后台执行命令，输出逐行回显，不阻塞EDT
+        CommandExecutor.executeAsync(command, new CommandOutputListener() {
+            @Override
+            public void onStdout(String line) {
+                appendToOutput(line + "\n");
+            }
+
+            @Override
+            public void onComplete(CommandResult result) {
+                appendToOutput("退出码: " + result.getExitCode() + "，耗时: " + result.getElapsedMillis() + "ms\n");
+                appendToOutput("=".repeat(50) + "\n");
+            }
+        });
+    }
+
+    // 添加文本到输出区域，可以在任意线程调用
+    private void appendToOutput(String text) {
+        outputPublisher.publish(text);
     }
 
     private void clearOutput() {
-        outputArea.setText("");
+        outputPublisher.clear();
     }
 
     @Override
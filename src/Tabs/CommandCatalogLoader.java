@@ -0,0 +1,229 @@
+package Tabs;
+
+import Tabs.DataCommandPanel.ButtonNode;
+import Tabs.DataCommandPanel.TabNode;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * 命令配置（cmd.xml）加载器
+ * - 使用StAX流式解析，直接生成TabNode/ButtonNode，不构建DOM
+ * - 解析结果写入紧凑的二进制快照（Data/.cache），以文件大小、修改时间和CRC32C为键，
+ *   之后启动时内存映射快照即可，跳过XML解析
+ */
+class CommandCatalogLoader {
+    private static final int MAGIC = 0x54434d44; // "TCMD"
+    private static final int VERSION = 1;
+    private static final String CACHE_DIR = ".cache";
+
+    private CommandCatalogLoader() {
+    }
+
+    /**
+     * 加载配置，快照有效时直接读取快照，否则解析XML并更新快照
+     */
+    static List<TabNode> load(Path xmlPath) throws IOException, XMLStreamException {
+        byte[] xml = Files.readAllBytes(xmlPath);
+        long mtime = Files.getLastModifiedTime(xmlPath).toMillis();
+        CRC32C crc = new CRC32C();
+        crc.update(xml);
+        long hash = crc.getValue();
+
+        Path cachePath = cachePathFor(xmlPath);
+        List<TabNode> cached = readSnapshot(cachePath, xml.length, mtime, hash);
+        if (cached != null) {
+            return cached;
+        }
+
+        List<TabNode> tabNodes = parse(new ByteArrayInputStream(xml));
+        try {
+            writeSnapshot(cachePath, tabNodes, xml.length, mtime, hash);
+        } catch (IOException e) {
+            // 快照只是加速手段，写入失败不影响使用
+            System.err.println("写入命令快照失败: " + e.getMessage());
+        }
+        return tabNodes;
+    }
+
+    static Path cachePathFor(Path xmlPath) {
+        Path absolute = xmlPath.toAbsolutePath();
+        return absolute.getParent().resolve(CACHE_DIR).resolve(absolute.getFileName() + ".bin");
+    }
+
+    /**
+     * 流式解析：根元素下的一级元素为tab，二级元素为button，
+     * button下的子元素文本（或直接文本）为命令，name/show属性与原DOM解析规则一致
+     */
+    static List<TabNode> parse(InputStream in) throws XMLStreamException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        XMLStreamReader reader = factory.createXMLStreamReader(new BufferedInputStream(in));
+
+        List<TabNode> tabNodes = new ArrayList<>();
+        TabNode currentTab = null;
+        ButtonNode currentButton = null;
+        StringBuilder commandText = new StringBuilder();
+        int depth = 0;
+
+        try {
+            while (reader.hasNext()) {
+                int event = reader.next();
+                switch (event) {
+                    case XMLStreamConstants.START_ELEMENT:
+                        depth++;
+                        if (depth == 2) {
+                            currentTab = new TabNode(nameOf(reader));
+                        } else if (depth == 3 && currentTab != null) {
+                            currentButton = new ButtonNode(nameOf(reader));
+                            String show = reader.getAttributeValue(null, "show");
+                            currentButton.show = "true".equalsIgnoreCase(show);
+                        } else if (depth == 4) {
+                            commandText.setLength(0);
+                        }
+                        break;
+                    case XMLStreamConstants.CHARACTERS:
+                    case XMLStreamConstants.CDATA:
+                        if (depth >= 4) {
+                            commandText.append(reader.getText());
+                        } else if (depth == 3 && currentButton != null) {
+                            // button下直接写的文本也作为命令
+                            addCommand(currentButton, reader.getText());
+                        }
+                        break;
+                    case XMLStreamConstants.END_ELEMENT:
+                        if (depth == 4 && currentButton != null) {
+                            addCommand(currentButton, commandText.toString());
+                        } else if (depth == 3 && currentButton != null) {
+                            currentTab.buttons.add(currentButton);
+                            currentButton = null;
+                        } else if (depth == 2 && currentTab != null) {
+                            tabNodes.add(currentTab);
+                            currentTab = null;
+                        }
+                        depth--;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return tabNodes;
+    }
+
+    private static String nameOf(XMLStreamReader reader) {
+        String name = reader.getAttributeValue(null, "name");
+        return name != null ? name : reader.getLocalName();
+    }
+
+    private static void addCommand(ButtonNode buttonNode, String text) {
+        String command = text.trim();
+        if (!command.isEmpty()) {
+            buttonNode.commands.add(command);
+        }
+    }
+
+    // ==================== 二进制快照 ====================
+    // 格式：magic, version, xml大小, mtime, crc, tab数,
+    //      每个tab: name, button数, 每个button: name, show, 命令数, 命令...
+    // 字符串为 int长度 + UTF-8字节
+
+    private static List<TabNode> readSnapshot(Path cachePath, long size, long mtime, long hash) {
+        if (!Files.isRegularFile(cachePath)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != size || buffer.getLong() != mtime || buffer.getLong() != hash) {
+                return null;
+            }
+            int tabCount = buffer.getInt();
+            List<TabNode> tabNodes = new ArrayList<>(tabCount);
+            for (int i = 0; i < tabCount; i++) {
+                TabNode tabNode = new TabNode(readString(buffer));
+                int buttonCount = buffer.getInt();
+                for (int j = 0; j < buttonCount; j++) {
+                    ButtonNode buttonNode = new ButtonNode(readString(buffer));
+                    buttonNode.show = buffer.get() != 0;
+                    int commandCount = buffer.getInt();
+                    for (int k = 0; k < commandCount; k++) {
+                        buttonNode.commands.add(readString(buffer));
+                    }
+                    tabNode.buttons.add(buttonNode);
+                }
+                tabNodes.add(tabNode);
+            }
+            return tabNodes;
+        } catch (IOException | RuntimeException e) {
+            // 快照损坏时重新解析XML
+            return null;
+        }
+    }
+
+    private static void writeSnapshot(Path cachePath, List<TabNode> tabNodes, long size, long mtime, long hash)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(size);
+            out.writeLong(mtime);
+            out.writeLong(hash);
+            out.writeInt(tabNodes.size());
+            for (TabNode tabNode : tabNodes) {
+                writeString(out, tabNode.name);
+                out.writeInt(tabNode.buttons.size());
+                for (ButtonNode buttonNode : tabNode.buttons) {
+                    writeString(out, buttonNode.name);
+                    out.writeByte(buttonNode.show ? 1 : 0);
+                    out.writeInt(buttonNode.commands.size());
+                    for (String command : buttonNode.commands) {
+                        writeString(out, command);
+                    }
+                }
+            }
+        }
+
+        // 先写临时文件再替换，避免其他进程读到写了一半的快照
+        Files.createDirectories(cachePath.getParent());
+        Path tmp = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+        Files.write(tmp, bytes.toByteArray());
+        Files.move(tmp, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] data = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        byte[] data = new byte[length];
+        buffer.get(data);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -1,30 +1,42 @@
 package Tabs;
 
-import Utils.CommandExecutor;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
+import Utils.CommandResult;
+import Utils.DeviceCommandScheduler;
+import Utils.DeviceFanOutExecutor;
+import Utils.DirectoryWatcher;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 import interfaces.DeviceSelectionListener;
+import interfaces.FileChangeListener;
 
 public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
+    private static final Path XML_PATH = Paths.get("Data/cmd.xml");
+
     private JTabbedPane tabbedPane;
     private List<TabNode> tabNodes;
+    private List<TabView> tabViews = new ArrayList<>(); // 与tabNodes一一对应的界面
+    private DirectoryWatcher configWatcher; // 监视cmd.xml的修改
     private String selectedDeviceId;
-    private JTextArea outputArea; // 添加输出区域
+    private List<String> selectedDeviceIds = new ArrayList<>(); // 多设备模式下选中的设备
+    private final DeviceFanOutExecutor fanOutExecutor = new DeviceFanOutExecutor();
+    private OutputConsole outputArea; // 添加输出区域，固定容量，只绘制可见行
+    private OutputPublisher outputPublisher; // 合并各线程的输出，按帧批量刷新到输出区域
     private JSplitPane mainSplitPane; // 用于分割tab页面和输出窗口
 
     @Override
@@ -32,6 +44,11 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
         this.selectedDeviceId = newDeviceId;
     }
 
+    @Override
+    public void onDevicesSelected(List<String> deviceIds) {
+        this.selectedDeviceIds = new ArrayList<>(deviceIds);
+    }
+
     // 自定义Node类型
     static class TabNode {
         String name;
@@ -41,6 +58,19 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
             this.name = name;
             this.buttons = new ArrayList<>();
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TabNode)) return false;
+            TabNode other = (TabNode) o;
+            return name.equals(other.name) && buttons.equals(other.buttons);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, buttons);
+        }
     }
 
     static class ButtonNode {
@@ -53,6 +83,27 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
             this.show = false;
             this.commands = new ArrayList<>();
         }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof ButtonNode)) return false;
+            ButtonNode other = (ButtonNode) o;
+            return show == other.show && name.equals(other.name) && commands.equals(other.commands);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, show, commands);
+        }
+    }
+
+    // 一个tab页面的界面组件，热加载时按节点差异更新
+    private static class TabView {
+        TabNode node;
+        JPanel container;
+        JPanel buttonPanel;
+        List<JButton> buttons = new ArrayList<>();
     }
 
     public DataCommandPanel() {
@@ -79,28 +130,147 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
         tabbedPane = new JTabbedPane();
         tabNodes = new ArrayList<>();
 
-        // 1. 先解析XML文件
-        Document document = parseXmlFile();
-        if (document == null) {
-            add(tabbedPane, BorderLayout.CENTER);
+        // 将tabbedPane设置为分割面板的上半部分，解析失败时保持为空，等待文件修正后热加载
+        mainSplitPane.setTopComponent(tabbedPane);
+
+        // 在后台读取配置，完成后回到EDT创建tab界面，之后开始监视文件修改
+        new Thread(() -> {
+            // 1. 解析XML文件并存储到自定义Node类型中
+            List<TabNode> nodes = loadTabNodes(false);
+            SwingUtilities.invokeLater(() -> {
+                if (nodes != null) {
+                    tabNodes = nodes;
+                    // 2. 遍历所有的tabs，按照tabs的属性值创建多个tab界面
+                    createTabInterfaces();
+                }
+                startConfigWatcher();
+            });
+        }, "load-cmd-xml").start();
+    }
+
+    // 监视Data目录，cmd.xml保存后在后台重新解析，只重建发生变化的tab和按钮
+    private void startConfigWatcher() {
+        Path dataDir = XML_PATH.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dataDir)) {
             return;
         }
+        configWatcher = new DirectoryWatcher(dataDir, 300,
+                path -> path.getFileName().equals(XML_PATH.getFileName()),
+                new FileChangeListener() {
+                    @Override
+                    public void onFilesChanged(List<Path> created, List<Path> modified, List<Path> deleted) {
+                        if (deleted.isEmpty()) {
+                            reloadCommands();
+                        }
+                    }
 
-        // 2. 将解析后的数据存储到自定义Node类型中
-        parseAndStoreData(document);
+                    @Override
+                    public void onOverflow() {
+                        reloadCommands();
+                    }
+                });
+        try {
+            configWatcher.start();
+        } catch (IOException e) {
+            System.err.println("无法监视配置目录: " + e.getMessage());
+        }
+    }
 
-        // 3. 遍历所有的tabs，按照tabs的属性值创建多个tab界面
-        createTabInterfaces();
+    // 在监视线程上调用：解析新的配置，再回到EDT上应用差异
+    private void reloadCommands() {
+        List<TabNode> newNodes = loadTabNodes(true);
+        if (newNodes == null) {
+            return;
+        }
+        SwingUtilities.invokeLater(() -> applyTabNodes(newNodes));
+    }
 
-        // 将tabbedPane设置为分割面板的上半部分
-        mainSplitPane.setTopComponent(tabbedPane);
+    private void applyTabNodes(List<TabNode> newNodes) {
+        if (newNodes.equals(tabNodes)) {
+            return;
+        }
+        Component selected = tabbedPane.getSelectedComponent();
+        int added = 0;
+        int updated = 0;
+
+        // 按名称匹配原有的tab，内容相同的直接复用
+        List<TabView> unused = new ArrayList<>(tabViews);
+        List<TabView> nextViews = new ArrayList<>();
+        for (TabNode node : newNodes) {
+            TabView view = takeView(unused, node.name);
+            if (view == null) {
+                view = createTabView(node);
+                added++;
+            } else if (!view.node.equals(node)) {
+                updateTabView(view, node);
+                updated++;
+            }
+            nextViews.add(view);
+        }
+
+        // 移除已经不存在的tab
+        for (TabView view : unused) {
+            tabbedPane.remove(view.container);
+        }
+
+        // 按新的顺序放置，位置没变的tab不动
+        for (int i = 0; i < nextViews.size(); i++) {
+            TabView view = nextViews.get(i);
+            if (i < tabbedPane.getTabCount() && tabbedPane.getComponentAt(i) == view.container) {
+                continue;
+            }
+            int existing = tabbedPane.indexOfComponent(view.container);
+            if (existing >= 0) {
+                tabbedPane.removeTabAt(existing);
+            }
+            tabbedPane.insertTab(view.node.name, null, view.container, null, i);
+        }
+
+        if (selected != null && tabbedPane.indexOfComponent(selected) >= 0) {
+            tabbedPane.setSelectedComponent(selected);
+        }
+
+        tabViews = nextViews;
+        tabNodes = newNodes;
+        appendToOutput("已重新加载 " + XML_PATH + "：新增 " + added + " 个tab，更新 " + updated
+                + " 个tab，移除 " + unused.size() + " 个tab\n");
+    }
+
+    private static TabView takeView(List<TabView> views, String name) {
+        for (int i = 0; i < views.size(); i++) {
+            if (views.get(i).node.name.equals(name)) {
+                return views.remove(i);
+            }
+        }
+        return null;
+    }
+
+    // 更新一个tab内的按钮：内容相同的按钮复用原组件，只为新的或修改过的按钮创建组件
+    private void updateTabView(TabView view, TabNode node) {
+        Map<ButtonNode, Deque<JButton>> reusable = new HashMap<>();
+        for (int i = 0; i < view.node.buttons.size(); i++) {
+            reusable.computeIfAbsent(view.node.buttons.get(i), k -> new ArrayDeque<>()).add(view.buttons.get(i));
+        }
+
+        List<JButton> buttons = new ArrayList<>(node.buttons.size());
+        for (ButtonNode buttonNode : node.buttons) {
+            Deque<JButton> candidates = reusable.get(buttonNode);
+            JButton button = candidates != null ? candidates.poll() : null;
+            buttons.add(button != null ? button : createButton(buttonNode));
+        }
+
+        view.buttonPanel.removeAll();
+        buttons.forEach(view.buttonPanel::add);
+        view.buttonPanel.revalidate();
+        view.buttonPanel.repaint();
+        view.buttons = buttons;
+        view.node = node;
     }
 
     private void initializeOutputArea() {
         // 创建输出文本区域
-        outputArea = new JTextArea();
-        outputArea.setEditable(false);
-        outputArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        outputArea = new OutputConsole();
+        outputPublisher = new OutputPublisher(outputArea);
 //        outputArea.setBackground(Color.BLACK);
 //        outputArea.setForeground(Color.GREEN);
 
@@ -113,8 +283,13 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
         JButton clearButton = new JButton("清除所有内容");
         clearButton.addActionListener(e -> clearOutput());
 
+        // 输出统计：已输出、丢弃和积压的条目数
+        JLabel statsLabel = new JLabel(" ");
+        outputPublisher.setFlushListener(() -> statsLabel.setText(outputPublisher.getStats()));
+
         // 创建底部面板放置清除按钮
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttonPanel.add(statsLabel);
         buttonPanel.add(clearButton);
 
         // 创建输出区域的整体面板
@@ -127,135 +302,62 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
     }
 
     private void clearOutput() {
-        outputArea.setText("");
+        outputPublisher.clear();
     }
 
-    private Document parseXmlFile() {
+    // 在后台线程调用；quiet为true时只打印错误不弹窗，用于热加载（编辑过程中文件可能暂时不完整）
+    private List<TabNode> loadTabNodes(boolean quiet) {
         try {
-            Path xmlPath = Paths.get("Data/cmd.xml");
-            System.out.println("尝试读取文件: " + xmlPath.toAbsolutePath());
-
+            Path xmlPath = XML_PATH;
             if (!Files.exists(xmlPath)) {
                 System.err.println("XML文件不存在: " + xmlPath.toAbsolutePath());
-                JOptionPane.showMessageDialog(this, "XML文件不存在: " + xmlPath.toString(),
-                        "文件错误", JOptionPane.ERROR_MESSAGE);
+                if (quiet) {
+                    return null;
+                }
+                SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                        "XML文件不存在: " + xmlPath.toString(), "文件错误", JOptionPane.ERROR_MESSAGE));
                 return null;
             }
 
-            // 使用Java内置XML解析器解析XML文件
-            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-            DocumentBuilder builder = factory.newDocumentBuilder();
-            Document document = builder.parse(xmlPath.toFile());
-            document.getDocumentElement().normalize();
-
-            System.out.println("XML文件解析成功");
-            return document;
+            // 流式解析XML，或直接读取上次解析生成的二进制快照
+            return CommandCatalogLoader.load(xmlPath);
 
         } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "解析XML文件出错: " + e.getMessage(),
-                    "解析错误", JOptionPane.ERROR_MESSAGE);
-            e.printStackTrace();
-            return null;
-        }
-    }
-
-    private void parseAndStoreData(Document document) {
-        try {
-            // 解析XML并存储到自定义Node类型中
-            Element root = document.getDocumentElement();
-            System.out.println("根元素名称: " + root.getNodeName());
-
-            // 遍历所有一级节点（tabs）
-            NodeList topLevelNodes = root.getChildNodes();
-            for (int i = 0; i < topLevelNodes.getLength(); i++) {
-                Node topLevelNode = topLevelNodes.item(i);
-                if (topLevelNode.getNodeType() == Node.ELEMENT_NODE) {
-                    Element topLevelElement = (Element) topLevelNode;
-                    // 优化：优先获取name属性值，如果没有则使用标签名
-                    String topLevelName = topLevelElement.hasAttribute("name") ?
-                            topLevelElement.getAttribute("name") : topLevelElement.getNodeName();
-                    System.out.println("处理一级节点: " + topLevelName);
-
-                    TabNode tabNode = new TabNode(topLevelName);
-
-                    // 遍历每个一级节点下的二级节点（buttons）
-                    NodeList secondLevelNodes = topLevelElement.getChildNodes();
-                    for (int j = 0; j < secondLevelNodes.getLength(); j++) {
-                        Node secondLevelNode = secondLevelNodes.item(j);
-                        if (secondLevelNode.getNodeType() == Node.ELEMENT_NODE) {
-                            Element secondLevelElement = (Element) secondLevelNode;
-                            // 优化：优先获取name属性值，如果没有则使用标签名
-                            String secondLevelName = secondLevelElement.hasAttribute("name") ?
-                                    secondLevelElement.getAttribute("name") : secondLevelElement.getNodeName();
-                            System.out.println("  处理二级节点: " + secondLevelName);
-
-                            ButtonNode buttonNode = new ButtonNode(secondLevelName);
-
-                            // 解析二级节点下的命令列表
-                            NodeList commandNodes = secondLevelElement.getChildNodes();
-                            for (int k = 0; k < commandNodes.getLength(); k++) {
-                                Node commandNode = commandNodes.item(k);
-                                if (commandNode.getNodeType() == Node.ELEMENT_NODE) {
-                                    Element commandElement = (Element) commandNode;
-                                    String command = commandElement.getTextContent().trim();
-                                    if (!command.isEmpty()) {
-                                        buttonNode.commands.add(command);
-                                        System.out.println("    添加命令: " + command);
-                                    }
-                                } else if (commandNode.getNodeType() == Node.TEXT_NODE) {
-                                    String command = commandNode.getTextContent().trim();
-                                    if (!command.isEmpty()) {
-                                        buttonNode.commands.add(command);
-                                        System.out.println("    添加命令: " + command);
-                                    }
-                                }
-                            }
-
-                            // 解析 show 属性，默认为 false
-                            if (secondLevelElement.hasAttribute("show")) {
-                                String showValue = secondLevelElement.getAttribute("show");
-                                buttonNode.show = "true".equalsIgnoreCase(showValue);
-                            }
-
-                            tabNode.buttons.add(buttonNode);
-                        }
-                    }
-
-                    tabNodes.add(tabNode);
-                    System.out.println("存储Tab节点: " + tabNode.name + "，包含按钮数: " + tabNode.buttons.size());
-                }
+            if (quiet) {
+                System.err.println("解析XML文件出错: " + e.getMessage());
+                return null;
             }
-        } catch (Exception e) {
-            System.err.println("解析XML数据时出错: " + e.getMessage());
+            SwingUtilities.invokeLater(() -> JOptionPane.showMessageDialog(this,
+                    "解析XML文件出错: " + e.getMessage(), "解析错误", JOptionPane.ERROR_MESSAGE));
             e.printStackTrace();
+            return null;
         }
     }
 
-
     private void createTabInterfaces() {
         // 遍历所有的tabs，按照tabs的属性值创建多个tab界面
         for (TabNode tabNode : tabNodes) {
-            JPanel subPanel = createTabPanel(tabNode);
-            tabbedPane.addTab(tabNode.name, subPanel);
-            System.out.println("222已添加Tab界面: " + tabNode.name);
+            TabView view = createTabView(tabNode);
+            tabViews.add(view);
+            tabbedPane.addTab(tabNode.name, view.container);
         }
     }
 
-    private JPanel createTabPanel(TabNode tabNode) {
+    private TabView createTabView(TabNode tabNode) {
+        TabView view = new TabView();
+        view.node = tabNode;
         JPanel panel = new JPanel();
         panel.setLayout(new WrapLayout());
         panel.setBackground(new Color(248, 249, 250)); // 浅灰色背景
         panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10)); // 添加边距
 
-        System.out.println("开始创建Tab面板: " + tabNode.name + "，包含按钮数量: " + tabNode.buttons.size());
-
         // 遍历每一个tabs下的button，按照button的属性值创建button按钮
         for (ButtonNode buttonNode : tabNode.buttons) {
-            createAndAddButton(panel, buttonNode);
+            JButton button = createButton(buttonNode);
+            view.buttons.add(button);
+            panel.add(button);
         }
 
-        System.out.println("Tab面板创建完成: " + tabNode.name + "，实际按钮数量: " + panel.getComponentCount());
-
         JScrollPane scrollPane = new JScrollPane(panel);
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
@@ -264,11 +366,12 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
 
         JPanel container = new JPanel(new BorderLayout());
         container.add(scrollPane, BorderLayout.CENTER);
-        return container;
+        view.buttonPanel = panel;
+        view.container = container;
+        return view;
     }
 
-    private void createAndAddButton(JPanel panel, ButtonNode buttonNode) {
-        System.out.println("创建按钮: " + buttonNode.name);
+    private JButton createButton(ButtonNode buttonNode) {
         JButton button = new JButton(buttonNode.name);
 
         // 设置按钮提示信息
@@ -286,32 +389,95 @@ public class DataCommandPanel extends JPanel implements DeviceSelectionListener{
             }
         });
 
-        panel.add(button);
-        System.out.println("按钮已添加到面板: " + buttonNode.name + "，面板当前组件数: " + panel.getComponentCount());
+        return button;
     }
 
     private void handleButtonClick(ButtonNode buttonNode) {
+        if (!selectedDeviceIds.isEmpty()) {
+            handleMultiDeviceClick(buttonNode, selectedDeviceIds);
+            return;
+        }
+
+        if (selectedDeviceId == null || selectedDeviceId.isEmpty()) {
+            appendToOutput("请先选择设备\n");
+            return;
+        }
+
         // 当点击时，输出下所有的command的值
         if (buttonNode.show) {
             appendToOutput("按钮 '" + buttonNode.name + "' 被点击\n");
             appendToOutput("命令列表:\n");
         }
 
-        for (int i = 0; i < buttonNode.commands.size(); i++) {
-            System.out.println("adb -s " + selectedDeviceId + " " + buttonNode.commands.get(i));
+        // 所有命令一次写入设备的常驻shell会话，结果按顺序回显；交互优先级，不排在采样等后台命令后面
+        String deviceId = selectedDeviceId;
+        List<CompletableFuture<CommandResult>> results = DeviceCommandScheduler.getDefault()
+                .execute(deviceId, DeviceCommandScheduler.Priority.INTERACTIVE, buttonNode.commands);
+        for (CompletableFuture<CommandResult> future : results) {
+            future.thenAccept(result -> {
+                if (buttonNode.show) {
+                    appendToOutput("adb -s " + deviceId + " " + result.getCommand() + "\n");
+                    appendToOutput(result.getStdout());
+                }
+                if (!result.isSuccess()) {
+                    appendToOutput("命令失败(" + result.getExitCode() + "): " + result.getCommand() + "\n");
+                    appendToOutput(result.getStderr());
+                }
+            });
         }
 
         if (buttonNode.show) {
-            appendToOutput("\n");
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                    .thenRun(() -> appendToOutput("\n"));
+        }
+    }
+
+    // 多设备模式：在所有选中的设备上并行执行，逐台输出结果和耗时
+    private void handleMultiDeviceClick(ButtonNode buttonNode, List<String> deviceIds) {
+        appendToOutput("按钮 '" + buttonNode.name + "' 在 " + deviceIds.size() + " 台设备上执行\n");
+        long startTime = System.nanoTime();
+
+        fanOutExecutor.execute(deviceIds, buttonNode.commands, deviceResult -> {
+            StringBuilder text = new StringBuilder();
+            text.append("[").append(deviceResult.getDeviceId()).append("] ")
+                    .append(deviceResult.isSuccess() ? "成功" : "失败")
+                    .append("，耗时: ").append(deviceResult.getElapsedMillis()).append("ms\n");
+            for (CommandResult result : deviceResult.getResults()) {
+                if (buttonNode.show || !result.isSuccess()) {
+                    text.append("  ").append(result.getCommand())
+                            .append(" (").append(result.getExitCode()).append(")\n");
+                    appendIndented(text, result.getStdout());
+                    appendIndented(text, result.getStderr());
+                }
+            }
+            appendToOutput(text.toString());
+        }).thenAccept(results -> {
+            long wallTime = (System.nanoTime() - startTime) / 1_000_000;
+            long slowest = 0;
+            int failed = 0;
+            for (DeviceFanOutExecutor.DeviceResult result : results) {
+                slowest = Math.max(slowest, result.getElapsedMillis());
+                if (!result.isSuccess()) {
+                    failed++;
+                }
+            }
+            appendToOutput("完成: " + results.size() + " 台设备，失败 " + failed + " 台，总耗时 "
+                    + wallTime + "ms，最慢设备 " + slowest + "ms\n\n");
+        });
+    }
+
+    private static void appendIndented(StringBuilder text, String output) {
+        if (output.isEmpty()) {
+            return;
+        }
+        for (String line : output.split("\n")) {
+            text.append("    ").append(line).append("\n");
         }
     }
 
     // 添加文本到输出区域
     private void appendToOutput(String text) {
-        SwingUtilities.invokeLater(() -> {
-            outputArea.append(text);
-            outputArea.setCaretPosition(outputArea.getDocument().getLength());
-        });
+        outputPublisher.publish(text);
     }
 
     // 自定义布局管理器，使组件能够自动换行
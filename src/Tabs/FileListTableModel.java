@@ -0,0 +1,221 @@
+package Tabs;
+
+import Utils.ApkMetadata;
+
+import javax.swing.table.AbstractTableModel;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 可勾选的文件列表模型，配合JTable只渲染可见行
+ * 勾选状态用BitSet按行保存，路径到行号的索引用HashMap，增删单个文件都是O(1)
+ * 删除时把最后一行移到被删除的位置，所以行顺序不固定
+ * 只能在EDT上访问
+ */
+class FileListTableModel extends AbstractTableModel {
+    static final int COLUMN_SELECTED = 0;
+    private static final String[] COLUMNS = {"", "文件名", "包名", "版本", "minSdk", "targetSdk", "大小", "修改时间"};
+
+    // 一个文件的基本信息
+    static class FileEntry {
+        final Path path;
+        final String name;
+        final long size;
+        final long lastModified;
+        ApkMetadata metadata; // 索引完成后填入，只在EDT上读写
+
+        FileEntry(Path path, long size, long lastModified) {
+            this.path = path;
+            this.name = path.getFileName().toString();
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final List<FileEntry> entries = new ArrayList<>();
+    private final Map<Path, Integer> rowByPath = new HashMap<>();
+    private final BitSet selected = new BitSet();
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    void clear() {
+        entries.clear();
+        rowByPath.clear();
+        selected.clear();
+        fireTableDataChanged();
+    }
+
+    /**
+     * 追加一批文件，已存在的路径会被忽略
+     */
+    void addAll(List<FileEntry> batch) {
+        int first = entries.size();
+        for (FileEntry entry : batch) {
+            if (!rowByPath.containsKey(entry.path)) {
+                rowByPath.put(entry.path, entries.size());
+                entries.add(entry);
+            }
+        }
+        if (entries.size() > first) {
+            fireTableRowsInserted(first, entries.size() - 1);
+        }
+    }
+
+    /**
+     * 新增或更新一个文件，已存在时保留其选中状态
+     */
+    void put(FileEntry entry) {
+        Integer row = rowByPath.get(entry.path);
+        if (row != null) {
+            entries.set(row, entry);
+            fireTableRowsUpdated(row, row);
+        } else {
+            rowByPath.put(entry.path, entries.size());
+            entries.add(entry);
+            fireTableRowsInserted(entries.size() - 1, entries.size() - 1);
+        }
+    }
+
+    /**
+     * 移除一个文件：把最后一行移到它的位置，连同选中状态一起，不需要移动其余行
+     */
+    void remove(Path path) {
+        Integer row = rowByPath.remove(path);
+        if (row == null) {
+            return;
+        }
+        int last = entries.size() - 1;
+        if (row != last) {
+            FileEntry moved = entries.get(last);
+            entries.set(row, moved);
+            rowByPath.put(moved.path, row);
+            selected.set(row, selected.get(last));
+        }
+        entries.remove(last);
+        selected.clear(last);
+        fireTableRowsDeleted(last, last);
+        if (row != last) {
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    void setSelected(Path path, boolean value) {
+        Integer row = rowByPath.get(path);
+        if (row != null && selected.get(row) != value) {
+            selected.set(row, value);
+            fireTableCellUpdated(row, COLUMN_SELECTED);
+        }
+    }
+
+    /**
+     * 填入APK元数据，entry已被移除或替换（文件又被修改）时忽略
+     */
+    void setMetadata(FileEntry entry, ApkMetadata metadata) {
+        Integer row = rowByPath.get(entry.path);
+        if (row != null && entries.get(row) == entry) {
+            entry.metadata = metadata;
+            fireTableRowsUpdated(row, row);
+        }
+    }
+
+    FileEntry getEntry(int row) {
+        return entries.get(row);
+    }
+
+    int getSelectedCount() {
+        return selected.cardinality();
+    }
+
+    List<Path> getSelectedPaths() {
+        List<Path> paths = new ArrayList<>(selected.cardinality());
+        for (int row = selected.nextSetBit(0); row >= 0; row = selected.nextSetBit(row + 1)) {
+            paths.add(entries.get(row).path);
+        }
+        return paths;
+    }
+
+    void clearSelection() {
+        if (selected.isEmpty()) {
+            return;
+        }
+        selected.clear();
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return entries.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return columnIndex == COLUMN_SELECTED ? Boolean.class : String.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int rowIndex, int columnIndex) {
+        return columnIndex == COLUMN_SELECTED;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        FileEntry entry = entries.get(rowIndex);
+        switch (columnIndex) {
+            case COLUMN_SELECTED:
+                return selected.get(rowIndex);
+            case 1:
+                return entry.name;
+            case 2:
+                return hasMetadata(entry) ? entry.metadata.getPackageName() : "";
+            case 3:
+                return hasMetadata(entry) ? entry.metadata.getVersionName() + " (" + entry.metadata.getVersionCode() + ")" : "";
+            case 4:
+                return hasMetadata(entry) ? String.valueOf(entry.metadata.getMinSdkVersion()) : "";
+            case 5:
+                return hasMetadata(entry) ? String.valueOf(entry.metadata.getTargetSdkVersion()) : "";
+            case 6:
+                return formatSize(entry.size);
+            case 7:
+                return dateFormat.format(new Date(entry.lastModified));
+            default:
+                return "";
+        }
+    }
+
+    @Override
+    public void setValueAt(Object value, int rowIndex, int columnIndex) {
+        if (columnIndex == COLUMN_SELECTED) {
+            selected.set(rowIndex, Boolean.TRUE.equals(value));
+            fireTableCellUpdated(rowIndex, columnIndex);
+        }
+    }
+
+    private static boolean hasMetadata(FileEntry entry) {
+        return entry.metadata != null && entry.metadata.isValid();
+    }
+
+    static String formatSize(long size) {
+        if (size < 1024) {
+            return size + " B";
+        }
+        if (size < 1024 * 1024) {
+            return String.format("%.1f KB", size / 1024.0);
+        }
+        return String.format("%.1f MB", size / (1024.0 * 1024));
+    }
+}
@@ -1,22 +1,56 @@
 package Tabs;
 
+import Utils.AdbClient;
+import Utils.ApkInstallEngine;
+import Utils.ApkMetadataIndexer;
+import Utils.DirectoryWatcher;
+import Utils.InstallTask;
+
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import interfaces.DeviceSelectionListener;
+import interfaces.FileChangeListener;
 
 public class FileSelectorPanel extends JPanel implements DeviceSelectionListener{
-    private List<String> selectedFiles;
-    private JPanel checkBoxPanel;
+    // 扫描时每凑够这么多个文件就送到EDT一次，让前面的行先显示出来
+    private static final int SCAN_CHUNK_SIZE = 200;
+    // CI拷贝大文件时会连续产生修改事件，等目录安静一会再刷新
+    private static final long WATCH_DEBOUNCE_MS = 500;
+
+    private FileListTableModel fileListModel;
     private JTextField folderPathField;
+    private JTextField filterField;
+    private JLabel fileCountLabel;
+    private SwingWorker<Boolean, FileListTableModel.FileEntry> scanWorker;
+    private DirectoryWatcher folderWatcher; // 监视当前目录，增量更新文件列表
+    private int watchGeneration = 0; // 每次切换监视目录加一，丢弃旧监视器迟到的事件
     private String selectedDeviceId = "";
+    private List<String> selectedDeviceIds = new ArrayList<>(); // 多设备模式下选中的设备
+    private final ApkInstallEngine installEngine = new ApkInstallEngine(AdbClient.getDefault());
+    private InstallQueueTableModel installQueueModel;
+    private JLabel installSummaryLabel;
+    private boolean installQueueActive = false;
     private String defaultPath = "D:\\install\\lingma\\Lingma\\bin";
 
     public FileSelectorPanel() {
-        this.selectedFiles = new ArrayList<>();
         initializeUI();
         // 首次加载时自动加载默认路径的结果
         loadFilesFromPath(defaultPath);
@@ -29,11 +63,16 @@ public class FileSelectorPanel extends JPanel implements DeviceSelectionListener
         JPanel topPanel = new JPanel(new FlowLayout());
         folderPathField = new JTextField(30);
         folderPathField.setText(defaultPath);
+        // 文件名过滤，glob语法，例如 *.apk 或 *.{apk,apks}
+        filterField = new JTextField("*", 8);
+        filterField.addActionListener(e -> loadFiles());
 
         JButton browseButton = new JButton("浏览");
         JButton loadButton = new JButton("加载文件");
         JButton printButton = new JButton("安装");
         JButton selectAllButton = new JButton("取消所有选中");
+        JCheckBox skipInstalledCheckBox = new JCheckBox("跳过已安装的相同版本", installEngine.isSkipInstalled());
+        skipInstalledCheckBox.addActionListener(e -> installEngine.setSkipInstalled(skipInstalledCheckBox.isSelected()));
 
         browseButton.addActionListener(e -> browseFolder());
         loadButton.addActionListener(e -> loadFiles());
@@ -43,17 +82,55 @@ public class FileSelectorPanel extends JPanel implements DeviceSelectionListener
         topPanel.add(new JLabel("文件夹路径:"));
         topPanel.add(folderPathField);
         topPanel.add(browseButton);
+        topPanel.add(new JLabel("过滤:"));
+        topPanel.add(filterField);
         topPanel.add(loadButton);
         topPanel.add(printButton);
         topPanel.add(selectAllButton);
+        topPanel.add(skipInstalledCheckBox);
+
+        // 中部面板：文件列表，JTable只渲染可见行，文件再多也不会创建大量组件
+        fileListModel = new FileListTableModel();
+        JTable fileTable = new JTable(fileListModel);
+        fileTable.setFillsViewportHeight(true);
+        fileTable.getColumnModel().getColumn(FileListTableModel.COLUMN_SELECTED).setMaxWidth(30);
+        fileTable.getColumnModel().getColumn(1).setPreferredWidth(300);
+        fileListModel.addTableModelListener(e -> updateFileCount());
+        fileCountLabel = new JLabel(" ");
+
+        JPanel filePanel = new JPanel(new BorderLayout());
+        filePanel.add(new JScrollPane(fileTable), BorderLayout.CENTER);
+        filePanel.add(fileCountLabel, BorderLayout.SOUTH);
+
+        // 底部面板：安装队列，显示每个APK的进度和速度
+        installQueueModel = new InstallQueueTableModel();
+        JTable installQueueTable = new JTable(installQueueModel);
+        installQueueTable.setFillsViewportHeight(true);
+        installSummaryLabel = new JLabel(" ");
+        JButton clearFinishedButton = new JButton("清除已完成");
+        clearFinishedButton.addActionListener(e -> {
+            installEngine.clearFinished();
+            installQueueModel.setTasks(installEngine.getTasks());
+        });
+
+        JPanel queueBottomPanel = new JPanel(new BorderLayout());
+        queueBottomPanel.add(installSummaryLabel, BorderLayout.CENTER);
+        queueBottomPanel.add(clearFinishedButton, BorderLayout.EAST);
+
+        JPanel queuePanel = new JPanel(new BorderLayout());
+        queuePanel.setBorder(BorderFactory.createTitledBorder("安装队列"));
+        queuePanel.add(new JScrollPane(installQueueTable), BorderLayout.CENTER);
+        queuePanel.add(queueBottomPanel, BorderLayout.SOUTH);
 
-        // 中部面板：复选框区域
-        checkBoxPanel = new JPanel();
-        checkBoxPanel.setLayout(new BoxLayout(checkBoxPanel, BoxLayout.Y_AXIS));
-        JScrollPane scrollPane = new JScrollPane(checkBoxPanel);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, filePanel, queuePanel);
+        splitPane.setResizeWeight(0.6);
 
         add(topPanel, BorderLayout.NORTH);
-        add(scrollPane, BorderLayout.CENTER);
+        add(splitPane, BorderLayout.CENTER);
+
+        // 安装进度由安装线程写入任务，这里定时在EDT上刷新表格，避免每个数据块都触发重绘
+        Timer refreshTimer = new Timer(250, e -> refreshInstallQueue());
+        refreshTimer.start();
     }
 
     private void browseFolder() {
@@ -75,63 +152,261 @@ public class FileSelectorPanel extends JPanel implements DeviceSelectionListener
         loadFilesFromPath(folderPath);
     }
 
+    /**
+     * 在后台线程用DirectoryStream扫描目录，按过滤条件筛选，
+     * 每凑够一批就送到EDT追加到表格，扫描未完成时已经可以看到前面的文件
+     * 再次加载会取消上一次未完成的扫描
+     * 扫描前先开始监视目录，之后目录中的变化通过监视增量更新，不再重新扫描
+     */
     private void loadFilesFromPath(String folderPath) {
-        File folder = new File(folderPath);
-        if (!folder.exists() || !folder.isDirectory()) {
-            JOptionPane.showMessageDialog(this, "无效的文件夹路径: " + folderPath, "错误", JOptionPane.ERROR_MESSAGE);
+        loadFilesFromPath(folderPath, Collections.emptySet());
+    }
+
+    // keepSelected: 重新扫描后需要恢复选中的文件
+    private void loadFilesFromPath(String folderPath, Set<Path> keepSelected) {
+        if (scanWorker != null) {
+            scanWorker.cancel(true);
+        }
+        String glob = filterField.getText().trim().isEmpty() ? "*" : filterField.getText().trim();
+        PathMatcher matcher;
+        try {
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "无效的过滤条件: " + glob, "错误", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        // 更新路径文本框
         folderPathField.setText(folderPath);
+        fileListModel.clear();
+        Path folder = Paths.get(folderPath);
+        watchFolder(folder, matcher);
+
+        SwingWorker<Boolean, FileListTableModel.FileEntry> worker = new SwingWorker<Boolean, FileListTableModel.FileEntry>() {
+            @Override
+            protected Boolean doInBackground() {
+                if (!Files.isDirectory(folder)) {
+                    return false;
+                }
+                List<FileListTableModel.FileEntry> chunk = new ArrayList<>(SCAN_CHUNK_SIZE);
+                DirectoryStream.Filter<Path> filter = path -> matcher.matches(path.getFileName());
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, filter)) {
+                    for (Path path : stream) {
+                        if (isCancelled()) {
+                            break;
+                        }
+                        FileListTableModel.FileEntry entry = readEntry(path);
+                        if (entry == null) {
+                            continue;
+                        }
+                        chunk.add(entry);
+                        if (chunk.size() >= SCAN_CHUNK_SIZE) {
+                            publish(chunk.toArray(new FileListTableModel.FileEntry[0]));
+                            chunk.clear();
+                        }
+                    }
+                } catch (IOException e) {
+                    return false;
+                }
+                if (!chunk.isEmpty()) {
+                    publish(chunk.toArray(new FileListTableModel.FileEntry[0]));
+                }
+                return true;
+            }
 
-        // 清空之前的复选框
-        checkBoxPanel.removeAll();
-
-        // 遍历文件夹中的所有文件
-        File[] files = folder.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isFile()) {
-                    JCheckBox checkBox = new JCheckBox(file.getName());
-                    String filePath = file.getAbsolutePath();
-
-                    checkBox.addActionListener(e -> {
-                        if (checkBox.isSelected()) {
-                            selectedFiles.add(filePath);
-                        } else {
-                            selectedFiles.remove(filePath);
+            @Override
+            protected void process(List<FileListTableModel.FileEntry> entries) {
+                if (scanWorker == this) {
+                    fileListModel.addAll(entries);
+                    indexApks(entries);
+                    if (!keepSelected.isEmpty()) {
+                        for (FileListTableModel.FileEntry entry : entries) {
+                            if (keepSelected.contains(entry.path)) {
+                                fileListModel.setSelected(entry.path, true);
+                            }
                         }
-                    });
+                    }
+                }
+            }
 
-                    checkBoxPanel.add(checkBox);
+            @Override
+            protected void done() {
+                if (isCancelled() || scanWorker != this) {
+                    return;
                 }
+                boolean success;
+                try {
+                    success = get();
+                } catch (Exception e) {
+                    success = false;
+                }
+                if (!success) {
+                    JOptionPane.showMessageDialog(FileSelectorPanel.this, "无效的文件夹路径: " + folderPath,
+                            "错误", JOptionPane.ERROR_MESSAGE);
+                }
+                updateFileCount();
+            }
+        };
+        scanWorker = worker;
+        updateFileCount();
+        worker.execute();
+    }
+
+    // 读取文件属性，不是普通文件或已被删除时返回null
+    private static FileListTableModel.FileEntry readEntry(Path path) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            return new FileListTableModel.FileEntry(path.toAbsolutePath(), attributes.size(),
+                    attributes.lastModifiedTime().toMillis());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 在后台并行读取APK的包名和版本，每得到一个结果就更新对应的行
+     * 文件没有变化时直接使用磁盘缓存
+     */
+    private void indexApks(List<FileListTableModel.FileEntry> entries) {
+        Map<Path, FileListTableModel.FileEntry> apks = new HashMap<>();
+        for (FileListTableModel.FileEntry entry : entries) {
+            if (entry.name.toLowerCase(Locale.ROOT).endsWith(".apk")) {
+                apks.put(entry.path, entry);
             }
         }
+        if (apks.isEmpty()) {
+            return;
+        }
+        ApkMetadataIndexer.getDefault().index(new ArrayList<>(apks.keySet()), (path, metadata) ->
+                SwingUtilities.invokeLater(() -> fileListModel.setMetadata(apks.get(path), metadata)));
+    }
+
+    /**
+     * 监视目录，新增、修改、删除的文件在监视线程上读取属性后，到EDT上逐个更新模型
+     * 刷新开销只与变化的文件数有关，选中状态保留
+     */
+    private void watchFolder(Path folder, PathMatcher matcher) {
+        if (folderWatcher != null) {
+            folderWatcher.stop();
+            folderWatcher = null;
+        }
+        int generation = ++watchGeneration;
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        DirectoryWatcher watcher = new DirectoryWatcher(folder, WATCH_DEBOUNCE_MS, path -> matcher.matches(path.getFileName()),
+                new FileChangeListener() {
+                    @Override
+                    public void onFilesChanged(List<Path> created, List<Path> modified, List<Path> deleted) {
+                        List<FileListTableModel.FileEntry> updated = new ArrayList<>();
+                        List<Path> removed = new ArrayList<>(deleted);
+                        List<Path> changed = new ArrayList<>(created);
+                        changed.addAll(modified);
+                        for (Path path : changed) {
+                            FileListTableModel.FileEntry entry = readEntry(path);
+                            if (entry != null) {
+                                updated.add(entry);
+                            } else {
+                                removed.add(path);
+                            }
+                        }
+                        SwingUtilities.invokeLater(() -> {
+                            if (generation != watchGeneration) {
+                                return; // 已切换到其他目录
+                            }
+                            for (Path path : removed) {
+                                fileListModel.remove(path.toAbsolutePath());
+                            }
+                            for (FileListTableModel.FileEntry entry : updated) {
+                                fileListModel.put(entry);
+                            }
+                            indexApks(updated);
+                        });
+                    }
 
-        checkBoxPanel.revalidate();
-        checkBoxPanel.repaint();
+                    @Override
+                    public void onOverflow() {
+                        // 事件丢失，只能重新扫描，保留当前选中的文件
+                        SwingUtilities.invokeLater(() -> {
+                            if (generation == watchGeneration) {
+                                Set<Path> selected = new HashSet<>(fileListModel.getSelectedPaths());
+                                loadFilesFromPath(folder.toString(), selected);
+                            }
+                        });
+                    }
+                });
+        try {
+            watcher.start();
+            folderWatcher = watcher;
+        } catch (IOException e) {
+            System.err.println("无法监视目录 " + folder + ": " + e.getMessage());
+        }
+    }
+
+    private void updateFileCount() {
+        boolean scanning = scanWorker != null && !scanWorker.isDone();
+        fileCountLabel.setText((scanning ? "正在扫描... " : "") + "共 " + fileListModel.getRowCount()
+                + " 个文件，已选中 " + fileListModel.getSelectedCount() + " 个");
     }
 
     private void printSelectedFiles() {
-//        StringBuilder message = new StringBuilder("选中的文件:\n");
-        for (String filePath : selectedFiles) {
-            System.out.println("adb -s " + selectedDeviceId + " install " + filePath);
-//            message.append(filePath).append("\n");
+        List<String> deviceIds = !selectedDeviceIds.isEmpty() ? selectedDeviceIds : List.of(selectedDeviceId);
+        if (deviceIds.isEmpty() || deviceIds.get(0) == null || deviceIds.get(0).isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请先选择设备", "提示", JOptionPane.WARNING_MESSAGE);
+            return;
         }
-//        System.out.println(message.toString());
+        List<Path> apks = fileListModel.getSelectedPaths();
+        if (apks.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请先选择要安装的文件", "提示", JOptionPane.WARNING_MESSAGE);
+            return;
+        }
+
+        installEngine.install(deviceIds, apks);
+        installQueueModel.setTasks(installEngine.getTasks());
     }
 
-    private void processSelectAll() {
-        selectedFiles.clear(); // 清空选中文件列表
+    private void refreshInstallQueue() {
+        List<InstallTask> tasks = installEngine.getTasks();
+        if (tasks.size() != installQueueModel.getRowCount()) {
+            installQueueModel.setTasks(tasks);
+        }
 
-        // 取消所有复选框的选中状态
-        Component[] components = checkBoxPanel.getComponents();
-        for (Component component : components) {
-            if (component instanceof JCheckBox) {
-                ((JCheckBox) component).setSelected(false);
+        int finished = 0;
+        int failed = 0;
+        int skipped = 0;
+        long totalBytes = 0;
+        double throughput = 0;
+        for (InstallTask task : tasks) {
+            if (task.isFinished()) {
+                finished++;
+                if (task.getState() == InstallTask.State.FAILED) {
+                    failed++;
+                } else if (task.getState() == InstallTask.State.SKIPPED) {
+                    skipped++;
+                }
+            } else if (task.getState() != InstallTask.State.QUEUED) {
+                throughput += task.getThroughput();
             }
+            totalBytes += task.getBytesTransferred();
+        }
+        // 有任务在进行时刷新，全部完成后再刷新最后一次
+        boolean active = finished < tasks.size();
+        if (active || installQueueActive) {
+            installQueueModel.refreshProgress();
         }
+        installQueueActive = active;
+        if (!tasks.isEmpty()) {
+            installSummaryLabel.setText(String.format("%s %d/%d，失败 %d，跳过 %d，已传输 %.1f MB，当前速度 %s",
+                    finished == tasks.size() ? "完成" : "进行中", finished, tasks.size(), failed, skipped,
+                    totalBytes / (1024.0 * 1024), InstallQueueTableModel.formatThroughput(throughput)));
+        }
+    }
+
+    private void processSelectAll() {
+        // 取消所有文件的选中状态
+        fileListModel.clearSelection();
 
         // 可选：显示确认消息
         // JOptionPane.showMessageDialog(this, "已清除所有选中的文件", "提示", JOptionPane.INFORMATION_MESSAGE);
@@ -156,4 +431,9 @@ public class FileSelectorPanel extends JPanel implements DeviceSelectionListener
     public void onDeviceSelected(String newDeviceId) {
         this.selectedDeviceId = newDeviceId;
     }
+
+    @Override
+    public void onDevicesSelected(List<String> deviceIds) {
+        this.selectedDeviceIds = new ArrayList<>(deviceIds);
+    }
 }
@@ -0,0 +1,74 @@
+package Tabs;
+
+import Utils.InstallTask;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 安装队列表格模型，每行一个安装任务
+ * 任务字段由安装线程更新，这里只在EDT上按需读取
+ */
+class InstallQueueTableModel extends AbstractTableModel {
+    private static final String[] COLUMNS = {"设备", "文件", "状态", "进度", "速度", "耗时", "信息"};
+
+    private List<InstallTask> tasks = new ArrayList<>();
+
+    void setTasks(List<InstallTask> tasks) {
+        this.tasks = new ArrayList<>(tasks);
+        fireTableDataChanged();
+    }
+
+    // 只刷新进度相关的单元格，行数不变
+    void refreshProgress() {
+        if (!tasks.isEmpty()) {
+            fireTableRowsUpdated(0, tasks.size() - 1);
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return tasks.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        InstallTask task = tasks.get(rowIndex);
+        switch (columnIndex) {
+            case 0:
+                return task.getDeviceId();
+            case 1:
+                return task.getFileName();
+            case 2:
+                return task.getState().getLabel();
+            case 3:
+                return task.getProgressPercent() + "%";
+            case 4:
+                return formatThroughput(task.getThroughput());
+            case 5:
+                return task.getElapsedMillis() + "ms";
+            case 6:
+                return task.getMessage();
+            default:
+                return "";
+        }
+    }
+
+    static String formatThroughput(double bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            return "-";
+        }
+        return String.format("%.1f MB/s", bytesPerSecond / (1024 * 1024));
+    }
+}
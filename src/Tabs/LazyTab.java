@@ -0,0 +1,71 @@
+package Tabs;
+
+import interfaces.DeviceSelectionListener;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 延迟创建的tab：第一次被选中时才创建真正的面板，之前只显示占位文字
+ * 创建前收到的设备选择会被记住，面板创建后立即补发
+ */
+public class LazyTab extends JPanel implements DeviceSelectionListener {
+    private final Supplier<? extends JComponent> factory;
+    private JComponent content;
+    private String deviceId;
+    private List<String> deviceIds = new ArrayList<>();
+
+    public LazyTab(Supplier<? extends JComponent> factory) {
+        super(new BorderLayout());
+        this.factory = factory;
+        JLabel placeholder = new JLabel("加载中...", SwingConstants.CENTER);
+        placeholder.setForeground(Color.GRAY);
+        add(placeholder, BorderLayout.CENTER);
+    }
+
+    public boolean isLoaded() {
+        return content != null;
+    }
+
+    /**
+     * 创建真正的面板，只在EDT上调用；面板自己的耗时I/O在后台线程完成
+     */
+    public void ensureLoaded() {
+        if (content != null) {
+            return;
+        }
+        content = factory.get();
+        if (content instanceof DeviceSelectionListener) {
+            DeviceSelectionListener listener = (DeviceSelectionListener) content;
+            if (deviceId != null) {
+                listener.onDeviceSelected(deviceId);
+            }
+            if (!deviceIds.isEmpty()) {
+                listener.onDevicesSelected(deviceIds);
+            }
+        }
+        removeAll();
+        add(content, BorderLayout.CENTER);
+        revalidate();
+        repaint();
+    }
+
+    @Override
+    public void onDeviceSelected(String newDeviceId) {
+        this.deviceId = newDeviceId;
+        if (content instanceof DeviceSelectionListener) {
+            ((DeviceSelectionListener) content).onDeviceSelected(newDeviceId);
+        }
+    }
+
+    @Override
+    public void onDevicesSelected(List<String> newDeviceIds) {
+        this.deviceIds = new ArrayList<>(newDeviceIds);
+        if (content instanceof DeviceSelectionListener) {
+            ((DeviceSelectionListener) content).onDevicesSelected(newDeviceIds);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package Tabs;
+
+import Utils.AdbClient;
+import Utils.LogcatCapture;
+import Utils.LogcatQuery;
+import Utils.LogcatSegmentStore;
+import interfaces.DeviceSelectionListener;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 日志：用 logcat -B 连续抓取到压缩分段，按时间、tag、pid、级别查询
+ * 抓取和查询互不影响，抓取过程中也可以查询；也可以打开以前抓取的目录
+ */
+public class LogcatPanel extends JPanel implements DeviceSelectionListener {
+    private static final Path LOGCAT_DIR = Paths.get("Data", "logcat");
+    private static final int REFRESH_INTERVAL_MS = 1000;
+    // 一天的抓取大约二三十GB原始文本，保留的分段上限约为16GB压缩数据
+    private static final int MAX_SEGMENTS = 1000;
+    private static final String[] PRIORITIES = {"V", "D", "I", "W", "E", "F"};
+
+    private final JTextField buffersField = new JTextField(LogcatCapture.DEFAULT_BUFFERS, 14);
+    private final JButton startButton = new JButton("开始抓取");
+    private final JButton stopButton = new JButton("停止");
+    private final JButton openButton = new JButton("打开目录");
+    private final JTextField minutesField = new JTextField("5", 4);
+    private final JTextField tagField = new JTextField(12);
+    private final JTextField pidField = new JTextField(6);
+    private final JComboBox<String> priorityCombo = new JComboBox<>(PRIORITIES);
+    private final JTextField textField = new JTextField(14);
+    private final JButton queryButton = new JButton("查询");
+    private final JLabel captureLabel = new JLabel(" ");
+    private final JLabel queryLabel = new JLabel(" ");
+    private final LogTableModel tableModel = new LogTableModel();
+    private final Timer refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> refreshStatus());
+    private String selectedDeviceId;
+    private LogcatCapture capture;
+    private LogcatSegmentStore store;
+
+    private static class LogTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"时间", "PID", "TID", "级别", "标签", "内容"};
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
+        private List<LogcatQuery.Row> rows = new ArrayList<>();
+
+        void setRows(List<LogcatQuery.Row> rows) {
+            this.rows = rows;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            LogcatQuery.Row record = rows.get(row);
+            switch (column) {
+                case 0: return timeFormat.format(new Date(record.timestamp / 1_000_000));
+                case 1: return record.pid;
+                case 2: return record.tid;
+                case 3: return LogcatQuery.priorityLetter(record.priority);
+                case 4: return record.tag;
+                default: return record.message;
+            }
+        }
+    }
+
+    public LogcatPanel() {
+        setLayout(new BorderLayout(5, 5));
+        setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JPanel capturePanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        capturePanel.add(new JLabel("缓冲区(-b):"));
+        capturePanel.add(buffersField);
+        startButton.addActionListener(e -> startCapture());
+        stopButton.addActionListener(e -> stopCapture());
+        openButton.addActionListener(e -> openDirectory());
+        stopButton.setEnabled(false);
+        capturePanel.add(startButton);
+        capturePanel.add(stopButton);
+        capturePanel.add(openButton);
+        capturePanel.add(captureLabel);
+
+        JPanel queryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        queryPanel.add(new JLabel("最近(分钟):"));
+        minutesField.setToolTipText("相对最后一条日志的时间，为空时查询全部");
+        queryPanel.add(minutesField);
+        queryPanel.add(new JLabel("标签:"));
+        queryPanel.add(tagField);
+        queryPanel.add(new JLabel("PID:"));
+        queryPanel.add(pidField);
+        queryPanel.add(new JLabel("级别≥"));
+        priorityCombo.setSelectedItem("V");
+        queryPanel.add(priorityCombo);
+        queryPanel.add(new JLabel("包含:"));
+        queryPanel.add(textField);
+        queryButton.addActionListener(e -> runQuery());
+        queryButton.setEnabled(false);
+        queryPanel.add(queryButton);
+
+        JPanel northPanel = new JPanel(new GridLayout(2, 1));
+        northPanel.add(capturePanel);
+        northPanel.add(queryPanel);
+        add(northPanel, BorderLayout.NORTH);
+
+        JTable table = new JTable(tableModel);
+        table.setAutoResizeMode(JTable.AUTO_RESIZE_LAST_COLUMN);
+        table.getColumnModel().getColumn(0).setPreferredWidth(140);
+        table.getColumnModel().getColumn(1).setPreferredWidth(60);
+        table.getColumnModel().getColumn(2).setPreferredWidth(60);
+        table.getColumnModel().getColumn(3).setPreferredWidth(40);
+        table.getColumnModel().getColumn(4).setPreferredWidth(160);
+        table.getColumnModel().getColumn(5).setPreferredWidth(700);
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(queryLabel, BorderLayout.SOUTH);
+    }
+
+    private void startCapture() {
+        if (capture != null && !capture.isFinished()) {
+            return;
+        }
+        if (selectedDeviceId == null || selectedDeviceId.isEmpty()) {
+            showError("请先选择设备");
+            return;
+        }
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        Path directory = LOGCAT_DIR.resolve("logcat_" + selectedDeviceId.replaceAll("[^A-Za-z0-9._-]", "_")
+                + "_" + timestamp);
+        LogcatSegmentStore newStore;
+        try {
+            newStore = new LogcatSegmentStore(directory, MAX_SEGMENTS);
+        } catch (Exception e) {
+            showError("创建日志目录失败: " + e.getMessage());
+            return;
+        }
+        LogcatCapture current = new LogcatCapture(AdbClient.getDefault(), selectedDeviceId, buffersField.getText(),
+                newStore);
+        capture = current;
+        store = newStore;
+        startButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        queryButton.setEnabled(true);
+        refreshTimer.start();
+        current.start().whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (capture != current) {
+                return;
+            }
+            refreshTimer.stop();
+            refreshStatus();
+            startButton.setEnabled(true);
+            stopButton.setEnabled(false);
+        }));
+    }
+
+    private void stopCapture() {
+        if (capture != null) {
+            capture.stop();
+        }
+    }
+
+    // 打开以前抓取的目录，只读取索引，查询时才解压需要的块
+    private void openDirectory() {
+        if (capture != null && !capture.isFinished()) {
+            showError("请先停止当前抓取");
+            return;
+        }
+        JFileChooser fileChooser = new JFileChooser(LOGCAT_DIR.toAbsolutePath().toFile());
+        fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (fileChooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path directory = fileChooser.getSelectedFile().toPath();
+        openButton.setEnabled(false);
+        new SwingWorker<LogcatSegmentStore, Void>() {
+            @Override
+            protected LogcatSegmentStore doInBackground() throws Exception {
+                return new LogcatSegmentStore(directory, 0);
+            }
+
+            @Override
+            protected void done() {
+                openButton.setEnabled(true);
+                try {
+                    capture = null;
+                    store = get();
+                    queryButton.setEnabled(true);
+                    captureLabel.setText(describeStore(store));
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("打开日志目录失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void runQuery() {
+        LogcatSegmentStore current = store;
+        if (current == null) {
+            return;
+        }
+        LogcatQuery query = new LogcatQuery()
+                .tag(tagField.getText().trim())
+                .minPriority(LogcatQuery.parsePriority(((String) priorityCombo.getSelectedItem()).charAt(0)))
+                .messageContains(textField.getText());
+        try {
+            String minutes = minutesField.getText().trim();
+            if (!minutes.isEmpty()) {
+                query.lastMinutes(Double.parseDouble(minutes));
+            }
+            String pid = pidField.getText().trim();
+            if (!pid.isEmpty()) {
+                query.pid(Integer.parseInt(pid));
+            }
+        } catch (NumberFormatException e) {
+            showError("分钟数或PID格式不正确");
+            return;
+        }
+
+        queryButton.setEnabled(false);
+        queryLabel.setText("查询中...");
+        new SwingWorker<LogcatQuery.Result, Void>() {
+            @Override
+            protected LogcatQuery.Result doInBackground() {
+                return current.query(query);
+            }
+
+            @Override
+            protected void done() {
+                queryButton.setEnabled(true);
+                try {
+                    LogcatQuery.Result result = get();
+                    tableModel.setRows(result.rows);
+                    queryLabel.setText(String.format("匹配 %d 条%s，读取 %d/%d 块（%d 个分段），耗时 %.1f ms",
+                            result.matched, result.matched > result.rows.size()
+                                    ? "（显示最新的 " + result.rows.size() + " 条）" : "",
+                            result.blocksRead, result.blocksTotal, result.segmentsRead, result.elapsedNanos / 1e6));
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    queryLabel.setText(" ");
+                    showError("查询失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void refreshStatus() {
+        LogcatCapture current = capture;
+        if (current == null) {
+            return;
+        }
+        String text = String.format("%s  已接收 %.1f MB，%s", current.getState().getLabel(),
+                current.getBytesReceived() / (1024.0 * 1024), describeStore(current.getStore()));
+        if (!current.getMessage().isEmpty()) {
+            text += "  " + current.getMessage();
+        }
+        captureLabel.setText(text);
+    }
+
+    private static String describeStore(LogcatSegmentStore store) {
+        return String.format("%d 条，%d 个分段，压缩后 %.1f MB", store.getRecordCount(), store.getSegmentCount(),
+                store.getCompressedBytes() / (1024.0 * 1024));
+    }
+
+    private void showError(String message) {
+        JOptionPane.showMessageDialog(this, message, "错误", JOptionPane.ERROR_MESSAGE);
+    }
+
+    @Override
+    public void onDeviceSelected(String newDeviceId) {
+        this.selectedDeviceId = newDeviceId;
+    }
+}
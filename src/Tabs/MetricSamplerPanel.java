@@ -0,0 +1,299 @@
+package Tabs;
+
+import Utils.DeviceCommandScheduler;
+import Utils.MetricDefinition;
+import Utils.MetricSampler;
+import Utils.MetricsDashboardServer;
+import Utils.TimeSeriesStore;
+import interfaces.DeviceSelectionListener;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.io.File;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * 性能采样：按配置文件中的命令定时采集设备指标，导出为图表脚本使用的xlsx
+ * 多设备模式下每个选中的设备各有一个采样器；采样过程中可以在浏览器中打开实时图表
+ */
+public class MetricSamplerPanel extends JPanel implements DeviceSelectionListener {
+    // python_scripts/html/main.py 读取的工作簿
+    private static final Path CHART_WORKBOOK = Paths.get("python_scripts", "html", "test.xlsx");
+    private static final int REFRESH_INTERVAL_MS = 1000;
+
+    private final JTextField configField = new JTextField(MetricDefinition.DEFAULT_CONFIG_PATH.toString(), 24);
+    private final JTextField intervalField = new JTextField(6);
+    private final JButton startButton = new JButton("开始采样");
+    private final JButton stopButton = new JButton("停止");
+    private final JButton exportButton = new JButton("导出xlsx");
+    private final JButton liveButton = new JButton("实时图表");
+    private final JLabel statusLabel = new JLabel(" ");
+    private final LatestValueTableModel tableModel = new LatestValueTableModel();
+    private final Timer refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> refresh());
+    private final List<MetricSampler> samplers = new ArrayList<>();
+    private String selectedDeviceId;
+    private List<String> selectedDeviceIds = new ArrayList<>();
+
+    // 每个设备每个指标一行，显示最新值
+    private static class LatestValueTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"设备", "图表", "指标", "最新值", "采样数"};
+        private final List<Object[]> rows = new ArrayList<>();
+
+        void update(List<MetricSampler> samplers) {
+            rows.clear();
+            for (MetricSampler sampler : samplers) {
+                TimeSeriesStore.Snapshot snapshot = sampler.getStore().snapshot();
+                TimeSeriesStore store = sampler.getStore();
+                for (int series = 0; series < store.getSeriesCount(); series++) {
+                    double value = snapshot.size > 0 ? snapshot.getValue(series, snapshot.size - 1) : Double.NaN;
+                    rows.add(new Object[]{sampler.getDeviceId(), store.getSheet(series), store.getName(series),
+                            Double.isNaN(value) ? "-" : String.format("%.2f", value), snapshot.size});
+                }
+            }
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row)[column];
+        }
+    }
+
+    public MetricSamplerPanel() {
+        setLayout(new BorderLayout(5, 5));
+        setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        controlPanel.add(new JLabel("配置:"));
+        controlPanel.add(configField);
+        JButton browseButton = new JButton("浏览");
+        browseButton.addActionListener(e -> browseConfig());
+        controlPanel.add(browseButton);
+        controlPanel.add(new JLabel("间隔(ms):"));
+        intervalField.setToolTipText("为空时使用配置文件中的 interval_ms");
+        controlPanel.add(intervalField);
+        startButton.addActionListener(e -> startSampling());
+        stopButton.addActionListener(e -> stopSampling());
+        exportButton.addActionListener(e -> exportWorkbook());
+        liveButton.addActionListener(e -> openLiveCharts());
+        stopButton.setEnabled(false);
+        exportButton.setEnabled(false);
+        liveButton.setEnabled(false);
+        controlPanel.add(startButton);
+        controlPanel.add(stopButton);
+        controlPanel.add(exportButton);
+        controlPanel.add(liveButton);
+        add(controlPanel, BorderLayout.NORTH);
+
+        add(new JScrollPane(new JTable(tableModel)), BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+    }
+
+    private void browseConfig() {
+        JFileChooser fileChooser = new JFileChooser(new File(configField.getText()).getAbsoluteFile().getParentFile());
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            configField.setText(fileChooser.getSelectedFile().getAbsolutePath());
+        }
+    }
+
+    private List<String> targetDevices() {
+        if (!selectedDeviceIds.isEmpty()) {
+            return selectedDeviceIds;
+        }
+        List<String> devices = new ArrayList<>();
+        if (selectedDeviceId != null && !selectedDeviceId.isEmpty()) {
+            devices.add(selectedDeviceId);
+        }
+        return devices;
+    }
+
+    private void startSampling() {
+        List<String> devices = targetDevices();
+        if (devices.isEmpty()) {
+            showError("请先选择设备");
+            return;
+        }
+        Path config = Paths.get(configField.getText().trim());
+        List<MetricDefinition> metrics;
+        int interval;
+        try {
+            metrics = MetricDefinition.load(config);
+            String intervalText = intervalField.getText().trim();
+            interval = intervalText.isEmpty() ? MetricDefinition.loadInterval(config) : Integer.parseInt(intervalText);
+        } catch (Exception e) {
+            showError("读取采样配置失败: " + e.getMessage());
+            return;
+        }
+        if (metrics.isEmpty() || interval <= 0) {
+            showError("配置中没有指标或间隔无效");
+            return;
+        }
+
+        stopSampling();
+        MetricsDashboardServer dashboard = MetricsDashboardServer.getDefault();
+        for (MetricSampler sampler : samplers) {
+            dashboard.unpublish(sampler.getDeviceId());
+        }
+        samplers.clear();
+        for (String device : devices) {
+            MetricSampler sampler = new MetricSampler(device, metrics, interval);
+            samplers.add(sampler);
+            dashboard.publish(device, sampler.getStore());
+            sampler.start();
+        }
+        startButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        exportButton.setEnabled(true);
+        liveButton.setEnabled(true);
+        refreshTimer.start();
+        refresh();
+    }
+
+    private void stopSampling() {
+        for (MetricSampler sampler : samplers) {
+            sampler.stop();
+        }
+        refreshTimer.stop();
+        startButton.setEnabled(true);
+        stopButton.setEnabled(false);
+        refresh();
+    }
+
+    private void refresh() {
+        tableModel.update(samplers);
+        if (samplers.isEmpty()) {
+            statusLabel.setText(" ");
+            return;
+        }
+        long samples = 0, skipped = 0, failed = 0;
+        double latency = 0, hostCpuMillis = 0, hostCpuPercent = 0;
+        for (MetricSampler sampler : samplers) {
+            samples += sampler.getSampleCount();
+            skipped += sampler.getSkippedCount();
+            failed += sampler.getFailedCount();
+            latency = Math.max(latency, sampler.getAverageLatencyMillis());
+            hostCpuMillis = Math.max(hostCpuMillis, sampler.getAverageHostCpuMillis());
+            hostCpuPercent += sampler.getHostCpuPercent();
+        }
+        statusLabel.setText(String.format("%d 个设备，采样 %d 次（跳过 %d，失败 %d），平均耗时 %.1f ms，"
+                        + "主机开销 %.2f ms/次（CPU %.3f%%）；命令队列：%s", samplers.size(), samples, skipped, failed,
+                latency, hostCpuMillis, hostCpuPercent, DeviceCommandScheduler.getDefault().describe()));
+    }
+
+    /**
+     * 单个设备时导出到选择的文件（默认是图表脚本的 test.xlsx），多个设备时每个设备一个文件
+     */
+    private void exportWorkbook() {
+        if (samplers.isEmpty()) {
+            return;
+        }
+        List<MetricSampler> targets = new ArrayList<>(samplers);
+        List<Path> outputs = new ArrayList<>();
+        if (targets.size() == 1) {
+            JFileChooser fileChooser = new JFileChooser();
+            fileChooser.setSelectedFile(CHART_WORKBOOK.toAbsolutePath().toFile());
+            if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            outputs.add(fileChooser.getSelectedFile().toPath());
+        } else {
+            JFileChooser fileChooser = new JFileChooser(CHART_WORKBOOK.toAbsolutePath().getParent().toFile());
+            fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (fileChooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            for (MetricSampler sampler : targets) {
+                outputs.add(fileChooser.getSelectedFile().toPath().resolve("metrics_"
+                        + sampler.getDeviceId().replaceAll("[^A-Za-z0-9._-]", "_") + "_" + timestamp + ".xlsx"));
+            }
+        }
+
+        // 导出读取的是当前快照，采样可以继续进行
+        exportButton.setEnabled(false);
+        new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                for (int i = 0; i < targets.size(); i++) {
+                    targets.get(i).getStore().exportXlsx(outputs.get(i));
+                }
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                exportButton.setEnabled(true);
+                try {
+                    get();
+                    statusLabel.setText("已导出 " + outputs.get(0).toAbsolutePath()
+                            + (outputs.size() > 1 ? " 等 " + outputs.size() + " 个文件" : ""));
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    showError("导出失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    /**
+     * 启动本地图表服务并用浏览器打开；单个设备时直接打开图表页，多个设备时打开设备列表
+     */
+    private void openLiveCharts() {
+        if (samplers.isEmpty()) {
+            return;
+        }
+        MetricsDashboardServer dashboard = MetricsDashboardServer.getDefault();
+        String url;
+        try {
+            dashboard.start(MetricsDashboardServer.DEFAULT_PORT);
+            url = dashboard.getUrl(samplers.size() == 1 ? samplers.get(0).getDeviceId() : null);
+        } catch (Exception e) {
+            showError("启动图表服务失败: " + e.getMessage());
+            return;
+        }
+        statusLabel.setText("实时图表: " + url);
+        try {
+            if (Desktop.isDesktopSupported() && Desktop.getDesktop().isSupported(Desktop.Action.BROWSE)) {
+                Desktop.getDesktop().browse(URI.create(url));
+            }
+        } catch (Exception e) {
+            showError("无法打开浏览器，请手动访问 " + url);
+        }
+    }
+
+    private void showError(String message) {
+        JOptionPane.showMessageDialog(this, message, "错误", JOptionPane.ERROR_MESSAGE);
+    }
+
+    @Override
+    public void onDeviceSelected(String newDeviceId) {
+        this.selectedDeviceId = newDeviceId;
+    }
+
+    @Override
+    public void onDevicesSelected(List<String> deviceIds) {
+        this.selectedDeviceIds = new ArrayList<>(deviceIds);
+    }
+}
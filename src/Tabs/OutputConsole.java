@@ -0,0 +1,195 @@
+package Tabs;
+
+import Utils.LineRingBuffer;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.datatransfer.StringSelection;
+
+/**
+ * 输出控制台：内容保存在固定容量的行环形缓冲区中，只绘制可见区域内的行
+ * 内存占用固定，追加一行的开销与已经滚过的输出量无关
+ * 只能在EDT上调用
+ */
+public class OutputConsole extends JComponent implements Scrollable {
+    public static final int DEFAULT_CAPACITY = 10000;
+    // 单行最多保留的字符数，防止一行超长输出占用大量内存
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private final LineRingBuffer lines;
+    private final StringBuilder partialLine = new StringBuilder(); // 还没有遇到换行符的最后一行
+    private Insets margin = new Insets(2, 4, 2, 4);
+    private int maxLineLength = 0;
+    private int lineHeight;
+    private int charWidth;
+    private int ascent;
+
+    public OutputConsole() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public OutputConsole(int capacity) {
+        this.lines = new LineRingBuffer(capacity);
+        setOpaque(true);
+        setBackground(Color.WHITE);
+        setForeground(Color.BLACK);
+        setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        // 右键菜单：复制全部内容
+        JPopupMenu popupMenu = new JPopupMenu();
+        JMenuItem copyItem = new JMenuItem("复制全部");
+        copyItem.addActionListener(e -> Toolkit.getDefaultToolkit().getSystemClipboard()
+                .setContents(new StringSelection(getText()), null));
+        popupMenu.add(copyItem);
+        setComponentPopupMenu(popupMenu);
+    }
+
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        FontMetrics metrics = getFontMetrics(font);
+        lineHeight = metrics.getHeight();
+        charWidth = metrics.charWidth('m');
+        ascent = metrics.getAscent();
+        revalidate();
+        repaint();
+    }
+
+    public void setMargin(Insets margin) {
+        this.margin = margin;
+        revalidate();
+    }
+
+    /**
+     * 追加文本，按换行符切分成行，末尾不完整的行会和下一次追加拼接
+     */
+    public void append(String text) {
+        boolean atBottom = isScrolledToBottom();
+        int start = 0;
+        int newline;
+        while ((newline = text.indexOf('\n', start)) >= 0) {
+            appendToPartial(text, start, newline);
+            addLine(partialLine.toString());
+            partialLine.setLength(0);
+            start = newline + 1;
+        }
+        appendToPartial(text, start, text.length());
+        contentChanged(atBottom);
+    }
+
+    public void clear() {
+        lines.clear();
+        partialLine.setLength(0);
+        maxLineLength = 0;
+        contentChanged(false);
+    }
+
+    public int getLineCount() {
+        return lines.size() + (partialLine.length() > 0 ? 1 : 0);
+    }
+
+    // 因超出容量被丢弃的行数
+    public long getDiscardedLines() {
+        return lines.getDiscarded();
+    }
+
+    /**
+     * 当前保留的全部内容
+     */
+    public String getText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < lines.size(); i++) {
+            text.append(lines.get(i)).append('\n');
+        }
+        return text.append(partialLine).toString();
+    }
+
+    private void appendToPartial(String text, int start, int end) {
+        int room = MAX_LINE_LENGTH - partialLine.length();
+        if (room > 0) {
+            partialLine.append(text, start, Math.min(end, start + room));
+        }
+    }
+
+    private void addLine(String line) {
+        lines.add(line);
+        maxLineLength = Math.max(maxLineLength, line.length());
+    }
+
+    private String lineAt(int index) {
+        return index < lines.size() ? lines.get(index) : partialLine.toString();
+    }
+
+    private boolean isScrolledToBottom() {
+        Rectangle visible = getVisibleRect();
+        return visible.y + visible.height >= getPreferredSize().height - lineHeight;
+    }
+
+    private void contentChanged(boolean scrollToBottom) {
+        revalidate();
+        repaint();
+        if (scrollToBottom) {
+            // 布局更新后再滚动，保证使用新的高度
+            SwingUtilities.invokeLater(() -> {
+                Dimension size = getPreferredSize();
+                scrollRectToVisible(new Rectangle(0, size.height - 1, 1, 1));
+            });
+        }
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int longest = Math.max(maxLineLength, partialLine.length());
+        int width = margin.left + margin.right + longest * charWidth;
+        int height = margin.top + margin.bottom + getLineCount() * lineHeight;
+        return new Dimension(width, height);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        // 只绘制与裁剪区域相交的行
+        int lineCount = getLineCount();
+        int first = Math.max(0, (clip.y - margin.top) / lineHeight);
+        int last = Math.min(lineCount - 1, (clip.y + clip.height - margin.top) / lineHeight);
+
+        g.setColor(getForeground());
+        g.setFont(getFont());
+        for (int i = first; i <= last; i++) {
+            g.drawString(lineAt(i), margin.left, margin.top + i * lineHeight + ascent);
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(400, 20 * lineHeight);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? lineHeight : charWidth;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height - lineHeight : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getWidth() > getPreferredSize().width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        Container parent = getParent();
+        return parent instanceof JViewport && parent.getHeight() > getPreferredSize().height;
+    }
+}
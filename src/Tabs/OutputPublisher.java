@@ -0,0 +1,172 @@
+package Tabs;
+
+import javax.swing.*;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 把任意线程产生的输出合并后分批送到 OutputConsole
+ * 生产者只向无锁队列追加，EDT 最多每 FLUSH_INTERVAL_MS 毫秒刷新一次，
+ * 每次把积压的内容拼成一次 append，避免每行一个 invokeLater 塞满事件队列
+ * 积压上限按字符数计算（一次publish可能是一行，也可能是整段输出），超过上限的部分丢弃并计数
+ * 统计中的行数按换行符计算，与publish的调用次数无关
+ */
+public class OutputPublisher {
+    public static final int FLUSH_INTERVAL_MS = 16;
+    // 积压的字符数上限，约8MB
+    public static final int DEFAULT_MAX_PENDING_CHARS = 4 * 1024 * 1024;
+    // 单次刷新最多拼接的字符数，防止一次刷新占用EDT太久
+    private static final int MAX_BATCH_CHARS = 256 * 1024;
+
+    private final OutputConsole console;
+    private final long maxPendingChars;
+    private final Queue<String> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingLines = new AtomicLong();
+    private final AtomicLong pendingChars = new AtomicLong();
+    private final AtomicLong droppedChars = new AtomicLong();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicLong queuedLines = new AtomicLong();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final AtomicLong flushedLines = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final Timer flushTimer;
+    private Runnable flushListener;
+
+    public OutputPublisher(OutputConsole console) {
+        this(console, DEFAULT_MAX_PENDING_CHARS);
+    }
+
+    public OutputPublisher(OutputConsole console, long maxPendingChars) {
+        this.console = console;
+        this.maxPendingChars = maxPendingChars;
+        this.flushTimer = new Timer(FLUSH_INTERVAL_MS, e -> flush());
+        this.flushTimer.setRepeats(false);
+    }
+
+    /**
+     * 追加一段文本，可以在任意线程调用
+     * 积压已满时只保留放得下的前一部分，放不下的字符计入丢弃
+     */
+    public void publish(String text) {
+        int length = text.length();
+        long total = pendingChars.addAndGet(length);
+        if (total > maxPendingChars) {
+            long overflow = Math.min(length, total - maxPendingChars);
+            pendingChars.addAndGet(-overflow);
+            droppedChars.addAndGet(overflow);
+            if (overflow == length) {
+                droppedLines.addAndGet(countLines(text));
+                return;
+            }
+            String kept = text.substring(0, (int) (length - overflow));
+            droppedLines.addAndGet(countLines(text) - countLines(kept));
+            text = kept;
+        }
+        long lines = countLines(text);
+        pendingLines.addAndGet(lines);
+        queue.offer(text);
+        queuedLines.addAndGet(lines);
+        scheduleFlush();
+    }
+
+    /**
+     * 每次刷新到控制台后在EDT上回调，例如更新统计信息
+     */
+    public void setFlushListener(Runnable flushListener) {
+        this.flushListener = flushListener;
+    }
+
+    /**
+     * 丢弃尚未刷新的内容并清空控制台，只能在EDT上调用
+     */
+    public void clear() {
+        String text;
+        while ((text = queue.poll()) != null) {
+            pendingLines.addAndGet(-countLines(text));
+            pendingChars.addAndGet(-text.length());
+        }
+        console.clear();
+    }
+
+    public long getQueuedLines() {
+        return queuedLines.get();
+    }
+
+    public long getDroppedLines() {
+        return droppedLines.get();
+    }
+
+    public long getFlushedLines() {
+        return flushedLines.get();
+    }
+
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    public long getDroppedChars() {
+        return droppedChars.get();
+    }
+
+    public long getPendingLines() {
+        return pendingLines.get();
+    }
+
+    public long getPendingChars() {
+        return pendingChars.get();
+    }
+
+    public String getStats() {
+        return "已输出 " + flushedLines.get() + " 行（" + batchCount.get() + " 批），丢弃 "
+                + droppedLines.get() + " 行/" + droppedChars.get() + " 字符，积压 " + pendingLines.get() + " 行/"
+                + pendingChars.get() + " 字符";
+    }
+
+    // 以换行符结尾的行数，末尾没有换行的部分留给下一段计数
+    private static long countLines(CharSequence text) {
+        long lines = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            // Timer.start 可以在任意线程调用，回调在EDT上执行
+            flushTimer.start();
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+
+        StringBuilder batch = new StringBuilder();
+        int count = 0;
+        String text;
+        while (batch.length() < MAX_BATCH_CHARS && (text = queue.poll()) != null) {
+            batch.append(text);
+            count++;
+        }
+        if (count > 0) {
+            long lines = countLines(batch);
+            pendingLines.addAndGet(-lines);
+            pendingChars.addAndGet(-batch.length());
+            console.append(batch.toString());
+            flushedLines.addAndGet(lines);
+            batchCount.incrementAndGet();
+            if (flushListener != null) {
+                flushListener.run();
+            }
+        }
+
+        // 还有积压时安排下一帧继续
+        if (!queue.isEmpty()) {
+            scheduleFlush();
+        }
+    }
+}
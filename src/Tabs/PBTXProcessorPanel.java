@@ -1,18 +1,38 @@
 package Tabs;
 
-import Utils.CommandExecutor;
+import Utils.AdbClient;
+import Utils.PerfettoCapture;
+import Utils.TraceSummary;
 import javax.swing.*;
 import java.awt.*;
 import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 
 import interfaces.DeviceSelectionListener;
 
 public class PBTXProcessorPanel extends JPanel implements DeviceSelectionListener{
+    // pbtx配置和抓取到的trace都放在这个目录
+    private static final Path TRACE_DIR = Paths.get("Data", "trace");
+
     private JTextField pbtxFilePathField;
     private JTextField intValueField;
-    private int globalIntValue = 10;
+    private int globalIntValue = 10; // 抓取时长（秒）
     private String selectedDeviceId;
+    private JButton executeADBButton;
+    private JButton cancelCaptureButton;
+    private JProgressBar captureProgressBar;
+    private JLabel captureStatusLabel;
+    private PerfettoCapture currentCapture;
+    private Timer captureTimer; // 抓取期间定时刷新进度
+    private JButton analyzeButton;
+    private OutputConsole summaryConsole; // trace概要
+    private TraceQueryPanel queryPanel; // 在内存中的trace上查询
+    private SystracePanel systracePanel;
+    private Path lastTracePath; // 最近一次抓取或分析的trace
 
     public PBTXProcessorPanel() {
         initializeUI();
@@ -48,56 +68,92 @@ public class PBTXProcessorPanel extends JPanel implements DeviceSelectionListene
 
         // 整数输入框
         gbc.gridx = 0; gbc.gridy = 1;
-        perfettoConfigPanel.add(new JLabel("整数值:"), gbc);
+        perfettoConfigPanel.add(new JLabel("整数值(秒):"), gbc);
 
         gbc.gridx = 1; gbc.weightx = 1.0; gbc.fill = GridBagConstraints.HORIZONTAL;
         intValueField = new JTextField(30);
         intValueField.setText(String.valueOf(globalIntValue));
+        intValueField.setToolTipText("抓取时长，单位秒，替换配置中的 duration_ms");
         perfettoConfigPanel.add(intValueField, gbc);
 
-        // 执行ADB命令按钮（原执行转换按钮）
+        // 执行ADB命令按钮：开始抓取perfetto trace
         gbc.gridx = 1; gbc.gridy = 2; gbc.anchor = GridBagConstraints.CENTER;
-        JButton executeADBButton = new JButton("执行ADB");
+        gbc.fill = GridBagConstraints.NONE; gbc.weightx = 0;
+        executeADBButton = new JButton("执行ADB");
         executeADBButton.setPreferredSize(new Dimension(120, 35));
         executeADBButton.addActionListener(e -> executeADBCommand());
-        perfettoConfigPanel.add(executeADBButton, gbc);
+        cancelCaptureButton = new JButton("取消");
+        cancelCaptureButton.setEnabled(false);
+        cancelCaptureButton.addActionListener(e -> cancelCapture());
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 0));
+        buttonPanel.add(executeADBButton);
+        buttonPanel.add(cancelCaptureButton);
+        analyzeButton = new JButton("分析trace");
+        analyzeButton.addActionListener(e -> chooseAndAnalyzeTrace());
+        buttonPanel.add(analyzeButton);
+        perfettoConfigPanel.add(buttonPanel, gbc);
+
+        // 抓取进度
+        gbc.gridx = 0; gbc.gridy = 3; gbc.gridwidth = 3;
+        gbc.fill = GridBagConstraints.HORIZONTAL; gbc.weightx = 1.0;
+        captureProgressBar = new JProgressBar(0, 100);
+        captureProgressBar.setStringPainted(true);
+        captureProgressBar.setString("");
+        perfettoConfigPanel.add(captureProgressBar, gbc);
+        gbc.gridy = 4;
+        captureStatusLabel = new JLabel(" ");
+        perfettoConfigPanel.add(captureStatusLabel, gbc);
+        gbc.gridwidth = 1;
 
         perfettoPanel.add(perfettoConfigPanel, BorderLayout.NORTH);
 
-        // 下半部分：systrace（占位）
-        JPanel systracePanel = new JPanel();
+        // trace概要和查询
+        summaryConsole = new OutputConsole();
+        summaryConsole.setMargin(new Insets(5, 5, 5, 5));
+        queryPanel = new TraceQueryPanel();
+        JTabbedPane resultTabs = new JTabbedPane();
+        resultTabs.addTab("概要", new JScrollPane(summaryConsole));
+        resultTabs.addTab("查询", queryPanel);
+        resultTabs.addChangeListener(e -> {
+            if (resultTabs.getSelectedComponent() == queryPanel) {
+                queryPanel.loadIfNeeded();
+            }
+        });
+        perfettoPanel.add(resultTabs, BorderLayout.CENTER);
+
+        // 下半部分：systrace，atrace流式抓取
+        systracePanel = new SystracePanel(TRACE_DIR);
         systracePanel.setBorder(BorderFactory.createTitledBorder("systrace"));
-        systracePanel.add(new JLabel("systrace 功能区域"));
 
         // 添加两个部分到主面板
         JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, perfettoPanel, systracePanel);
-        splitPane.setDividerLocation(200);
+        splitPane.setDividerLocation(420);
         splitPane.setResizeWeight(0.5);
 
         add(splitPane, BorderLayout.CENTER);
     }
 
     // 新增方法：加载默认的pbtx文件
+    // 目录扫描和设备查询都在后台线程进行，不阻塞面板创建
     private void loadDefaultPBXTFile() {
-        // 获取当前工作目录
-        String currentDir = Paths.get("").toAbsolutePath().toString();
-        // 构建data/trace目录路径
-        String traceDirPath = Paths.get(currentDir, "data", "trace").toString();
-        File traceDir = new File(traceDirPath);
-
-        // 检查目录是否存在
-        if (traceDir.exists() && traceDir.isDirectory()) {
-            // 查找第一个.pbtx文件
-            File[] pbtxFiles = traceDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".pbtx"));
-            if (pbtxFiles != null && pbtxFiles.length > 0) {
-                String defaultFilePath = pbtxFiles[0].getAbsolutePath();
-                pbtxFilePathField.setText(defaultFilePath);
-                System.out.println("Loaded default PBTX file: " + defaultFilePath);
-
-                // 执行adb devices命令
-                executeADBDevicesCommand();
+        new Thread(() -> {
+            // 获取当前工作目录
+            String currentDir = Paths.get("").toAbsolutePath().toString();
+            // 构建Data/trace目录路径
+            String traceDirPath = Paths.get(currentDir).resolve(TRACE_DIR).toString();
+            File traceDir = new File(traceDirPath);
+
+            // 检查目录是否存在
+            if (traceDir.exists() && traceDir.isDirectory()) {
+                // 查找第一个.pbtx文件
+                File[] pbtxFiles = traceDir.listFiles((dir, name) -> name.toLowerCase().endsWith(".pbtx"));
+                if (pbtxFiles != null && pbtxFiles.length > 0) {
+                    String defaultFilePath = pbtxFiles[0].getAbsolutePath();
+                    SwingUtilities.invokeLater(() -> pbtxFilePathField.setText(defaultFilePath));
+                    System.out.println("Loaded default PBTX file: " + defaultFilePath);
+                }
             }
-        }
+        }, "pbtx-load-default").start();
     }
 
     private void browsePBTXFile() {
@@ -110,17 +166,11 @@ public class PBTXProcessorPanel extends JPanel implements DeviceSelectionListene
             String filePath = selectedFile.getAbsolutePath();
             pbtxFilePathField.setText(filePath);
 
-            // 选择文件后执行adb devices命令并打印文件地址
-            executeADBDevicesCommand();
+            // 选择文件后打印文件地址，设备列表由主窗口跟踪
             System.out.println("Selected PBTX file path: " + filePath);
         }
     }
 
-    private void executeADBDevicesCommand() {
-        String command = "adb devices";
-        CommandExecutor.executeCommand(command);
-    }
-
     private void executeADBCommand() {
         // 获取并验证整数值
         try {
@@ -130,9 +180,139 @@ public class PBTXProcessorPanel extends JPanel implements DeviceSelectionListene
             intValueField.setText("10");
         }
 
-        // 执行adb命令
-        String command = "adb shell getprop"; // 示例命令
-        CommandExecutor.executeCommand(command);
+        if (currentCapture != null && !currentCapture.isFinished()) {
+            showError("已有抓取正在进行");
+            return;
+        }
+        if (selectedDeviceId == null || selectedDeviceId.isEmpty()) {
+            showError("请先选择设备");
+            return;
+        }
+        String configPath = pbtxFilePathField.getText().trim();
+        if (configPath.isEmpty() || !new File(configPath).isFile()) {
+            showError("请先选择PBTX文件");
+            return;
+        }
+        if (globalIntValue <= 0) {
+            showError("抓取时长必须大于0");
+            return;
+        }
+
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+        Path output = TRACE_DIR.resolve("trace_" + selectedDeviceId.replaceAll("[^A-Za-z0-9._-]", "_")
+                + "_" + timestamp + ".perfetto-trace");
+        PerfettoCapture capture = new PerfettoCapture(AdbClient.getDefault(), selectedDeviceId,
+                Paths.get(configPath), globalIntValue, output);
+        currentCapture = capture;
+        executeADBButton.setEnabled(false);
+        cancelCaptureButton.setEnabled(true);
+
+        // 抓取在后台线程进行，这里只定时读取进度
+        captureTimer = new Timer(200, e -> updateCaptureProgress(capture));
+        captureTimer.start();
+        capture.start().whenComplete((path, error) -> SwingUtilities.invokeLater(() -> {
+            captureTimer.stop();
+            updateCaptureProgress(capture);
+            executeADBButton.setEnabled(true);
+            cancelCaptureButton.setEnabled(false);
+            if (path != null) {
+                captureStatusLabel.setText("已保存: " + path);
+                analyzeTrace(path);
+            }
+        }));
+    }
+
+    private void chooseAndAnalyzeTrace() {
+        JFileChooser fileChooser = new JFileChooser(lastTracePath != null
+                ? lastTracePath.toAbsolutePath().getParent().toFile() : TRACE_DIR.toAbsolutePath().toFile());
+        if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            analyzeTrace(fileChooser.getSelectedFile().toPath());
+        }
+    }
+
+    /**
+     * 在后台线程解码trace并显示概要，进度显示在进度条上；查询用的 TraceStore 由查询页在使用时再建立
+     */
+    private void analyzeTrace(Path trace) {
+        lastTracePath = trace;
+        analyzeButton.setEnabled(false);
+        summaryConsole.clear();
+        summaryConsole.append("正在分析 " + trace + " ...\n");
+        queryPanel.setTrace(null);
+        long size;
+        try {
+            size = Math.max(1, Files.size(trace));
+        } catch (Exception e) {
+            size = 1;
+        }
+        long totalSize = size;
+
+        SwingWorker<TraceSummary, Void> worker = new SwingWorker<TraceSummary, Void>() {
+            @Override
+            protected TraceSummary doInBackground() throws Exception {
+                return TraceSummary.summarize(trace,
+                        bytes -> setProgress((int) Math.min(100, bytes * 100 / totalSize)));
+            }
+
+            @Override
+            protected void done() {
+                analyzeButton.setEnabled(true);
+                summaryConsole.clear();
+                summaryConsole.append(trace + "\n");
+                try {
+                    summaryConsole.append(get().format(TraceSummary.DEFAULT_TOP));
+                    queryPanel.setTrace(trace);
+                    captureProgressBar.setString("分析完成");
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    summaryConsole.append("分析失败: " + cause.getMessage() + "\n");
+                    captureProgressBar.setString("分析失败");
+                }
+            }
+        };
+        worker.addPropertyChangeListener(e -> {
+            if ("progress".equals(e.getPropertyName())) {
+                captureProgressBar.setIndeterminate(false);
+                captureProgressBar.setValue((Integer) e.getNewValue());
+                captureProgressBar.setString("分析中 " + e.getNewValue() + "%");
+            }
+        });
+        worker.execute();
+    }
+
+    private void cancelCapture() {
+        if (currentCapture != null) {
+            currentCapture.cancel();
+        }
+    }
+
+    private void updateCaptureProgress(PerfettoCapture capture) {
+        long elapsed = capture.getElapsedMillis();
+        long duration = capture.getDurationMillis();
+        double receivedMb = capture.getBytesReceived() / (1024.0 * 1024);
+        switch (capture.getState()) {
+            case TRACING:
+                captureProgressBar.setIndeterminate(false);
+                captureProgressBar.setValue((int) Math.min(99, elapsed * 100 / Math.max(1, duration)));
+                captureProgressBar.setString(String.format("抓取中 %d/%d 秒", elapsed / 1000, duration / 1000));
+                break;
+            case RECEIVING:
+                // trace总大小未知，只显示已接收的数据量
+                captureProgressBar.setIndeterminate(true);
+                captureProgressBar.setString(String.format("接收中 %.1f MB", receivedMb));
+                break;
+            case SUCCESS:
+                captureProgressBar.setIndeterminate(false);
+                captureProgressBar.setValue(100);
+                captureProgressBar.setString(String.format("完成 %.1f MB", receivedMb));
+                break;
+            default:
+                captureProgressBar.setIndeterminate(capture.getState() == PerfettoCapture.State.STARTING);
+                captureProgressBar.setString(capture.getState().getLabel());
+                break;
+        }
+        String message = capture.getMessage();
+        captureStatusLabel.setText(message.isEmpty() ? " " : message);
     }
 
     private void showError(String message) {
@@ -142,5 +322,6 @@ public class PBTXProcessorPanel extends JPanel implements DeviceSelectionListene
     @Override
     public void onDeviceSelected(String newDeviceId) {
         this.selectedDeviceId = newDeviceId;
+        systracePanel.setDeviceId(newDeviceId);
     }
 }
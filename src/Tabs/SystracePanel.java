@@ -0,0 +1,250 @@
+package Tabs;
+
+import Utils.AdbClient;
+import Utils.AtraceCapture;
+import Utils.SystraceSliceBuffer;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * systrace：用 atrace --stream 连续抓取，抓取期间按线程浏览已结束的slice
+ * 解析在抓取线程进行，这里只定时读取 SystraceSliceBuffer 的快照
+ */
+class SystracePanel extends JPanel {
+    private static final int REFRESH_INTERVAL_MS = 500;
+    private static final int MAX_VISIBLE_SLICES = 5000;
+
+    private final Path traceDir;
+    private final JTextField categoriesField = new JTextField(AtraceCapture.DEFAULT_CATEGORIES, 24);
+    private final JTextField appField = new JTextField(14);
+    private final JCheckBox saveCheckBox = new JCheckBox("保存原始文本", true);
+    private final JButton startButton = new JButton("开始");
+    private final JButton stopButton = new JButton("停止");
+    private final JLabel statusLabel = new JLabel(" ");
+    private final ThreadTableModel threadModel = new ThreadTableModel();
+    private final SliceTableModel sliceModel = new SliceTableModel();
+    private final JTable threadTable = new JTable(threadModel);
+    private final Timer refreshTimer = new Timer(REFRESH_INTERVAL_MS, e -> refresh());
+    private String deviceId;
+    private AtraceCapture capture;
+    private SystraceSliceBuffer slices = new SystraceSliceBuffer();
+    private long shownVersion = -1;
+    private int shownTid = -1;
+
+    private static class ThreadTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"线程", "tid", "pid", "slice数"};
+        private List<SystraceSliceBuffer.ThreadInfo> threads = new ArrayList<>();
+
+        void setThreads(List<SystraceSliceBuffer.ThreadInfo> threads) {
+            this.threads = threads;
+            fireTableDataChanged();
+        }
+
+        SystraceSliceBuffer.ThreadInfo getThread(int row) {
+            return threads.get(row);
+        }
+
+        int rowOf(int tid) {
+            for (int i = 0; i < threads.size(); i++) {
+                if (threads.get(i).tid == tid) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int getRowCount() {
+            return threads.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            SystraceSliceBuffer.ThreadInfo thread = threads.get(row);
+            switch (column) {
+                case 0: return thread.name;
+                case 1: return thread.tid;
+                case 2: return thread.tgid != 0 ? String.valueOf(thread.tgid) : "-";
+                default: return thread.total;
+            }
+        }
+    }
+
+    private static class SliceTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"开始(s)", "时长 ms", "深度", "名称"};
+        private List<SystraceSliceBuffer.Slice> slices = new ArrayList<>();
+
+        void setSlices(List<SystraceSliceBuffer.Slice> slices) {
+            this.slices = slices;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return slices.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            SystraceSliceBuffer.Slice slice = slices.get(row);
+            switch (column) {
+                case 0: return String.format("%.6f", slice.timestamp / 1e9);
+                case 1: return String.format("%.3f", slice.duration / 1e6);
+                case 2: return slice.depth;
+                default: return "  ".repeat(slice.depth) + slice.name;
+            }
+        }
+    }
+
+    /**
+     * @param traceDir 原始文本的保存目录
+     */
+    SystracePanel(Path traceDir) {
+        this.traceDir = traceDir;
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel controlPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        controlPanel.add(new JLabel("类别:"));
+        controlPanel.add(categoriesField);
+        controlPanel.add(new JLabel("应用(-a):"));
+        appField.setToolTipText("需要抓取应用内trace标记时填写包名，多个用逗号分隔");
+        controlPanel.add(appField);
+        controlPanel.add(saveCheckBox);
+        startButton.addActionListener(e -> startCapture());
+        stopButton.addActionListener(e -> stopCapture());
+        stopButton.setEnabled(false);
+        controlPanel.add(startButton);
+        controlPanel.add(stopButton);
+        add(controlPanel, BorderLayout.NORTH);
+
+        threadTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        threadTable.getSelectionModel().addListSelectionListener(e -> {
+            if (!e.getValueIsAdjusting()) {
+                showSelectedThread();
+            }
+        });
+        JTable sliceTable = new JTable(sliceModel);
+        sliceTable.getColumnModel().getColumn(3).setPreferredWidth(400);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+                new JScrollPane(threadTable), new JScrollPane(sliceTable));
+        splitPane.setResizeWeight(0.35);
+        add(splitPane, BorderLayout.CENTER);
+        add(statusLabel, BorderLayout.SOUTH);
+    }
+
+    void setDeviceId(String deviceId) {
+        this.deviceId = deviceId;
+    }
+
+    private void startCapture() {
+        if (capture != null && !capture.isFinished()) {
+            return;
+        }
+        if (deviceId == null || deviceId.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请先选择设备", "错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        Path output = null;
+        if (saveCheckBox.isSelected()) {
+            String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
+            output = traceDir.resolve("systrace_" + deviceId.replaceAll("[^A-Za-z0-9._-]", "_")
+                    + "_" + timestamp + ".txt");
+        }
+        slices = new SystraceSliceBuffer();
+        shownVersion = -1;
+        shownTid = -1;
+        threadModel.setThreads(new ArrayList<>());
+        sliceModel.setSlices(new ArrayList<>());
+
+        AtraceCapture current = new AtraceCapture(AdbClient.getDefault(), deviceId,
+                categoriesField.getText(), appField.getText(), output, slices);
+        capture = current;
+        startButton.setEnabled(false);
+        stopButton.setEnabled(true);
+        refreshTimer.start();
+        current.start().whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (capture != current) {
+                return;
+            }
+            refreshTimer.stop();
+            refresh();
+            startButton.setEnabled(true);
+            stopButton.setEnabled(false);
+        }));
+    }
+
+    private void stopCapture() {
+        if (capture != null) {
+            capture.stop();
+        }
+    }
+
+    // 定时刷新：有新slice时才重新读取快照
+    private void refresh() {
+        AtraceCapture current = capture;
+        if (current == null) {
+            return;
+        }
+        long version = slices.getVersion();
+        if (version != shownVersion) {
+            shownVersion = version;
+            int selectedTid = shownTid;
+            threadModel.setThreads(slices.getThreads());
+            int row = threadModel.rowOf(selectedTid);
+            if (row >= 0) {
+                threadTable.getSelectionModel().setSelectionInterval(row, row);
+            }
+            shownTid = -1; // 强制刷新slice列表
+            showSelectedThread();
+        }
+        String text = String.format("%s  已接收 %.1f MB，%d 行，slice %d 个，计数器 %d 个",
+                current.getState().getLabel(), current.getBytesReceived() / (1024.0 * 1024),
+                current.getLineCount(), slices.getSliceCount(), slices.getCounterCount());
+        if (!current.getMessage().isEmpty()) {
+            text += "  " + current.getMessage();
+        } else if (current.isFinished() && current.getOutput() != null) {
+            text += "  已保存到 " + current.getOutput();
+        }
+        statusLabel.setText(text);
+    }
+
+    private void showSelectedThread() {
+        int row = threadTable.getSelectedRow();
+        if (row < 0) {
+            return;
+        }
+        int tid = threadModel.getThread(row).tid;
+        if (tid == shownTid) {
+            return;
+        }
+        shownTid = tid;
+        sliceModel.setSlices(slices.getRecentSlices(tid, MAX_VISIBLE_SLICES));
+    }
+}
@@ -0,0 +1,244 @@
+package Tabs;
+
+import Utils.PerfettoTraceDecoder;
+import Utils.SliceQuery;
+import Utils.TraceStore;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * trace查询：按名字、进程、线程、时长过滤slice，或按线程统计CPU时间
+ * 查询在后台线程执行，TraceStore内部再并行扫描
+ * TraceStore占用的内存与trace大小相当，只在第一次使用查询页时才解码建立，只看概要时不建立
+ */
+class TraceQueryPanel extends JPanel {
+    private static final String TYPE_SLICE = "Slice";
+    private static final String TYPE_CPU = "CPU时间";
+
+    private final JTextField nameField = new JTextField(14);
+    private final JTextField processField = new JTextField(12);
+    private final JTextField threadField = new JTextField(10);
+    private final JCheckBox mainThreadCheckBox = new JCheckBox("仅主线程");
+    private final JTextField minDurationField = new JTextField("0", 5);
+    private final JComboBox<String> typeComboBox = new JComboBox<>(new String[]{TYPE_SLICE, TYPE_CPU});
+    private final JButton queryButton = new JButton("查询");
+    private final JLabel statsLabel = new JLabel("尚未加载trace");
+    private final ResultTableModel groupModel = new ResultTableModel();
+    private final ResultTableModel rowModel = new ResultTableModel();
+    private TraceStore store;
+    private Path trace;
+    private SwingWorker<TraceStore, Void> loader;
+
+    // 只读的结果表，列在每次查询时确定
+    private static class ResultTableModel extends AbstractTableModel {
+        private String[] columns = {};
+        private List<Object[]> rows = new ArrayList<>();
+
+        void setData(String[] columns, List<Object[]> rows) {
+            boolean structureChanged = !Arrays.equals(columns, this.columns);
+            this.columns = columns;
+            this.rows = rows;
+            if (structureChanged) {
+                fireTableStructureChanged();
+            } else {
+                fireTableDataChanged();
+            }
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return columns[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return rows.isEmpty() || rows.get(0)[column] == null ? Object.class : rows.get(0)[column].getClass();
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row)[column];
+        }
+    }
+
+    TraceQueryPanel() {
+        setLayout(new BorderLayout(5, 5));
+
+        JPanel conditionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+        conditionPanel.add(typeComboBox);
+        conditionPanel.add(new JLabel("名称包含:"));
+        conditionPanel.add(nameField);
+        conditionPanel.add(new JLabel("进程:"));
+        conditionPanel.add(processField);
+        conditionPanel.add(new JLabel("线程:"));
+        conditionPanel.add(threadField);
+        conditionPanel.add(mainThreadCheckBox);
+        conditionPanel.add(new JLabel("最短(ms):"));
+        conditionPanel.add(minDurationField);
+        conditionPanel.add(queryButton);
+        add(conditionPanel, BorderLayout.NORTH);
+
+        queryButton.addActionListener(e -> runQuery());
+        nameField.addActionListener(e -> runQuery());
+        typeComboBox.addActionListener(e -> nameField.setEnabled(TYPE_SLICE.equals(typeComboBox.getSelectedItem())));
+        queryButton.setEnabled(false);
+
+        JTable groupTable = new JTable(groupModel);
+        groupTable.setAutoCreateRowSorter(true);
+        JTable rowTable = new JTable(rowModel);
+        rowTable.setAutoCreateRowSorter(true);
+        JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT,
+                new JScrollPane(groupTable), new JScrollPane(rowTable));
+        splitPane.setResizeWeight(0.5);
+        add(splitPane, BorderLayout.CENTER);
+        add(statsLabel, BorderLayout.SOUTH);
+    }
+
+    /**
+     * 换成新的trace，传null表示没有trace；查询页正在显示时立即加载，否则等到切换到查询页
+     */
+    void setTrace(Path trace) {
+        if (loader != null) {
+            loader.cancel(true);
+            loader = null;
+        }
+        this.trace = trace;
+        setStore(null);
+        if (trace != null && isShowing()) {
+            loadIfNeeded();
+        }
+    }
+
+    /**
+     * 查询页显示时调用，在后台线程解码trace并建立TraceStore，已建立或正在建立时不做任何事
+     */
+    void loadIfNeeded() {
+        if (trace == null || store != null || loader != null) {
+            return;
+        }
+        Path target = trace;
+        statsLabel.setText("正在加载trace...");
+        loader = new SwingWorker<TraceStore, Void>() {
+            @Override
+            protected TraceStore doInBackground() throws Exception {
+                TraceStore newStore = new TraceStore();
+                PerfettoTraceDecoder.decode(target, newStore);
+                newStore.freeze();
+                return newStore;
+            }
+
+            @Override
+            protected void done() {
+                if (loader != this) {
+                    return; // 加载期间换了trace
+                }
+                loader = null;
+                try {
+                    setStore(get());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statsLabel.setText("加载trace失败: " + cause.getMessage());
+                }
+            }
+        };
+        loader.execute();
+    }
+
+    private void setStore(TraceStore store) {
+        this.store = store;
+        queryButton.setEnabled(store != null);
+        groupModel.setData(new String[0], new ArrayList<>());
+        rowModel.setData(new String[0], new ArrayList<>());
+        statsLabel.setText(store == null ? (trace == null ? "尚未加载trace" : "切换到查询页时加载trace") : String.format(
+                "已加载 slice %d 个，调度区间 %d 个，计数器采样 %d 个，线程 %d 个",
+                store.getSliceCount(), store.getSchedCount(), store.getCounterCount(), store.getThreadCount()));
+    }
+
+    private void runQuery() {
+        if (store == null) {
+            return;
+        }
+        double minDuration;
+        try {
+            minDuration = Double.parseDouble(minDurationField.getText().trim());
+        } catch (NumberFormatException e) {
+            minDuration = 0;
+            minDurationField.setText("0");
+        }
+        boolean slices = TYPE_SLICE.equals(typeComboBox.getSelectedItem());
+        SliceQuery query = new SliceQuery()
+                .nameContains(nameField.getText().trim())
+                .processContains(processField.getText().trim())
+                .threadContains(threadField.getText().trim())
+                .mainThreadOnly(mainThreadCheckBox.isSelected())
+                .minDurationMillis(minDuration);
+        TraceStore target = store;
+        queryButton.setEnabled(false);
+
+        new SwingWorker<SliceQuery.Result, Void>() {
+            @Override
+            protected SliceQuery.Result doInBackground() {
+                return slices ? target.querySlices(query) : target.queryCpuTime(query);
+            }
+
+            @Override
+            protected void done() {
+                queryButton.setEnabled(store != null);
+                if (target != store) {
+                    return; // 查询期间换了trace
+                }
+                try {
+                    showResult(get(), slices);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    statsLabel.setText("查询失败: " + cause.getMessage());
+                }
+            }
+        }.execute();
+    }
+
+    private void showResult(SliceQuery.Result result, boolean slices) {
+        List<Object[]> groups = new ArrayList<>();
+        for (SliceQuery.Group group : result.groups) {
+            groups.add(new Object[]{group.key, group.count, millis(group.totalDuration), millis(group.maxDuration)});
+        }
+        groupModel.setData(new String[]{slices ? "名称" : "线程", "次数", "总时长 ms", "最长 ms"}, groups);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (SliceQuery.Row row : result.rows) {
+            if (slices) {
+                rows.add(new Object[]{row.name, millis(row.duration), row.timestamp, row.depth,
+                        row.thread + " [" + row.tid + "]", row.process});
+            } else {
+                rows.add(new Object[]{row.thread + " [" + row.tid + "]", row.process, millis(row.duration)});
+            }
+        }
+        rowModel.setData(slices
+                ? new String[]{"名称", "时长 ms", "开始(ns)", "深度", "线程", "进程"}
+                : new String[]{"线程", "进程", "CPU ms"}, rows);
+
+        statsLabel.setText(String.format("匹配 %d 个，总时长 %.2f ms，最长 %.2f ms；扫描 %d 行，耗时 %.2f ms",
+                result.count, result.totalDuration / 1e6, result.maxDuration / 1e6,
+                result.scannedRows, result.elapsedMicros / 1000.0));
+    }
+
+    private static Double millis(long nanos) {
+        return Math.round(nanos / 1e4) / 100.0;
+    }
+}
@@ -0,0 +1,567 @@
+package Utils;
+
+import interfaces.CommandOutputListener;
+import interfaces.ShellStreamListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * adb server 主机协议（smart socket）客户端，直接连接 localhost:5037，不再启动 adb 进程
+ * 请求格式为4位十六进制长度 + 内容，服务端回复 OKAY 或 FAIL + 长度 + 错误信息
+ */
+public class AdbClient {
+    public static final String DEFAULT_HOST = "127.0.0.1";
+    public static final int DEFAULT_PORT = 5037;
+
+    // sync协议单个DATA包的最大长度
+    private static final int SYNC_DATA_MAX = 64 * 1024;
+
+    // shell v2 协议的包类型
+    private static final int SHELL_ID_STDOUT = 1;
+    private static final int SHELL_ID_STDERR = 2;
+    private static final int SHELL_ID_STDIN = 0;
+    private static final int SHELL_ID_EXIT = 3;
+    private static final int SHELL_ID_CLOSE_STDIN = 4;
+    // 旧版本adbd的shell包缓冲区只有4KB，stdin按此拆包
+    private static final int SHELL_STDIN_CHUNK = 4096 - 5;
+    private static final String EXIT_MARKER_PREFIX = "__ADB_EXIT_";
+
+    private static final AdbClient DEFAULT = new AdbClient(DEFAULT_HOST, DEFAULT_PORT);
+
+    private final InetSocketAddress address;
+    private volatile boolean serverStartAttempted = false;
+
+    public AdbClient(String host, int port) {
+        this.address = new InetSocketAddress(host, port);
+    }
+
+    public static AdbClient getDefault() {
+        return DEFAULT;
+    }
+
+    // ==================== host 服务 ====================
+
+    /**
+     * 对应 host:devices-l
+     */
+    public List<AdbDevice> devices() throws IOException {
+        return parseDevices(hostQuery("host:devices-l"));
+    }
+
+    /**
+     * adb server 的协议版本
+     */
+    public int version() throws IOException {
+        return Integer.parseInt(hostQuery("host:version"), 16);
+    }
+
+    /**
+     * 发送一个host请求并读取带长度前缀的回复
+     */
+    public String hostQuery(String request) throws IOException {
+        try (SocketChannel channel = connect()) {
+            sendRequest(channel, request);
+            return readLengthPrefixed(channel);
+        }
+    }
+
+    /**
+     * 打开 host:track-devices-l 长连接，设备列表每次变化都会收到一份完整快照
+     */
+    public TrackSession trackDevices() throws IOException {
+        SocketChannel channel = connect();
+        try {
+            sendRequest(channel, "host:track-devices-l");
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new TrackSession(channel);
+    }
+
+    // ==================== 设备服务 ====================
+
+    /**
+     * 切换到指定设备的传输通道并打开一个服务，例如 "shell:ls" 或 "sync:"
+     * 返回的通道由调用方关闭
+     */
+    public SocketChannel openService(String serial, String service) throws IOException {
+        SocketChannel channel = connect();
+        try {
+            sendRequest(channel, "host:transport:" + serial);
+            sendRequest(channel, service);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 执行shell命令并收集输出
+     */
+    public CommandResult shell(String serial, String command) throws IOException {
+        return shell(serial, command, null);
+    }
+
+    /**
+     * 执行shell命令，stdout/stderr逐行回调listener
+     * 优先使用 shell v2 协议以获得退出码和独立的stderr，设备不支持时退回旧协议
+     */
+    public CommandResult shell(String serial, String command, CommandOutputListener listener) throws IOException {
+        long startTime = System.nanoTime();
+        SocketChannel channel;
+        String exitMarker = null;
+        try {
+            channel = openShellV2(serial, command);
+        } catch (AdbException e) {
+            // 旧协议没有退出码，命令后输出一行带退出码的标记；命令让shell退出时没有标记，退出码为-1（未知）
+            exitMarker = EXIT_MARKER_PREFIX + Long.toHexString(System.nanoTime()) + "_";
+            channel = openService(serial, "shell:{ " + command + "\n}; echo \"" + exitMarker + "$?\"");
+        }
+
+        LineAssembler stdout = new LineAssembler(listener, false, exitMarker);
+        LineAssembler stderr = new LineAssembler(listener, true, null);
+        int exitCode;
+        try (SocketChannel ch = channel) {
+            if (exitMarker == null) {
+                exitCode = readShellV2(ch, new ShellStreamListener() {
+                    @Override
+                    public void onStdout(ByteBuffer data) {
+                        stdout.write(data);
+                    }
+
+                    @Override
+                    public void onStderr(ByteBuffer data) {
+                        stderr.write(data);
+                    }
+                });
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+                while (ch.read(buffer) >= 0) {
+                    buffer.flip();
+                    stdout.write(buffer);
+                    buffer.clear();
+                }
+                stdout.finish();
+                exitCode = stdout.markerExitCode;
+            }
+        }
+        stdout.finish();
+        stderr.finish();
+
+        CommandResult result = new CommandResult(command, exitCode, stdout.text(), stderr.text(),
+                (System.nanoTime() - startTime) / 1_000_000);
+        if (listener != null) {
+            listener.onComplete(result);
+        }
+        return result;
+    }
+
+    /**
+     * 打开 shell v2 连接（不分配pty），stdin/stdout/stderr都按包传输，退出码在最后的包中
+     * 输入用 writeShellStdin/closeShellStdin 发送，输出用 readShellV2 读取；设备不支持时抛出 AdbException
+     */
+    public SocketChannel openShellV2(String serial, String command) throws IOException {
+        return openService(serial, "shell,v2,raw:" + command);
+    }
+
+    /**
+     * 把data作为stdin包发送给 shell v2 连接上的命令
+     */
+    public static void writeShellStdin(SocketChannel channel, ByteBuffer data) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN);
+        while (data.hasRemaining()) {
+            int length = Math.min(data.remaining(), SHELL_STDIN_CHUNK);
+            header.clear();
+            header.put((byte) SHELL_ID_STDIN).putInt(length).flip();
+            writeFully(channel, header);
+            ByteBuffer chunk = data.duplicate();
+            chunk.limit(chunk.position() + length);
+            writeFully(channel, chunk);
+            data.position(data.position() + length);
+        }
+    }
+
+    /**
+     * 关闭命令的stdin，命令随后读到EOF；连接的其余方向不受影响，仍可读取输出
+     */
+    public static void closeShellStdin(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN);
+        header.put((byte) SHELL_ID_CLOSE_STDIN).putInt(0).flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * 读取 shell v2 连接上的输出包直到连接关闭
+     * @return 命令的退出码，没有收到退出包时返回-1
+     */
+    public static int readShellV2(SocketChannel channel, ShellStreamListener listener) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer payload = ByteBuffer.allocate(16 * 1024);
+        int exitCode = -1;
+        while (true) {
+            header.clear();
+            if (!readFullyOrEof(channel, header)) {
+                return exitCode;
+            }
+            header.flip();
+            int id = header.get();
+            int length = header.getInt();
+            if (payload.capacity() < length) {
+                payload = ByteBuffer.allocate(length);
+            }
+            payload.clear().limit(length);
+            readFully(channel, payload);
+            payload.flip();
+            if (id == SHELL_ID_STDOUT) {
+                listener.onStdout(payload);
+            } else if (id == SHELL_ID_STDERR) {
+                listener.onStderr(payload);
+            } else if (id == SHELL_ID_EXIT && length > 0) {
+                exitCode = payload.get() & 0xff;
+            }
+        }
+    }
+
+    /**
+     * 打开 exec: 服务，stdin/stdout都是原始字节流，没有pty转换，适合传输二进制数据
+     */
+    public SocketChannel openExec(String serial, String command) throws IOException {
+        return openService(serial, "exec:" + command);
+    }
+
+    /**
+     * 以输入流形式读取 exec: 命令的输出，关闭流即关闭连接
+     */
+    public InputStream execOut(String serial, String command) throws IOException {
+        return Channels.newInputStream(openExec(serial, command));
+    }
+
+    // ==================== sync 服务 ====================
+
+    /**
+     * 把本地文件推送到设备
+     * @param mode 设备上的文件权限，例如 0644
+     * @param progress 已传输的字节数回调，可以为null
+     */
+    public void push(String serial, Path local, String remote, int mode, LongConsumer progress) throws IOException {
+        try (SocketChannel channel = openService(serial, "sync:");
+             FileChannel file = FileChannel.open(local, StandardOpenOption.READ)) {
+            byte[] spec = (remote + "," + mode).getBytes(StandardCharsets.UTF_8);
+            writeSyncRequest(channel, "SEND", spec);
+
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer data = ByteBuffer.allocateDirect(SYNC_DATA_MAX);
+            long transferred = 0;
+            while (true) {
+                data.clear();
+                int n = file.read(data);
+                if (n < 0) {
+                    break;
+                }
+                if (n == 0) {
+                    continue;
+                }
+                data.flip();
+                header.clear();
+                header.put("DATA".getBytes(StandardCharsets.US_ASCII)).putInt(n).flip();
+                writeFully(channel, header);
+                writeFully(channel, data);
+                transferred += n;
+                if (progress != null) {
+                    progress.accept(transferred);
+                }
+            }
+
+            header.clear();
+            int mtime = (int) (local.toFile().lastModified() / 1000);
+            header.put("DONE".getBytes(StandardCharsets.US_ASCII)).putInt(mtime).flip();
+            writeFully(channel, header);
+
+            readSyncStatus(channel);
+            writeSyncRequest(channel, "QUIT", new byte[0]);
+        }
+    }
+
+    /**
+     * 从设备拉取文件到本地
+     */
+    public void pull(String serial, String remote, Path local, LongConsumer progress) throws IOException {
+        try (SocketChannel channel = openService(serial, "sync:");
+             FileChannel file = FileChannel.open(local, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeSyncRequest(channel, "RECV", remote.getBytes(StandardCharsets.UTF_8));
+
+            ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+            long transferred = 0;
+            while (true) {
+                header.clear();
+                readFully(channel, header);
+                header.flip();
+                String id = readId(header);
+                int length = header.getInt();
+                if ("DONE".equals(id)) {
+                    break;
+                }
+                if ("FAIL".equals(id)) {
+                    throw new AdbException(readString(channel, length));
+                }
+                if (!"DATA".equals(id)) {
+                    throw new AdbException("未知的sync响应: " + id);
+                }
+                // 直接从socket写入文件，不经过中间的字节数组
+                long remaining = length;
+                while (remaining > 0) {
+                    long n = file.transferFrom(channel, file.position(), remaining);
+                    if (n <= 0) {
+                        throw new AdbException("sync数据意外结束");
+                    }
+                    file.position(file.position() + n);
+                    remaining -= n;
+                }
+                transferred += length;
+                if (progress != null) {
+                    progress.accept(transferred);
+                }
+            }
+            writeSyncRequest(channel, "QUIT", new byte[0]);
+        }
+    }
+
+    // ==================== 协议细节 ====================
+
+    SocketChannel connect() throws IOException {
+        try {
+            return openChannel();
+        } catch (IOException e) {
+            // adb server 没有运行时尝试启动一次
+            if (serverStartAttempted) {
+                throw e;
+            }
+            serverStartAttempted = true;
+            CommandExecutor.executeCommand("adb start-server");
+            return openChannel();
+        }
+    }
+
+    private SocketChannel openChannel() throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.connect(address);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static void sendRequest(SocketChannel channel, String request) throws IOException {
+        byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length);
+        buffer.put(String.format("%04x", payload.length).getBytes(StandardCharsets.US_ASCII));
+        buffer.put(payload).flip();
+        writeFully(channel, buffer);
+        readStatus(channel);
+    }
+
+    static void readStatus(SocketChannel channel) throws IOException {
+        ByteBuffer status = ByteBuffer.allocate(4);
+        readFully(channel, status);
+        String id = new String(status.array(), StandardCharsets.US_ASCII);
+        if ("OKAY".equals(id)) {
+            return;
+        }
+        if ("FAIL".equals(id)) {
+            throw new AdbException(readLengthPrefixed(channel));
+        }
+        throw new AdbException("未知的adb响应: " + id);
+    }
+
+    static String readLengthPrefixed(SocketChannel channel) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        readFully(channel, lengthBuffer);
+        int length = Integer.parseInt(new String(lengthBuffer.array(), StandardCharsets.US_ASCII), 16);
+        return readString(channel, length);
+    }
+
+    static List<AdbDevice> parseDevices(String text) {
+        List<AdbDevice> devices = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            AdbDevice device = AdbDevice.parse(line);
+            if (device != null) {
+                devices.add(device);
+            }
+        }
+        return devices;
+    }
+
+    private static String readString(SocketChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer);
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeSyncRequest(SocketChannel channel, String id, byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(id.getBytes(StandardCharsets.US_ASCII)).putInt(payload.length).put(payload).flip();
+        writeFully(channel, buffer);
+    }
+
+    private static void readSyncStatus(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, header);
+        header.flip();
+        String id = readId(header);
+        int length = header.getInt();
+        if ("FAIL".equals(id)) {
+            throw new AdbException(readString(channel, length));
+        }
+        if (!"OKAY".equals(id)) {
+            throw new AdbException("未知的sync响应: " + id);
+        }
+    }
+
+    private static String readId(ByteBuffer buffer) {
+        byte[] id = new byte[4];
+        buffer.get(id);
+        return new String(id, StandardCharsets.US_ASCII);
+    }
+
+    static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        if (!readFullyOrEof(channel, buffer)) {
+            throw new AdbException("adb连接意外关闭");
+        }
+    }
+
+    private static boolean readFullyOrEof(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == 0) {
+                    return false;
+                }
+                throw new AdbException("adb连接意外关闭");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 把字节块拼成行，保留跨块的半行
+     */
+    private static class LineAssembler {
+        private final CommandOutputListener listener;
+        private final boolean isStderr;
+        private final String exitMarker;
+        private final ByteArrayOutputStream all = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int markerExitCode = -1;
+
+        /**
+         * @param exitMarker 旧协议的退出码标记，该行不属于命令输出；为null时不处理
+         */
+        LineAssembler(CommandOutputListener listener, boolean isStderr, String exitMarker) {
+            this.listener = listener;
+            this.isStderr = isStderr;
+            this.exitMarker = exitMarker;
+        }
+
+        void write(ByteBuffer buffer) {
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                all.write(b);
+                if (b == '\n') {
+                    emit();
+                } else if (b != '\r') {
+                    line.write(b);
+                }
+            }
+        }
+
+        void finish() {
+            if (line.size() > 0) {
+                emit();
+            }
+        }
+
+        String text() {
+            String text = new String(all.toByteArray(), StandardCharsets.UTF_8);
+            int markerIndex = exitMarker == null ? -1 : text.lastIndexOf(exitMarker);
+            return markerIndex < 0 ? text : text.substring(0, markerIndex);
+        }
+
+        private void emit() {
+            String text = new String(line.toByteArray(), StandardCharsets.UTF_8);
+            line.reset();
+            int markerIndex = exitMarker == null ? -1 : text.indexOf(exitMarker);
+            if (markerIndex >= 0) {
+                try {
+                    markerExitCode = Integer.parseInt(text.substring(markerIndex + exitMarker.length()).trim());
+                } catch (NumberFormatException ignored) {
+                }
+                // 命令最后一行没有换行时，标记前面的部分仍属于命令输出
+                text = text.substring(0, markerIndex);
+                if (text.isEmpty()) {
+                    return;
+                }
+            }
+            if (listener == null) {
+                return;
+            }
+            if (isStderr) {
+                listener.onStderr(text);
+            } else {
+                listener.onStdout(text);
+            }
+        }
+    }
+
+    /**
+     * track-devices 长连接，每次 next() 阻塞到设备列表发生变化
+     */
+    public static class TrackSession implements Closeable {
+        private final SocketChannel channel;
+
+        TrackSession(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * 读取下一份完整的设备列表快照，连接断开时抛出IOException
+         */
+        public List<AdbDevice> next() throws IOException {
+            return parseDevices(readLengthPrefixed(channel));
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
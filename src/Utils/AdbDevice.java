@@ -0,0 +1,82 @@
+package Utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * adb devices -l 中的一行：序列号、状态以及 model/product/transport_id 等属性
+ */
+public class AdbDevice {
+    private final String serial;
+    private final String state;
+    private final Map<String, String> properties;
+
+    public AdbDevice(String serial, String state, Map<String, String> properties) {
+        this.serial = serial;
+        this.state = state;
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<>(properties));
+    }
+
+    /**
+     * 解析一行设备信息，例如 "emulator-5554  device product:sdk model:Pixel transport_id:1"
+     * @return 解析失败时返回null
+     */
+    public static AdbDevice parse(String line) {
+        String[] parts = line.trim().split("\\s+");
+        if (parts.length < 2 || parts[0].isEmpty()) {
+            return null;
+        }
+        Map<String, String> properties = new LinkedHashMap<>();
+        StringBuilder state = new StringBuilder(parts[1]);
+        for (int i = 2; i < parts.length; i++) {
+            int colon = parts[i].indexOf(':');
+            if (colon > 0) {
+                properties.put(parts[i].substring(0, colon), parts[i].substring(colon + 1));
+            } else if (properties.isEmpty()) {
+                // 状态可能包含空格，例如 "no permissions"
+                state.append(' ').append(parts[i]);
+            }
+        }
+        return new AdbDevice(parts[0], state.toString(), properties);
+    }
+
+    public String getSerial() {
+        return serial;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public String getModel() {
+        return properties.getOrDefault("model", "");
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    public boolean isOnline() {
+        return "device".equals(state);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof AdbDevice)) return false;
+        AdbDevice other = (AdbDevice) o;
+        return serial.equals(other.serial) && state.equals(other.state) && properties.equals(other.properties);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serial, state, properties);
+    }
+
+    @Override
+    public String toString() {
+        return serial + "\t" + state;
+    }
+}
@@ -0,0 +1,12 @@
+package Utils;
+
+import java.io.IOException;
+
+/**
+ * adb server 返回 FAIL 或协议数据不符合预期时抛出
+ */
+public class AdbException extends IOException {
+    public AdbException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,113 @@
+package Utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每个设备保持常驻 adb shell 会话，避免每条命令都新建进程和adb传输通道
+ * 同一会话中的命令按顺序执行，一个设备可以有多个会话（通道），由 DeviceCommandScheduler 分配，
+ * 这样长时间运行的命令不会挡住其他通道上的命令；通道0就是原来的单个会话
+ */
+public class AdbShellPool {
+    private static final Map<String, AdbShellSession> SESSIONS = new ConcurrentHashMap<>();
+
+    static {
+        // 程序退出时关闭所有会话
+        Runtime.getRuntime().addShutdownHook(new Thread(AdbShellPool::closeAll, "adb-shell-pool-shutdown"));
+    }
+
+    private AdbShellPool() {
+    }
+
+    /**
+     * 获取设备的会话，不存在或已断开时重新创建
+     */
+    public static AdbShellSession session(String deviceId) throws IOException {
+        return session(deviceId, 0);
+    }
+
+    public static AdbShellSession session(String deviceId, int lane) throws IOException {
+        String key = key(deviceId, lane);
+        AdbShellSession session = SESSIONS.get(key);
+        if (session != null && session.isAlive()) {
+            return session;
+        }
+        synchronized (SESSIONS) {
+            session = SESSIONS.get(key);
+            if (session == null || !session.isAlive()) {
+                session = new AdbShellSession(deviceId);
+                SESSIONS.put(key, session);
+            }
+            return session;
+        }
+    }
+
+    /**
+     * 在设备上执行一组命令，所有命令一次写入同一个会话
+     * 不经过调度器，界面和后台任务请使用 DeviceCommandScheduler
+     */
+    public static List<CompletableFuture<CommandResult>> execute(String deviceId, List<String> commands) {
+        return execute(deviceId, 0, commands);
+    }
+
+    public static List<CompletableFuture<CommandResult>> execute(String deviceId, int lane, List<String> commands) {
+        try {
+            List<CompletableFuture<CommandResult>> futures = session(deviceId, lane).executeBatch(commands);
+            // 安装或卸载命令执行完后让设备已安装包的缓存失效
+            for (CompletableFuture<CommandResult> future : futures) {
+                future.thenAccept(result -> DevicePackageCache.invalidateIfMutating(deviceId, result.getCommand()));
+            }
+            return futures;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return commands.stream()
+                    .map(command -> CompletableFuture.completedFuture(
+                            new CommandResult(command, -1, "", "启动adb shell失败: " + e.getMessage(), 0)))
+                    .toList();
+        }
+    }
+
+    public static CompletableFuture<CommandResult> execute(String deviceId, String command) {
+        return execute(deviceId, List.of(command)).get(0);
+    }
+
+    /**
+     * 关闭某个设备的所有会话，例如设备断开时
+     */
+    public static void close(String deviceId) {
+        String prefix = deviceId + "#";
+        for (String key : SESSIONS.keySet()) {
+            if (key.equals(deviceId) || key.startsWith(prefix)) {
+                closeSession(key);
+            }
+        }
+    }
+
+    /**
+     * 关闭设备的一个通道，未完成的命令以失败结束，下次使用该通道时重新创建会话
+     */
+    public static void close(String deviceId, int lane) {
+        closeSession(key(deviceId, lane));
+    }
+
+    public static void closeAll() {
+        for (String key : SESSIONS.keySet()) {
+            closeSession(key);
+        }
+    }
+
+    private static void closeSession(String key) {
+        AdbShellSession session = SESSIONS.remove(key);
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    // 通道0沿用设备序列号作为键
+    private static String key(String deviceId, int lane) {
+        return lane == 0 ? deviceId : deviceId + "#" + lane;
+    }
+}
@@ -0,0 +1,238 @@
+package Utils;
+
+import interfaces.CommandOutputListener;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 一个设备上常驻的 adb shell 会话
+ * 命令通过stdin发送，每条命令后追加一行带序号和退出码的结束标记，
+ * 读取线程按标记把输出切分回各自的命令，因此多条命令只需要一次写入
+ */
+public class AdbShellSession {
+    private static final String MARKER_PREFIX = "__TOOLS_END_";
+
+    private final String deviceId;
+    private final String marker;
+    private final Process process;
+    private final Writer stdin;
+    private final Queue<PendingCommand> pending = new ConcurrentLinkedQueue<>();
+    private final StringBuilder adbErrors = new StringBuilder();
+    private long nextSeq = 0;
+    private volatile boolean closed = false;
+
+    // 等待结束标记的命令
+    private static class PendingCommand {
+        final long seq;
+        final String command;
+        final CommandOutputListener listener;
+        final StringBuilder output = new StringBuilder();
+        final CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        final long startTime = System.nanoTime();
+
+        PendingCommand(long seq, String command, CommandOutputListener listener) {
+            this.seq = seq;
+            this.command = command;
+            this.listener = listener;
+            if (listener != null) {
+                future.thenAccept(listener::onComplete);
+            }
+        }
+
+        long elapsedMillis() {
+            return (System.nanoTime() - startTime) / 1_000_000;
+        }
+    }
+
+    AdbShellSession(String deviceId) throws IOException {
+        this.deviceId = deviceId;
+        // 每个会话使用不同的标记，避免命令输出中偶然出现相同的文本
+        this.marker = MARKER_PREFIX + Long.toHexString(System.nanoTime()) + "_";
+        this.process = new ProcessBuilder("adb", "-s", deviceId, "shell").start();
+        this.stdin = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+
+        Thread stdoutReader = new Thread(this::readStdout, "adb-shell-" + deviceId);
+        stdoutReader.setDaemon(true);
+        stdoutReader.start();
+
+        Thread stderrReader = new Thread(this::readStderr, "adb-shell-err-" + deviceId);
+        stderrReader.setDaemon(true);
+        stderrReader.start();
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public boolean isAlive() {
+        return !closed && process.isAlive();
+    }
+
+    /**
+     * 在会话中执行一条命令
+     */
+    public CompletableFuture<CommandResult> execute(String command) {
+        return execute(command, null);
+    }
+
+    public CompletableFuture<CommandResult> execute(String command, CommandOutputListener listener) {
+        List<CompletableFuture<CommandResult>> futures = executeBatch(List.of(command), listener);
+        return futures.get(0);
+    }
+
+    /**
+     * 一次写入执行多条命令，按顺序返回每条命令的结果
+     */
+    public List<CompletableFuture<CommandResult>> executeBatch(List<String> commands) {
+        return executeBatch(commands, null);
+    }
+
+    public synchronized List<CompletableFuture<CommandResult>> executeBatch(List<String> commands,
+                                                                          CommandOutputListener listener) {
+        List<CompletableFuture<CommandResult>> futures = new ArrayList<>(commands.size());
+        StringBuilder script = new StringBuilder();
+        List<PendingCommand> batch = new ArrayList<>(commands.size());
+
+        for (String command : commands) {
+            PendingCommand cmd = new PendingCommand(nextSeq++, command, listener);
+            batch.add(cmd);
+            futures.add(cmd.future);
+            // stdin重定向到/dev/null，防止命令读走后续的命令；stderr合并到stdout
+            script.append("{ ").append(command).append("\n} </dev/null 2>&1; echo \"")
+                    .append(marker).append(cmd.seq).append(" $?\"\n");
+        }
+
+        // closed 在同一个锁内设置并清空队列，检查通过后入队的命令一定会被读取线程处理或清空
+        if (closed || !process.isAlive()) {
+            batch.forEach(cmd -> fail(cmd, "adb shell 会话已结束"));
+            return futures;
+        }
+
+        pending.addAll(batch);
+        try {
+            stdin.write(script.toString());
+            stdin.flush();
+        } catch (IOException e) {
+            close();
+        }
+        return futures;
+    }
+
+    /**
+     * 关闭会话，未完成的命令以失败结束
+     */
+    public void close() {
+        // 与 executeBatch 的写入共用同一个锁，exit 不会插进正在写入的命令中间
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                try {
+                    stdin.write("exit\n");
+                    stdin.flush();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+        process.destroy();
+        failAllPending();
+    }
+
+    private void readStdout() {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                handleLine(line);
+            }
+        } catch (IOException ignored) {
+            // 进程结束
+        }
+        failAllPending();
+    }
+
+    private void readStderr() {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (adbErrors) {
+                    adbErrors.append(line).append("\n");
+                }
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void handleLine(String line) {
+        PendingCommand current = pending.peek();
+        if (current == null) {
+            return;
+        }
+
+        int markerIndex = line.indexOf(marker);
+        if (markerIndex < 0) {
+            appendOutput(current, line);
+            return;
+        }
+
+        // 命令最后一行没有换行时，标记前面的部分仍属于命令输出
+        if (markerIndex > 0) {
+            appendOutput(current, line.substring(0, markerIndex));
+        }
+
+        String[] parts = line.substring(markerIndex + marker.length()).trim().split(" ");
+        int exitCode = -1;
+        try {
+            exitCode = Integer.parseInt(parts[parts.length - 1]);
+        } catch (NumberFormatException ignored) {
+        }
+
+        pending.poll();
+        current.future.complete(new CommandResult(current.command, exitCode,
+                current.output.toString(), "", current.elapsedMillis()));
+    }
+
+    private void appendOutput(PendingCommand cmd, String line) {
+        cmd.output.append(line).append("\n");
+        if (cmd.listener != null) {
+            try {
+                cmd.listener.onStdout(line);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // 与 executeBatch 的检查和入队互斥：先标记关闭再清空队列，之后不会再有命令入队
+    private void failAllPending() {
+        List<PendingCommand> drained = new ArrayList<>();
+        synchronized (this) {
+            closed = true;
+            PendingCommand cmd;
+            while ((cmd = pending.poll()) != null) {
+                drained.add(cmd);
+            }
+        }
+        String error;
+        synchronized (adbErrors) {
+            error = adbErrors.length() > 0 ? adbErrors.toString() : "adb shell 会话已结束";
+        }
+        // 在锁外完成future，回调中可以再提交命令
+        for (PendingCommand cmd : drained) {
+            fail(cmd, error);
+        }
+    }
+
+    private void fail(PendingCommand cmd, String error) {
+        cmd.future.complete(new CommandResult(cmd.command, -1, cmd.output.toString(), error, cmd.elapsedMillis()));
+    }
+}
@@ -0,0 +1,326 @@
+package Utils;
+
+import interfaces.InstallProgressListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * APK安装引擎
+ * - 多台设备并行安装，同时安装的设备数有上限
+ * - 设备支持 cmd 时使用流式安装（exec:cmd package install -S），文件直接写入安装会话，不落地
+ * - 否则退回 push + pm install，并把下一个APK的推送与上一个的安装重叠执行，pm install 经调度器以批量优先级执行
+ * - 设备上已安装相同包名和versionCode时跳过（可关闭），已安装的包由 DevicePackageCache 缓存
+ * 任务进度通过 InstallTask 的字段读取，状态变化时回调监听器
+ */
+public class ApkInstallEngine {
+    public static final int DEFAULT_MAX_DEVICES = 8;
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final String REMOTE_TMP_DIR = "/data/local/tmp/";
+    // 旧设备临时目录中同时存在的APK数：一个正在安装，一个已推送等待安装
+    private static final int MAX_STAGED_FILES = 2;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final AdbClient client;
+    private final ExecutorService deviceExecutor;
+    private final List<InstallTask> tasks = new CopyOnWriteArrayList<>();
+    private final List<InstallProgressListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean skipInstalled = true;
+
+    public ApkInstallEngine(AdbClient client) {
+        this(client, DEFAULT_MAX_DEVICES);
+    }
+
+    public ApkInstallEngine(AdbClient client, int maxDevices) {
+        this.client = client;
+        this.deviceExecutor = Executors.newFixedThreadPool(maxDevices, ApkInstallEngine::newThread);
+    }
+
+    public void addInstallProgressListener(InstallProgressListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 是否跳过设备上已安装相同版本的APK
+     */
+    public void setSkipInstalled(boolean skipInstalled) {
+        this.skipInstalled = skipInstalled;
+    }
+
+    public boolean isSkipInstalled() {
+        return skipInstalled;
+    }
+
+    /**
+     * 所有已提交的任务，包括已完成的
+     */
+    public List<InstallTask> getTasks() {
+        return tasks;
+    }
+
+    /**
+     * 清除已完成的任务
+     */
+    public void clearFinished() {
+        tasks.removeIf(InstallTask::isFinished);
+    }
+
+    /**
+     * 把apks安装到每台设备上，立即返回创建的任务
+     */
+    public List<InstallTask> install(List<String> deviceIds, List<Path> apks) {
+        List<InstallTask> created = new ArrayList<>();
+        for (String deviceId : deviceIds) {
+            List<InstallTask> deviceTasks = new ArrayList<>(apks.size());
+            for (Path apk : apks) {
+                long size;
+                try {
+                    size = Files.size(apk);
+                } catch (IOException e) {
+                    size = 0;
+                }
+                deviceTasks.add(new InstallTask(deviceId, apk, size));
+            }
+            tasks.addAll(deviceTasks);
+            created.addAll(deviceTasks);
+            deviceExecutor.submit(() -> installOnDevice(deviceId, deviceTasks));
+        }
+        return created;
+    }
+
+    private void installOnDevice(String deviceId, List<InstallTask> deviceTasks) {
+        for (InstallTask task : deviceTasks) {
+            task.setMetadata(ApkMetadataIndexer.getDefault().lookup(task.getApk()));
+        }
+        if (skipInstalled) {
+            deviceTasks = skipAlreadyInstalled(deviceId, deviceTasks);
+            if (deviceTasks.isEmpty()) {
+                return;
+            }
+        }
+        if (supportsStreamedInstall(deviceId)) {
+            for (InstallTask task : deviceTasks) {
+                streamedInstall(task);
+            }
+        } else {
+            pipelinedInstall(deviceId, deviceTasks);
+        }
+    }
+
+    /**
+     * 把设备上已有相同包名和versionCode的任务标记为跳过，返回仍需安装的任务
+     * 无法读取APK信息或查询设备失败时照常安装
+     */
+    private List<InstallTask> skipAlreadyInstalled(String deviceId, List<InstallTask> deviceTasks) {
+        Map<String, Long> installed;
+        try {
+            installed = DevicePackageCache.getPackages(deviceId);
+        } catch (IOException e) {
+            return deviceTasks;
+        }
+        List<InstallTask> remaining = new ArrayList<>(deviceTasks.size());
+        for (InstallTask task : deviceTasks) {
+            ApkMetadata metadata = task.getMetadata();
+            Long versionCode = metadata.isValid() ? installed.get(metadata.getPackageName()) : null;
+            if (versionCode != null && versionCode != DevicePackageCache.UNKNOWN_VERSION
+                    && versionCode == metadata.getVersionCode()) {
+                update(task, InstallTask.State.SKIPPED, "设备上已安装 " + metadata.getPackageName()
+                        + " versionCode " + versionCode);
+            } else {
+                remaining.add(task);
+            }
+        }
+        return remaining;
+    }
+
+    private boolean supportsStreamedInstall(String deviceId) {
+        try {
+            String features = client.hostQuery("host-serial:" + deviceId + ":features");
+            for (String feature : features.split(",")) {
+                if ("cmd".equals(feature.trim())) {
+                    return true;
+                }
+            }
+        } catch (IOException ignored) {
+        }
+        return false;
+    }
+
+    /**
+     * 流式安装：APK字节直接写入 cmd package install -S 的stdin
+     */
+    private void streamedInstall(InstallTask task) {
+        update(task, InstallTask.State.PUSHING, "");
+        String command = "cmd package install -r -S " + task.getSize();
+        try (SocketChannel channel = client.openExec(task.getDeviceId(), command)) {
+            transfer(task, channel);
+            update(task, InstallTask.State.INSTALLING, "");
+            finish(task, readAll(channel));
+        } catch (IOException e) {
+            update(task, InstallTask.State.FAILED, e.getMessage());
+        }
+    }
+
+    /**
+     * 旧设备：推送到临时目录后再 pm install
+     * 推送在当前线程依次进行，安装交给单独的线程，两者重叠执行
+     * 临时目录中最多保留 MAX_STAGED_FILES 个文件，每个文件安装后立即删除，避免大批量安装占满 /data
+     * 线程被中断时还没开始推送的任务标记为失败，已提交的安装照常完成并删除临时文件
+     */
+    private void pipelinedInstall(String deviceId, List<InstallTask> deviceTasks) {
+        ExecutorService installer = Executors.newSingleThreadExecutor(ApkInstallEngine::newThread);
+        Semaphore staged = new Semaphore(MAX_STAGED_FILES);
+        List<InstallTask> submitted = new ArrayList<>();
+        List<Future<?>> pending = new ArrayList<>();
+        int next = 0;
+        try {
+            for (; next < deviceTasks.size(); next++) {
+                InstallTask task = deviceTasks.get(next);
+                String remotePath = REMOTE_TMP_DIR + task.getFileName();
+                staged.acquire();
+                update(task, InstallTask.State.PUSHING, "");
+                try {
+                    client.push(deviceId, task.getApk(), remotePath, 0644, task::setBytesTransferred);
+                } catch (IOException e) {
+                    removeStaged(deviceId, remotePath);
+                    staged.release();
+                    update(task, InstallTask.State.FAILED, e.getMessage());
+                    continue;
+                }
+                submitted.add(task);
+                pending.add(installer.submit(() -> {
+                    try {
+                        pmInstall(task, remotePath);
+                    } finally {
+                        staged.release();
+                    }
+                }));
+            }
+            for (int i = 0; i < pending.size(); i++) {
+                try {
+                    pending.get(i).get();
+                } catch (ExecutionException e) {
+                    update(submitted.get(i), InstallTask.State.FAILED, String.valueOf(e.getCause()));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            for (int i = next; i < deviceTasks.size(); i++) {
+                update(deviceTasks.get(i), InstallTask.State.FAILED, "安装已中断");
+            }
+        } finally {
+            installer.shutdown();
+        }
+    }
+
+    // 经过 DeviceCommandScheduler 以批量优先级执行，不挡住界面上的按钮，并计入批量任务的并发上限
+    private void pmInstall(InstallTask task, String remotePath) {
+        update(task, InstallTask.State.INSTALLING, "");
+        String quotedPath = shellQuote(remotePath);
+        CompletableFuture<CommandResult> future = DeviceCommandScheduler.getDefault().execute(task.getDeviceId(),
+                DeviceCommandScheduler.Priority.BATCH, "pm install -r " + quotedPath + "; rm -f " + quotedPath);
+        CommandResult result;
+        try {
+            result = future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            update(task, InstallTask.State.FAILED, "安装已中断");
+            return;
+        } catch (ExecutionException e) {
+            removeStaged(task.getDeviceId(), remotePath);
+            update(task, InstallTask.State.FAILED, String.valueOf(e.getCause()));
+            return;
+        }
+        if (result.getExitCode() < 0) {
+            // 会话失败或被取消，命令可能没有执行到 rm
+            removeStaged(task.getDeviceId(), remotePath);
+        }
+        finish(task, result.getStdout() + result.getStderr());
+    }
+
+    // 删除推送失败或安装中断后留下的临时文件，失败时忽略
+    private void removeStaged(String deviceId, String remotePath) {
+        try {
+            client.shell(deviceId, "rm -f " + shellQuote(remotePath));
+        } catch (IOException ignored) {
+        }
+    }
+
+    // 文件名来自本地目录，可能含有引号、$或反引号，用单引号括起并转义其中的单引号
+    private static String shellQuote(String text) {
+        return "'" + text.replace("'", "'\\''") + "'";
+    }
+
+    private void transfer(InstallTask task, SocketChannel channel) throws IOException {
+        try (FileChannel file = FileChannel.open(task.getApk(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            long transferred = 0;
+            while (file.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                transferred += channel.write(buffer);
+                buffer.compact();
+                task.setBytesTransferred(transferred);
+            }
+        }
+    }
+
+    private static String readAll(SocketChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        StringBuilder output = new StringBuilder();
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            output.append(StandardCharsets.UTF_8.decode(buffer));
+            buffer.clear();
+        }
+        return output.toString();
+    }
+
+    private void finish(InstallTask task, String output) {
+        String message = output.trim();
+        if (message.contains("Success")) {
+            ApkMetadata metadata = task.getMetadata();
+            if (metadata != null && metadata.isValid()) {
+                DevicePackageCache.recordInstalled(task.getDeviceId(), metadata.getPackageName(),
+                        metadata.getVersionCode());
+            } else {
+                DevicePackageCache.invalidate(task.getDeviceId());
+            }
+            update(task, InstallTask.State.SUCCESS, message);
+        } else {
+            update(task, InstallTask.State.FAILED, message);
+        }
+    }
+
+    private void update(InstallTask task, InstallTask.State state, String message) {
+        task.setState(state);
+        task.setMessage(message == null ? "" : message);
+        for (InstallProgressListener listener : listeners) {
+            listener.onTaskUpdated(task);
+        }
+    }
+
+    private static Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "apk-install-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
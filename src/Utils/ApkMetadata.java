@@ -0,0 +1,56 @@
+package Utils;
+
+/**
+ * 从 AndroidManifest.xml 中读出的APK基本信息
+ */
+public class ApkMetadata {
+    // 解析失败或不是APK时使用，缓存下来避免反复解析
+    public static final ApkMetadata INVALID = new ApkMetadata("", 0, "", 0, 0);
+
+    private final String packageName;
+    private final long versionCode;
+    private final String versionName;
+    private final int minSdkVersion;
+    private final int targetSdkVersion;
+
+    public ApkMetadata(String packageName, long versionCode, String versionName,
+                       int minSdkVersion, int targetSdkVersion) {
+        this.packageName = packageName;
+        this.versionCode = versionCode;
+        this.versionName = versionName;
+        this.minSdkVersion = minSdkVersion;
+        this.targetSdkVersion = targetSdkVersion;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    // 包含 versionCodeMajor（高32位）
+    public long getVersionCode() {
+        return versionCode;
+    }
+
+    public String getVersionName() {
+        return versionName;
+    }
+
+    // 未声明时为0
+    public int getMinSdkVersion() {
+        return minSdkVersion;
+    }
+
+    // 未声明时为0
+    public int getTargetSdkVersion() {
+        return targetSdkVersion;
+    }
+
+    public boolean isValid() {
+        return !packageName.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return packageName + " " + versionName + " (" + versionCode + ")";
+    }
+}
@@ -0,0 +1,468 @@
+package Utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * APK元数据索引
+ * - 内存映射APK，只读取zip中央目录和 AndroidManifest.xml 一个条目，不解压整个文件
+ * - 直接解析二进制XML，取出包名、versionCode、versionName、minSdk和targetSdk
+ * - 多个APK按CPU核数并行解析
+ * - 结果以 路径+大小+修改时间 为键保存到磁盘缓存，文件没有变化时不再解析
+ */
+public class ApkMetadataIndexer {
+    public static final Path DEFAULT_CACHE_PATH = Paths.get("Data", ".cache", "apk-index.bin");
+
+    private static final int CACHE_MAGIC = 0x5441504b; // "TAPK"
+    private static final int CACHE_VERSION = 1;
+    private static final String MANIFEST_ENTRY = "AndroidManifest.xml";
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    // zip结构
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int EOCD_MIN_SIZE = 22;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    // 二进制XML的chunk类型
+    private static final int CHUNK_STRING_POOL = 0x0001;
+    private static final int CHUNK_XML = 0x0003;
+    private static final int CHUNK_RESOURCE_MAP = 0x0180;
+    private static final int CHUNK_START_ELEMENT = 0x0102;
+    private static final int UTF8_FLAG = 0x100;
+    private static final int TYPE_STRING = 0x03;
+
+    // android:xxx 属性的资源ID，混淆过的APK可能去掉了属性名，只能按ID识别
+    private static final int ATTR_VERSION_CODE = 0x0101021b;
+    private static final int ATTR_VERSION_NAME = 0x0101021c;
+    private static final int ATTR_MIN_SDK = 0x0101020c;
+    private static final int ATTR_TARGET_SDK = 0x01010270;
+    private static final int ATTR_VERSION_CODE_MAJOR = 0x01010576;
+
+    private static final ApkMetadataIndexer DEFAULT = new ApkMetadataIndexer(DEFAULT_CACHE_PATH,
+            Runtime.getRuntime().availableProcessors());
+
+    private final Path cachePath;
+    private final ExecutorService executor;
+    private final Map<Path, CacheEntry> cache = new ConcurrentHashMap<>();
+    private volatile boolean cacheLoaded = false;
+    private volatile boolean cacheDirty = false;
+
+    private static class CacheEntry {
+        final long size;
+        final long lastModified;
+        final ApkMetadata metadata;
+
+        CacheEntry(long size, long lastModified, ApkMetadata metadata) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.metadata = metadata;
+        }
+    }
+
+    public ApkMetadataIndexer(Path cachePath, int threads) {
+        this.cachePath = cachePath;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "apk-index-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static ApkMetadataIndexer getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * 并行索引一组APK，每得到一个结果就在工作线程上回调listener（缓存命中的也会回调）
+     * 全部完成后如果有新结果则写回磁盘缓存
+     * 不是APK或解析失败的文件回调 ApkMetadata.INVALID
+     */
+    public CompletableFuture<Void> index(List<Path> apks, BiConsumer<Path, ApkMetadata> listener) {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(apks.size());
+        for (Path apk : apks) {
+            futures.add(CompletableFuture.runAsync(() -> listener.accept(apk, lookup(apk)), executor));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .whenCompleteAsync((ignored, error) -> saveCache(), executor);
+    }
+
+    /**
+     * 读取单个APK的元数据，优先使用缓存
+     */
+    public ApkMetadata lookup(Path apk) {
+        ensureCacheLoaded();
+        Path key = apk.toAbsolutePath();
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return ApkMetadata.INVALID;
+        }
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().toMillis();
+
+        CacheEntry cached = cache.get(key);
+        if (cached != null && cached.size == size && cached.lastModified == lastModified) {
+            return cached.metadata;
+        }
+
+        ApkMetadata metadata;
+        try {
+            metadata = read(key);
+        } catch (IOException | RuntimeException e) {
+            metadata = ApkMetadata.INVALID;
+        }
+        cache.put(key, new CacheEntry(size, lastModified, metadata));
+        cacheDirty = true;
+        return metadata;
+    }
+
+    // ==================== zip ====================
+
+    /**
+     * 解析APK中的 AndroidManifest.xml
+     */
+    public static ApkMetadata read(Path apk) throws IOException {
+        try (FileChannel channel = FileChannel.open(apk, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize < EOCD_MIN_SIZE || fileSize > Integer.MAX_VALUE) {
+                throw new IOException("不支持的文件大小: " + fileSize);
+            }
+            MappedByteBuffer zip = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            zip.order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer manifest = readManifestEntry(zip);
+            return parseManifest(manifest.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    private static ByteBuffer readManifestEntry(ByteBuffer zip) throws IOException {
+        int eocd = findEndOfCentralDirectory(zip);
+        int entryCount = zip.getShort(eocd + 10) & 0xffff;
+        int offset = (int) (zip.getInt(eocd + 16) & 0xffffffffL);
+
+        byte[] target = MANIFEST_ENTRY.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < entryCount; i++) {
+            if (offset + 46 > zip.limit() || zip.getInt(offset) != CENTRAL_SIGNATURE) {
+                throw new IOException("zip中央目录损坏");
+            }
+            int method = zip.getShort(offset + 10) & 0xffff;
+            long compressedSize = zip.getInt(offset + 20) & 0xffffffffL;
+            long uncompressedSize = zip.getInt(offset + 24) & 0xffffffffL;
+            int nameLength = zip.getShort(offset + 28) & 0xffff;
+            int extraLength = zip.getShort(offset + 30) & 0xffff;
+            int commentLength = zip.getShort(offset + 32) & 0xffff;
+            int localOffset = zip.getInt(offset + 42);
+
+            if (nameEquals(zip, offset + 46, nameLength, target)) {
+                return readEntryData(zip, localOffset, method, (int) compressedSize, (int) uncompressedSize);
+            }
+            offset += 46 + nameLength + extraLength + commentLength;
+        }
+        throw new IOException("没有找到 " + MANIFEST_ENTRY);
+    }
+
+    // 中央目录结束记录在文件末尾，后面可能跟着最长65535字节的注释
+    private static int findEndOfCentralDirectory(ByteBuffer zip) throws IOException {
+        int last = zip.limit() - EOCD_MIN_SIZE;
+        int first = Math.max(0, last - MAX_COMMENT_SIZE);
+        for (int position = last; position >= first; position--) {
+            if (zip.getInt(position) == EOCD_SIGNATURE
+                    && position + EOCD_MIN_SIZE + (zip.getShort(position + 20) & 0xffff) == zip.limit()) {
+                return position;
+            }
+        }
+        throw new IOException("不是zip文件");
+    }
+
+    private static boolean nameEquals(ByteBuffer zip, int position, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (zip.get(position + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer readEntryData(ByteBuffer zip, int localOffset, int method,
+                                            int compressedSize, int uncompressedSize) throws IOException {
+        if (zip.getInt(localOffset) != LOCAL_SIGNATURE) {
+            throw new IOException("zip本地文件头损坏");
+        }
+        int nameLength = zip.getShort(localOffset + 26) & 0xffff;
+        int extraLength = zip.getShort(localOffset + 28) & 0xffff;
+        int dataOffset = localOffset + 30 + nameLength + extraLength;
+        ByteBuffer data = zip.duplicate();
+        data.position(dataOffset).limit(dataOffset + compressedSize);
+        data = data.slice();
+
+        if (method == 0) {
+            return data;
+        }
+        if (method != 8) {
+            throw new IOException("不支持的压缩方式: " + method);
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteBuffer output = ByteBuffer.allocate(uncompressedSize);
+            while (output.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(output) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+            output.flip();
+            return output;
+        } catch (DataFormatException e) {
+            throw new IOException("解压 " + MANIFEST_ENTRY + " 失败", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // ==================== 二进制XML ====================
+
+    /**
+     * 遍历二进制XML的chunk，只关心字符串池、资源ID表以及 manifest 和 uses-sdk 两个元素
+     */
+    static ApkMetadata parseManifest(ByteBuffer xml) throws IOException {
+        if ((xml.getShort(0) & 0xffff) != CHUNK_XML) {
+            throw new IOException("不是二进制XML");
+        }
+        String[] strings = new String[0];
+        int[] resourceIds = new int[0];
+        String packageName = "";
+        long versionCode = 0;
+        long versionCodeMajor = 0;
+        String versionName = "";
+        int minSdk = 0;
+        int targetSdk = 0;
+
+        int position = xml.getShort(2) & 0xffff;
+        int end = Math.min(xml.limit(), xml.getInt(4));
+        while (position + 8 <= end) {
+            int type = xml.getShort(position) & 0xffff;
+            int headerSize = xml.getShort(position + 2) & 0xffff;
+            int chunkSize = xml.getInt(position + 4);
+            if (chunkSize < 8 || position + chunkSize > end) {
+                throw new IOException("二进制XML损坏");
+            }
+
+            if (type == CHUNK_STRING_POOL) {
+                strings = readStringPool(xml, position);
+            } else if (type == CHUNK_RESOURCE_MAP) {
+                resourceIds = new int[(chunkSize - headerSize) / 4];
+                for (int i = 0; i < resourceIds.length; i++) {
+                    resourceIds[i] = xml.getInt(position + headerSize + i * 4);
+                }
+            } else if (type == CHUNK_START_ELEMENT) {
+                int body = position + headerSize;
+                String element = stringAt(strings, xml.getInt(body + 4));
+                boolean isManifest = "manifest".equals(element);
+                boolean isUsesSdk = "uses-sdk".equals(element);
+                if (isManifest || isUsesSdk) {
+                    int attributeStart = xml.getShort(body + 8) & 0xffff;
+                    int attributeSize = xml.getShort(body + 10) & 0xffff;
+                    int attributeCount = xml.getShort(body + 12) & 0xffff;
+                    for (int i = 0; i < attributeCount; i++) {
+                        int attribute = body + attributeStart + i * attributeSize;
+                        int nameIndex = xml.getInt(attribute + 4);
+                        String name = stringAt(strings, nameIndex);
+                        int resourceId = nameIndex >= 0 && nameIndex < resourceIds.length ? resourceIds[nameIndex] : 0;
+                        int rawValue = xml.getInt(attribute + 8);
+                        int dataType = xml.get(attribute + 15) & 0xff;
+                        int data = xml.getInt(attribute + 16);
+                        String text = dataType == TYPE_STRING ? stringAt(strings, data) : stringAt(strings, rawValue);
+
+                        if (isManifest) {
+                            if ("package".equals(name)) {
+                                packageName = text;
+                            } else if (resourceId == ATTR_VERSION_CODE || "versionCode".equals(name)) {
+                                versionCode = data & 0xffffffffL;
+                            } else if (resourceId == ATTR_VERSION_CODE_MAJOR || "versionCodeMajor".equals(name)) {
+                                versionCodeMajor = data & 0xffffffffL;
+                            } else if (resourceId == ATTR_VERSION_NAME || "versionName".equals(name)) {
+                                versionName = dataType == TYPE_STRING ? text : String.valueOf(data);
+                            }
+                        } else if (resourceId == ATTR_MIN_SDK || "minSdkVersion".equals(name)) {
+                            minSdk = sdkValue(dataType, data, text);
+                        } else if (resourceId == ATTR_TARGET_SDK || "targetSdkVersion".equals(name)) {
+                            targetSdk = sdkValue(dataType, data, text);
+                        }
+                    }
+                    if (isUsesSdk) {
+                        break; // uses-sdk 在 manifest 之后，后面的元素不再需要
+                    }
+                }
+            }
+            position += chunkSize;
+        }
+        if (packageName.isEmpty()) {
+            throw new IOException("manifest中没有package属性");
+        }
+        return new ApkMetadata(packageName, (versionCodeMajor << 32) | versionCode, versionName, minSdk, targetSdk);
+    }
+
+    // 预览版SDK用代号表示（例如 "VanillaIceCream"），无法转换成数字时返回0
+    private static int sdkValue(int dataType, int data, String text) {
+        if (dataType != TYPE_STRING) {
+            return data;
+        }
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String stringAt(String[] strings, int index) {
+        return index >= 0 && index < strings.length ? strings[index] : "";
+    }
+
+    private static String[] readStringPool(ByteBuffer xml, int chunk) {
+        int headerSize = xml.getShort(chunk + 2) & 0xffff;
+        int stringCount = xml.getInt(chunk + 8);
+        int flags = xml.getInt(chunk + 16);
+        int stringsStart = chunk + xml.getInt(chunk + 20);
+        boolean utf8 = (flags & UTF8_FLAG) != 0;
+
+        String[] strings = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            int position = stringsStart + xml.getInt(chunk + headerSize + i * 4);
+            strings[i] = utf8 ? readUtf8(xml, position) : readUtf16(xml, position);
+        }
+        return strings;
+    }
+
+    // UTF-8字符串：字符数和字节数各占1或2字节（最高位表示是否有第二个字节），后面是字节内容
+    private static String readUtf8(ByteBuffer xml, int position) {
+        int charLength = xml.get(position) & 0xff;
+        position += (charLength & 0x80) != 0 ? 2 : 1;
+        int byteLength = xml.get(position) & 0xff;
+        if ((byteLength & 0x80) != 0) {
+            byteLength = ((byteLength & 0x7f) << 8) | (xml.get(position + 1) & 0xff);
+            position += 2;
+        } else {
+            position += 1;
+        }
+        byte[] bytes = new byte[byteLength];
+        for (int i = 0; i < byteLength; i++) {
+            bytes[i] = xml.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // UTF-16字符串：长度占2或4字节，后面是UTF-16LE字符
+    private static String readUtf16(ByteBuffer xml, int position) {
+        int length = xml.getShort(position) & 0xffff;
+        position += 2;
+        if ((length & 0x8000) != 0) {
+            length = ((length & 0x7fff) << 16) | (xml.getShort(position) & 0xffff);
+            position += 2;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = xml.getChar(position + i * 2);
+        }
+        return new String(chars);
+    }
+
+    // ==================== 磁盘缓存 ====================
+    // 格式：magic, version, 条目数, 每个条目: path, size, mtime, package, versionCode, versionName, minSdk, targetSdk
+
+    private void ensureCacheLoaded() {
+        if (cacheLoaded) {
+            return;
+        }
+        synchronized (this) {
+            if (cacheLoaded) {
+                return;
+            }
+            if (Files.isRegularFile(cachePath)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(cachePath)))) {
+                    if (in.readInt() == CACHE_MAGIC && in.readInt() == CACHE_VERSION) {
+                        int count = in.readInt();
+                        for (int i = 0; i < count; i++) {
+                            Path path = Paths.get(in.readUTF());
+                            long size = in.readLong();
+                            long lastModified = in.readLong();
+                            ApkMetadata metadata = new ApkMetadata(in.readUTF(), in.readLong(), in.readUTF(),
+                                    in.readInt(), in.readInt());
+                            cache.put(path, new CacheEntry(size, lastModified,
+                                    metadata.isValid() ? metadata : ApkMetadata.INVALID));
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    // 缓存损坏时全部重新解析
+                    cache.clear();
+                }
+            }
+            cacheLoaded = true;
+        }
+    }
+
+    /**
+     * 有新结果时把缓存写回磁盘，已经不存在的文件不再保存
+     */
+    public synchronized void saveCache() {
+        if (!cacheDirty) {
+            return;
+        }
+        cacheDirty = false;
+        cache.keySet().removeIf(path -> !Files.exists(path));
+        try {
+            Files.createDirectories(cachePath.toAbsolutePath().getParent());
+            Path tmp = cachePath.resolveSibling(cachePath.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                List<Map.Entry<Path, CacheEntry>> entries = new ArrayList<>(cache.entrySet());
+                out.writeInt(CACHE_MAGIC);
+                out.writeInt(CACHE_VERSION);
+                out.writeInt(entries.size());
+                for (Map.Entry<Path, CacheEntry> entry : entries) {
+                    CacheEntry value = entry.getValue();
+                    out.writeUTF(entry.getKey().toString());
+                    out.writeLong(value.size);
+                    out.writeLong(value.lastModified);
+                    out.writeUTF(value.metadata.getPackageName());
+                    out.writeLong(value.metadata.getVersionCode());
+                    out.writeUTF(value.metadata.getVersionName());
+                    out.writeInt(value.metadata.getMinSdkVersion());
+                    out.writeInt(value.metadata.getTargetSdkVersion());
+                }
+            }
+            Files.move(tmp, cachePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // 缓存只是加速手段，写入失败不影响使用
+            System.err.println("写入APK索引缓存失败: " + e.getMessage());
+        }
+    }
+}
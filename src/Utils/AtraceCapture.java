@@ -0,0 +1,201 @@
+package Utils;
+
+import interfaces.TraceEventListener;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次 atrace --stream 抓取：
+ * - 设备上的ftrace文本通过 exec: 连续流回主机，边接收边交给 SystraceParser 解析
+ * - 原始文本可选地同时写入文件，内存中不保留整段输出
+ * - 没有固定时长，调用 stop 后结束
+ * 进度通过 getState/getBytesReceived/getLineCount 读取，可以在任意线程轮询
+ */
+public class AtraceCapture {
+    public enum State {
+        STARTING("启动中"),
+        STREAMING("抓取中"),
+        STOPPED("已停止"),
+        FAILED("失败");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static final String DEFAULT_CATEGORIES = "gfx input view wm am sched freq";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // 连接关闭时atrace可能来不及恢复ftrace设置，停止后再执行一次
+    private static final String CLEANUP_COMMAND = "atrace --async_stop >/dev/null 2>&1";
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final AdbClient client;
+    private final String serial;
+    private final String categories;
+    private final String appName;
+    private final Path output;
+    private final SystraceParser parser;
+    private volatile State state = State.STARTING;
+    private volatile boolean stopRequested = false;
+    private volatile long bytesReceived = 0;
+    private volatile long lineCount = 0;
+    private volatile String message = "";
+    private volatile SocketChannel channel;
+
+    /**
+     * @param categories atrace类别，空格分隔
+     * @param appName 传给 -a 的应用包名，为空时不抓应用的trace标记
+     * @param output 原始文本的保存路径，为null时不保存
+     * @param listener 解析出的事件回调，在抓取线程上执行
+     */
+    public AtraceCapture(AdbClient client, String serial, String categories, String appName, Path output,
+                         TraceEventListener listener) {
+        this.client = client;
+        this.serial = serial;
+        this.categories = categories == null || categories.trim().isEmpty() ? DEFAULT_CATEGORIES : categories.trim();
+        this.appName = appName == null ? "" : appName.trim();
+        this.output = output;
+        this.parser = new SystraceParser(listener);
+    }
+
+    /**
+     * 在后台线程开始抓取，返回的future在抓取结束（stop或连接断开）后完成
+     */
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                capture();
+                future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                state = State.FAILED;
+                message = e.getMessage() == null ? "" : e.getMessage();
+                future.completeExceptionally(e);
+            } finally {
+                cleanup();
+            }
+        }, "atrace-capture-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * 停止抓取，已接收的数据都会解析完
+     */
+    public void stop() {
+        stopRequested = true;
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    public boolean isFinished() {
+        return state == State.STOPPED || state == State.FAILED;
+    }
+
+    String buildCommand() {
+        StringBuilder command = new StringBuilder("atrace --stream");
+        if (!appName.isEmpty()) {
+            command.append(" -a ").append(appName);
+        }
+        return command.append(' ').append(categories).append(" 2>&1").toString();
+    }
+
+    private void capture() throws IOException {
+        FileChannel file = null;
+        try (SocketChannel ch = client.openExec(serial, buildCommand())) {
+            channel = ch;
+            if (output != null) {
+                Files.createDirectories(output.toAbsolutePath().getParent());
+                file = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+            }
+            state = State.STREAMING;
+            // 堆内缓冲区，解析器直接读底层数组
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            long received = 0;
+            while (!stopRequested) {
+                int read;
+                try {
+                    read = ch.read(buffer);
+                } catch (IOException e) {
+                    if (stopRequested) {
+                        break; // stop关闭了连接
+                    }
+                    throw e;
+                }
+                if (read < 0) {
+                    break;
+                }
+                parser.feed(buffer.array(), 0, buffer.position());
+                if (file != null) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        file.write(buffer);
+                    }
+                }
+                buffer.clear();
+                received += read;
+                bytesReceived = received;
+                lineCount = parser.getLineCount();
+            }
+            parser.finish();
+            lineCount = parser.getLineCount();
+            state = State.STOPPED;
+            message = received == 0 ? "atrace没有输出" : "";
+        } finally {
+            channel = null;
+            if (file != null) {
+                file.close();
+            }
+        }
+    }
+
+    // 恢复设备上的ftrace设置，失败只记录不抛出
+    private void cleanup() {
+        try {
+            client.shell(serial, CLEANUP_COMMAND);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("恢复atrace设置失败: " + e.getMessage());
+        }
+    }
+}
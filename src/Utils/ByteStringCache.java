@@ -0,0 +1,134 @@
+package Utils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 按UTF-8字节内容缓存String，相同内容复用同一个实例，命中时不分配内存
+ * 供trace、systrace、logcat解码器复用名字、tag等取值很少的字符串，复用后也可以按引用比较
+ * 条目数有上限，满了以后直接创建新字符串；超过 MAX_LENGTH 的内容不缓存
+ * 不是线程安全的，只能在一个线程上调用
+ */
+class ByteStringCache {
+    static final int DEFAULT_MAX_ENTRIES = 1 << 16;
+    private static final int MAX_LENGTH = 256;
+
+    private final int maxEntries;
+    private byte[][] keys = new byte[1024][];
+    private String[] values = new String[1024];
+    private int size = 0;
+
+    ByteStringCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    ByteStringCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * data[start, end) 对应的字符串
+     */
+    String get(byte[] data, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return new String(data, start, length, StandardCharsets.UTF_8);
+        }
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + data[i];
+        }
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != null) {
+            if (Arrays.equals(keys[slot], 0, keys[slot].length, data, start, end)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = new String(data, start, length, StandardCharsets.UTF_8);
+        if (size < maxEntries) {
+            add(slot, Arrays.copyOfRange(data, start, end), value);
+        }
+        return value;
+    }
+
+    /**
+     * buffer中绝对位置 [start, end) 对应的字符串，不改变buffer的position，适合映射区
+     */
+    String get(ByteBuffer buffer, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH) {
+            return decode(buffer, start, length);
+        }
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int mask = keys.length - 1;
+        int slot = mix(hash) & mask;
+        while (keys[slot] != null) {
+            if (matches(keys[slot], buffer, start, length)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        String value = decode(buffer, start, length);
+        if (size < maxEntries) {
+            byte[] key = new byte[length];
+            buffer.get(start, key);
+            add(slot, key, value);
+        }
+        return value;
+    }
+
+    private void add(int slot, byte[] key, String value) {
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private static String decode(ByteBuffer buffer, int start, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean matches(byte[] key, ByteBuffer buffer, int start, int length) {
+        if (key.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        String[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        values = new String[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) {
+                continue;
+            }
+            int slot = mix(Arrays.hashCode(oldKeys[i])) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
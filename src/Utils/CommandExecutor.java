@@ -1,56 +1,146 @@
 package Utils;
 
+import interfaces.CommandOutputListener;
+
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class CommandExecutor {
+    // 读取进程输出的线程池，守护线程，不阻止程序退出
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ExecutorService IO_POOL = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "cmd-io-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
     /**
      * 执行CMD命令的公共函数，兼容Windows和Linux
+     * 会阻塞到命令结束，界面代码请使用executeAsync
      * @param command 要执行的命令
      * @return 命令执行结果
      */
     public static String executeCommand(String command) {
-        StringBuilder output = new StringBuilder();
-        Process process = null;
-        
         try {
-            // 根据操作系统类型选择执行方式
-            String os = System.getProperty("os.name").toLowerCase();
-            ProcessBuilder processBuilder;
-            
-            if (os.contains("win")) {
-                // Windows系统
-                processBuilder = new ProcessBuilder("cmd.exe", "/c", command);
-            } else {
-                // Linux/Unix/Mac系统
-                processBuilder = new ProcessBuilder("/bin/sh", "-c", command);
+            CommandResult result = start(command, null, true).get();
+            if (result.getStderr().isEmpty()) {
+                return result.getStdout();
+            }
+            return result.getStdout() + result.getStderr();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "执行命令出错: " + e.getMessage();
+        }
+    }
+
+    /**
+     * 异步执行命令，同时读取stdout和stderr，逐行回调listener
+     * 输出只交给listener，不在结果中保留，适合长时间运行或输出很多的命令
+     * @param command 要执行的命令
+     * @param listener 输出监听器，在IO线程上回调
+     * @return 命令句柄
+     */
+    public static CommandHandle executeAsync(String command, CommandOutputListener listener) {
+        return start(command, listener, false);
+    }
+
+    /**
+     * 异步执行命令，输出收集到CommandResult中
+     */
+    public static CommandHandle executeAsync(String command) {
+        return start(command, null, true);
+    }
+
+    /**
+     * 根据操作系统类型选择执行方式
+     */
+    static ProcessBuilder createProcessBuilder(String command) {
+        String os = System.getProperty("os.name").toLowerCase();
+        if (os.contains("win")) {
+            // Windows系统
+            return new ProcessBuilder("cmd.exe", "/c", command);
+        }
+        // Linux/Unix/Mac系统
+        return new ProcessBuilder("/bin/sh", "-c", command);
+    }
+
+    private static CommandHandle start(String command, CommandOutputListener listener, boolean capture) {
+        long startTime = System.nanoTime();
+        CompletableFuture<CommandResult> future = new CompletableFuture<>();
+        if (listener != null) {
+            future.thenAccept(listener::onComplete);
+        }
+
+        Process process;
+        try {
+            process = createProcessBuilder(command).start();
+        } catch (IOException e) {
+            e.printStackTrace();
+            future.complete(new CommandResult(command, -1, "", "执行命令出错: " + e.getMessage(), 0));
+            return new CommandHandle(command, null, future);
+        }
+
+        // 关闭stdin，避免子进程等待输入
+        try {
+            process.getOutputStream().close();
+        } catch (IOException ignored) {
+        }
+
+        StringBuilder stdout = capture ? new StringBuilder() : null;
+        StringBuilder stderr = capture ? new StringBuilder() : null;
+
+        // stdout和stderr分别在独立线程上读取，防止某一个管道写满导致子进程阻塞
+        CompletableFuture<Void> stdoutPump = CompletableFuture.runAsync(
+                () -> pump(process.getInputStream(), stdout, listener, false), IO_POOL);
+        CompletableFuture<Void> stderrPump = CompletableFuture.runAsync(
+                () -> pump(process.getErrorStream(), stderr, listener, true), IO_POOL);
+
+        CompletableFuture.allOf(stdoutPump, stderrPump).whenCompleteAsync((ignored, error) -> {
+            int exitCode;
+            try {
+                exitCode = process.waitFor();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exitCode = -1;
             }
-            
-            process = processBuilder.start();
-            
-            // 读取命令执行结果
-            BufferedReader reader = new BufferedReader(
-                new InputStreamReader(process.getInputStream())
-            );
-            
+            long elapsed = (System.nanoTime() - startTime) / 1_000_000;
+            future.complete(new CommandResult(command, exitCode,
+                    stdout == null ? "" : stdout.toString(),
+                    stderr == null ? "" : stderr.toString(),
+                    elapsed));
+        }, IO_POOL);
+
+        return new CommandHandle(command, process, future);
+    }
+
+    private static void pump(InputStream in, StringBuilder sink, CommandOutputListener listener, boolean isStderr) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in))) {
             String line;
             while ((line = reader.readLine()) != null) {
-                output.append(line).append("\n");
-            }
-            
-            // 等待进程执行完成
-            process.waitFor();
-            
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-            return "执行命令出错: " + e.getMessage();
-        } finally {
-            if (process != null) {
-                process.destroy();
+                if (sink != null) {
+                    sink.append(line).append("\n");
+                }
+                if (listener != null) {
+                    try {
+                        if (isStderr) {
+                            listener.onStderr(line);
+                        } else {
+                            listener.onStdout(line);
+                        }
+                    } catch (RuntimeException e) {
+                        // 监听器异常不能中断读取，否则管道写满后子进程会卡住
+                        e.printStackTrace();
+                    }
+                }
             }
+        } catch (IOException e) {
+            // 进程被取消时管道会被关闭，这里忽略
         }
-        
-        return output.toString();
     }
 }
@@ -0,0 +1,53 @@
+package Utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 异步命令的句柄，可以等待结果或取消正在运行的进程
+ */
+public class CommandHandle {
+    private final String command;
+    private final Process process;
+    private final CompletableFuture<CommandResult> future;
+
+    CommandHandle(String command, Process process, CompletableFuture<CommandResult> future) {
+        this.command = command;
+        this.process = process;
+        this.future = future;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public CompletableFuture<CommandResult> future() {
+        return future;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    /**
+     * 阻塞等待命令结束，不要在EDT上调用
+     */
+    public CommandResult get() throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // 执行过程中的异常已在CommandExecutor里转换成结果，这里只是兜底
+            return new CommandResult(command, -1, "", String.valueOf(e.getCause()), 0);
+        }
+    }
+
+    /**
+     * 取消命令：结束进程及其子进程，读取线程会随管道关闭而退出
+     */
+    public void cancel() {
+        if (process != null && process.isAlive()) {
+            process.descendants().forEach(ProcessHandle::destroy);
+            process.destroy();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package Utils;
+
+/**
+ * 一次命令执行的结果：退出码、输出和墙钟耗时
+ */
+public class CommandResult {
+    private final String command;
+    private final int exitCode;
+    private final String stdout;
+    private final String stderr;
+    private final long elapsedMillis;
+
+    public CommandResult(String command, int exitCode, String stdout, String stderr, long elapsedMillis) {
+        this.command = command;
+        this.exitCode = exitCode;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public String getStdout() {
+        return stdout;
+    }
+
+    public String getStderr() {
+        return stderr;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public boolean isSuccess() {
+        return exitCode == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + command + "] exit=" + exitCode + " 耗时=" + elapsedMillis + "ms";
+    }
+}
@@ -0,0 +1,443 @@
+package Utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 设备命令的调度器，放在 AdbShellPool 前面：
+ * - 三个优先级：交互（界面按钮）> 批量 > 后台（采样等），同一设备上高优先级的任务先出队
+ * - 每个设备有若干通道（独立的shell会话），通道0保留给交互命令，长时间运行的批量或后台命令不会挡住按钮
+ * - 批量和后台任务在所有设备上的并发数有上限，交互命令另有一个上限，各设备轮流出队，某台设备积压很多任务也不会饿死其他设备
+ * - 取消返回的任意一个未完成的future即取消整个任务：排队中的直接移除，执行中的关闭其通道
+ * 交互优先级用于单台设备上的按钮，批量用于多设备执行和APK安装，后台用于定时采样
+ * 每个优先级记录排队深度和等待时间（提交到开始执行），用来确认交互命令的排队时间
+ */
+public class DeviceCommandScheduler {
+    public enum Priority {
+        INTERACTIVE("交互"),
+        BATCH("批量"),
+        BACKGROUND("后台");
+
+        private final String label;
+
+        Priority(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static final int DEFAULT_LANES_PER_DEVICE = 3;
+    public static final int DEFAULT_MAX_SHARED_RUNNING = 8;
+    // 交互命令同样限制在所有设备上同时执行的数量，避免一次打开过多adb进程
+    public static final int DEFAULT_MAX_INTERACTIVE_RUNNING = 8;
+    private static final int RECENT_WAITS = 256;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ExecutorService LAUNCHER = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "device-scheduler-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static DeviceCommandScheduler defaultScheduler;
+
+    private final int lanesPerDevice;
+    private final int maxSharedRunning;
+    private final int maxInteractiveRunning;
+    private final Object lock = new Object();
+    private final Map<String, DeviceQueue> devices = new LinkedHashMap<>();
+    private final List<DeviceQueue> deviceOrder = new ArrayList<>();
+    // 每个优先级下一次从哪台设备开始找，轮流出队
+    private final int[] cursors = new int[Priority.values().length];
+    private final PriorityStats[] stats = new PriorityStats[Priority.values().length];
+    private int sharedRunning = 0;
+    private int interactiveRunning = 0;
+
+    // 一次提交：同一设备上按顺序执行的一组命令
+    private static class Job {
+        final String deviceId;
+        final Priority priority;
+        final List<String> commands;
+        final List<CompletableFuture<CommandResult>> results = new ArrayList<>();
+        final long submitNanos = System.nanoTime();
+        int lane = -1;
+        // 命令已经写入通道的会话，取消时需要关闭通道
+        boolean started = false;
+        boolean cancelled = false;
+        boolean finished = false;
+
+        Job(String deviceId, Priority priority, List<String> commands) {
+            this.deviceId = deviceId;
+            this.priority = priority;
+            this.commands = commands;
+            for (int i = 0; i < commands.size(); i++) {
+                results.add(new CompletableFuture<>());
+            }
+        }
+
+        void completeCancelled() {
+            long elapsed = (System.nanoTime() - submitNanos) / 1_000_000;
+            for (int i = 0; i < commands.size(); i++) {
+                results.get(i).complete(new CommandResult(commands.get(i), -1, "", "已取消", elapsed));
+            }
+        }
+    }
+
+    private static class DeviceQueue {
+        final String deviceId;
+        // 按优先级的序号取
+        final List<ArrayDeque<Job>> queues = new ArrayList<>();
+        final boolean[] busyLanes;
+        // 取消任务后正在关闭会话的通道，关闭完成前不交给其他任务
+        final boolean[] closingLanes;
+
+        DeviceQueue(String deviceId, int lanes) {
+            this.deviceId = deviceId;
+            for (int i = 0; i < Priority.values().length; i++) {
+                queues.add(new ArrayDeque<>());
+            }
+            this.busyLanes = new boolean[lanes];
+            this.closingLanes = new boolean[lanes];
+        }
+
+        // 交互命令优先用通道0，其余任务只用通道1以后；只有一个通道时大家共用
+        int freeLane(Priority priority) {
+            int first = priority == Priority.INTERACTIVE || busyLanes.length == 1 ? 0 : 1;
+            for (int lane = first; lane < busyLanes.length; lane++) {
+                if (!busyLanes[lane]) {
+                    return lane;
+                }
+            }
+            return -1;
+        }
+
+        int queued() {
+            int total = 0;
+            for (ArrayDeque<Job> queue : queues) {
+                total += queue.size();
+            }
+            return total;
+        }
+    }
+
+    private static class PriorityStats {
+        int queued;
+        int running;
+        long dispatched;
+        long completed;
+        long cancelled;
+        long totalWaitNanos;
+        long maxWaitNanos;
+        final long[] recentWaits = new long[RECENT_WAITS];
+        int recentCount;
+
+        void recordWait(long waitNanos) {
+            dispatched++;
+            totalWaitNanos += waitNanos;
+            maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            recentWaits[recentCount++ % RECENT_WAITS] = waitNanos;
+        }
+
+        long percentileNanos(double percentile) {
+            int size = Math.min(recentCount, RECENT_WAITS);
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(recentWaits, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(percentile * size) - 1)];
+        }
+    }
+
+    /**
+     * 某个优先级的统计快照，等待时间是提交到开始执行的时间，p95按最近256次计算
+     */
+    public static class Stats {
+        public final Priority priority;
+        public final int queued;
+        public final int running;
+        public final long completed;
+        public final long cancelled;
+        public final double averageWaitMillis;
+        public final double p95WaitMillis;
+        public final double maxWaitMillis;
+
+        Stats(Priority priority, PriorityStats stats) {
+            this.priority = priority;
+            this.queued = stats.queued;
+            this.running = stats.running;
+            this.completed = stats.completed;
+            this.cancelled = stats.cancelled;
+            this.averageWaitMillis = stats.dispatched == 0 ? 0 : stats.totalWaitNanos / 1e6 / stats.dispatched;
+            this.p95WaitMillis = stats.percentileNanos(0.95) / 1e6;
+            this.maxWaitMillis = stats.maxWaitNanos / 1e6;
+        }
+    }
+
+    /**
+     * @param lanesPerDevice 每个设备的通道数，即同一设备上同时执行的任务数上限
+     * @param maxSharedRunning 批量和后台任务在所有设备上同时执行的上限
+     * @param maxInteractiveRunning 交互命令在所有设备上同时执行的上限，与批量和后台任务分开计数，
+     *                              后台任务占满时按钮仍能执行
+     */
+    public DeviceCommandScheduler(int lanesPerDevice, int maxSharedRunning, int maxInteractiveRunning) {
+        this.lanesPerDevice = Math.max(1, lanesPerDevice);
+        this.maxSharedRunning = Math.max(1, maxSharedRunning);
+        this.maxInteractiveRunning = Math.max(1, maxInteractiveRunning);
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new PriorityStats();
+        }
+    }
+
+    public static synchronized DeviceCommandScheduler getDefault() {
+        if (defaultScheduler == null) {
+            defaultScheduler = new DeviceCommandScheduler(DEFAULT_LANES_PER_DEVICE, DEFAULT_MAX_SHARED_RUNNING,
+                    DEFAULT_MAX_INTERACTIVE_RUNNING);
+        }
+        return defaultScheduler;
+    }
+
+    /**
+     * 提交一组命令，按顺序在设备的同一个shell会话中执行，返回每条命令的结果
+     * 对任意一个未完成的future调用 cancel 会取消整个任务，其余命令以"已取消"的失败结果结束
+     */
+    public List<CompletableFuture<CommandResult>> execute(String deviceId, Priority priority, List<String> commands) {
+        Job job = new Job(deviceId, priority, new ArrayList<>(commands));
+        if (commands.isEmpty()) {
+            return job.results;
+        }
+        for (CompletableFuture<CommandResult> result : job.results) {
+            result.whenComplete((value, error) -> {
+                if (error instanceof CancellationException) {
+                    cancel(job);
+                }
+            });
+        }
+        synchronized (lock) {
+            DeviceQueue device = devices.get(deviceId);
+            if (device == null) {
+                device = new DeviceQueue(deviceId, lanesPerDevice);
+                devices.put(deviceId, device);
+                deviceOrder.add(device);
+            }
+            device.queues.get(priority.ordinal()).addLast(job);
+            stats[priority.ordinal()].queued++;
+        }
+        dispatch();
+        return job.results;
+    }
+
+    public CompletableFuture<CommandResult> execute(String deviceId, Priority priority, String command) {
+        return execute(deviceId, priority, List.of(command)).get(0);
+    }
+
+    public List<Stats> getStats() {
+        List<Stats> result = new ArrayList<>();
+        synchronized (lock) {
+            for (Priority priority : Priority.values()) {
+                result.add(new Stats(priority, stats[priority.ordinal()]));
+            }
+        }
+        return result;
+    }
+
+    public Stats getStats(Priority priority) {
+        synchronized (lock) {
+            return new Stats(priority, stats[priority.ordinal()]);
+        }
+    }
+
+    // 设备上排队中（还没开始执行）的任务数
+    public int getQueueDepth(String deviceId) {
+        synchronized (lock) {
+            DeviceQueue device = devices.get(deviceId);
+            return device == null ? 0 : device.queued();
+        }
+    }
+
+    /**
+     * 状态栏用的一行摘要，例如 "交互 排队0 执行1 p95 2ms"
+     */
+    public String describe() {
+        StringBuilder text = new StringBuilder();
+        for (Stats stat : getStats()) {
+            if (text.length() > 0) {
+                text.append("，");
+            }
+            text.append(String.format("%s 排队%d 执行%d p95 %.0fms", stat.priority.getLabel(), stat.queued,
+                    stat.running, stat.p95WaitMillis));
+        }
+        return text.toString();
+    }
+
+    /**
+     * 在锁内挑出可以开始的任务，锁外在启动线程上启动：新建会话要启动adb进程，不能阻塞提交的线程，
+     * 命令失败时结果会立即完成，也避免了 finish -> dispatch -> launch 的递归
+     */
+    private void dispatch() {
+        List<Job> ready = new ArrayList<>();
+        synchronized (lock) {
+            Job job;
+            while ((job = next()) != null) {
+                ready.add(job);
+            }
+        }
+        for (Job job : ready) {
+            LAUNCHER.execute(() -> launch(job));
+        }
+    }
+
+    // 每次从最高优先级重新找，保证交互命令总是先出队；同一优先级内从游标处的设备开始轮流
+    private Job next() {
+        int deviceCount = deviceOrder.size();
+        for (Priority priority : Priority.values()) {
+            int index = priority.ordinal();
+            if (priority == Priority.INTERACTIVE ? interactiveRunning >= maxInteractiveRunning
+                    : sharedRunning >= maxSharedRunning) {
+                continue;
+            }
+            for (int k = 0; k < deviceCount; k++) {
+                int position = (cursors[index] + k) % deviceCount;
+                DeviceQueue device = deviceOrder.get(position);
+                ArrayDeque<Job> queue = device.queues.get(index);
+                if (queue.isEmpty()) {
+                    continue;
+                }
+                int lane = device.freeLane(priority);
+                if (lane < 0) {
+                    continue;
+                }
+                Job job = queue.pollFirst();
+                job.lane = lane;
+                device.busyLanes[lane] = true;
+                cursors[index] = position + 1;
+                PriorityStats stat = stats[index];
+                stat.queued--;
+                stat.running++;
+                stat.recordWait(System.nanoTime() - job.submitNanos);
+                if (priority == Priority.INTERACTIVE) {
+                    interactiveRunning++;
+                } else {
+                    sharedRunning++;
+                }
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private void launch(Job job) {
+        boolean cancelled;
+        synchronized (lock) {
+            cancelled = job.cancelled;
+        }
+        if (cancelled) {
+            // 出队后、启动前被取消，不再执行
+            finish(job);
+            return;
+        }
+        List<CompletableFuture<CommandResult>> futures = AdbShellPool.execute(job.deviceId, job.lane, job.commands);
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<CommandResult> target = job.results.get(i);
+            futures.get(i).thenAccept(target::complete);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((ignored, error) -> finish(job));
+        boolean cancelledWhileStarting;
+        synchronized (lock) {
+            job.started = true;
+            cancelledWhileStarting = job.cancelled;
+        }
+        if (cancelledWhileStarting) {
+            // 写入命令期间被取消，cancel 没有关闭通道，由这里关闭
+            closeLane(job);
+        }
+    }
+
+    private void finish(Job job) {
+        synchronized (lock) {
+            if (job.finished) {
+                return;
+            }
+            job.finished = true;
+            DeviceQueue device = devices.get(job.deviceId);
+            if (!device.closingLanes[job.lane]) {
+                device.busyLanes[job.lane] = false;
+            }
+            PriorityStats stat = stats[job.priority.ordinal()];
+            stat.running--;
+            if (job.cancelled) {
+                stat.cancelled++;
+            } else {
+                stat.completed++;
+            }
+            if (job.priority == Priority.INTERACTIVE) {
+                interactiveRunning--;
+            } else {
+                sharedRunning--;
+            }
+        }
+        dispatch();
+    }
+
+    private void cancel(Job job) {
+        boolean started;
+        synchronized (lock) {
+            if (job.finished || job.cancelled) {
+                return;
+            }
+            job.cancelled = true;
+            started = job.started;
+            if (job.lane < 0) {
+                // 还在排队，直接移除
+                devices.get(job.deviceId).queues.get(job.priority.ordinal()).remove(job);
+                PriorityStats stat = stats[job.priority.ordinal()];
+                stat.queued--;
+                stat.cancelled++;
+                job.finished = true;
+            }
+        }
+        job.completeCancelled();
+        // 已出队但还没写入命令的任务由 launch 处理
+        if (started) {
+            closeLane(job);
+        }
+    }
+
+    /**
+     * 会话中的命令无法单独中止，关闭任务所在的通道，未完成的命令随之结束
+     * 关闭要等会话的写入完成，放在锁外，不挡住其他设备的调度；关闭期间通道标记为正在关闭，
+     * finish 不会释放它，避免刚交给下一个任务就被关掉，关闭后由这里释放
+     */
+    private void closeLane(Job job) {
+        int lane = job.lane;
+        synchronized (lock) {
+            if (job.finished) {
+                return;
+            }
+            devices.get(job.deviceId).closingLanes[lane] = true;
+        }
+        AdbShellPool.close(job.deviceId, lane);
+        boolean released;
+        synchronized (lock) {
+            DeviceQueue device = devices.get(job.deviceId);
+            device.closingLanes[lane] = false;
+            released = job.finished;
+            if (released) {
+                device.busyLanes[lane] = false;
+            }
+        }
+        if (released) {
+            dispatch();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * 在多台设备上并行执行同一组命令，总耗时接近最慢的那台设备，而不是所有设备之和
+ * 命令交给 DeviceCommandScheduler，各设备之间的轮流由调度器负责，这里不再占用线程等待
+ * 默认使用批量优先级：不占用各设备为单台设备按钮保留的通道0，同时执行的设备数受调度器的
+ * 批量和后台任务上限约束，默认最多8台（DEFAULT_MAX_SHARED_RUNNING）
+ */
+public class DeviceFanOutExecutor {
+    private final DeviceCommandScheduler scheduler;
+    private final DeviceCommandScheduler.Priority priority;
+
+    /**
+     * 单台设备的执行结果
+     */
+    public static class DeviceResult {
+        private final String deviceId;
+        private final List<CommandResult> results;
+        private final long elapsedMillis;
+
+        DeviceResult(String deviceId, List<CommandResult> results, long elapsedMillis) {
+            this.deviceId = deviceId;
+            this.results = results;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public String getDeviceId() {
+            return deviceId;
+        }
+
+        public List<CommandResult> getResults() {
+            return results;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isSuccess() {
+            return results.stream().allMatch(CommandResult::isSuccess);
+        }
+    }
+
+    // 多设备命令
+    public DeviceFanOutExecutor() {
+        this(DeviceCommandScheduler.Priority.BATCH);
+    }
+
+    public DeviceFanOutExecutor(DeviceCommandScheduler.Priority priority) {
+        this.scheduler = DeviceCommandScheduler.getDefault();
+        this.priority = priority;
+    }
+
+    /**
+     * 在每台设备上执行commands
+     * @param onDeviceDone 每台设备完成时回调，在工作线程上执行，可以为null
+     * @return 所有设备完成后按deviceIds顺序给出结果
+     */
+    public CompletableFuture<List<DeviceResult>> execute(List<String> deviceIds, List<String> commands,
+                                                         Consumer<DeviceResult> onDeviceDone) {
+        List<CompletableFuture<DeviceResult>> futures = new ArrayList<>(deviceIds.size());
+        for (String deviceId : deviceIds) {
+            CompletableFuture<DeviceResult> future = executeOnDevice(deviceId, commands);
+            if (onDeviceDone != null) {
+                future = future.whenComplete((result, error) -> {
+                    if (result != null) {
+                        onDeviceDone.accept(result);
+                    }
+                });
+            }
+            futures.add(future);
+        }
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<DeviceResult> results = new ArrayList<>(futures.size());
+                    futures.forEach(future -> results.add(future.join()));
+                    return results;
+                });
+    }
+
+    // 耗时包含在调度器中排队的时间
+    private CompletableFuture<DeviceResult> executeOnDevice(String deviceId, List<String> commands) {
+        long startTime = System.nanoTime();
+        List<CompletableFuture<CommandResult>> futures = scheduler.execute(deviceId, priority, commands);
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<CommandResult> results = new ArrayList<>(futures.size());
+            futures.forEach(future -> results.add(future.join()));
+            return new DeviceResult(deviceId, results, (System.nanoTime() - startTime) / 1_000_000);
+        });
+    }
+}
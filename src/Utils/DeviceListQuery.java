@@ -0,0 +1,67 @@
+package Utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 查询设备列表，同一时间只有一次查询在进行，并发的调用共享同一个结果
+ * 例如启动时主窗口和PBTX面板同时需要设备列表，只会访问adb一次
+ */
+public class DeviceListQuery {
+    private static CompletableFuture<List<AdbDevice>> inFlight;
+
+    private DeviceListQuery() {
+    }
+
+    /**
+     * 在后台查询设备列表，已有查询在进行时直接返回它
+     */
+    public static synchronized CompletableFuture<List<AdbDevice>> query() {
+        if (inFlight != null && !inFlight.isDone()) {
+            return inFlight;
+        }
+        CompletableFuture<List<AdbDevice>> future = CompletableFuture.supplyAsync(DeviceListQuery::queryNow);
+        inFlight = future;
+        return future;
+    }
+
+    private static List<AdbDevice> queryNow() {
+        try {
+            // 直接向adb server查询设备列表，不启动adb进程
+            return AdbClient.getDefault().devices();
+        } catch (IOException e) {
+            // 无法连接adb server时退回执行adb devices命令
+            return queryDevicesByCommand();
+        }
+    }
+
+    private static List<AdbDevice> queryDevicesByCommand() {
+        // 执行adb devices命令
+        String result = CommandExecutor.executeCommand("adb devices");
+        List<AdbDevice> devices = new ArrayList<>();
+
+        // 解析命令输出
+        String[] lines = result.split("\n");
+        boolean isFirstLine = true;
+
+        for (String line : lines) {
+            line = line.trim();
+            // 跳过标题行和空行
+            if (isFirstLine || line.isEmpty() || line.contains("List of devices")) {
+                isFirstLine = false;
+                continue;
+            }
+
+            // 添加有效设备行
+            if (!line.startsWith("*") && line.contains("\t")) {
+                AdbDevice device = AdbDevice.parse(line);
+                if (device != null) {
+                    devices.add(device);
+                }
+            }
+        }
+        return devices;
+    }
+}
@@ -0,0 +1,126 @@
+package Utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+/**
+ * 缓存每台设备上已安装的包及其versionCode
+ * 每台设备只执行一次 pm list packages --show-versioncode，并发的查询共享同一个结果
+ * 安装成功后直接更新缓存，卸载或无法确定结果的安装命令会让缓存失效
+ */
+public class DevicePackageCache {
+    // 设备不支持 --show-versioncode（Android 9以前）时versionCode未知
+    public static final long UNKNOWN_VERSION = -1;
+
+    private static final Map<String, CompletableFuture<Map<String, Long>>> CACHE = new ConcurrentHashMap<>();
+    // 会改变已安装包的命令，例如 pm uninstall、cmd package install、adb install-multiple
+    private static final Pattern PACKAGE_MUTATION = Pattern.compile("\\b(un)?install(-multiple|-commit)?\\b");
+
+    private DevicePackageCache() {
+    }
+
+    /**
+     * 设备上已安装的包名到versionCode的映射，没有缓存时查询设备
+     */
+    public static Map<String, Long> getPackages(String deviceId) throws IOException {
+        CompletableFuture<Map<String, Long>> future = CACHE.computeIfAbsent(deviceId,
+                id -> CompletableFuture.supplyAsync(() -> queryPackages(id)));
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("查询已安装的包被中断", e);
+        } catch (ExecutionException e) {
+            // 查询失败不缓存，下次重试
+            CACHE.remove(deviceId, future);
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * 设备上包的versionCode，未安装时返回null
+     */
+    public static Long getVersionCode(String deviceId, String packageName) throws IOException {
+        return getPackages(deviceId).get(packageName);
+    }
+
+    /**
+     * 安装成功后记录新版本，不需要重新查询
+     */
+    public static void recordInstalled(String deviceId, String packageName, long versionCode) {
+        CompletableFuture<Map<String, Long>> future = CACHE.get(deviceId);
+        if (future != null && future.isDone() && !future.isCompletedExceptionally()) {
+            future.join().put(packageName, versionCode);
+        }
+    }
+
+    public static void invalidate(String deviceId) {
+        CACHE.remove(deviceId);
+    }
+
+    /**
+     * 命令会安装或卸载包时让设备的缓存失效
+     */
+    public static void invalidateIfMutating(String deviceId, String command) {
+        if (deviceId != null && PACKAGE_MUTATION.matcher(command).find()) {
+            invalidate(deviceId);
+        }
+    }
+
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    private static Map<String, Long> queryPackages(String deviceId) {
+        CommandResult result;
+        try {
+            result = AdbClient.getDefault().shell(deviceId, "pm list packages --show-versioncode");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!result.isSuccess() && result.getStdout().isEmpty()) {
+            throw new UncheckedIOException(new IOException("pm list packages 失败: " + result.getStderr()));
+        }
+        return Collections.synchronizedMap(parsePackages(result.getStdout()));
+    }
+
+    /**
+     * 解析 "package:com.example versionCode:123" 格式的输出，没有versionCode时记为UNKNOWN_VERSION
+     */
+    static Map<String, Long> parsePackages(String output) {
+        Map<String, Long> packages = new HashMap<>();
+        for (String line : output.split("\n")) {
+            line = line.trim();
+            if (!line.startsWith("package:")) {
+                continue;
+            }
+            String rest = line.substring("package:".length());
+            int space = rest.indexOf(' ');
+            String packageName = space >= 0 ? rest.substring(0, space) : rest;
+            long versionCode = UNKNOWN_VERSION;
+            int index = rest.indexOf("versionCode:");
+            if (index >= 0) {
+                String value = rest.substring(index + "versionCode:".length()).trim().split("\\s+")[0];
+                try {
+                    versionCode = Long.parseLong(value);
+                } catch (NumberFormatException ignored) {
+                }
+            }
+            if (!packageName.isEmpty()) {
+                packages.put(packageName, versionCode);
+            }
+        }
+        return packages;
+    }
+}
@@ -0,0 +1,159 @@
+package Utils;
+
+import interfaces.DeviceChangeListener;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 后台保持一条 host:track-devices-l 长连接，把每次收到的设备快照与当前列表比较，
+ * 只对新增、移除和状态变化的设备发出事件
+ * 事件在单独的事件线程上按快照的合并顺序回调，跟踪线程和手动刷新同时合并时也不会乱序
+ */
+public class DeviceTracker {
+    private static final long MIN_RETRY_MILLIS = 1000;
+    private static final long MAX_RETRY_MILLIS = 10000;
+
+    private final AdbClient client;
+    private final List<DeviceChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, AdbDevice> devices = new LinkedHashMap<>();
+    private volatile boolean running = false;
+    private volatile AdbClient.TrackSession session;
+    // 当前的跟踪线程，stop后立即start时旧线程发现自己不是当前线程就退出
+    private volatile Thread thread;
+    private final ExecutorService events;
+
+    public DeviceTracker(AdbClient client) {
+        this.client = client;
+        this.events = Executors.newSingleThreadExecutor(r -> {
+            Thread eventThread = new Thread(r, "adb-device-events");
+            eventThread.setDaemon(true);
+            return eventThread;
+        });
+    }
+
+    public void addDeviceChangeListener(DeviceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeDeviceChangeListener(DeviceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "adb-device-tracker");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        AdbClient.TrackSession current = session;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * 当前已知的设备列表
+     */
+    public synchronized List<AdbDevice> getDevices() {
+        return new ArrayList<>(devices.values());
+    }
+
+    /**
+     * 应用一份完整的设备快照，只对差异部分发出事件
+     * 手动刷新得到的列表也通过这里合并
+     */
+    public void applySnapshot(List<AdbDevice> snapshot) {
+        List<AdbDevice> added = new ArrayList<>();
+        List<AdbDevice> removed = new ArrayList<>();
+        List<AdbDevice[]> changed = new ArrayList<>();
+
+        synchronized (this) {
+            Map<String, AdbDevice> next = new LinkedHashMap<>();
+            for (AdbDevice device : snapshot) {
+                next.put(device.getSerial(), device);
+            }
+            for (AdbDevice old : devices.values()) {
+                if (!next.containsKey(old.getSerial())) {
+                    removed.add(old);
+                }
+            }
+            for (AdbDevice device : next.values()) {
+                AdbDevice old = devices.get(device.getSerial());
+                if (old == null) {
+                    added.add(device);
+                } else if (!old.equals(device)) {
+                    changed.add(new AdbDevice[]{old, device});
+                }
+            }
+            devices.clear();
+            devices.putAll(next);
+
+            // 在锁内入队，事件顺序与合并顺序一致
+            if (!removed.isEmpty() || !added.isEmpty() || !changed.isEmpty()) {
+                events.execute(() -> {
+                    for (DeviceChangeListener listener : listeners) {
+                        removed.forEach(listener::onDeviceRemoved);
+                        added.forEach(listener::onDeviceAdded);
+                        changed.forEach(pair -> listener.onDeviceChanged(pair[0], pair[1]));
+                    }
+                });
+            }
+        }
+    }
+
+    private boolean isCurrent() {
+        return running && thread == Thread.currentThread();
+    }
+
+    private void run() {
+        long retryMillis = MIN_RETRY_MILLIS;
+        while (isCurrent()) {
+            AdbClient.TrackSession opened = null;
+            try (AdbClient.TrackSession trackSession = client.trackDevices()) {
+                opened = trackSession;
+                session = trackSession;
+                retryMillis = MIN_RETRY_MILLIS;
+                while (isCurrent()) {
+                    applySnapshot(trackSession.next());
+                }
+            } catch (IOException e) {
+                // adb server 重启或未启动，稍后重连；已知设备保留，重连后的首个快照会修正差异
+                if (!isCurrent()) {
+                    break;
+                }
+            } finally {
+                // 新线程可能已经换上了自己的连接
+                if (opened != null && session == opened) {
+                    session = null;
+                }
+            }
+
+            try {
+                Thread.sleep(retryMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            retryMillis = Math.min(retryMillis * 2, MAX_RETRY_MILLIS);
+        }
+    }
+}
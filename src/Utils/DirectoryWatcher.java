@@ -0,0 +1,157 @@
+package Utils;
+
+import interfaces.FileChangeListener;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 基于 WatchService 监视一个目录（不递归）
+ * 同一文件的多次事件会合并，目录安静 debounceMillis 毫秒后才批量通知，
+ * 避免编辑器保存时的多次写入触发多次处理
+ */
+public class DirectoryWatcher {
+    private enum Change { CREATED, MODIFIED, DELETED }
+
+    private final Path directory;
+    private final long debounceMillis;
+    private final Predicate<Path> filter;
+    private final FileChangeListener listener;
+    private WatchService watchService;
+    private Thread thread;
+
+    public DirectoryWatcher(Path directory, long debounceMillis, Predicate<Path> filter,
+                            FileChangeListener listener) {
+        this.directory = directory.toAbsolutePath();
+        this.debounceMillis = debounceMillis;
+        this.filter = filter;
+        this.listener = listener;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        thread = new Thread(this::run, "dir-watcher-" + directory.getFileName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+        watchService = null;
+    }
+
+    private void run() {
+        WatchService service = watchService;
+        Map<Path, Change> changes = new LinkedHashMap<>();
+        boolean overflow = false;
+        try {
+            while (true) {
+                // 有待通知的变化时只等待去抖时间，否则一直阻塞
+                WatchKey key = changes.isEmpty() && !overflow
+                        ? service.take()
+                        : service.poll(debounceMillis, TimeUnit.MILLISECONDS);
+
+                if (key == null) {
+                    deliver(changes, overflow);
+                    changes.clear();
+                    overflow = false;
+                    continue;
+                }
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        overflow = true;
+                        continue;
+                    }
+                    Path path = directory.resolve((Path) event.context());
+                    if (filter == null || filter.test(path)) {
+                        merge(changes, path, toChange(event.kind()));
+                    }
+                }
+                if (!key.reset()) {
+                    // 目录本身被删除
+                    break;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 停止监视
+        }
+    }
+
+    private static Change toChange(WatchEvent.Kind<?> kind) {
+        if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+            return Change.CREATED;
+        }
+        if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+            return Change.DELETED;
+        }
+        return Change.MODIFIED;
+    }
+
+    // 合并同一文件的连续事件：新建后修改仍是新建，新建后删除相当于没有变化，删除后新建视为修改
+    private static void merge(Map<Path, Change> changes, Path path, Change change) {
+        Change previous = changes.get(path);
+        if (previous == null) {
+            changes.put(path, change);
+        } else if (previous == Change.CREATED && change == Change.DELETED) {
+            changes.remove(path);
+        } else if (previous == Change.DELETED && change == Change.CREATED) {
+            changes.put(path, Change.MODIFIED);
+        } else if (previous != Change.CREATED) {
+            changes.put(path, change);
+        }
+    }
+
+    private void deliver(Map<Path, Change> changes, boolean overflow) {
+        try {
+            if (overflow) {
+                listener.onOverflow();
+                return;
+            }
+            List<Path> created = new ArrayList<>();
+            List<Path> modified = new ArrayList<>();
+            List<Path> deleted = new ArrayList<>();
+            changes.forEach((path, change) -> {
+                if (change == Change.CREATED) {
+                    created.add(path);
+                } else if (change == Change.MODIFIED) {
+                    modified.add(path);
+                } else {
+                    deleted.add(path);
+                }
+            });
+            if (!created.isEmpty() || !modified.isEmpty() || !deleted.isEmpty()) {
+                listener.onFilesChanged(created, modified, deleted);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+}
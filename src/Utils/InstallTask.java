@@ -0,0 +1,123 @@
+package Utils;
+
+import java.nio.file.Path;
+
+/**
+ * 一个APK在一台设备上的安装任务，记录状态、已传输字节数和耗时
+ */
+public class InstallTask {
+    public enum State {
+        QUEUED("等待"),
+        PUSHING("推送中"),
+        INSTALLING("安装中"),
+        SUCCESS("成功"),
+        FAILED("失败"),
+        SKIPPED("已跳过");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private final String deviceId;
+    private final Path apk;
+    private final long size;
+    private volatile State state = State.QUEUED;
+    private volatile long bytesTransferred = 0;
+    private volatile long startNanos = 0;
+    private volatile long endNanos = 0;
+    private volatile String message = "";
+    private volatile ApkMetadata metadata; // 安装前读取，用于判断设备上是否已有相同版本
+
+    public InstallTask(String deviceId, Path apk, long size) {
+        this.deviceId = deviceId;
+        this.apk = apk;
+        this.size = size;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public Path getApk() {
+        return apk;
+    }
+
+    public String getFileName() {
+        return apk.getFileName().toString();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public ApkMetadata getMetadata() {
+        return metadata;
+    }
+
+    public boolean isFinished() {
+        return state == State.SUCCESS || state == State.FAILED || state == State.SKIPPED;
+    }
+
+    // 传输进度，0~100
+    public int getProgressPercent() {
+        if (size <= 0) {
+            return isFinished() ? 100 : 0;
+        }
+        return (int) (bytesTransferred * 100 / size);
+    }
+
+    public long getElapsedMillis() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return (end - startNanos) / 1_000_000;
+    }
+
+    // 传输速度，字节/秒
+    public double getThroughput() {
+        long elapsed = getElapsedMillis();
+        return elapsed <= 0 ? 0 : bytesTransferred * 1000.0 / elapsed;
+    }
+
+    void setState(State state) {
+        if (state != State.QUEUED && startNanos == 0) {
+            startNanos = System.nanoTime();
+        }
+        if (state == State.SUCCESS || state == State.FAILED || state == State.SKIPPED) {
+            endNanos = System.nanoTime();
+        }
+        this.state = state;
+    }
+
+    void setBytesTransferred(long bytesTransferred) {
+        this.bytesTransferred = bytesTransferred;
+    }
+
+    void setMessage(String message) {
+        this.message = message;
+    }
+
+    void setMetadata(ApkMetadata metadata) {
+        this.metadata = metadata;
+    }
+}
@@ -0,0 +1,64 @@
+package Utils;
+
+/**
+ * 固定容量的行环形缓冲区，写满后覆盖最旧的行
+ * 追加和按下标读取都是O(1)，不是线程安全的，调用方负责在同一线程（通常是EDT）上使用
+ */
+public class LineRingBuffer {
+    private final String[] lines;
+    private int head = 0; // 最旧一行的位置
+    private int size = 0;
+    private long totalAppended = 0;
+
+    public LineRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.lines = new String[capacity];
+    }
+
+    public void add(String line) {
+        int tail = (head + size) % lines.length;
+        lines[tail] = line;
+        if (size < lines.length) {
+            size++;
+        } else {
+            head = (head + 1) % lines.length;
+        }
+        totalAppended++;
+    }
+
+    /**
+     * @param index 0为当前保留的最旧一行
+     */
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        return lines[(head + index) % lines.length];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return lines.length;
+    }
+
+    // 累计追加的行数，包括已被覆盖的
+    public long getTotalAppended() {
+        return totalAppended;
+    }
+
+    // 已被覆盖丢弃的行数
+    public long getDiscarded() {
+        return totalAppended - size;
+    }
+
+    public void clear() {
+        java.util.Arrays.fill(lines, null);
+        head = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,185 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次 logcat -B 抓取：
+ * - 二进制日志通过 exec: 连续流回主机（不经过pty，不会被改写换行），边接收边交给 LogcatDecoder 解码
+ * - 解码出的日志写入 LogcatSegmentStore 的压缩分段，内存中只保留当前块，日志停顿时由定时器写盘
+ * - 没有固定时长，调用 stop 后结束
+ * 进度通过 getState/getBytesReceived/getRecordCount 读取，可以在任意线程轮询
+ */
+public class LogcatCapture {
+    public enum State {
+        STARTING("启动中"),
+        STREAMING("抓取中"),
+        STOPPED("已停止"),
+        FAILED("失败");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public static final String DEFAULT_BUFFERS = "main,system,crash";
+    private static final int CHUNK_SIZE = 64 * 1024;
+    // 检查当前块是否该写盘的间隔
+    private static final long FLUSH_CHECK_MILLIS = 1000;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final AdbClient client;
+    private final String serial;
+    private final String buffers;
+    private final LogcatSegmentStore store;
+    private final LogcatDecoder decoder;
+    private volatile State state = State.STARTING;
+    private volatile boolean stopRequested = false;
+    private volatile long bytesReceived = 0;
+    private volatile long recordCount = 0;
+    private volatile String message = "";
+    private volatile SocketChannel channel;
+
+    /**
+     * @param buffers 传给 -b 的缓冲区，逗号分隔，为空时使用 DEFAULT_BUFFERS
+     */
+    public LogcatCapture(AdbClient client, String serial, String buffers, LogcatSegmentStore store) {
+        this.client = client;
+        this.serial = serial;
+        this.buffers = buffers == null || buffers.trim().isEmpty() ? DEFAULT_BUFFERS : buffers.trim();
+        this.store = store;
+        this.decoder = new LogcatDecoder(store);
+    }
+
+    /**
+     * 在后台线程开始抓取，返回的future在抓取结束（stop或连接断开）后完成，此时分段文件已关闭
+     */
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread flushThread = new Thread(runnable, "logcat-flush-" + THREAD_COUNTER.incrementAndGet());
+            flushThread.setDaemon(true);
+            return flushThread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushIfStale, FLUSH_CHECK_MILLIS, FLUSH_CHECK_MILLIS,
+                TimeUnit.MILLISECONDS);
+        Thread thread = new Thread(() -> {
+            try {
+                capture();
+                future.complete(null);
+            } catch (IOException | RuntimeException e) {
+                state = State.FAILED;
+                message = e.getMessage() == null ? "" : e.getMessage();
+                future.completeExceptionally(e);
+            } finally {
+                flusher.shutdownNow();
+                try {
+                    store.close();
+                } catch (IOException e) {
+                    System.err.println("关闭日志分段失败: " + e.getMessage());
+                }
+            }
+        }, "logcat-capture-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * 停止抓取，已接收的数据都会解码并写盘
+     */
+    public void stop() {
+        stopRequested = true;
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    public LogcatSegmentStore getStore() {
+        return store;
+    }
+
+    public boolean isFinished() {
+        return state == State.STOPPED || state == State.FAILED;
+    }
+
+    // 定时器线程上执行；写盘失败时抓取线程的下一次写入会再次报错
+    private void flushIfStale() {
+        try {
+            store.flushIfStale();
+        } catch (IOException e) {
+            System.err.println("写入日志分段失败: " + e.getMessage());
+        }
+    }
+
+    // stderr丢弃，避免错误文本混进二进制流
+    String buildCommand() {
+        return "logcat -B -b " + buffers + " 2>/dev/null";
+    }
+
+    private void capture() throws IOException {
+        try (SocketChannel ch = client.openExec(serial, buildCommand())) {
+            channel = ch;
+            state = State.STREAMING;
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+            long received = 0;
+            while (!stopRequested) {
+                int read;
+                try {
+                    read = ch.read(buffer);
+                } catch (IOException e) {
+                    if (stopRequested) {
+                        break; // stop关闭了连接
+                    }
+                    throw e;
+                }
+                if (read < 0) {
+                    break;
+                }
+                decoder.feed(buffer.array(), 0, buffer.position());
+                buffer.clear();
+                received += read;
+                bytesReceived = received;
+                recordCount = decoder.getRecordCount();
+            }
+            decoder.finish();
+            recordCount = decoder.getRecordCount();
+            state = State.STOPPED;
+            message = received == 0 ? "logcat没有输出" : "";
+        } finally {
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package Utils;
+
+import interfaces.LogcatRecordListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * logcat -B 二进制输出的增量解码器，数据可以按任意边界分块送入
+ * 每条日志是一个 logger_entry 头加负载，字段都是小端：
+ *   uint16 len; uint16 hdr_size; int32 pid; uint32 tid; uint32 sec; uint32 nsec; [uint32 lid; [uint32 uid;]]
+ * hdr_size 为0时是最早的20字节头；负载是 priority(1字节) + tag\0 + message\0
+ * events/stats/security 缓冲区的负载是二进制事件，按 lid 跳过，但只有28字节的v4头能可靠区分：
+ * v2和v3的头都是24字节，偏移20处在v2中是euid、在v3中才是lid，无法分辨，这类记录不过滤，
+ * 只抓取文本缓冲区（默认的 main,system,crash）时不受影响
+ */
+public class LogcatDecoder {
+    // 旧版本logger_entry没有hdr_size字段，该位置是填充的0
+    private static final int V1_HEADER_SIZE = 20;
+    // v4头带 lid 和 uid
+    private static final int V4_HEADER_SIZE = 28;
+    private static final int MAX_HEADER_SIZE = 64;
+    // LOGGER_ENTRY_MAX_PAYLOAD 是4068，留一些余量
+    private static final int MAX_PAYLOAD = 16 * 1024;
+    private static final int LOG_ID_EVENTS = 2;
+    private static final int LOG_ID_STATS = 5;
+    private static final int LOG_ID_SECURITY = 6;
+
+    private final LogcatRecordListener listener;
+    // tag的取值很少，同一个tag只解码一次，后续的索引也可以按引用比较
+    private final ByteStringCache tags = new ByteStringCache(1 << 14);
+    // 跨块的不完整记录
+    private byte[] carry = new byte[MAX_HEADER_SIZE + MAX_PAYLOAD];
+    private int carryLength = 0;
+    private long recordCount = 0;
+    private long skippedCount = 0;
+    private long lastTimestamp = -1;
+
+    public LogcatDecoder(LogcatRecordListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 解码一块数据，完整的记录立即回调，不完整的尾部留到下一块
+     * @throws IOException 数据不是logcat二进制格式（例如设备输出了错误文本）
+     */
+    public void feed(byte[] data, int offset, int length) throws IOException {
+        int position = offset;
+        int end = offset + length;
+        if (carryLength > 0) {
+            // 先把上一块留下的记录补完整
+            int need = recordLength(carry, 0, carryLength);
+            while (need < 0 || carryLength < need) {
+                int wanted = need < 0 ? 4 - carryLength : need - carryLength;
+                int take = Math.min(wanted, end - position);
+                if (take <= 0) {
+                    return;
+                }
+                System.arraycopy(data, position, carry, carryLength, take);
+                carryLength += take;
+                position += take;
+                need = recordLength(carry, 0, carryLength);
+            }
+            decode(carry, 0);
+            carryLength = 0;
+        }
+        while (position < end) {
+            int need = recordLength(data, position, end - position);
+            if (need < 0 || end - position < need) {
+                System.arraycopy(data, position, carry, 0, end - position);
+                carryLength = end - position;
+                return;
+            }
+            decode(data, position);
+            position += need;
+        }
+    }
+
+    /**
+     * 流结束，丢弃不完整的尾部
+     */
+    public void finish() {
+        carryLength = 0;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    // 跳过的二进制事件日志条数
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    // 整条记录的长度，头还不完整时返回-1
+    private static int recordLength(byte[] data, int offset, int available) throws IOException {
+        if (available < 4) {
+            return -1;
+        }
+        int payload = readShort(data, offset);
+        int header = headerSize(data, offset);
+        if (payload > MAX_PAYLOAD || header < V1_HEADER_SIZE || header > MAX_HEADER_SIZE) {
+            throw new IOException("不是logcat二进制数据: "
+                    + new String(data, offset, Math.min(available, 80), StandardCharsets.UTF_8).trim());
+        }
+        return header + payload;
+    }
+
+    private static int headerSize(byte[] data, int offset) {
+        int header = readShort(data, offset + 2);
+        return header == 0 ? V1_HEADER_SIZE : header;
+    }
+
+    private void decode(byte[] data, int offset) {
+        int payloadLength = readShort(data, offset);
+        int header = headerSize(data, offset);
+        int pid = readInt(data, offset + 4);
+        int tid = readInt(data, offset + 8);
+        long seconds = readInt(data, offset + 12) & 0xFFFFFFFFL;
+        long nanos = readInt(data, offset + 16) & 0xFFFFFFFFL;
+        int logId = header >= V4_HEADER_SIZE ? readInt(data, offset + 20) : 0;
+        if (logId == LOG_ID_EVENTS || logId == LOG_ID_STATS || logId == LOG_ID_SECURITY || payloadLength < 2) {
+            skippedCount++;
+            return;
+        }
+        int payload = offset + header;
+        int payloadEnd = payload + payloadLength;
+        int priority = data[payload];
+        int tagStart = payload + 1;
+        int tagEnd = indexOfZero(data, tagStart, payloadEnd);
+        int messageStart = Math.min(tagEnd + 1, payloadEnd);
+        int messageEnd = indexOfZero(data, messageStart, payloadEnd);
+        while (messageEnd > messageStart && (data[messageEnd - 1] == '\n' || data[messageEnd - 1] == '\r')) {
+            messageEnd--;
+        }
+        long timestamp = seconds * 1_000_000_000L + nanos;
+        lastTimestamp = timestamp;
+        recordCount++;
+        listener.onRecord(timestamp, pid, tid, priority, tags.get(data, tagStart, tagEnd),
+                new String(data, messageStart, messageEnd - messageStart, StandardCharsets.UTF_8));
+    }
+
+    private static int indexOfZero(byte[] data, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == 0) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int readShort(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8 | (data[offset + 2] & 0xFF) << 16
+                | (data[offset + 3] & 0xFF) << 24;
+    }
+}
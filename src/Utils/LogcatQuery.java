@@ -0,0 +1,122 @@
+package Utils;
+
+import java.util.List;
+
+/**
+ * LogcatSegmentStore 的查询条件，未设置的条件不参与过滤
+ * 例如最近5分钟 ActivityManager 的警告及以上：lastMinutes(5).tag("ActivityManager").minPriority(LogcatQuery.WARN)
+ */
+public class LogcatQuery {
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int FATAL = 7;
+    public static final int DEFAULT_LIMIT = 100_000;
+    private static final String PRIORITY_LETTERS = "??VDIWEFS";
+
+    long fromTimestamp = Long.MIN_VALUE;
+    long toTimestamp = Long.MAX_VALUE;
+    // 大于0时表示相对最后一条日志的时间范围，查询时才换算成绝对时间
+    long lastNanos = 0;
+    String tag = null;
+    int pid = -1;
+    int minPriority = 0;
+    String messageContains = "";
+    int limit = DEFAULT_LIMIT;
+
+    // 只看时间在 [from, to) 内的日志，单位纳秒（设备时间）
+    public LogcatQuery timeRange(long from, long to) {
+        this.fromTimestamp = from;
+        this.toTimestamp = to;
+        return this;
+    }
+
+    // 最后一条日志之前的若干分钟，以设备时间为准，不受主机时钟影响
+    public LogcatQuery lastMinutes(double minutes) {
+        this.lastNanos = (long) (minutes * 60_000_000_000L);
+        return this;
+    }
+
+    // tag完全匹配，为空时不过滤
+    public LogcatQuery tag(String tag) {
+        this.tag = tag == null || tag.isEmpty() ? null : tag;
+        return this;
+    }
+
+    public LogcatQuery pid(int pid) {
+        this.pid = pid;
+        return this;
+    }
+
+    public LogcatQuery minPriority(int priority) {
+        this.minPriority = priority;
+        return this;
+    }
+
+    public LogcatQuery messageContains(String text) {
+        this.messageContains = text == null ? "" : text;
+        return this;
+    }
+
+    // 返回的行数上限，超过时保留最新的
+    public LogcatQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    public static char priorityLetter(int priority) {
+        return priority >= 0 && priority < PRIORITY_LETTERS.length() ? PRIORITY_LETTERS.charAt(priority) : '?';
+    }
+
+    /**
+     * 字母转级别，例如 'W' -> WARN，无法识别时返回0
+     */
+    public static int parsePriority(char letter) {
+        int index = PRIORITY_LETTERS.indexOf(Character.toUpperCase(letter));
+        return index < 2 ? 0 : index;
+    }
+
+    /**
+     * 一条日志
+     */
+    public static class Row {
+        public final long timestamp;
+        public final int pid;
+        public final int tid;
+        public final int priority;
+        public final String tag;
+        public final String message;
+
+        Row(long timestamp, int pid, int tid, int priority, String tag, String message) {
+            this.timestamp = timestamp;
+            this.pid = pid;
+            this.tid = tid;
+            this.priority = priority;
+            this.tag = tag;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 查询结果和读取了多少数据，用来确认索引是否起作用
+     */
+    public static class Result {
+        public final List<Row> rows;
+        public final long matched;
+        public final int blocksRead;
+        public final int blocksTotal;
+        public final int segmentsRead;
+        public final long elapsedNanos;
+
+        Result(List<Row> rows, long matched, int blocksRead, int blocksTotal, int segmentsRead, long elapsedNanos) {
+            this.rows = rows;
+            this.matched = matched;
+            this.blocksRead = blocksRead;
+            this.blocksTotal = blocksTotal;
+            this.segmentsRead = segmentsRead;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package Utils;
+
+import interfaces.LogcatRecordListener;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * logcat 的磁盘存储：
+ * - 日志按块压缩，每块是一个独立的gzip成员，追加到当前分段文件 segment-NNNNNN.gz，分段写满后换下一个文件
+ * - 每块在 segment-NNNNNN.idx 中有一条稀疏索引：时间范围、出现过的级别、tag和pid
+ * - 查询先用索引排除不可能匹配的分段和块，只解压剩下的块，一天的抓取查最近几分钟只读末尾几个块
+ * 索引在每块写入后立即追加，抓取中断后重新打开目录也能查询已写入的部分
+ * 写入在抓取线程，查询可以在任意线程同时进行；已写入的块不会再修改，查询只在复制索引时加锁
+ */
+public class LogcatSegmentStore implements LogcatRecordListener {
+    private static final int BLOCK_RECORDS = 8192;
+    private static final int BLOCK_BYTES = 512 * 1024;
+    // 日志较少时也定期写盘，避免一直停留在内存中；没有新日志时由 flushIfStale 写盘
+    private static final long BLOCK_FLUSH_NANOS = 5_000_000_000L;
+    private static final long SEGMENT_BYTES = 16L * 1024 * 1024;
+    private static final int MAX_MESSAGE_LENGTH = 16 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+
+    private final Path directory;
+    private final int maxSegments;
+    private final List<Segment> segments = new ArrayList<>();
+    private final Map<String, Integer> tagIds = new HashMap<>();
+    // 当前块，还没有写盘，查询时也会扫描
+    private final List<LogcatQuery.Row> pending = new ArrayList<>();
+    private int pendingBytes = 0;
+    private long pendingStartNanos = 0;
+    private FileChannel segmentChannel;
+    private DataOutputStream indexOutput;
+    private long recordCount = 0;
+    private long compressedBytes = 0;
+    private long uncompressedBytes = 0;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private boolean closed = false;
+
+    // 一个分段文件及其各块的索引
+    private static class Segment {
+        final int number;
+        final Path file;
+        final List<Block> blocks = new ArrayList<>();
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        int priorityMask = 0;
+        final BitSet tags = new BitSet();
+        long size = 0;
+
+        Segment(int number, Path file) {
+            this.number = number;
+            this.file = file;
+        }
+
+        void add(Block block) {
+            blocks.add(block);
+            minTimestamp = Math.min(minTimestamp, block.minTimestamp);
+            maxTimestamp = Math.max(maxTimestamp, block.maxTimestamp);
+            priorityMask |= block.priorityMask;
+            for (int tag : block.tags) {
+                tags.set(tag);
+            }
+            size = Math.max(size, block.offset + block.length);
+        }
+    }
+
+    // 一个压缩块的稀疏索引，tags和pids已排序
+    private static class Block {
+        final long offset;
+        final int length;
+        final int count;
+        final long minTimestamp;
+        final long maxTimestamp;
+        final int priorityMask;
+        final int[] tags;
+        final int[] pids;
+
+        Block(long offset, int length, int count, long minTimestamp, long maxTimestamp, int priorityMask,
+              int[] tags, int[] pids) {
+            this.offset = offset;
+            this.length = length;
+            this.count = count;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.priorityMask = priorityMask;
+            this.tags = tags;
+            this.pids = pids;
+        }
+    }
+
+    // 查询中需要读取的一个块
+    private static class BlockRead {
+        final Segment segment;
+        final Block block;
+
+        BlockRead(Segment segment, Block block) {
+            this.segment = segment;
+            this.block = block;
+        }
+    }
+
+    /**
+     * 打开存储目录，已有的分段会被加载，新日志写入下一个分段
+     * @param maxSegments 最多保留的分段数，超过时删除最旧的，0表示不限制
+     */
+    public LogcatSegmentStore(Path directory, int maxSegments) throws IOException {
+        this.directory = directory;
+        this.maxSegments = maxSegments;
+        Files.createDirectories(directory);
+        loadSegments();
+    }
+
+    @Override
+    public synchronized void onRecord(long timestamp, int pid, int tid, int priority, String tag, String message) {
+        if (closed) {
+            return;
+        }
+        if (message.length() > MAX_MESSAGE_LENGTH) {
+            message = message.substring(0, MAX_MESSAGE_LENGTH);
+        }
+        if (pending.isEmpty()) {
+            pendingStartNanos = System.nanoTime();
+        }
+        pending.add(new LogcatQuery.Row(timestamp, pid, tid, priority, tag, message));
+        pendingBytes += 24 + tag.length() + message.length();
+        recordCount++;
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        if (pending.size() >= BLOCK_RECORDS || pendingBytes >= BLOCK_BYTES
+                || System.nanoTime() - pendingStartNanos >= BLOCK_FLUSH_NANOS) {
+            try {
+                flushBlock();
+            } catch (IOException e) {
+                throw new UncheckedIOException("写入日志分段失败", e);
+            }
+        }
+    }
+
+    /**
+     * 把当前块写盘
+     */
+    public synchronized void flush() throws IOException {
+        flushBlock();
+    }
+
+    /**
+     * 当前块停留超过 BLOCK_FLUSH_NANOS 时写盘，由抓取线程以外的定时器调用，
+     * 日志停止输出时最后一块也不会一直留在内存中
+     */
+    public synchronized void flushIfStale() throws IOException {
+        if (!closed && !pending.isEmpty() && System.nanoTime() - pendingStartNanos >= BLOCK_FLUSH_NANOS) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * 写入剩余的日志并关闭文件，之后仍然可以查询
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        flushBlock();
+        closed = true;
+        closeSegment();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    public synchronized int getBlockCount() {
+        int blocks = 0;
+        for (Segment segment : segments) {
+            blocks += segment.blocks.size();
+        }
+        return blocks;
+    }
+
+    public synchronized long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    // 本次写入的块压缩前的大小，用来计算压缩率
+    public synchronized long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    // 最后一条日志的设备时间，纳秒；没有日志时为 Long.MIN_VALUE
+    public synchronized long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * 查询日志，结果按时间排序，超过 limit 时保留最新的
+     */
+    public LogcatQuery.Result query(LogcatQuery query) {
+        long start = System.nanoTime();
+        List<BlockRead> candidates = new ArrayList<>();
+        List<LogcatQuery.Row> pendingRows;
+        int blocksTotal = 0;
+        long from;
+        Integer tagId;
+        synchronized (this) {
+            from = query.fromTimestamp;
+            if (query.lastNanos > 0 && lastTimestamp != Long.MIN_VALUE) {
+                from = Math.max(from, lastTimestamp - query.lastNanos);
+            }
+            tagId = query.tag == null ? null : tagIds.get(query.tag);
+            boolean unknownTag = query.tag != null && tagId == null;
+            for (Segment segment : segments) {
+                blocksTotal += segment.blocks.size();
+                if (unknownTag || !overlaps(segment.minTimestamp, segment.maxTimestamp, from, query.toTimestamp)
+                        || !hasPriority(segment.priorityMask, query.minPriority)
+                        || (tagId != null && !segment.tags.get(tagId))) {
+                    continue;
+                }
+                for (Block block : segment.blocks) {
+                    if (matches(block, query, from, tagId)) {
+                        candidates.add(new BlockRead(segment, block));
+                    }
+                }
+            }
+            pendingRows = new ArrayList<>(pending);
+        }
+
+        // 每个分段只打开一次，各块用定位读取并行解压
+        Map<Segment, FileChannel> channels = new LinkedHashMap<>();
+        long fromTimestamp = from;
+        List<List<LogcatQuery.Row>> blockRows;
+        try {
+            for (BlockRead read : candidates) {
+                if (!channels.containsKey(read.segment)) {
+                    channels.put(read.segment, openForRead(read.segment.file));
+                }
+            }
+            blockRows = candidates.parallelStream()
+                    .map(read -> readBlock(channels.get(read.segment), read.block, query, fromTimestamp))
+                    .collect(Collectors.toList());
+        } finally {
+            for (FileChannel channel : channels.values()) {
+                closeQuietly(channel);
+            }
+        }
+
+        ArrayDeque<LogcatQuery.Row> rows = new ArrayDeque<>();
+        long matched = 0;
+        for (List<LogcatQuery.Row> block : blockRows) {
+            matched += block.size();
+            addLatest(rows, block, query.limit);
+        }
+        List<LogcatQuery.Row> pendingMatches = new ArrayList<>();
+        for (LogcatQuery.Row row : pendingRows) {
+            if (matches(row, query, from)) {
+                pendingMatches.add(row);
+            }
+        }
+        matched += pendingMatches.size();
+        addLatest(rows, pendingMatches, query.limit);
+
+        List<LogcatQuery.Row> result = new ArrayList<>(rows);
+        // logd按时间输出，不同缓冲区之间偶尔交错，稳定排序后顺序与logcat一致
+        result.sort(Comparator.comparingLong(row -> row.timestamp));
+        int segmentsRead = (int) candidates.stream().map(read -> read.segment).distinct().count();
+        return new LogcatQuery.Result(result, matched, candidates.size(), blocksTotal, segmentsRead,
+                System.nanoTime() - start);
+    }
+
+    private static boolean overlaps(long min, long max, long from, long to) {
+        return max >= from && min < to;
+    }
+
+    // 块中有没有级别 >= minPriority 的日志
+    private static boolean hasPriority(int mask, int minPriority) {
+        return minPriority <= 0 || (mask >>> Math.min(minPriority, 31)) != 0;
+    }
+
+    private static boolean matches(Block block, LogcatQuery query, long from, Integer tagId) {
+        return overlaps(block.minTimestamp, block.maxTimestamp, from, query.toTimestamp)
+                && hasPriority(block.priorityMask, query.minPriority)
+                && (tagId == null || Arrays.binarySearch(block.tags, tagId) >= 0)
+                && (query.pid < 0 || Arrays.binarySearch(block.pids, query.pid) >= 0);
+    }
+
+    private static boolean matches(LogcatQuery.Row row, LogcatQuery query, long from) {
+        return row.timestamp >= from && row.timestamp < query.toTimestamp
+                && row.priority >= query.minPriority
+                && (query.tag == null || query.tag.equals(row.tag))
+                && (query.pid < 0 || row.pid == query.pid)
+                && (query.messageContains.isEmpty() || row.message.contains(query.messageContains));
+    }
+
+    private static void addLatest(ArrayDeque<LogcatQuery.Row> rows, List<LogcatQuery.Row> block, int limit) {
+        for (LogcatQuery.Row row : block) {
+            rows.addLast(row);
+            if (rows.size() > limit) {
+                rows.removeFirst();
+            }
+        }
+    }
+
+    // 超过保留数量被删除的分段返回null，查询时跳过
+    private static FileChannel openForRead(Path file) {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<LogcatQuery.Row> readBlock(FileChannel channel, Block block, LogcatQuery query, long from) {
+        List<LogcatQuery.Row> rows = new ArrayList<>();
+        if (channel == null) {
+            return rows;
+        }
+        try {
+            ByteBuffer compressed = ByteBuffer.allocate(block.length);
+            long position = block.offset;
+            while (compressed.hasRemaining()) {
+                int read = channel.read(compressed, position);
+                if (read < 0) {
+                    throw new EOFException("分段文件不完整");
+                }
+                position += read;
+            }
+            // 整块解压后直接按字节解析，消息先按字节匹配，只有命中的才解码成字符串
+            byte[] raw;
+            try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed.array()), 64 * 1024)) {
+                raw = input.readAllBytes();
+            }
+            ByteBuffer data = ByteBuffer.wrap(raw);
+            byte[] text = query.messageContains.getBytes(StandardCharsets.UTF_8);
+            String[] tags = new String[data.getInt()];
+            int wantedTag = query.tag == null ? -1 : -2;
+            for (int i = 0; i < tags.length; i++) {
+                int length = data.getShort() & 0xFFFF;
+                tags[i] = new String(raw, data.position(), length, StandardCharsets.UTF_8);
+                data.position(data.position() + length);
+                if (tags[i].equals(query.tag)) {
+                    wantedTag = i;
+                }
+            }
+            int count = data.getInt();
+            for (int i = 0; i < count; i++) {
+                long timestamp = data.getLong();
+                int pid = data.getInt();
+                int tid = data.getInt();
+                int priority = data.get();
+                int tag = data.getShort() & 0xFFFF;
+                int length = data.getShort() & 0xFFFF;
+                int messageStart = data.position();
+                data.position(messageStart + length);
+                if (timestamp < from || timestamp >= query.toTimestamp || priority < query.minPriority
+                        || (wantedTag != -1 && tag != wantedTag) || (query.pid >= 0 && pid != query.pid)
+                        || (text.length > 0 && indexOf(raw, messageStart, messageStart + length, text) < 0)) {
+                    continue;
+                }
+                rows.add(new LogcatQuery.Row(timestamp, pid, tid, priority, tags[tag],
+                        new String(raw, messageStart, length, StandardCharsets.UTF_8)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取日志分段失败", e);
+        }
+        return rows;
+    }
+
+    private static int indexOf(byte[] data, int from, int to, byte[] pattern) {
+        byte first = pattern[0];
+        for (int i = from, last = to - pattern.length; i <= last; i++) {
+            if (data[i] == first && Arrays.equals(data, i, i + pattern.length, pattern, 0, pattern.length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 块格式（gzip内）：int tag数, tag..., int 条数, 每条 long时间 int pid int tid byte级别 short tag序号 消息
+     * 字符串都是 unsigned short 长度加UTF-8字节；压缩用最快的级别，日志文本压缩率差别不大，写入速度差几倍
+     */
+    private void flushBlock() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> blockTags = new LinkedHashMap<>();
+        TreeSet<Integer> pids = new TreeSet<>();
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        int priorityMask = 0;
+        for (LogcatQuery.Row row : pending) {
+            blockTags.putIfAbsent(row.tag, blockTags.size());
+            pids.add(row.pid);
+            minTimestamp = Math.min(minTimestamp, row.timestamp);
+            maxTimestamp = Math.max(maxTimestamp, row.timestamp);
+            priorityMask |= 1 << Math.max(0, Math.min(row.priority, 31));
+        }
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(pendingBytes + 1024);
+        DataOutputStream data = new DataOutputStream(raw);
+        data.writeInt(blockTags.size());
+        for (String tag : blockTags.keySet()) {
+            writeString(data, tag);
+        }
+        data.writeInt(pending.size());
+        for (LogcatQuery.Row row : pending) {
+            data.writeLong(row.timestamp);
+            data.writeInt(row.pid);
+            data.writeInt(row.tid);
+            data.writeByte(row.priority);
+            data.writeShort(blockTags.get(row.tag));
+            writeString(data, row.message);
+        }
+        data.flush();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.size() / 4 + 1024);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 64 * 1024) {
+            {
+                def.setLevel(Deflater.BEST_SPEED);
+            }
+        }) {
+            raw.writeTo(gzip);
+        }
+
+        Segment segment = currentSegment();
+        long offset = segment.size;
+        ByteBuffer buffer = ByteBuffer.wrap(compressed.toByteArray());
+        while (buffer.hasRemaining()) {
+            segmentChannel.write(buffer);
+        }
+        int[] tags = new int[blockTags.size()];
+        int index = 0;
+        for (String tag : blockTags.keySet()) {
+            tags[index++] = tagIds.computeIfAbsent(tag, key -> tagIds.size());
+        }
+        Arrays.sort(tags);
+        int[] pidArray = pids.stream().mapToInt(Integer::intValue).toArray();
+        Block block = new Block(offset, compressed.size(), pending.size(), minTimestamp, maxTimestamp, priorityMask,
+                tags, pidArray);
+        writeIndexEntry(block, blockTags.keySet());
+        segment.add(block);
+        compressedBytes += compressed.size();
+        uncompressedBytes += raw.size();
+        pending.clear();
+        pendingBytes = 0;
+
+        if (segment.size >= SEGMENT_BYTES) {
+            closeSegment();
+            removeOldSegments();
+        }
+    }
+
+    // MAX_MESSAGE_LENGTH 保证了长度不会超过 unsigned short
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        data.writeShort(bytes.length);
+        data.write(bytes);
+    }
+
+    // 当前写入的分段，没有时创建下一个
+    private Segment currentSegment() throws IOException {
+        if (segmentChannel != null) {
+            return segments.get(segments.size() - 1);
+        }
+        int number = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).number + 1;
+        Segment segment = new Segment(number, directory.resolve(String.format("%s%06d.gz", SEGMENT_PREFIX, number)));
+        segmentChannel = FileChannel.open(segment.file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        indexOutput = new DataOutputStream(new FileOutputStream(indexFile(segment.file).toFile()));
+        segments.add(segment);
+        return segment;
+    }
+
+    private void closeSegment() throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.close();
+            indexOutput.close();
+            segmentChannel = null;
+            indexOutput = null;
+        }
+    }
+
+    // 删除失败（例如文件正被查询打开）只记录，不影响抓取
+    private void removeOldSegments() {
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            Segment oldest = segments.remove(0);
+            for (Block block : oldest.blocks) {
+                compressedBytes -= block.length;
+                recordCount -= block.count;
+            }
+            try {
+                Files.deleteIfExists(oldest.file);
+                Files.deleteIfExists(indexFile(oldest.file));
+            } catch (IOException e) {
+                System.err.println("删除旧的日志分段失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void writeIndexEntry(Block block, Iterable<String> tags) throws IOException {
+        indexOutput.writeLong(block.offset);
+        indexOutput.writeInt(block.length);
+        indexOutput.writeInt(block.count);
+        indexOutput.writeLong(block.minTimestamp);
+        indexOutput.writeLong(block.maxTimestamp);
+        indexOutput.writeInt(block.priorityMask);
+        indexOutput.writeInt(block.tags.length);
+        for (String tag : tags) {
+            indexOutput.writeUTF(tag);
+        }
+        indexOutput.writeInt(block.pids.length);
+        for (int pid : block.pids) {
+            indexOutput.writeInt(pid);
+        }
+        indexOutput.flush();
+    }
+
+    private static Path indexFile(Path segmentFile) {
+        String name = segmentFile.getFileName().toString();
+        return segmentFile.resolveSibling(name.substring(0, name.length() - ".gz".length()) + ".idx");
+    }
+
+    // 加载目录中已有的分段索引，最后一条索引不完整（抓取时被中断）时忽略
+    private void loadSegments() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*.gz")) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.naturalOrder());
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int number;
+            try {
+                number = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - ".gz".length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            Path index = indexFile(file);
+            if (!Files.exists(index)) {
+                continue;
+            }
+            Segment segment = new Segment(number, file);
+            try (InputStream in = Files.newInputStream(index);
+                 DataInputStream input = new DataInputStream(new BufferedInputStream(in))) {
+                while (true) {
+                    Block block = readIndexEntry(input);
+                    if (block == null) {
+                        break;
+                    }
+                    segment.add(block);
+                    recordCount += block.count;
+                    compressedBytes += block.length;
+                    lastTimestamp = Math.max(lastTimestamp, block.maxTimestamp);
+                }
+            }
+            segments.add(segment);
+        }
+    }
+
+    private Block readIndexEntry(DataInputStream input) throws IOException {
+        try {
+            long offset = input.readLong();
+            int length = input.readInt();
+            int count = input.readInt();
+            long minTimestamp = input.readLong();
+            long maxTimestamp = input.readLong();
+            int priorityMask = input.readInt();
+            int[] tags = new int[input.readInt()];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = tagIds.computeIfAbsent(input.readUTF(), key -> tagIds.size());
+            }
+            Arrays.sort(tags);
+            int[] pids = new int[input.readInt()];
+            for (int i = 0; i < pids.length; i++) {
+                pids[i] = input.readInt();
+            }
+            return new Block(offset, length, count, minTimestamp, maxTimestamp, priorityMask, tags, pids);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
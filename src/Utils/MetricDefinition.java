@@ -0,0 +1,151 @@
+package Utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 一个采样指标：在设备上执行的命令，以及从输出中取值的方式
+ * 配置文件格式（Data/metrics.json）：
+ * {
+ *   "interval_ms": 1000,
+ *   "metrics": [
+ *     {"sheet": "CPU", "name": "CPU使用率(%)", "command": "cat /proc/stat", "type": "cpu"},
+ *     {"sheet": "内存", "name": "MemAvailable(MB)", "command": "cat /proc/meminfo",
+ *      "pattern": "MemAvailable:\\s+(\\d+)", "scale": 0.0009765625},
+ *     {"sheet": "帧", "name": "Janky frames", "command": "dumpsys gfxinfo com.example",
+ *      "pattern": "Janky frames:\\s+(\\d+)", "delta": true}
+ *   ]
+ * }
+ * - type 为 regex（默认）时取 pattern 第1组的数值，乘以 scale；delta 为 true 时记录与上一次的差值
+ * - type 为 cpu 时解析 /proc/stat 第一行，记录两次采样之间的CPU使用率
+ * 同一个sheet的指标导出到同一个图表，命令相同的指标每次只执行一次
+ */
+public class MetricDefinition {
+    public static final Path DEFAULT_CONFIG_PATH = Paths.get("Data", "metrics.json");
+    public static final int DEFAULT_INTERVAL_MS = 1000;
+
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(?:\\.\\d+)?");
+
+    private final String sheet;
+    private final String name;
+    private final String command;
+    private final String type;
+    private final Pattern pattern;
+    private final double scale;
+    private final boolean delta;
+
+    public MetricDefinition(String sheet, String name, String command, String type, String pattern,
+                            double scale, boolean delta) {
+        this.sheet = sheet;
+        this.name = name;
+        this.command = command;
+        this.type = type;
+        this.pattern = pattern == null || pattern.isEmpty() ? null : Pattern.compile(pattern, Pattern.MULTILINE);
+        this.scale = scale;
+        this.delta = delta;
+        if (!"cpu".equals(type) && this.pattern == null) {
+            throw new IllegalArgumentException("指标 " + name + " 缺少 pattern");
+        }
+    }
+
+    /**
+     * 读取配置文件中的指标列表
+     */
+    public static List<MetricDefinition> load(Path config) throws IOException {
+        JSONObject root = new JSONObject(new String(Files.readAllBytes(config), StandardCharsets.UTF_8));
+        JSONArray metrics = root.getJSONArray("metrics");
+        List<MetricDefinition> result = new ArrayList<>();
+        for (int i = 0; i < metrics.length(); i++) {
+            JSONObject metric = metrics.getJSONObject(i);
+            String name = metric.getString("name");
+            result.add(new MetricDefinition(metric.optString("sheet", name), name, metric.getString("command"),
+                    metric.optString("type", "regex"), metric.optString("pattern", null),
+                    metric.optDouble("scale", 1.0), metric.optBoolean("delta", false)));
+        }
+        return result;
+    }
+
+    /**
+     * 配置文件中的采样间隔，没有时返回默认值
+     */
+    public static int loadInterval(Path config) throws IOException {
+        JSONObject root = new JSONObject(new String(Files.readAllBytes(config), StandardCharsets.UTF_8));
+        return root.optInt("interval_ms", DEFAULT_INTERVAL_MS);
+    }
+
+    public String getSheet() {
+        return sheet;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * 从命令输出中取值，取不到时返回NaN
+     * @param state 该指标上一次的原始值，delta和cpu类型用来计算差值，长度至少为2，初始为NaN
+     */
+    double extract(String output, double[] state) {
+        if ("cpu".equals(type)) {
+            return cpuUsage(output, state);
+        }
+        Matcher matcher = pattern.matcher(output);
+        if (!matcher.find()) {
+            return Double.NaN;
+        }
+        String text = matcher.groupCount() >= 1 ? matcher.group(1) : matcher.group();
+        double value;
+        try {
+            value = Double.parseDouble(text.replace(",", "")) * scale;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+        if (!delta) {
+            return value;
+        }
+        double previous = state[0];
+        state[0] = value;
+        return Double.isNaN(previous) ? Double.NaN : value - previous;
+    }
+
+    // /proc/stat 第一行：cpu user nice system idle iowait irq softirq steal ...
+    private static double cpuUsage(String output, double[] state) {
+        int start = output.indexOf("cpu ");
+        if (start < 0) {
+            return Double.NaN;
+        }
+        int end = output.indexOf('\n', start);
+        Matcher matcher = NUMBER.matcher(output.substring(start, end < 0 ? output.length() : end));
+        double total = 0;
+        double idle = 0;
+        for (int field = 0; matcher.find(); field++) {
+            double value = Double.parseDouble(matcher.group());
+            total += value;
+            if (field == 3 || field == 4) { // idle + iowait
+                idle += value;
+            }
+        }
+        double previousTotal = state[0];
+        double previousIdle = state[1];
+        state[0] = total;
+        state[1] = idle;
+        if (Double.isNaN(previousTotal) || total <= previousTotal) {
+            return Double.NaN;
+        }
+        return (1 - (idle - previousIdle) / (total - previousTotal)) * 100;
+    }
+}
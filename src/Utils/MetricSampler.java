@@ -0,0 +1,184 @@
+package Utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 按固定间隔在一个设备上执行一组采样命令，解析后追加到 TimeSeriesStore
+ * - 每次采样的所有命令一次写入设备的常驻shell会话（AdbShellPool），不新建adb进程；
+ *   经过 DeviceCommandScheduler 以后台优先级执行，不会挡住界面上的命令
+ * - 一次采样超过间隔时，调度器积压的几次会被跳过，不会连续补采
+ * - 记录每次采样的耗时和采样线程消耗的主机CPU时间，用于评估采样本身的开销
+ */
+public class MetricSampler {
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final String deviceId;
+    private final List<MetricDefinition> metrics;
+    private final int intervalMillis;
+    private final List<String> commands = new ArrayList<>(); // 去重后的命令
+    private final int[] commandOfMetric;
+    private final double[][] metricState;
+    private final TimeSeriesStore store;
+    private ScheduledExecutorService scheduler;
+    private long lastTickNanos = 0; // 只在采样线程上访问
+
+    // 统计，只在采样线程上写
+    private volatile long sampleCount = 0;
+    private volatile long skippedCount = 0;
+    private volatile long failedCount = 0;
+    private volatile long totalLatencyNanos = 0;
+    private volatile long lastLatencyNanos = 0;
+    private volatile long totalCpuNanos = 0;
+    private volatile long startNanos = 0;
+
+    public MetricSampler(String deviceId, List<MetricDefinition> metrics, int intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("interval must be positive: " + intervalMillis);
+        }
+        this.deviceId = deviceId;
+        this.metrics = new ArrayList<>(metrics);
+        this.intervalMillis = intervalMillis;
+        Map<String, Integer> commandIndex = new LinkedHashMap<>();
+        commandOfMetric = new int[metrics.size()];
+        metricState = new double[metrics.size()][2];
+        List<String> names = new ArrayList<>();
+        List<String> sheets = new ArrayList<>();
+        for (int i = 0; i < metrics.size(); i++) {
+            MetricDefinition metric = metrics.get(i);
+            commandOfMetric[i] = commandIndex.computeIfAbsent(metric.getCommand(), command -> {
+                commands.add(command);
+                return commands.size() - 1;
+            });
+            Arrays.fill(metricState[i], Double.NaN);
+            names.add(metric.getName());
+            sheets.add(metric.getSheet());
+        }
+        store = new TimeSeriesStore(names, sheets);
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metric-sampler-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    public String getDeviceId() {
+        return deviceId;
+    }
+
+    public List<MetricDefinition> getMetrics() {
+        return metrics;
+    }
+
+    public TimeSeriesStore getStore() {
+        return store;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    // 因为上一次采样太慢而跳过的次数
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public double getAverageLatencyMillis() {
+        return sampleCount == 0 ? 0 : totalLatencyNanos / 1e6 / sampleCount;
+    }
+
+    public double getLastLatencyMillis() {
+        return lastLatencyNanos / 1e6;
+    }
+
+    // 每次采样在主机上消耗的平均CPU时间（解析和存储，不含等待设备的时间）
+    public double getAverageHostCpuMillis() {
+        return sampleCount == 0 ? 0 : totalCpuNanos / 1e6 / sampleCount;
+    }
+
+    // 采样线程的CPU时间占运行时间的比例，百分比
+    public double getHostCpuPercent() {
+        long elapsed = System.nanoTime() - startNanos;
+        return startNanos == 0 || elapsed <= 0 ? 0 : totalCpuNanos * 100.0 / elapsed;
+    }
+
+    private void tick() {
+        // 固定频率调度不会并发执行同一个任务，但慢的采样会让积压的几次立即连续执行，这里丢弃这些迟到的
+        long start = System.nanoTime();
+        if (lastTickNanos != 0 && start - lastTickNanos < intervalMillis * 500_000L) {
+            skippedCount++;
+            return;
+        }
+        lastTickNanos = start;
+        // 等待设备时线程阻塞，不消耗CPU时间，所以整段的线程CPU时间就是主机上的开销
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        long timestamp = System.currentTimeMillis();
+        List<CompletableFuture<CommandResult>> futures = DeviceCommandScheduler.getDefault()
+                .execute(deviceId, DeviceCommandScheduler.Priority.BACKGROUND, commands);
+        try {
+            String[] outputs = new String[commands.size()];
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                    .get(Math.max(5000, intervalMillis * 5L), TimeUnit.MILLISECONDS);
+            for (int i = 0; i < outputs.length; i++) {
+                CommandResult result = futures.get(i).join();
+                outputs[i] = result.getStdout();
+            }
+            double[] row = new double[metrics.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = metrics.get(i).extract(outputs[commandOfMetric[i]], metricState[i]);
+            }
+            store.append(timestamp, row);
+            long latency = System.nanoTime() - start;
+            lastLatencyNanos = latency;
+            totalLatencyNanos += latency;
+            totalCpuNanos += THREADS.getCurrentThreadCpuTime() - cpuStart;
+            sampleCount++;
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException e) {
+            // 取消这次采样，卡住的命令不再占用设备的通道
+            futures.forEach(future -> future.cancel(true));
+            failedCount++;
+            System.err.println("采样超时 " + deviceId);
+        } catch (Exception e) {
+            failedCount++;
+            System.err.println("采样失败 " + deviceId + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package Utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本机的实时指标页面，使用JDK自带的HttpServer，只监听127.0.0.1
+ * - /                设备列表，/?device=xxx 是某个设备的图表页
+ * - /static/...      python_scripts/html/static 下的css和js，与静态图表页共用
+ * - /events?device=  Server-Sent Events，连接后先发最近的数据，之后只推送新增的行
+ * 数据直接读取 TimeSeriesStore 的快照，不复制；有新行追加时才被唤醒，不轮询
+ * 每个事件的id是 "存储代号:下一行的行号"，断线重连时同一份数据从该行继续；
+ * 重新开始采样后代号不同，旧的行号作废，先发送 reset 事件让页面清空曲线，再从头发送
+ */
+public class MetricsDashboardServer {
+    public static final int DEFAULT_PORT = 8765;
+    public static final Path STATIC_DIR = Paths.get("python_scripts", "html", "static");
+
+    private static final long HEARTBEAT_INTERVAL_MS = 15_000;
+    // 新连接最多补发的行数，页面上的曲线也只保留这么多点
+    private static final int MAX_BACKLOG_ROWS = 20_000;
+    private static final Map<String, String> CONTENT_TYPES = new HashMap<>();
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static MetricsDashboardServer defaultServer;
+
+    static {
+        CONTENT_TYPES.put("css", "text/css; charset=utf-8");
+        CONTENT_TYPES.put("js", "application/javascript; charset=utf-8");
+        CONTENT_TYPES.put("html", "text/html; charset=utf-8");
+        CONTENT_TYPES.put("json", "application/json; charset=utf-8");
+        CONTENT_TYPES.put("png", "image/png");
+        CONTENT_TYPES.put("svg", "image/svg+xml");
+    }
+
+    private final Map<String, TimeSeriesStore> stores = new ConcurrentHashMap<>();
+    private final Path staticDir;
+    private HttpServer server;
+    private ExecutorService executor;
+    private volatile boolean running = false;
+
+    public MetricsDashboardServer(Path staticDir) {
+        this.staticDir = staticDir.toAbsolutePath().normalize();
+    }
+
+    public static synchronized MetricsDashboardServer getDefault() {
+        if (defaultServer == null) {
+            defaultServer = new MetricsDashboardServer(STATIC_DIR);
+        }
+        return defaultServer;
+    }
+
+    /**
+     * 启动服务，端口被占用时改用随机端口；已启动时直接返回
+     */
+    public synchronized void start(int port) throws IOException {
+        if (server != null) {
+            return;
+        }
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        HttpServer created;
+        try {
+            created = HttpServer.create(new InetSocketAddress(loopback, port), 0);
+        } catch (IOException e) {
+            created = HttpServer.create(new InetSocketAddress(loopback, 0), 0);
+        }
+        // 每个SSE连接占用一个线程，连接数很少
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "dashboard-http-" + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        created.setExecutor(executor);
+        created.createContext("/", this::handleRequest);
+        created.start();
+        server = created;
+        running = true;
+    }
+
+    public synchronized void stop() {
+        running = false;
+        stores.values().forEach(TimeSeriesStore::notifyReaders);
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    public String getUrl(String device) {
+        String base = "http://127.0.0.1:" + getPort() + "/";
+        return device == null ? base : base + "?device=" + URLEncoder.encode(device, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 发布一个设备的数据，同名的会被替换（例如重新开始采样）
+     */
+    public void publish(String device, TimeSeriesStore store) {
+        TimeSeriesStore previous = stores.put(device, store);
+        if (previous != null && previous != store) {
+            previous.notifyReaders(); // 正在推送旧数据的连接切换到新数据
+        }
+    }
+
+    public void unpublish(String device) {
+        TimeSeriesStore previous = stores.remove(device);
+        if (previous != null) {
+            previous.notifyReaders();
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "text/plain; charset=utf-8", "只支持GET");
+            } else if (path.equals("/")) {
+                String device = query.get("device");
+                TimeSeriesStore store = device == null ? null : stores.get(device);
+                send(exchange, 200, CONTENT_TYPES.get("html"), store == null ? indexPage() : chartPage(device, store));
+            } else if (path.equals("/events")) {
+                streamEvents(exchange, query.get("device"), query.get("generation"),
+                        exchange.getRequestHeaders().getFirst("Last-Event-ID"));
+            } else if (path.startsWith("/static/")) {
+                serveStatic(exchange, path.substring("/static/".length()));
+            } else {
+                send(exchange, 404, "text/plain; charset=utf-8", "Not Found");
+            }
+        } catch (IOException e) {
+            // 浏览器关闭页面时连接被重置，忽略
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void serveStatic(HttpExchange exchange, String relative) throws IOException {
+        Path file = staticDir.resolve(relative).normalize();
+        if (!file.startsWith(staticDir) || !Files.isRegularFile(file)) {
+            send(exchange, 404, "text/plain; charset=utf-8", "Not Found");
+            return;
+        }
+        String name = file.getFileName().toString();
+        String extension = name.substring(name.lastIndexOf('.') + 1).toLowerCase();
+        byte[] content = Files.readAllBytes(file);
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPES.getOrDefault(extension, "application/octet-stream"));
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, content.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(content);
+        }
+    }
+
+    /**
+     * SSE：先补发最近的行，然后等待新行追加，有新行时只发送新增部分
+     * @param generation 页面生成时的存储代号，没有 Last-Event-ID（还没收到过事件）时用它判断页面上的数据是否过期
+     * @param lastEventId 浏览器重连时带上的最后一个事件id，格式为 "代号:行号"
+     */
+    private void streamEvents(HttpExchange exchange, String device, String generation, String lastEventId)
+            throws IOException {
+        TimeSeriesStore store = device == null ? null : stores.get(device);
+        if (store == null) {
+            send(exchange, 404, "text/plain; charset=utf-8", "没有该设备的采样数据");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+
+        String clientGeneration = generation;
+        int resumeRow = -1;
+        if (lastEventId != null) {
+            int colon = lastEventId.indexOf(':');
+            if (colon > 0) {
+                clientGeneration = lastEventId.substring(0, colon).trim();
+                try {
+                    resumeRow = Integer.parseInt(lastEventId.substring(colon + 1).trim());
+                } catch (NumberFormatException ignored) {
+                }
+            }
+        }
+        boolean stale = clientGeneration != null && !clientGeneration.equals(String.valueOf(store.getGeneration()));
+        int sent = Math.max(0, store.size() - MAX_BACKLOG_ROWS);
+        if (!stale && resumeRow >= 0) {
+            sent = Math.max(sent, Math.min(resumeRow, store.size()));
+        }
+        body.write("retry: 2000\n\n".getBytes(StandardCharsets.UTF_8));
+        if (stale) {
+            writeReset(body, store, sent);
+        }
+        body.flush();
+        long lastWrite = System.currentTimeMillis();
+        try {
+            while (running) {
+                TimeSeriesStore latest = stores.get(device);
+                if (latest == null) {
+                    return; // 已停止发布，浏览器重连时得到404
+                }
+                if (latest != store) {
+                    // 重新开始了采样：清空页面上的曲线，从新数据的开头发送
+                    store = latest;
+                    sent = Math.max(0, store.size() - MAX_BACKLOG_ROWS);
+                    writeReset(body, store, sent);
+                    body.flush();
+                    lastWrite = System.currentTimeMillis();
+                }
+                long idle = System.currentTimeMillis() - lastWrite;
+                TimeSeriesStore current = store;
+                TimeSeriesStore.Snapshot snapshot = store.awaitAppend(sent, Math.max(1, HEARTBEAT_INTERVAL_MS - idle),
+                        () -> !running || stores.get(device) != current);
+                if (snapshot.size > sent) {
+                    String event = "id: " + store.getGeneration() + ":" + snapshot.size + "\ndata: "
+                            + delta(snapshot, store.getSeriesCount(), sent, snapshot.size) + "\n\n";
+                    body.write(event.getBytes(StandardCharsets.UTF_8));
+                    body.flush();
+                    sent = snapshot.size;
+                    lastWrite = System.currentTimeMillis();
+                } else if (System.currentTimeMillis() - lastWrite >= HEARTBEAT_INTERVAL_MS) {
+                    // 注释行，保持连接并及时发现浏览器已断开
+                    body.write(": ping\n\n".getBytes(StandardCharsets.UTF_8));
+                    body.flush();
+                    lastWrite = System.currentTimeMillis();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // stop 关闭线程池
+        }
+    }
+
+    /**
+     * reset 事件：页面清空曲线，之后的数据从 from 行开始；序列与页面上的不同时页面重新加载
+     * 事件id使用新的代号，之后断线重连也不会再用旧的行号
+     */
+    private static void writeReset(OutputStream body, TimeSeriesStore store, int from) throws IOException {
+        JSONArray names = new JSONArray();
+        for (int i = 0; i < store.getSeriesCount(); i++) {
+            names.put(store.getName(i));
+        }
+        String data = new JSONObject().put("generation", String.valueOf(store.getGeneration()))
+                .put("series", names).toString();
+        String event = "event: reset\nid: " + store.getGeneration() + ":" + from + "\ndata: " + data + "\n\n";
+        body.write(event.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 行 [from, to) 的增量：{"start": from, "t": [秒...], "v": [[序列0...], [序列1...]]}
+     * 时间是相对第一个采样的秒数，与导出的xlsx一致；NaN输出为null
+     */
+    static String delta(TimeSeriesStore.Snapshot snapshot, int seriesCount, int from, int to) {
+        long start = snapshot.getTimestamp(0);
+        StringBuilder json = new StringBuilder(32 + (to - from) * (seriesCount + 1) * 8);
+        json.append("{\"start\":").append(from).append(",\"t\":[");
+        for (int row = from; row < to; row++) {
+            if (row > from) {
+                json.append(',');
+            }
+            json.append((snapshot.getTimestamp(row) - start) / 1000.0);
+        }
+        json.append("],\"v\":[");
+        for (int series = 0; series < seriesCount; series++) {
+            json.append(series == 0 ? "[" : ",[");
+            for (int row = from; row < to; row++) {
+                if (row > from) {
+                    json.append(',');
+                }
+                double value = snapshot.getValue(series, row);
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    json.append("null");
+                } else {
+                    json.append(value);
+                }
+            }
+            json.append(']');
+        }
+        return json.append("]}").toString();
+    }
+
+    private String indexPage() {
+        StringBuilder links = new StringBuilder();
+        for (String device : stores.keySet()) {
+            links.append("<li><a href=\"/?device=").append(URLEncoder.encode(device, StandardCharsets.UTF_8))
+                    .append("\">").append(escapeHtml(device)).append("</a></li>");
+        }
+        return page("实时指标", links.length() == 0 ? "<p>没有正在采样的设备</p>" : "<ul>" + links + "</ul>", "");
+    }
+
+    // 图表配置直接嵌入页面，live_charts.js 同步创建图表，chart_interactions.js 加载时就能找到它们
+    private String chartPage(String device, TimeSeriesStore store) {
+        JSONArray sheets = new JSONArray();
+        for (Map.Entry<String, List<Integer>> sheet : store.getSheets().entrySet()) {
+            JSONArray series = new JSONArray();
+            for (int index : sheet.getValue()) {
+                series.put(new JSONObject().put("index", index).put("name", store.getName(index)));
+            }
+            sheets.put(new JSONObject().put("name", sheet.getKey()).put("series", series));
+        }
+        JSONObject config = new JSONObject()
+                .put("device", device)
+                .put("events", "/events?device=" + URLEncoder.encode(device, StandardCharsets.UTF_8)
+                        + "&generation=" + store.getGeneration())
+                .put("maxPoints", MAX_BACKLOG_ROWS)
+                .put("sheets", sheets);
+        String scripts = "    <script>window.liveChartConfig = " + config.toString().replace("</", "<\\/") + ";</script>\n"
+                + "    <script src=\"/static/js/live_charts.js\"></script>\n"
+                + "    <script src=\"/static/js/chart_interactions.js\"></script>\n";
+        return page("实时指标 - " + device, "", scripts);
+    }
+
+    // 与 main.py 生成的页面结构相同，共用 styles.css
+    private static String page(String title, String content, String scripts) {
+        return "<!DOCTYPE html>\n<html>\n<head>\n"
+                + "    <meta charset=\"utf-8\">\n"
+                + "    <title>" + escapeHtml(title) + "</title>\n"
+                + "    <link rel=\"stylesheet\" href=\"/static/css/styles.css\">\n"
+                + "    <script src=\"https://cdn.plot.ly/plotly-2.24.1.min.js\"></script>\n"
+                + "</head>\n<body>\n"
+                + "    <header>\n        <h1>" + escapeHtml(title) + "</h1>\n    </header>\n"
+                + "    <main id=\"chart-container\">" + content + "</main>\n"
+                + scripts
+                + "</body>\n</html>";
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String text) throws IOException {
+        byte[] content = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, content.length);
+        try (OutputStream body = exchange.getResponseBody()) {
+            body.write(content);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> result = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return result;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String key = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            result.put(key, value);
+        }
+        return result;
+    }
+
+    private static String escapeHtml(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,102 @@
+package Utils;
+
+import java.util.Arrays;
+
+/**
+ * 每个track（或线程）上尚未结束的slice栈，键是long，避免每个事件都装箱
+ * begin时 getOrCreate(key).push，end时 get(key).pop，slice的开始时间和名字在 pop 之后从栈顶位置读取
+ * 不是线程安全的，只能在一个线程上调用
+ */
+class OpenSliceStacks {
+    /**
+     * 一个track上尚未结束的slice，depth是当前深度
+     */
+    static class Stack {
+        long[] timestamps = new long[8];
+        String[] names = new String[8];
+        int depth = 0;
+
+        void push(long timestamp, String name) {
+            if (depth == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, depth * 2);
+                names = Arrays.copyOf(names, depth * 2);
+            }
+            timestamps[depth] = timestamp;
+            names[depth] = name;
+            depth++;
+        }
+
+        /**
+         * 弹出栈顶的slice并返回它的名字，开始时间是 timestamps[depth]；栈为空时返回null
+         */
+        String pop() {
+            if (depth == 0) {
+                return null;
+            }
+            depth--;
+            String name = names[depth];
+            names[depth] = null;
+            return name;
+        }
+    }
+
+    private long[] keys = new long[64];
+    private Stack[] values = new Stack[64];
+    private int size = 0;
+
+    Stack get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return null;
+    }
+
+    Stack getOrCreate(long key) {
+        Stack stack = get(key);
+        if (stack == null) {
+            if ((size + 1) * 2 > keys.length) {
+                grow();
+            }
+            stack = new Stack();
+            insert(key, stack);
+            size++;
+        }
+        return stack;
+    }
+
+    // 当前深度，没有未结束的slice时为0
+    int depth(long key) {
+        Stack stack = get(key);
+        return stack == null ? 0 : stack.depth;
+    }
+
+    private void insert(long key, Stack value) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        Stack[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Stack[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                insert(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int mix(long key) {
+        long hash = key * 0x9e3779b97f4a7c15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
@@ -0,0 +1,252 @@
+package Utils;
+
+import interfaces.ShellStreamListener;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 一次perfetto抓取：
+ * - 文本配置（.pbtx）作为 shell v2 的stdin包传给 perfetto --txt -c -，随后关闭stdin，设备上不产生临时配置文件
+ *   （exec: 不能单独关闭stdin，perfetto读不到EOF；有perfetto的设备都支持 shell v2）
+ * - 配置中的 duration_ms 替换为指定的时长
+ * - 抓取结果通过 -o - 从stdout包流回主机，直接写入磁盘，不在内存中缓存整个trace；stderr单独接收，用作错误信息
+ * 进度通过 getState/getElapsedMillis/getBytesReceived 读取，可以在任意线程轮询
+ */
+public class PerfettoCapture {
+    public enum State {
+        STARTING("启动中"),
+        TRACING("抓取中"),
+        RECEIVING("接收中"),
+        SUCCESS("完成"),
+        FAILED("失败"),
+        CANCELLED("已取消");
+
+        private final String label;
+
+        State(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final String COMMAND = "perfetto --txt -c - -o -";
+    private static final Pattern DURATION = Pattern.compile("(?m)^(\\s*)duration_ms\\s*:\\s*\\d+");
+    // 错误信息最多保留的字节数
+    private static final int MAX_ERROR_BYTES = 4096;
+    // trace的第一个字节总是 TracePacket 字段（field 1, length-delimited）的tag
+    private static final byte TRACE_FIRST_BYTE = 0x0a;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final AdbClient client;
+    private final String serial;
+    private final Path configPath;
+    private final int durationSeconds;
+    private final Path output;
+    private volatile State state = State.STARTING;
+    private volatile long startNanos = 0;
+    private volatile long bytesReceived = 0;
+    private volatile String message = "";
+    private volatile SocketChannel channel;
+
+    /**
+     * @param durationSeconds 抓取时长（秒），替换配置中的 duration_ms
+     * @param output trace保存路径，接收完成前写入同名的 .part 文件
+     */
+    public PerfettoCapture(AdbClient client, String serial, Path configPath, int durationSeconds, Path output) {
+        this.client = client;
+        this.serial = serial;
+        this.configPath = configPath;
+        this.durationSeconds = durationSeconds;
+        this.output = output;
+    }
+
+    /**
+     * 在后台线程开始抓取，返回的future在trace写入磁盘后完成
+     */
+    public CompletableFuture<Path> start() {
+        CompletableFuture<Path> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                capture();
+                if (state == State.SUCCESS) {
+                    future.complete(output);
+                } else {
+                    future.cancel(false);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (state != State.CANCELLED) {
+                    fail(e.getMessage());
+                }
+                future.completeExceptionally(e);
+            }
+        }, "perfetto-capture-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+        return future;
+    }
+
+    /**
+     * 取消抓取，关闭连接后设备上的perfetto进程随之退出
+     */
+    public void cancel() {
+        state = State.CANCELLED;
+        message = "已取消";
+        SocketChannel current = channel;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    public long getDurationMillis() {
+        return durationSeconds * 1000L;
+    }
+
+    public long getElapsedMillis() {
+        return startNanos == 0 ? 0 : (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    public Path getOutput() {
+        return output;
+    }
+
+    public boolean isFinished() {
+        return state == State.SUCCESS || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    private void capture() throws IOException {
+        byte[] config = patchDuration(Files.readString(configPath, StandardCharsets.UTF_8), durationSeconds)
+                .getBytes(StandardCharsets.UTF_8);
+        Files.createDirectories(output.toAbsolutePath().getParent());
+        Path partial = output.resolveSibling(output.getFileName() + ".part");
+
+        try (SocketChannel ch = client.openShellV2(serial, COMMAND)) {
+            channel = ch;
+            if (state == State.CANCELLED) {
+                return;
+            }
+            // 配置写完后发送关闭stdin的包，perfetto读到EOF才会开始抓取
+            AdbClient.writeShellStdin(ch, ByteBuffer.wrap(config));
+            AdbClient.closeShellStdin(ch);
+            startNanos = System.nanoTime();
+            setState(State.TRACING, "");
+
+            // 抓取期间stdout没有数据，抓取结束后trace一次性写出
+            try (FileChannel file = FileChannel.open(partial, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                TraceWriter writer = new TraceWriter(file);
+                int exitCode = AdbClient.readShellV2(ch, writer);
+                if (writer.received == 0) {
+                    throw new IOException("perfetto没有输出trace" + (writer.errors.size() > 0
+                            ? ": " + writer.errorText() : "，请检查配置和设备上的perfetto服务"));
+                }
+                if (exitCode > 0) {
+                    throw new IOException("perfetto退出码 " + exitCode + ": " + writer.errorText());
+                }
+                file.force(false);
+            }
+            Files.move(partial, output, StandardCopyOption.REPLACE_EXISTING);
+            setState(State.SUCCESS, output.toString());
+        } catch (IOException e) {
+            Files.deleteIfExists(partial);
+            if (state == State.CANCELLED) {
+                return;
+            }
+            throw e;
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * 把stdout包写入文件，stderr包保留前 MAX_ERROR_BYTES 字节作为错误信息
+     */
+    private class TraceWriter implements ShellStreamListener {
+        private final FileChannel file;
+        private final ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        private long received = 0;
+
+        TraceWriter(FileChannel file) {
+            this.file = file;
+        }
+
+        @Override
+        public void onStdout(ByteBuffer data) throws IOException {
+            if (received == 0 && data.hasRemaining()) {
+                if (data.get(data.position()) != TRACE_FIRST_BYTE) {
+                    onStderr(data);
+                    throw new IOException("perfetto没有输出trace: " + errorText());
+                }
+                setState(State.RECEIVING, "");
+            }
+            while (data.hasRemaining()) {
+                received += file.write(data);
+            }
+            bytesReceived = received;
+        }
+
+        @Override
+        public void onStderr(ByteBuffer data) {
+            while (data.hasRemaining() && errors.size() < MAX_ERROR_BYTES) {
+                errors.write(data.get());
+            }
+        }
+
+        String errorText() {
+            return new String(errors.toByteArray(), StandardCharsets.UTF_8).trim();
+        }
+    }
+
+    /**
+     * 把配置中的 duration_ms 替换为指定时长，没有时在开头添加
+     */
+    static String patchDuration(String config, int durationSeconds) {
+        long durationMs = durationSeconds * 1000L;
+        Matcher matcher = DURATION.matcher(config);
+        if (matcher.find()) {
+            return matcher.replaceAll("$1duration_ms: " + durationMs);
+        }
+        return "duration_ms: " + durationMs + "\n" + config;
+    }
+
+    private void setState(State state, String message) {
+        if (this.state != State.CANCELLED) {
+            this.state = state;
+            this.message = message;
+        }
+    }
+
+    private void fail(String message) {
+        setState(State.FAILED, message == null ? "" : message);
+    }
+}
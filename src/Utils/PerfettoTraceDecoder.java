@@ -0,0 +1,765 @@
+package Utils;
+
+import interfaces.TraceEventListener;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * Perfetto trace 流式解码器
+ * - 内存映射文件，按窗口滑动，直接在映射的字节上解析protobuf，不创建TracePacket对象
+ * - 只解析关心的字段：ftrace的sched_switch/print、compact_sched、track_event、
+ *   track_descriptor、process_tree和interned_data，其余字段直接跳过
+ * - begin/end配对、sched_switch转换成CPU上的运行区间都在这里完成，结果通过 TraceEventListener 回调
+ * 堆内存只与线程数、嵌套深度和不同名字的数量有关，与文件大小无关
+ * 压缩的包（compressed_packets）只计数，不解压
+ */
+public class PerfettoTraceDecoder {
+    private static final long WINDOW_SIZE = 256L << 20;
+    private static final long PROGRESS_INTERVAL = 16L << 20;
+
+    // TracePacket中不携带数据的字段，判断数据源时跳过
+    private static final int[] PACKET_METADATA_FIELDS = {3, 8, 10, 12, 13, 41, 42, 43, 58, 59, 79, 87};
+
+    // TrackEvent.type
+    private static final int TYPE_SLICE_BEGIN = 1;
+    private static final int TYPE_SLICE_END = 2;
+    private static final int TYPE_INSTANT = 3;
+    private static final int TYPE_COUNTER = 4;
+    // TracePacket.sequence_flags
+    private static final int SEQ_INCREMENTAL_STATE_CLEARED = 1;
+    // 没有track_uuid的track_event按序列区分，和真实的uuid分开
+    private static final long SEQUENCE_TRACK_FLAG = 1L << 62;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final TraceEventListener listener;
+    private final LongConsumer progress;
+    private final ByteStringCache strings = new ByteStringCache();
+
+    private MappedByteBuffer buffer;
+    private long windowStart;
+    private int cursor;
+    private int varintEnd;
+
+    private final Map<Integer, Map<Long, String>> internedNames = new HashMap<>();
+    private final OpenSliceStacks sliceStacks = new OpenSliceStacks();
+    private final Map<Long, Integer> trackTids = new HashMap<>();
+    private final Map<Long, String> trackNames = new HashMap<>();
+    private final ThreadNameTable threadNames = new ThreadNameTable();
+    private long[] cpuLastTimestamp = new long[0];
+    private int[] cpuLastTid = new int[0];
+
+
+    private PerfettoTraceDecoder(FileChannel channel, TraceEventListener listener, LongConsumer progress)
+            throws IOException {
+        this.channel = channel;
+        this.fileSize = channel.size();
+        this.listener = listener;
+        this.progress = progress;
+    }
+
+    public static void decode(Path trace, TraceEventListener listener) throws IOException {
+        decode(trace, listener, null);
+    }
+
+    /**
+     * 解码整个trace文件，调用线程被中断时抛出 InterruptedIOException
+     * @param progress 已解码的字节数回调，可以为null
+     */
+    public static void decode(Path trace, TraceEventListener listener, LongConsumer progress) throws IOException {
+        try (FileChannel channel = FileChannel.open(trace, StandardOpenOption.READ)) {
+            new PerfettoTraceDecoder(channel, listener, progress).run();
+        }
+    }
+
+    private void run() throws IOException {
+        long position = 0;
+        long nextProgress = PROGRESS_INTERVAL;
+        map(0, Math.min(WINDOW_SIZE, fileSize));
+        while (position < fileSize) {
+            // 字段头最多20字节，不够时重新映射
+            if (position + 20 > windowStart + buffer.limit() && windowStart + buffer.limit() < fileSize) {
+                map(position, Math.min(WINDOW_SIZE, fileSize - position));
+            }
+            cursor = (int) (position - windowStart);
+            long tag = varint();
+            int wireType = (int) (tag & 7);
+            if (wireType != 2) {
+                // Trace只有 repeated TracePacket packet = 1，其他内容说明文件损坏
+                throw new IOException("不是perfetto trace，偏移 " + position);
+            }
+            long length = varint();
+            long packetStart = windowStart + cursor;
+            long packetEnd = packetStart + length;
+            if (packetEnd > fileSize) {
+                break; // 抓取被中断时最后一个包可能不完整
+            }
+            if (packetEnd > windowStart + buffer.limit()) {
+                map(position, Math.min(Math.max(WINDOW_SIZE, packetEnd - position), fileSize - position));
+            }
+            if ((tag >>> 3) == 1) {
+                decodePacket((int) (packetStart - windowStart), (int) (packetEnd - windowStart));
+            }
+            position = packetEnd;
+
+            // 每隔一段检查中断，取消的加载不再继续解码
+            if (position >= nextProgress) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedIOException("解码已取消，偏移 " + position);
+                }
+                if (progress != null) {
+                    progress.accept(position);
+                }
+                nextProgress = position + PROGRESS_INTERVAL;
+            }
+        }
+        if (progress != null) {
+            progress.accept(fileSize);
+        }
+    }
+
+    private void map(long start, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("包过大: " + size);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        windowStart = start;
+    }
+
+    // ==================== protobuf基础 ====================
+
+    private long varint() {
+        long value = varintAt(cursor);
+        cursor = varintEnd;
+        return value;
+    }
+
+    private long varintAt(int position) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (long) (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0 && shift < 64);
+        varintEnd = position;
+        return value;
+    }
+
+    // 跳过当前字段的值，不支持的wire type（已废弃的group）直接跳到消息末尾
+    private void skip(int wireType, int end) {
+        switch (wireType) {
+            case 0:
+                varint();
+                break;
+            case 1:
+                cursor += 8;
+                break;
+            case 2:
+                int length = (int) varint();
+                cursor += length;
+                break;
+            case 5:
+                cursor += 4;
+                break;
+            default:
+                cursor = end;
+                break;
+        }
+    }
+
+    private String string(int start, int end) {
+        return strings.get(buffer, start, end);
+    }
+
+    // ==================== TracePacket ====================
+
+    private void decodePacket(int start, int end) {
+        long timestamp = -1;
+        int sequenceId = 0;
+        int sequenceFlags = 0;
+        int payloadField = 0;
+        int ftraceStart = -1, ftraceEnd = 0;
+        int processTreeStart = -1, processTreeEnd = 0;
+        int trackEventStart = -1, trackEventEnd = 0;
+        int internedStart = -1, internedEnd = 0;
+        int descriptorStart = -1, descriptorEnd = 0;
+
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (payloadField == 0 && !isMetadataField(field)) {
+                payloadField = field;
+            }
+            if (wireType == 0) {
+                long value = varint();
+                if (field == 8) {
+                    timestamp = value;
+                } else if (field == 10) {
+                    sequenceId = (int) value;
+                } else if (field == 13) {
+                    sequenceFlags = (int) value;
+                }
+            } else if (wireType == 2) {
+                int length = (int) varint();
+                int valueStart = cursor;
+                cursor += length;
+                switch (field) {
+                    case 1: ftraceStart = valueStart; ftraceEnd = cursor; break;
+                    case 2: processTreeStart = valueStart; processTreeEnd = cursor; break;
+                    case 11: trackEventStart = valueStart; trackEventEnd = cursor; break;
+                    case 12: internedStart = valueStart; internedEnd = cursor; break;
+                    case 60: descriptorStart = valueStart; descriptorEnd = cursor; break;
+                    default: break;
+                }
+            } else {
+                skip(wireType, end);
+            }
+        }
+
+        listener.onPacket(payloadField, timestamp);
+
+        // interned_data 可能在 track_event 之后序列化，先处理
+        if ((sequenceFlags & SEQ_INCREMENTAL_STATE_CLEARED) != 0) {
+            internedNames.remove(sequenceId);
+        }
+        if (internedStart >= 0) {
+            decodeInternedData(sequenceId, internedStart, internedEnd);
+        }
+        if (descriptorStart >= 0) {
+            decodeTrackDescriptor(descriptorStart, descriptorEnd);
+        }
+        if (ftraceStart >= 0) {
+            decodeFtraceBundle(ftraceStart, ftraceEnd);
+        }
+        if (processTreeStart >= 0) {
+            decodeProcessTree(processTreeStart, processTreeEnd);
+        }
+        if (trackEventStart >= 0) {
+            decodeTrackEvent(sequenceId, timestamp, trackEventStart, trackEventEnd);
+        }
+    }
+
+    private static boolean isMetadataField(int field) {
+        for (int metadataField : PACKET_METADATA_FIELDS) {
+            if (field == metadataField) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ==================== ftrace ====================
+
+    private void decodeFtraceBundle(int start, int end) {
+        // 先取cpu，事件中要用到
+        int cpu = 0;
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            if ((tag >>> 3) == 1 && (tag & 7) == 0) {
+                cpu = (int) varint();
+                break;
+            }
+            skip((int) (tag & 7), end);
+        }
+
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (wireType == 2 && (field == 2 || field == 4)) {
+                int length = (int) varint();
+                int valueStart = cursor;
+                int valueEnd = cursor + length;
+                if (field == 2) {
+                    decodeFtraceEvent(cpu, valueStart, valueEnd);
+                } else {
+                    decodeCompactSched(cpu, valueStart, valueEnd);
+                }
+                cursor = valueEnd;
+            } else {
+                skip(wireType, end);
+            }
+        }
+    }
+
+    private void decodeFtraceEvent(int cpu, int start, int end) {
+        long timestamp = 0;
+        int pid = 0;
+        int printStart = -1, printEnd = 0;
+        int switchStart = -1, switchEnd = 0;
+
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (wireType == 0 && field == 1) {
+                timestamp = varint();
+            } else if (wireType == 0 && field == 2) {
+                pid = (int) varint();
+            } else if (wireType == 2 && (field == 3 || field == 4)) {
+                int length = (int) varint();
+                if (field == 3) {
+                    printStart = cursor;
+                    printEnd = cursor + length;
+                } else {
+                    switchStart = cursor;
+                    switchEnd = cursor + length;
+                }
+                cursor += length;
+            } else {
+                skip(wireType, end);
+            }
+        }
+
+        if (switchStart >= 0) {
+            decodeSchedSwitch(cpu, timestamp, switchStart, switchEnd);
+        } else if (printStart >= 0) {
+            decodePrint(pid, timestamp, printStart, printEnd);
+        }
+    }
+
+    private void decodeSchedSwitch(int cpu, long timestamp, int start, int end) {
+        int prevPid = -1;
+        int nextPid = 0;
+        String nextComm = null;
+
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (wireType == 0 && field == 2) {
+                prevPid = (int) varint();
+            } else if (wireType == 0 && field == 6) {
+                nextPid = (int) varint();
+            } else if (wireType == 2 && field == 5) {
+                // 只取next_comm，每个线程被切换进来时都会带上名字，prev_comm不需要再解析
+                int length = (int) varint();
+                nextComm = string(cursor, cursor + length);
+                cursor += length;
+            } else {
+                skip(wireType, end);
+            }
+        }
+
+        if (nextComm != null && nextPid > 0) {
+            threadName(nextPid, nextComm);
+        }
+        schedSwitch(cpu, timestamp, prevPid, nextPid);
+    }
+
+    /**
+     * compact_sched：时间戳是增量编码的packed数组，next_pid和next_comm_index是与之对应的packed数组
+     */
+    private void decodeCompactSched(int cpu, int start, int end) {
+        int timestampStart = -1, timestampEnd = 0;
+        int pidStart = -1, pidEnd = 0;
+        int commStart = -1, commEnd = 0;
+        List<String> internTable = new ArrayList<>();
+
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (wireType != 2) {
+                skip(wireType, end);
+                continue;
+            }
+            int length = (int) varint();
+            switch (field) {
+                case 1: timestampStart = cursor; timestampEnd = cursor + length; break;
+                case 3: pidStart = cursor; pidEnd = cursor + length; break;
+                case 5: internTable.add(string(cursor, cursor + length)); break;
+                case 6: commStart = cursor; commEnd = cursor + length; break;
+                default: break;
+            }
+            cursor += length;
+        }
+        if (timestampStart < 0 || pidStart < 0) {
+            return;
+        }
+
+        long timestamp = 0;
+        int timestampPosition = timestampStart;
+        int pidPosition = pidStart;
+        int commPosition = commStart;
+        while (timestampPosition < timestampEnd && pidPosition < pidEnd) {
+            timestamp += varintAt(timestampPosition);
+            timestampPosition = varintEnd;
+            int nextPid = (int) varintAt(pidPosition);
+            pidPosition = varintEnd;
+            if (commStart >= 0 && commPosition < commEnd) {
+                int commIndex = (int) varintAt(commPosition);
+                commPosition = varintEnd;
+                if (nextPid > 0 && commIndex < internTable.size()) {
+                    threadName(nextPid, internTable.get(commIndex));
+                }
+            }
+            schedSwitch(cpu, timestamp, -1, nextPid);
+        }
+    }
+
+    // CPU上一个线程的运行区间从它被切换进来开始，到下一次切换结束
+    private void schedSwitch(int cpu, long timestamp, int prevPid, int nextPid) {
+        if (cpu >= cpuLastTimestamp.length) {
+            int oldLength = cpuLastTimestamp.length;
+            cpuLastTimestamp = Arrays.copyOf(cpuLastTimestamp, cpu + 1);
+            cpuLastTid = Arrays.copyOf(cpuLastTid, cpu + 1);
+            Arrays.fill(cpuLastTimestamp, oldLength, cpu + 1, -1);
+        }
+        long last = cpuLastTimestamp[cpu];
+        if (last >= 0 && timestamp >= last) {
+            int tid = prevPid >= 0 ? prevPid : cpuLastTid[cpu];
+            listener.onSchedSlice(cpu, last, timestamp - last, tid);
+        }
+        cpuLastTimestamp[cpu] = timestamp;
+        cpuLastTid[cpu] = nextPid;
+    }
+
+    /**
+     * atrace写入的print：B|pid|name、E|pid、C|pid|name|value
+     * 以写入线程的tid作为track
+     */
+    private void decodePrint(int tid, long timestamp, int start, int end) {
+        cursor = start;
+        int bufStart = -1, bufEnd = 0;
+        while (cursor < end) {
+            long tag = varint();
+            if ((tag >>> 3) == 2 && (tag & 7) == 2) {
+                int length = (int) varint();
+                bufStart = cursor;
+                bufEnd = cursor + length;
+                break;
+            }
+            skip((int) (tag & 7), end);
+        }
+        if (bufStart < 0 || bufEnd - bufStart < 2 || buffer.get(bufStart + 1) != '|') {
+            return;
+        }
+        // 去掉末尾的换行
+        while (bufEnd > bufStart && (buffer.get(bufEnd - 1) == '\n' || buffer.get(bufEnd - 1) == 0)) {
+            bufEnd--;
+        }
+        byte type = buffer.get(bufStart);
+        if (type == 'E') {
+            endSlice(tid, tid, timestamp);
+            return;
+        }
+        if (type != 'B' && type != 'C') {
+            return;
+        }
+        int pidEnd = indexOf(bufStart + 2, bufEnd, (byte) '|');
+        if (pidEnd < 0) {
+            return;
+        }
+        if (type == 'B') {
+            beginSlice(tid, timestamp, string(pidEnd + 1, bufEnd));
+        } else {
+            int nameEnd = indexOf(pidEnd + 1, bufEnd, (byte) '|');
+            if (nameEnd < 0) {
+                return;
+            }
+            try {
+                double value = Double.parseDouble(string(nameEnd + 1, bufEnd).trim());
+                listener.onCounter(string(pidEnd + 1, nameEnd), (int) parseLong(bufStart + 2, pidEnd), timestamp, value);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+    }
+
+    private int indexOf(int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long parseLong(int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    // ==================== track_event ====================
+
+    private void decodeInternedData(int sequenceId, int start, int end) {
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int wireType = (int) (tag & 7);
+            if ((tag >>> 3) == 2 && wireType == 2) {
+                int length = (int) varint();
+                int valueEnd = cursor + length;
+                long iid = 0;
+                String name = null;
+                while (cursor < valueEnd) {
+                    long innerTag = varint();
+                    int innerWireType = (int) (innerTag & 7);
+                    if ((innerTag >>> 3) == 1 && innerWireType == 0) {
+                        iid = varint();
+                    } else if ((innerTag >>> 3) == 2 && innerWireType == 2) {
+                        int nameLength = (int) varint();
+                        name = string(cursor, cursor + nameLength);
+                        cursor += nameLength;
+                    } else {
+                        skip(innerWireType, valueEnd);
+                    }
+                }
+                if (name != null) {
+                    internedNames.computeIfAbsent(sequenceId, id -> new HashMap<>()).put(iid, name);
+                }
+                cursor = valueEnd;
+            } else {
+                skip(wireType, end);
+            }
+        }
+    }
+
+    private void decodeTrackDescriptor(int start, int end) {
+        long uuid = 0;
+        String name = null;
+        int threadStart = -1, threadEnd = 0;
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (field == 1 && wireType == 0) {
+                uuid = varint();
+            } else if (field == 2 && wireType == 2) {
+                int length = (int) varint();
+                name = string(cursor, cursor + length);
+                cursor += length;
+            } else if (field == 4 && wireType == 2) {
+                int length = (int) varint();
+                threadStart = cursor;
+                threadEnd = cursor + length;
+                cursor += length;
+            } else {
+                skip(wireType, end);
+            }
+        }
+        if (name != null) {
+            trackNames.put(uuid, name);
+        }
+        if (threadStart >= 0) {
+            // ThreadDescriptor: pid=1, tid=2, thread_name=5
+            int pid = 0;
+            int tid = 0;
+            String threadName = null;
+            cursor = threadStart;
+            while (cursor < threadEnd) {
+                long tag = varint();
+                int field = (int) (tag >>> 3);
+                int wireType = (int) (tag & 7);
+                if (field == 1 && wireType == 0) {
+                    pid = (int) varint();
+                } else if (field == 2 && wireType == 0) {
+                    tid = (int) varint();
+                } else if (field == 5 && wireType == 2) {
+                    int length = (int) varint();
+                    threadName = string(cursor, cursor + length);
+                    cursor += length;
+                } else {
+                    skip(wireType, threadEnd);
+                }
+            }
+            trackTids.put(uuid, tid);
+            if (threadName != null) {
+                listener.onThreadName(tid, pid, threadName);
+            }
+        }
+    }
+
+    private void decodeTrackEvent(int sequenceId, long timestamp, int start, int end) {
+        int type = 0;
+        long nameIid = -1;
+        long trackUuid = -1;
+        String name = null;
+        double counterValue = 0;
+
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (wireType == 0) {
+                long value = varint();
+                switch (field) {
+                    case 9: type = (int) value; break;
+                    case 10: nameIid = value; break;
+                    case 11: trackUuid = value; break;
+                    case 30: counterValue = value; break;
+                    default: break;
+                }
+            } else if (wireType == 2 && field == 23) {
+                int length = (int) varint();
+                name = string(cursor, cursor + length);
+                cursor += length;
+            } else if (wireType == 1 && field == 44) {
+                counterValue = buffer.getDouble(cursor);
+                cursor += 8;
+            } else {
+                skip(wireType, end);
+            }
+        }
+
+        if (name == null && nameIid >= 0) {
+            Map<Long, String> names = internedNames.get(sequenceId);
+            name = names != null ? names.get(nameIid) : null;
+        }
+        long trackId = trackUuid >= 0 ? trackUuid : SEQUENCE_TRACK_FLAG | sequenceId;
+        int tid = trackTids.getOrDefault(trackId, 0);
+        switch (type) {
+            case TYPE_SLICE_BEGIN:
+                beginSlice(trackId, timestamp, name != null ? name : "");
+                break;
+            case TYPE_SLICE_END:
+                endSlice(trackId, tid, timestamp);
+                break;
+            case TYPE_INSTANT:
+                listener.onSlice(trackId, tid, timestamp, 0, name != null ? name : "", stackDepth(trackId));
+                break;
+            case TYPE_COUNTER:
+                String counterName = trackNames.get(trackId);
+                listener.onCounter(counterName != null ? counterName : "track " + trackId, tid, timestamp, counterValue);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void beginSlice(long trackId, long timestamp, String name) {
+        sliceStacks.getOrCreate(trackId).push(timestamp, name);
+    }
+
+    private void endSlice(long trackId, int tid, long timestamp) {
+        OpenSliceStacks.Stack stack = sliceStacks.get(trackId);
+        if (stack == null || stack.depth == 0) {
+            return; // 抓取开始前已经begin的slice
+        }
+        String name = stack.pop();
+        long begin = stack.timestamps[stack.depth];
+        listener.onSlice(trackId, tid, begin, timestamp - begin, name, stack.depth);
+    }
+
+    private int stackDepth(long trackId) {
+        return sliceStacks.depth(trackId);
+    }
+
+    // ==================== process_tree ====================
+
+    private void decodeProcessTree(int start, int end) {
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (wireType == 2 && (field == 1 || field == 2)) {
+                int length = (int) varint();
+                int valueEnd = cursor + length;
+                if (field == 1) {
+                    decodeProcess(cursor, valueEnd);
+                } else {
+                    decodeThread(cursor, valueEnd);
+                }
+                cursor = valueEnd;
+            } else {
+                skip(wireType, end);
+            }
+        }
+    }
+
+    // Process: pid=1, cmdline=3（repeated，取第一个）
+    private void decodeProcess(int start, int end) {
+        int pid = 0;
+        String cmdline = null;
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (field == 1 && wireType == 0) {
+                pid = (int) varint();
+            } else if (field == 3 && wireType == 2) {
+                int length = (int) varint();
+                if (cmdline == null) {
+                    cmdline = string(cursor, cursor + length);
+                }
+                cursor += length;
+            } else {
+                skip(wireType, end);
+            }
+        }
+        if (cmdline != null) {
+            listener.onProcess(pid, cmdline);
+        }
+    }
+
+    // Thread: tid=1, name=2, tgid=5
+    private void decodeThread(int start, int end) {
+        int tid = 0;
+        int tgid = 0;
+        String name = null;
+        cursor = start;
+        while (cursor < end) {
+            long tag = varint();
+            int field = (int) (tag >>> 3);
+            int wireType = (int) (tag & 7);
+            if (field == 1 && wireType == 0) {
+                tid = (int) varint();
+            } else if (field == 5 && wireType == 0) {
+                tgid = (int) varint();
+            } else if (field == 2 && wireType == 2) {
+                int length = (int) varint();
+                name = string(cursor, cursor + length);
+                cursor += length;
+            } else {
+                skip(wireType, end);
+            }
+        }
+        if (name != null) {
+            threadNames.put(tid, name);
+            listener.onThreadName(tid, tgid, name);
+        } else if (tgid != 0) {
+            String known = threadNames.get(tid);
+            listener.onThreadName(tid, tgid, known != null ? known : "");
+        }
+    }
+
+    // 同一线程的名字不变时不重复回调
+    private void threadName(int tid, String name) {
+        if (threadNames.put(tid, name) != name) {
+            listener.onThreadName(tid, 0, name);
+        }
+    }
+}
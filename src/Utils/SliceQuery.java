@@ -0,0 +1,128 @@
+package Utils;
+
+import java.util.List;
+
+/**
+ * TraceStore 的查询条件，未设置的条件不参与过滤
+ * 例如 UI线程上超过16ms的帧：nameContains("doFrame").processContains("com.example").mainThreadOnly(true)
+ *     .minDurationMillis(16)
+ */
+public class SliceQuery {
+    public static final int DEFAULT_LIMIT = 200;
+
+    String nameContains = "";
+    String processContains = "";
+    String threadContains = "";
+    boolean mainThreadOnly = false;
+    long minDuration = 0;
+    long fromTimestamp = Long.MIN_VALUE;
+    long toTimestamp = Long.MAX_VALUE;
+    int limit = DEFAULT_LIMIT;
+
+    public SliceQuery nameContains(String text) {
+        this.nameContains = text == null ? "" : text;
+        return this;
+    }
+
+    // 匹配进程名（process_tree中的cmdline或主线程名）
+    public SliceQuery processContains(String text) {
+        this.processContains = text == null ? "" : text;
+        return this;
+    }
+
+    public SliceQuery threadContains(String text) {
+        this.threadContains = text == null ? "" : text;
+        return this;
+    }
+
+    // 只看主线程（tid == pid），即应用的UI线程
+    public SliceQuery mainThreadOnly(boolean mainThreadOnly) {
+        this.mainThreadOnly = mainThreadOnly;
+        return this;
+    }
+
+    public SliceQuery minDurationMillis(double millis) {
+        this.minDuration = (long) (millis * 1_000_000);
+        return this;
+    }
+
+    // 只看开始时间在 [from, to) 内的事件，单位纳秒
+    public SliceQuery timeRange(long from, long to) {
+        this.fromTimestamp = from;
+        this.toTimestamp = to;
+        return this;
+    }
+
+    // 返回的明细行数上限，统计不受影响
+    public SliceQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    boolean filtersThreads() {
+        return !processContains.isEmpty() || !threadContains.isEmpty() || mainThreadOnly;
+    }
+
+    /**
+     * 一条明细：slice或某个线程的CPU时间
+     */
+    public static class Row {
+        public final long timestamp;
+        public final long duration;
+        public final int tid;
+        public final int pid;
+        public final String thread;
+        public final String process;
+        public final String name;
+        public final int depth;
+
+        Row(long timestamp, long duration, int tid, int pid, String thread, String process, String name, int depth) {
+            this.timestamp = timestamp;
+            this.duration = duration;
+            this.tid = tid;
+            this.pid = pid;
+            this.thread = thread;
+            this.process = process;
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * 按名字（slice）或线程（CPU时间）分组的统计
+     */
+    public static class Group {
+        public final String key;
+        public final long count;
+        public final long totalDuration;
+        public final long maxDuration;
+
+        Group(String key, long count, long totalDuration, long maxDuration) {
+            this.key = key;
+            this.count = count;
+            this.totalDuration = totalDuration;
+            this.maxDuration = maxDuration;
+        }
+    }
+
+    public static class Result {
+        public final long count;
+        public final long totalDuration;
+        public final long maxDuration;
+        public final long scannedRows;
+        public final long elapsedMicros;
+        public final List<Row> rows;     // 按时长从大到小
+        public final List<Group> groups; // 按总时长从大到小
+
+        Result(long count, long totalDuration, long maxDuration, long scannedRows, long elapsedMicros,
+               List<Row> rows, List<Group> groups) {
+            this.count = count;
+            this.totalDuration = totalDuration;
+            this.maxDuration = maxDuration;
+            this.scannedRows = scannedRows;
+            this.elapsedMicros = elapsedMicros;
+            this.rows = rows;
+            this.groups = groups;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package Utils;
+
+import interfaces.TraceEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 增量解析ftrace文本（atrace --stream 的输出），数据可以按任意边界分块送入
+ * 每行格式：  任务名-tid  (tgid) [cpu] flags  秒.微秒: 事件名: 内容
+ * 其中 (tgid) 和 flags 可能没有
+ * - 直接在字节数组上逐字节解析，不创建行字符串，也不用 split
+ * - 只处理 tracing_mark_write（B/E/C），B/E 按线程配对成slice回调 onSlice，C 回调 onCounter
+ * - 任务名变化时回调 onThreadName
+ * 名字字符串按字节内容缓存复用，同一个slice名只创建一次String
+ * 不是线程安全的，只能在一个线程上调用
+ */
+public class SystraceParser {
+    // 超过这个长度的行直接丢弃，避免异常数据让行缓冲无限增长
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final byte[] TRACING_MARK_WRITE = "tracing_mark_write".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PRINT = "print".getBytes(StandardCharsets.US_ASCII);
+
+    private final TraceEventListener listener;
+    private final ByteStringCache nameCache = new ByteStringCache();
+    private final OpenSliceStacks openSlices = new OpenSliceStacks();
+    private final ThreadNameTable threadNames = new ThreadNameTable();
+
+    // 上一块末尾不完整的行
+    private byte[] carry = new byte[4096];
+    private int carryLength = 0;
+    private boolean skippingLongLine = false;
+
+    private long lineCount = 0;
+    private long eventCount = 0;
+    private long lastTimestamp = 0;
+
+    // 当前行解析出的字段，避免为每行分配对象
+    private int tid;
+    private int tgid;
+    private long timestamp;
+    private int taskStart;
+    private int taskEnd;
+
+    public SystraceParser(TraceEventListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 送入一块数据，完整的行立即解析，不完整的行留到下一块
+     */
+    public void feed(byte[] data, int offset, int length) {
+        int end = offset + length;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (carryLength > 0 || skippingLongLine) {
+                appendCarry(data, lineStart, i);
+                if (!skippingLongLine) {
+                    parseLine(carry, 0, carryLength);
+                }
+                carryLength = 0;
+                skippingLongLine = false;
+            } else {
+                parseLine(data, lineStart, i);
+            }
+            lineStart = i + 1;
+        }
+        if (lineStart < end) {
+            appendCarry(data, lineStart, end);
+        }
+    }
+
+    /**
+     * 数据结束时调用，解析最后一行（没有换行结尾时）
+     */
+    public void finish() {
+        if (carryLength > 0 && !skippingLongLine) {
+            parseLine(carry, 0, carryLength);
+        }
+        carryLength = 0;
+        skippingLongLine = false;
+    }
+
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    // 解析出的 tracing_mark_write 事件数
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    // 最近一行的时间戳（纳秒）
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    private void appendCarry(byte[] data, int from, int to) {
+        if (skippingLongLine) {
+            return;
+        }
+        int length = to - from;
+        if (carryLength + length > MAX_LINE_LENGTH) {
+            skippingLongLine = true;
+            carryLength = 0;
+            return;
+        }
+        if (carryLength + length > carry.length) {
+            carry = Arrays.copyOf(carry, Math.max(carry.length * 2, carryLength + length));
+        }
+        System.arraycopy(data, from, carry, carryLength, length);
+        carryLength += length;
+    }
+
+    private void parseLine(byte[] line, int start, int end) {
+        lineCount++;
+        if (end > start && line[end - 1] == '\r') {
+            end--;
+        }
+        start = skipSpaces(line, start, end);
+        if (start >= end || line[start] == '#') {
+            return;
+        }
+        int cpuEnd = parseHeader(line, start, end);
+        if (cpuEnd < 0) {
+            return;
+        }
+        int position = parseTimestamp(line, cpuEnd, end);
+        if (position < 0) {
+            return;
+        }
+        lastTimestamp = timestamp;
+        reportThreadName(line);
+
+        // 事件名: 内容
+        position = skipSpaces(line, position, end);
+        int functionEnd = indexOf(line, position, end, (byte) ':');
+        if (functionEnd < 0) {
+            return;
+        }
+        int data = skipSpaces(line, functionEnd + 1, end);
+        if (equals(line, position, functionEnd, PRINT)) {
+            // 旧内核是 print 事件，内容以 "tracing_mark_write: " 开头
+            int markEnd = data + TRACING_MARK_WRITE.length;
+            if (markEnd >= end || line[markEnd] != ':' || !equals(line, data, markEnd, TRACING_MARK_WRITE)) {
+                return;
+            }
+            data = skipSpaces(line, markEnd + 1, end);
+        } else if (!equals(line, position, functionEnd, TRACING_MARK_WRITE)) {
+            return;
+        }
+        parseMark(line, data, end);
+    }
+
+    /**
+     * 解析 "任务名-tid (tgid) [cpu]"，返回 ']' 之后的位置，格式不对时返回-1
+     * 任务名可能包含空格和 '-'，所以先找 [cpu]，再从右往左找 tid
+     */
+    private int parseHeader(byte[] line, int start, int end) {
+        int bracket = -1;
+        for (int i = start + 1; i < end; i++) {
+            if (line[i] == '[' && line[i - 1] == ' ' && i + 1 < end && isDigit(line[i + 1])) {
+                int j = i + 1;
+                while (j < end && isDigit(line[j])) {
+                    j++;
+                }
+                if (j < end && line[j] == ']') {
+                    bracket = i;
+                    break;
+                }
+            }
+        }
+        if (bracket < 0) {
+            return -1;
+        }
+        int headerEnd = bracket;
+        while (headerEnd > start && line[headerEnd - 1] == ' ') {
+            headerEnd--;
+        }
+        // 可选的 (tgid)，未知时是 (-----)
+        tgid = 0;
+        if (headerEnd > start && line[headerEnd - 1] == ')') {
+            int open = headerEnd - 1;
+            while (open > start && line[open] != '(') {
+                open--;
+            }
+            if (line[open] != '(') {
+                return -1;
+            }
+            tgid = parseInt(line, skipSpaces(line, open + 1, headerEnd - 1), headerEnd - 1);
+            headerEnd = open;
+            while (headerEnd > start && line[headerEnd - 1] == ' ') {
+                headerEnd--;
+            }
+        }
+        int tidStart = headerEnd;
+        while (tidStart > start && isDigit(line[tidStart - 1])) {
+            tidStart--;
+        }
+        if (tidStart == headerEnd || tidStart <= start || line[tidStart - 1] != '-') {
+            return -1;
+        }
+        tid = parseInt(line, tidStart, headerEnd);
+        taskStart = start;
+        taskEnd = tidStart - 1;
+        return indexOf(line, bracket, end, (byte) ']') + 1;
+    }
+
+    /**
+     * 跳过可选的flags，解析 "秒.小数:"，返回冒号之后的位置
+     */
+    private int parseTimestamp(byte[] line, int position, int end) {
+        while (position < end) {
+            position = skipSpaces(line, position, end);
+            int tokenEnd = position;
+            while (tokenEnd < end && line[tokenEnd] != ' ') {
+                tokenEnd++;
+            }
+            if (tokenEnd - position >= 3 && line[tokenEnd - 1] == ':' && isDigit(line[position])) {
+                long seconds = 0;
+                long fraction = 0;
+                int fractionDigits = 0;
+                boolean afterDot = false;
+                boolean valid = true;
+                for (int i = position; i < tokenEnd - 1; i++) {
+                    byte b = line[i];
+                    if (b == '.' && !afterDot) {
+                        afterDot = true;
+                    } else if (!isDigit(b)) {
+                        valid = false;
+                        break;
+                    } else if (afterDot) {
+                        if (fractionDigits < 9) {
+                            fraction = fraction * 10 + (b - '0');
+                            fractionDigits++;
+                        }
+                    } else {
+                        seconds = seconds * 10 + (b - '0');
+                    }
+                }
+                if (valid && afterDot) {
+                    while (fractionDigits < 9) {
+                        fraction *= 10;
+                        fractionDigits++;
+                    }
+                    timestamp = seconds * 1_000_000_000L + fraction;
+                    return tokenEnd;
+                }
+            }
+            position = tokenEnd;
+        }
+        return -1;
+    }
+
+    /**
+     * B|pid|name、E|pid、C|pid|name|value
+     */
+    private void parseMark(byte[] line, int start, int end) {
+        while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\n')) {
+            end--;
+        }
+        if (start >= end) {
+            return;
+        }
+        byte type = line[start];
+        if (type == 'E') {
+            eventCount++;
+            OpenSliceStacks.Stack stack = openSlices.get(tid);
+            if (stack != null && stack.depth > 0) {
+                String name = stack.pop();
+                long begin = stack.timestamps[stack.depth];
+                listener.onSlice(tid, tid, begin, timestamp - begin, name, stack.depth);
+            }
+            return;
+        }
+        if ((type != 'B' && type != 'C') || start + 1 >= end || line[start + 1] != '|') {
+            return;
+        }
+        int pidEnd = indexOf(line, start + 2, end, (byte) '|');
+        if (pidEnd < 0) {
+            return;
+        }
+        int pid = parseInt(line, start + 2, pidEnd);
+        int nameStart = pidEnd + 1;
+        eventCount++;
+        if (type == 'B') {
+            openSlices.getOrCreate(tid).push(timestamp, nameCache.get(line, nameStart, end));
+            return;
+        }
+        int nameEnd = indexOf(line, nameStart, end, (byte) '|');
+        if (nameEnd < 0) {
+            return;
+        }
+        int valueEnd = indexOf(line, nameEnd + 1, end, (byte) '|');
+        long value = parseLong(line, nameEnd + 1, valueEnd < 0 ? end : valueEnd);
+        listener.onCounter(nameCache.get(line, nameStart, nameEnd), pid, timestamp, value);
+    }
+
+    // 任务名变化时才回调，<...> 表示内核没有记录任务名
+    private void reportThreadName(byte[] line) {
+        if (taskEnd - taskStart == 5 && line[taskStart] == '<' && line[taskStart + 1] == '.') {
+            return;
+        }
+        String name = nameCache.get(line, taskStart, taskEnd);
+        if (threadNames.put(tid, name) != name) {
+            listener.onThreadName(tid, tgid, name);
+        }
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static int skipSpaces(byte[] line, int position, int end) {
+        while (position < end && (line[position] == ' ' || line[position] == '\t')) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int indexOf(byte[] line, int from, int end, byte value) {
+        for (int i = from; i < end; i++) {
+            if (line[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean equals(byte[] line, int from, int to, byte[] expected) {
+        if (to - from != expected.length) {
+            return false;
+        }
+        for (int i = 0; i < expected.length; i++) {
+            if (line[from + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 非数字时返回0，例如 (-----)
+    private static int parseInt(byte[] line, int from, int to) {
+        return (int) parseLong(line, from, to);
+    }
+
+    private static long parseLong(byte[] line, int from, int to) {
+        boolean negative = from < to && line[from] == '-';
+        long value = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++) {
+            if (!isDigit(line[i])) {
+                return 0;
+            }
+            value = value * 10 + (line[i] - '0');
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,187 @@
+package Utils;
+
+import interfaces.TraceEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按线程保存 SystraceParser 解析出的slice，供抓取期间实时浏览
+ * 每个线程的slice放在固定容量的环形列数组中，写满后覆盖最旧的，长时间抓取内存也有上限
+ * 写入在抓取线程，读取在EDT，所有方法都加锁；读取返回快照，不持有内部数组
+ */
+public class SystraceSliceBuffer implements TraceEventListener {
+    public static final int DEFAULT_CAPACITY_PER_THREAD = 50_000;
+
+    private final int capacityPerThread;
+    private final Map<Integer, ThreadSlices> threads = new HashMap<>();
+    private long sliceCount = 0;
+    private long counterCount = 0;
+    private long version = 0;
+    private ThreadSlices lastThread; // 连续的事件大多来自同一线程，省去一次装箱查找
+
+    // 一个线程的slice环形缓冲区
+    private static class ThreadSlices {
+        final int tid;
+        int tgid;
+        String name = "";
+        // 第一个slice到达时才分配
+        long[] timestamps = new long[0];
+        long[] durations = new long[0];
+        String[] names = new String[0];
+        int[] depths = new int[0];
+        int head = 0; // 最旧一条的位置
+        int size = 0;
+        long total = 0;
+
+        ThreadSlices(int tid) {
+            this.tid = tid;
+        }
+
+        void add(long timestamp, long duration, String sliceName, int depth, int capacity) {
+            if (size == timestamps.length && size < capacity) {
+                // 还没到容量上限时扩容，扩容前环形缓冲区一定没有回绕
+                int newLength = Math.min(capacity, Math.max(64, size * 2));
+                timestamps = Arrays.copyOf(timestamps, newLength);
+                durations = Arrays.copyOf(durations, newLength);
+                names = Arrays.copyOf(names, newLength);
+                depths = Arrays.copyOf(depths, newLength);
+            }
+            int tail = (head + size) % timestamps.length;
+            timestamps[tail] = timestamp;
+            durations[tail] = duration;
+            names[tail] = sliceName;
+            depths[tail] = depth;
+            if (size < timestamps.length) {
+                size++;
+            } else {
+                head = (head + 1) % timestamps.length;
+            }
+            total++;
+        }
+    }
+
+    /**
+     * 线程概况
+     */
+    public static class ThreadInfo {
+        public final int tid;
+        public final int tgid;
+        public final String name;
+        public final int retained; // 当前保留的slice数
+        public final long total;   // 累计slice数，包括已被覆盖的
+
+        ThreadInfo(int tid, int tgid, String name, int retained, long total) {
+            this.tid = tid;
+            this.tgid = tgid;
+            this.name = name;
+            this.retained = retained;
+            this.total = total;
+        }
+    }
+
+    public static class Slice {
+        public final long timestamp;
+        public final long duration;
+        public final String name;
+        public final int depth;
+
+        Slice(long timestamp, long duration, String name, int depth) {
+            this.timestamp = timestamp;
+            this.duration = duration;
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    public SystraceSliceBuffer() {
+        this(DEFAULT_CAPACITY_PER_THREAD);
+    }
+
+    public SystraceSliceBuffer(int capacityPerThread) {
+        if (capacityPerThread <= 0) {
+            throw new IllegalArgumentException("capacityPerThread must be positive: " + capacityPerThread);
+        }
+        this.capacityPerThread = capacityPerThread;
+    }
+
+    @Override
+    public synchronized void onSlice(long trackId, int tid, long timestamp, long duration, String name, int depth) {
+        if (lastThread == null || lastThread.tid != tid) {
+            lastThread = threads.computeIfAbsent(tid, ThreadSlices::new);
+        }
+        lastThread.add(timestamp, duration, name, depth, capacityPerThread);
+        sliceCount++;
+        version++;
+    }
+
+    @Override
+    public synchronized void onCounter(String name, int pid, long timestamp, double value) {
+        counterCount++;
+    }
+
+    @Override
+    public synchronized void onThreadName(int tid, int tgid, String name) {
+        ThreadSlices thread = threads.computeIfAbsent(tid, ThreadSlices::new);
+        thread.name = name;
+        if (tgid != 0) {
+            thread.tgid = tgid;
+        }
+    }
+
+    /**
+     * 有slice的线程，按累计slice数从多到少
+     */
+    public synchronized List<ThreadInfo> getThreads() {
+        List<ThreadInfo> result = new ArrayList<>();
+        for (ThreadSlices thread : threads.values()) {
+            if (thread.total > 0) {
+                result.add(new ThreadInfo(thread.tid, thread.tgid, thread.name, thread.size, thread.total));
+            }
+        }
+        result.sort((a, b) -> Long.compare(b.total, a.total));
+        return result;
+    }
+
+    /**
+     * 某个线程最近的至多 maxCount 个slice，按结束顺序从新到旧
+     */
+    public synchronized List<Slice> getRecentSlices(int tid, int maxCount) {
+        ThreadSlices thread = threads.get(tid);
+        List<Slice> result = new ArrayList<>();
+        if (thread == null) {
+            return result;
+        }
+        int count = Math.min(maxCount, thread.size);
+        for (int i = 0; i < count; i++) {
+            int index = (thread.head + thread.size - 1 - i) % thread.timestamps.length;
+            result.add(new Slice(thread.timestamps[index], thread.durations[index],
+                    thread.names[index], thread.depths[index]));
+        }
+        return result;
+    }
+
+    public synchronized long getSliceCount() {
+        return sliceCount;
+    }
+
+    public synchronized long getCounterCount() {
+        return counterCount;
+    }
+
+    // 每新增一个slice加1，界面据此判断是否需要刷新
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    public synchronized void clear() {
+        threads.clear();
+        lastThread = null;
+        sliceCount = 0;
+        counterCount = 0;
+        version++;
+    }
+}
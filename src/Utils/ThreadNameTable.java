@@ -0,0 +1,36 @@
+package Utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * tid到线程名，tid较小时直接用数组下标，特别大或负数的tid放在HashMap中
+ * 不是线程安全的，只能在一个线程上调用
+ */
+class ThreadNameTable {
+    private static final int MAX_ARRAY_TID = 1 << 22;
+
+    private String[] names = new String[32768];
+    private final Map<Integer, String> overflow = new HashMap<>();
+
+    String get(int tid) {
+        if (tid >= 0 && tid < names.length) {
+            return names[tid];
+        }
+        return tid >= 0 && tid < MAX_ARRAY_TID ? null : overflow.get(tid);
+    }
+
+    // 返回原来的名字
+    String put(int tid, String name) {
+        if (tid < 0 || tid >= MAX_ARRAY_TID) {
+            return overflow.put(tid, name);
+        }
+        if (tid >= names.length) {
+            names = Arrays.copyOf(names, Math.min(MAX_ARRAY_TID, Math.max(tid + 1, names.length * 2)));
+        }
+        String previous = names[tid];
+        names[tid] = name;
+        return previous;
+    }
+}
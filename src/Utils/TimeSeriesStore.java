@@ -0,0 +1,194 @@
+package Utils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 只追加的时间序列存储，所有序列共用一列时间戳
+ * - 每个序列一个double数组，缺失的值为NaN，没有逐点的对象
+ * - 追加只在采样线程上进行；读取不加锁，通过 snapshot 取得当前行数和数组引用
+ *   数组扩容时换成新数组，旧数组中已写入的部分不再变化，所以快照始终一致
+ * - 需要跟随新数据的读取者用 awaitAppend 等待追加，不需要轮询
+ */
+public class TimeSeriesStore {
+    // 以启动时间为起点，应用重启后新建的存储也不会与旧页面记录的代号相同
+    private static final AtomicLong GENERATION_COUNTER = new AtomicLong(System.currentTimeMillis());
+
+    private final long generation = GENERATION_COUNTER.incrementAndGet();
+    private final String[] names;
+    private final String[] sheets;
+    private final Object appendLock = new Object();
+    private volatile Snapshot current;
+
+    /**
+     * 某一时刻的只读视图，行 [0, size) 不会再变化
+     */
+    public static class Snapshot {
+        public final int size;
+        private final long[] timestamps;
+        private final double[][] values;
+
+        Snapshot(int size, long[] timestamps, double[][] values) {
+            this.size = size;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        // 采样时间，毫秒（System.currentTimeMillis）
+        public long getTimestamp(int row) {
+            return timestamps[row];
+        }
+
+        public double getValue(int series, int row) {
+            return values[series][row];
+        }
+    }
+
+    /**
+     * @param names 序列名
+     * @param sheets 每个序列所属的sheet（图表），导出xlsx时同一sheet的序列放在一起
+     */
+    public TimeSeriesStore(List<String> names, List<String> sheets) {
+        if (names.size() != sheets.size()) {
+            throw new IllegalArgumentException("names and sheets differ in size");
+        }
+        this.names = names.toArray(new String[0]);
+        this.sheets = sheets.toArray(new String[0]);
+        current = new Snapshot(0, new long[256], newColumns(this.names.length, 256));
+    }
+
+    /**
+     * 追加一行
+     * @param row 每个序列的值，长度等于序列数，缺失时为NaN
+     */
+    public void append(long timestamp, double[] row) {
+        if (row.length != names.length) {
+            throw new IllegalArgumentException("expected " + names.length + " values, got " + row.length);
+        }
+        synchronized (appendLock) {
+            Snapshot snapshot = current;
+            int size = snapshot.size;
+            long[] timestamps = snapshot.timestamps;
+            double[][] values = snapshot.values;
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                double[][] grown = new double[names.length][];
+                for (int i = 0; i < names.length; i++) {
+                    grown[i] = Arrays.copyOf(values[i], size * 2);
+                }
+                values = grown;
+            }
+            timestamps[size] = timestamp;
+            for (int i = 0; i < names.length; i++) {
+                values[i][size] = row[i];
+            }
+            // volatile写在数据写入之后，读到新快照的线程一定能看到这一行
+            current = new Snapshot(size + 1, timestamps, values);
+            appendLock.notifyAll();
+        }
+    }
+
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * 等待行数超过 knownSize 后返回最新的快照；超时或被 notifyReaders 唤醒时也会返回，调用方需要检查行数
+     * @param abandoned 在锁内、开始等待前检查，为true时不等待；与 notifyReaders 配合不会错过唤醒
+     */
+    public Snapshot awaitAppend(int knownSize, long timeoutMillis, BooleanSupplier abandoned)
+            throws InterruptedException {
+        synchronized (appendLock) {
+            if (current.size <= knownSize && !abandoned.getAsBoolean()) {
+                appendLock.wait(timeoutMillis);
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 唤醒所有在 awaitAppend 中等待的读取者，例如这份数据被新的采样替换时
+     */
+    public void notifyReaders() {
+        synchronized (appendLock) {
+            appendLock.notifyAll();
+        }
+    }
+
+    /**
+     * 存储的代号，每个实例不同；重新开始采样会创建新的存储，读取者据此判断行号是否还有效
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int size() {
+        return current.size;
+    }
+
+    public int getSeriesCount() {
+        return names.length;
+    }
+
+    public String getName(int series) {
+        return names[series];
+    }
+
+    public String getSheet(int series) {
+        return sheets[series];
+    }
+
+    /**
+     * sheet名到序列下标，按第一次出现的顺序
+     */
+    public Map<String, List<Integer>> getSheets() {
+        Map<String, List<Integer>> result = new LinkedHashMap<>();
+        for (int i = 0; i < sheets.length; i++) {
+            result.computeIfAbsent(sheets[i], key -> new ArrayList<>()).add(i);
+        }
+        return result;
+    }
+
+    /**
+     * 导出为 python_scripts/html/main.py 使用的格式：每个图表一个sheet，
+     * 第0列是相对第一个采样的时间（秒），其余列是该图表的各个序列
+     */
+    public void exportXlsx(Path output) throws IOException {
+        Snapshot snapshot = snapshot();
+        long start = snapshot.size > 0 ? snapshot.getTimestamp(0) : 0;
+        try (XlsxWriter writer = new XlsxWriter(output)) {
+            for (Map.Entry<String, List<Integer>> sheet : getSheets().entrySet()) {
+                List<Integer> series = sheet.getValue();
+                String[] header = new String[series.size() + 1];
+                header[0] = "时间(s)";
+                for (int i = 0; i < series.size(); i++) {
+                    header[i + 1] = names[series.get(i)];
+                }
+                writer.startSheet(sheet.getKey(), header);
+                double[] row = new double[header.length];
+                for (int r = 0; r < snapshot.size; r++) {
+                    row[0] = (snapshot.getTimestamp(r) - start) / 1000.0;
+                    for (int i = 0; i < series.size(); i++) {
+                        row[i + 1] = snapshot.getValue(series.get(i), r);
+                    }
+                    writer.addRow(row);
+                }
+            }
+        }
+    }
+
+    private static double[][] newColumns(int count, int capacity) {
+        double[][] columns = new double[count][];
+        for (int i = 0; i < count; i++) {
+            columns[i] = new double[capacity];
+        }
+        return columns;
+    }
+}
@@ -0,0 +1,684 @@
+package Utils;
+
+import interfaces.TraceEventListener;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 列式保存解码后的trace，用于反复查询
+ * - slice、调度区间、计数器分别存放在基本类型数组中，每列一个数组，没有逐事件的对象
+ * - 构建完成后按时间排序，并按线程建立行索引（CSR），线程内的行也按时间有序
+ * - 查询把候选行切成块，在fork-join池上并行过滤和聚合
+ * 构建阶段（作为 TraceEventListener）只能在解码线程上调用，freeze 之后可以在任意线程并发查询
+ */
+public class TraceStore implements TraceEventListener {
+    // 每个并行任务处理的最大行数
+    private static final int CHUNK_ROWS = 1 << 16;
+    private static final int SEQUENTIAL_SORT_THRESHOLD = 1 << 13;
+
+    // 名字字典：slice名和计数器名共用
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    // slice列
+    private final LongColumn sliceTimestamp = new LongColumn();
+    private final LongColumn sliceDuration = new LongColumn();
+    private final IntColumn sliceTid = new IntColumn();
+    private final IntColumn sliceName = new IntColumn();
+    private final IntColumn sliceDepth = new IntColumn();
+
+    // 调度区间列
+    private final LongColumn schedTimestamp = new LongColumn();
+    private final LongColumn schedDuration = new LongColumn();
+    private final IntColumn schedTid = new IntColumn();
+    private final IntColumn schedCpu = new IntColumn();
+
+    // 计数器列
+    private final LongColumn counterTimestamp = new LongColumn();
+    private final DoubleColumn counterValue = new DoubleColumn();
+    private final IntColumn counterName = new IntColumn();
+
+    private final Map<Integer, String> threadNames = new HashMap<>();
+    private final Map<Integer, Integer> threadGroups = new HashMap<>();
+    private final Map<Integer, String> processNames = new HashMap<>();
+
+    private ThreadIndex sliceIndex;
+    private ThreadIndex schedIndex;
+    private int[] counterOffsets; // 计数器按名字分段，名字id -> 起始行
+    private volatile boolean frozen = false;
+
+    /**
+     * 按线程分组的行号：线程编号i（tid为tids[i]）的行是 rows[offsets[i] .. offsets[i+1])，组内按时间有序
+     * threadOfRow 是每一行的线程编号，用于按线程聚合
+     */
+    private static class ThreadIndex {
+        final int[] tids;
+        final int[] offsets;
+        final int[] rows;
+        final int[] threadOfRow;
+
+        ThreadIndex(int[] tids, int[] offsets, int[] rows, int[] threadOfRow) {
+            this.tids = tids;
+            this.offsets = offsets;
+            this.rows = rows;
+            this.threadOfRow = threadOfRow;
+        }
+    }
+
+    // 一段待扫描的行：rows为null时是连续行号 [start, end)，否则是 rows[start .. end)
+    private static class Segment {
+        final int[] rows;
+        final int start;
+        final int end;
+
+        Segment(int[] rows, int start, int end) {
+            this.rows = rows;
+            this.start = start;
+            this.end = end;
+        }
+
+        int row(int i) {
+            return rows == null ? i : rows[i];
+        }
+    }
+
+    // 单个任务的部分结果，最后合并
+    private static class Partial {
+        long count;
+        long totalDuration;
+        long maxDuration;
+        long scanned;
+        final long[] groups; // 按分组键（名字id或线程编号）每组3个值：count, total, max
+        final PriorityQueue<long[]> top; // {duration, row}，按时长的小顶堆
+
+        Partial(int limit, int groupCount) {
+            groups = new long[groupCount * 3];
+            top = new PriorityQueue<>(Math.max(1, limit), Comparator.comparingLong(entry -> entry[0]));
+        }
+
+        void add(int row, long duration, int groupKey, int limit) {
+            count++;
+            totalDuration += duration;
+            maxDuration = Math.max(maxDuration, duration);
+            int group = groupKey * 3;
+            groups[group]++;
+            groups[group + 1] += duration;
+            groups[group + 2] = Math.max(groups[group + 2], duration);
+            if (limit > 0 && (top.size() < limit || duration > top.peek()[0])) {
+                top.add(new long[]{duration, row});
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+        }
+
+        Partial merge(Partial other, int limit) {
+            count += other.count;
+            totalDuration += other.totalDuration;
+            maxDuration = Math.max(maxDuration, other.maxDuration);
+            scanned += other.scanned;
+            for (int i = 0; i < groups.length; i += 3) {
+                groups[i] += other.groups[i];
+                groups[i + 1] += other.groups[i + 1];
+                groups[i + 2] = Math.max(groups[i + 2], other.groups[i + 2]);
+            }
+            for (long[] entry : other.top) {
+                if (top.size() < limit || entry[0] > top.peek()[0]) {
+                    top.add(entry);
+                    if (top.size() > limit) {
+                        top.poll();
+                    }
+                }
+            }
+            return this;
+        }
+    }
+
+    /**
+     * 一个计数器的全部采样，按时间有序
+     */
+    public static class CounterSeries {
+        public final String name;
+        public final long[] timestamps;
+        public final double[] values;
+
+        CounterSeries(String name, long[] timestamps, double[] values) {
+            this.name = name;
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+    }
+
+    // ==================== 构建 ====================
+
+    @Override
+    public void onSchedSlice(int cpu, long timestamp, long duration, int tid) {
+        schedTimestamp.add(timestamp);
+        schedDuration.add(duration);
+        schedTid.add(tid);
+        schedCpu.add(cpu);
+    }
+
+    @Override
+    public void onSlice(long trackId, int tid, long timestamp, long duration, String name, int depth) {
+        sliceTimestamp.add(timestamp);
+        sliceDuration.add(duration);
+        sliceTid.add(tid);
+        sliceName.add(nameId(name));
+        sliceDepth.add(depth);
+    }
+
+    @Override
+    public void onCounter(String name, int pid, long timestamp, double value) {
+        counterTimestamp.add(timestamp);
+        counterValue.add(value);
+        counterName.add(nameId(name));
+    }
+
+    @Override
+    public void onThreadName(int tid, int tgid, String name) {
+        if (!name.isEmpty()) {
+            threadNames.put(tid, name);
+        }
+        if (tgid != 0) {
+            threadGroups.put(tid, tgid);
+        }
+    }
+
+    @Override
+    public void onProcess(int pid, String cmdline) {
+        processNames.put(pid, cmdline);
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            nameIds.put(name, id);
+            names.add(name);
+        }
+        return id;
+    }
+
+    /**
+     * 解码完成后调用：按时间排序各列并建立线程索引
+     */
+    public void freeze() {
+        if (frozen) {
+            return;
+        }
+        int[] order = sortedOrder(sliceTimestamp, sliceTimestamp.size);
+        sliceTimestamp.permute(order);
+        sliceDuration.permute(order);
+        sliceTid.permute(order);
+        sliceName.permute(order);
+        sliceDepth.permute(order);
+        sliceIndex = buildThreadIndex(sliceTid);
+
+        order = sortedOrder(schedTimestamp, schedTimestamp.size);
+        schedTimestamp.permute(order);
+        schedDuration.permute(order);
+        schedTid.permute(order);
+        schedCpu.permute(order);
+        schedIndex = buildThreadIndex(schedTid);
+
+        // 计数器先按名字再按时间，每个计数器是连续的一段
+        order = sortedOrder(counterTimestamp, counterTimestamp.size);
+        counterTimestamp.permute(order);
+        counterValue.permute(order);
+        counterName.permute(order);
+        order = groupOrder(counterName.data, counterName.size, names.size());
+        counterTimestamp.permute(order);
+        counterValue.permute(order);
+        counterName.permute(order);
+        counterOffsets = new int[names.size() + 1];
+        for (int i = 0; i < counterName.size; i++) {
+            counterOffsets[counterName.data[i] + 1]++;
+        }
+        for (int i = 0; i < names.size(); i++) {
+            counterOffsets[i + 1] += counterOffsets[i];
+        }
+        frozen = true;
+    }
+
+    public int getSliceCount() {
+        return sliceTimestamp.size;
+    }
+
+    public int getSchedCount() {
+        return schedTimestamp.size;
+    }
+
+    public int getCounterCount() {
+        return counterTimestamp.size;
+    }
+
+    public int getThreadCount() {
+        return sliceIndex == null ? 0 : Math.max(sliceIndex.tids.length, schedIndex.tids.length);
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 查询slice，按名字分组统计，并返回时长最长的若干条
+     */
+    public SliceQuery.Result querySlices(SliceQuery query) {
+        checkFrozen();
+        long start = System.nanoTime();
+        boolean[] nameMatches = matchNames(query.nameContains);
+        List<Segment> segments = segments(query, sliceIndex, sliceTimestamp.data, sliceTimestamp.size);
+        long[] timestamps = sliceTimestamp.data;
+        long[] durations = sliceDuration.data;
+        int[] nameColumn = sliceName.data;
+        int limit = query.limit;
+        int nameCount = names.size();
+
+        Partial partial = segments.parallelStream().map(segment -> {
+            Partial local = new Partial(limit, nameCount);
+            for (int i = segment.start; i < segment.end; i++) {
+                int row = segment.row(i);
+                long timestamp = timestamps[row];
+                if (timestamp < query.fromTimestamp || timestamp >= query.toTimestamp) {
+                    continue;
+                }
+                long duration = durations[row];
+                if (duration >= query.minDuration && nameMatches[nameColumn[row]]) {
+                    local.add(row, duration, nameColumn[row], limit);
+                }
+            }
+            local.scanned = segment.end - segment.start;
+            return local;
+        }).reduce((a, b) -> a.merge(b, limit)).orElse(new Partial(limit, nameCount));
+
+        List<SliceQuery.Row> rows = new ArrayList<>();
+        for (long[] entry : sortedTop(partial)) {
+            int row = (int) entry[1];
+            int tid = sliceTid.data[row];
+            rows.add(row(sliceTimestamp.data[row], entry[0], tid, names.get(sliceName.data[row]), sliceDepth.data[row]));
+        }
+        List<SliceQuery.Group> groups = new ArrayList<>();
+        for (int nameId = 0; nameId < nameCount; nameId++) {
+            int group = nameId * 3;
+            if (partial.groups[group] > 0) {
+                groups.add(new SliceQuery.Group(names.get(nameId), partial.groups[group],
+                        partial.groups[group + 1], partial.groups[group + 2]));
+            }
+        }
+        groups.sort((a, b) -> Long.compare(b.totalDuration, a.totalDuration));
+        return new SliceQuery.Result(partial.count, partial.totalDuration, partial.maxDuration, partial.scanned,
+                (System.nanoTime() - start) / 1000, rows, groups);
+    }
+
+    /**
+     * 按线程统计CPU时间，名字条件不适用；明细是CPU时间最多的线程
+     */
+    public SliceQuery.Result queryCpuTime(SliceQuery query) {
+        checkFrozen();
+        long start = System.nanoTime();
+        List<Segment> segments = segments(query, schedIndex, schedTimestamp.data, schedTimestamp.size);
+        long[] timestamps = schedTimestamp.data;
+        long[] durations = schedDuration.data;
+        int[] tidColumn = schedTid.data;
+        int[] threadOfRow = schedIndex.threadOfRow;
+        int threadCount = schedIndex.tids.length;
+
+        Partial partial = segments.parallelStream().map(segment -> {
+            Partial local = new Partial(0, threadCount);
+            for (int i = segment.start; i < segment.end; i++) {
+                int row = segment.row(i);
+                long timestamp = timestamps[row];
+                int tid = tidColumn[row];
+                if (tid == 0 || timestamp < query.fromTimestamp || timestamp >= query.toTimestamp) {
+                    continue; // 0是idle
+                }
+                long duration = durations[row];
+                if (duration >= query.minDuration) {
+                    local.add(row, duration, threadOfRow[row], 0);
+                }
+            }
+            local.scanned = segment.end - segment.start;
+            return local;
+        }).reduce((a, b) -> a.merge(b, 0)).orElse(new Partial(0, threadCount));
+
+        List<Integer> threads = new ArrayList<>();
+        for (int thread = 0; thread < threadCount; thread++) {
+            if (partial.groups[thread * 3] > 0) {
+                threads.add(thread);
+            }
+        }
+        threads.sort((a, b) -> Long.compare(partial.groups[b * 3 + 1], partial.groups[a * 3 + 1]));
+        List<SliceQuery.Row> rows = new ArrayList<>();
+        List<SliceQuery.Group> groups = new ArrayList<>();
+        for (int thread : threads) {
+            int tid = schedIndex.tids[thread];
+            int group = thread * 3;
+            SliceQuery.Row row = row(0, partial.groups[group + 1], tid, "", 0);
+            groups.add(new SliceQuery.Group(row.thread + " [" + tid + "]", partial.groups[group],
+                    partial.groups[group + 1], partial.groups[group + 2]));
+            if (rows.size() < query.limit) {
+                rows.add(row);
+            }
+        }
+        return new SliceQuery.Result(partial.count, partial.totalDuration, partial.maxDuration, partial.scanned,
+                (System.nanoTime() - start) / 1000, rows, groups);
+    }
+
+    /**
+     * 名字完全匹配的计数器采样，不存在时返回null
+     */
+    public CounterSeries counterSeries(String name) {
+        checkFrozen();
+        Integer id = nameIds.get(name);
+        if (id == null || counterOffsets[id] == counterOffsets[id + 1]) {
+            return null;
+        }
+        int from = counterOffsets[id];
+        int to = counterOffsets[id + 1];
+        return new CounterSeries(name, Arrays.copyOfRange(counterTimestamp.data, from, to),
+                Arrays.copyOfRange(counterValue.data, from, to));
+    }
+
+    public List<String> getCounterNames() {
+        checkFrozen();
+        List<String> counterNames = new ArrayList<>();
+        for (int id = 0; id < names.size(); id++) {
+            if (counterOffsets[id] != counterOffsets[id + 1]) {
+                counterNames.add(names.get(id));
+            }
+        }
+        return counterNames;
+    }
+
+    private void checkFrozen() {
+        if (!frozen) {
+            throw new IllegalStateException("TraceStore尚未freeze");
+        }
+    }
+
+    private boolean[] matchNames(String text) {
+        boolean[] matches = new boolean[names.size()];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = text.isEmpty() || names.get(i).contains(text);
+        }
+        return matches;
+    }
+
+    /**
+     * 候选行：有线程条件时取匹配线程在索引中的行，否则取全部行
+     * 两种情况下都用二分查找按时间范围缩小，然后切成固定大小的块
+     */
+    private List<Segment> segments(SliceQuery query, ThreadIndex index, long[] timestamps, int size) {
+        List<Segment> segments = new ArrayList<>();
+        if (!query.filtersThreads()) {
+            int from = lowerBound(timestamps, null, 0, size, query.fromTimestamp);
+            int to = lowerBound(timestamps, null, from, size, query.toTimestamp);
+            split(segments, null, from, to);
+            return segments;
+        }
+        for (int i = 0; i < index.tids.length; i++) {
+            if (!matchesThread(query, index.tids[i])) {
+                continue;
+            }
+            int from = lowerBound(timestamps, index.rows, index.offsets[i], index.offsets[i + 1], query.fromTimestamp);
+            int to = lowerBound(timestamps, index.rows, from, index.offsets[i + 1], query.toTimestamp);
+            split(segments, index.rows, from, to);
+        }
+        return segments;
+    }
+
+    private static void split(List<Segment> segments, int[] rows, int from, int to) {
+        for (int start = from; start < to; start += CHUNK_ROWS) {
+            segments.add(new Segment(rows, start, Math.min(to, start + CHUNK_ROWS)));
+        }
+    }
+
+    // 第一个时间戳 >= value 的位置，rows不为null时按 rows[i] 间接访问
+    private static int lowerBound(long[] timestamps, int[] rows, int from, int to, long value) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            long timestamp = timestamps[rows == null ? mid : rows[mid]];
+            if (timestamp < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private boolean matchesThread(SliceQuery query, int tid) {
+        int pid = threadGroups.getOrDefault(tid, 0);
+        if (query.mainThreadOnly && tid != pid) {
+            return false;
+        }
+        if (!query.threadContains.isEmpty()
+                && !threadNames.getOrDefault(tid, "").contains(query.threadContains)) {
+            return false;
+        }
+        return query.processContains.isEmpty() || processName(pid).contains(query.processContains);
+    }
+
+    // 进程名优先用process_tree的cmdline，没有时用主线程名
+    private String processName(int pid) {
+        if (pid == 0) {
+            return "";
+        }
+        String name = processNames.get(pid);
+        return name != null ? name : threadNames.getOrDefault(pid, "");
+    }
+
+    private SliceQuery.Row row(long timestamp, long duration, int tid, String name, int depth) {
+        int pid = threadGroups.getOrDefault(tid, 0);
+        return new SliceQuery.Row(timestamp, duration, tid, pid, threadNames.getOrDefault(tid, "?"),
+                processName(pid), name, depth);
+    }
+
+    private static List<long[]> sortedTop(Partial partial) {
+        List<long[]> top = new ArrayList<>(partial.top);
+        top.sort((a, b) -> Long.compare(b[0], a[0]));
+        return top;
+    }
+
+    // ==================== 排序和索引 ====================
+
+    /**
+     * 按时间戳排序后的行号，稳定排序，大数组在fork-join池上并行归并
+     */
+    private static int[] sortedOrder(LongColumn keys, int size) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        ForkJoinPool.commonPool().invoke(new IndexSort(order, new int[size], keys.data, 0, size));
+        return order;
+    }
+
+    /**
+     * 按分组键（线程、名字等）的计数排序，组内保持原来的顺序
+     */
+    private static int[] groupOrder(int[] keys, int size, int keyCount) {
+        int[] offsets = new int[keyCount + 1];
+        for (int i = 0; i < size; i++) {
+            offsets[keys[i] + 1]++;
+        }
+        for (int i = 0; i < keyCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[offsets[keys[i]]++] = i;
+        }
+        return order;
+    }
+
+    /**
+     * 把tid映射成连续的编号后按编号计数排序，得到每个线程的行号区间
+     */
+    private static ThreadIndex buildThreadIndex(IntColumn tidColumn) {
+        Map<Integer, Integer> denseByTid = new HashMap<>();
+        int[] dense = new int[tidColumn.size];
+        int lastTid = Integer.MIN_VALUE;
+        int lastDense = -1;
+        for (int i = 0; i < tidColumn.size; i++) {
+            int tid = tidColumn.data[i];
+            if (tid != lastTid) {
+                Integer id = denseByTid.get(tid);
+                if (id == null) {
+                    id = denseByTid.size();
+                    denseByTid.put(tid, id);
+                }
+                lastTid = tid;
+                lastDense = id;
+            }
+            dense[i] = lastDense;
+        }
+        int threadCount = denseByTid.size();
+        int[] rows = groupOrder(dense, dense.length, threadCount);
+        int[] offsets = new int[threadCount + 1];
+        for (int value : dense) {
+            offsets[value + 1]++;
+        }
+        for (int i = 0; i < threadCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] tids = new int[threadCount];
+        denseByTid.forEach((tid, id) -> tids[id] = tid);
+        return new ThreadIndex(tids, offsets, rows, dense);
+    }
+
+    private static class IndexSort extends RecursiveAction {
+        private final int[] order;
+        private final int[] buffer;
+        private final long[] keys;
+        private final int from;
+        private final int to;
+
+        IndexSort(int[] order, int[] buffer, long[] keys, int from, int to) {
+            this.order = order;
+            this.buffer = buffer;
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_SORT_THRESHOLD) {
+                sort(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new IndexSort(order, buffer, keys, from, mid), new IndexSort(order, buffer, keys, mid, to));
+            merge(from, mid, to);
+        }
+
+        private void sort(int low, int high) {
+            if (high - low <= 32) {
+                for (int i = low + 1; i < high; i++) {
+                    int value = order[i];
+                    long key = keys[value];
+                    int j = i - 1;
+                    while (j >= low && keys[order[j]] > key) {
+                        order[j + 1] = order[j];
+                        j--;
+                    }
+                    order[j + 1] = value;
+                }
+                return;
+            }
+            int mid = (low + high) >>> 1;
+            sort(low, mid);
+            sort(mid, high);
+            merge(low, mid, high);
+        }
+
+        private void merge(int low, int mid, int high) {
+            // 解码结果大多已经基本有序，两段本来有序时直接返回
+            if (keys[order[mid - 1]] <= keys[order[mid]]) {
+                return;
+            }
+            System.arraycopy(order, low, buffer, low, high - low);
+            int left = low;
+            int right = mid;
+            for (int i = low; i < high; i++) {
+                if (right >= high || (left < mid && keys[buffer[left]] <= keys[buffer[right]])) {
+                    order[i] = buffer[left++];
+                } else {
+                    order[i] = buffer[right++];
+                }
+            }
+        }
+    }
+
+    // ==================== 可增长的基本类型列 ====================
+
+    private static class LongColumn {
+        long[] data = new long[1024];
+        int size = 0;
+
+        void add(long value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void permute(int[] order) {
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = data[order[i]];
+            }
+            data = sorted;
+        }
+    }
+
+    private static class IntColumn {
+        int[] data = new int[1024];
+        int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void permute(int[] order) {
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = data[order[i]];
+            }
+            data = sorted;
+        }
+    }
+
+    private static class DoubleColumn {
+        double[] data = new double[1024];
+        int size = 0;
+
+        void add(double value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        void permute(int[] order) {
+            double[] sorted = new double[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = data[order[i]];
+            }
+            data = sorted;
+        }
+    }
+}
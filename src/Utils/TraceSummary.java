@@ -0,0 +1,194 @@
+package Utils;
+
+import interfaces.TraceEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+
+/**
+ * trace概要：各数据源的包数、时间跨度、CPU占用最多的线程、总时长最长的slice
+ * 只保存按线程和名字聚合后的数据，内存占用与trace大小无关
+ */
+public class TraceSummary implements TraceEventListener {
+    public static final int DEFAULT_TOP = 15;
+
+    // TracePacket中常见数据字段的名字
+    private static final Map<Integer, String> PACKET_FIELD_NAMES = new HashMap<>();
+
+    static {
+        PACKET_FIELD_NAMES.put(0, "(无数据)");
+        PACKET_FIELD_NAMES.put(1, "ftrace_events");
+        PACKET_FIELD_NAMES.put(2, "process_tree");
+        PACKET_FIELD_NAMES.put(4, "inode_file_map");
+        PACKET_FIELD_NAMES.put(5, "chrome_events");
+        PACKET_FIELD_NAMES.put(6, "clock_snapshot");
+        PACKET_FIELD_NAMES.put(9, "process_stats");
+        PACKET_FIELD_NAMES.put(11, "track_event");
+        PACKET_FIELD_NAMES.put(21, "sys_stats");
+        PACKET_FIELD_NAMES.put(33, "trace_config");
+        PACKET_FIELD_NAMES.put(34, "ftrace_stats");
+        PACKET_FIELD_NAMES.put(35, "trace_stats");
+        PACKET_FIELD_NAMES.put(36, "synchronization_marker");
+        PACKET_FIELD_NAMES.put(37, "profile_packet");
+        PACKET_FIELD_NAMES.put(38, "battery");
+        PACKET_FIELD_NAMES.put(39, "android_log");
+        PACKET_FIELD_NAMES.put(40, "power_rails");
+        PACKET_FIELD_NAMES.put(45, "system_info");
+        PACKET_FIELD_NAMES.put(46, "trigger");
+        PACKET_FIELD_NAMES.put(47, "packages_list");
+        PACKET_FIELD_NAMES.put(49, "perfetto_metatrace");
+        PACKET_FIELD_NAMES.put(50, "compressed_packets");
+        PACKET_FIELD_NAMES.put(52, "gpu_counter_event");
+        PACKET_FIELD_NAMES.put(56, "heap_graph");
+        PACKET_FIELD_NAMES.put(60, "track_descriptor");
+        PACKET_FIELD_NAMES.put(76, "frame_timeline_event");
+    }
+
+    private final Map<Integer, long[]> packetCounts = new HashMap<>();
+    private final Map<Integer, long[]> cpuTimeByTid = new HashMap<>();
+    private final Map<String, long[]> slicesByName = new HashMap<>(); // count, total, max
+    private final Map<Integer, String> threadNames = new HashMap<>();
+    private final Map<Integer, Integer> threadGroups = new HashMap<>();
+    private final Map<Integer, String> processNames = new HashMap<>();
+    private long packetCount = 0;
+    private long schedSliceCount = 0;
+    private long sliceCount = 0;
+    private long counterCount = 0;
+    private int cpuCount = 0;
+    private long minTimestamp = Long.MAX_VALUE;
+    private long maxTimestamp = Long.MIN_VALUE;
+    private long fileSize = 0;
+    private long decodeMillis = 0;
+
+    /**
+     * 解码trace并生成概要，在调用线程上执行
+     */
+    public static TraceSummary summarize(Path trace, LongConsumer progress) throws IOException {
+        TraceSummary summary = new TraceSummary();
+        long start = System.nanoTime();
+        PerfettoTraceDecoder.decode(trace, summary, progress);
+        summary.decodeMillis = (System.nanoTime() - start) / 1_000_000;
+        summary.fileSize = Files.size(trace);
+        return summary;
+    }
+
+    @Override
+    public void onPacket(int payloadField, long timestamp) {
+        packetCount++;
+        packetCounts.computeIfAbsent(payloadField, field -> new long[1])[0]++;
+        if (timestamp > 0) {
+            updateTimeSpan(timestamp, timestamp);
+        }
+    }
+
+    @Override
+    public void onSchedSlice(int cpu, long timestamp, long duration, int tid) {
+        schedSliceCount++;
+        cpuCount = Math.max(cpuCount, cpu + 1);
+        updateTimeSpan(timestamp, timestamp + duration);
+        if (tid != 0) { // 0是idle
+            cpuTimeByTid.computeIfAbsent(tid, id -> new long[1])[0] += duration;
+        }
+    }
+
+    @Override
+    public void onSlice(long trackId, int tid, long timestamp, long duration, String name, int depth) {
+        sliceCount++;
+        updateTimeSpan(timestamp, timestamp + duration);
+        long[] stats = slicesByName.computeIfAbsent(name, key -> new long[3]);
+        stats[0]++;
+        stats[1] += duration;
+        stats[2] = Math.max(stats[2], duration);
+    }
+
+    @Override
+    public void onCounter(String name, int pid, long timestamp, double value) {
+        counterCount++;
+    }
+
+    @Override
+    public void onThreadName(int tid, int tgid, String name) {
+        if (!name.isEmpty()) {
+            threadNames.put(tid, name);
+        }
+        if (tgid != 0) {
+            threadGroups.put(tid, tgid);
+        }
+    }
+
+    @Override
+    public void onProcess(int pid, String cmdline) {
+        processNames.put(pid, cmdline);
+    }
+
+    private void updateTimeSpan(long start, long end) {
+        minTimestamp = Math.min(minTimestamp, start);
+        maxTimestamp = Math.max(maxTimestamp, end);
+    }
+
+    public long getPacketCount() {
+        return packetCount;
+    }
+
+    // 时间跨度（纳秒），没有时间戳时为0
+    public long getTimeSpan() {
+        return maxTimestamp >= minTimestamp ? maxTimestamp - minTimestamp : 0;
+    }
+
+    /**
+     * 格式化为文本报告
+     */
+    public String format(int top) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("文件大小 %.1f MB，解码耗时 %d ms，共 %d 个包\n",
+                fileSize / (1024.0 * 1024), decodeMillis, packetCount));
+        long span = getTimeSpan();
+        text.append(String.format("时间跨度 %.3f s（%d ~ %d）\n", span / 1e9,
+                span > 0 ? minTimestamp : 0, span > 0 ? maxTimestamp : 0));
+        text.append(String.format("调度区间 %d 个（%d 个CPU），slice %d 个，计数器采样 %d 个\n",
+                schedSliceCount, cpuCount, sliceCount, counterCount));
+
+        text.append("\n各数据源的包数:\n");
+        List<Map.Entry<Integer, long[]>> packets = new ArrayList<>(packetCounts.entrySet());
+        packets.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        for (Map.Entry<Integer, long[]> entry : packets) {
+            String name = PACKET_FIELD_NAMES.getOrDefault(entry.getKey(), "field " + entry.getKey());
+            text.append(String.format("  %-24s %12d\n", name, entry.getValue()[0]));
+        }
+
+        text.append("\nCPU占用 Top ").append(top).append(":\n");
+        text.append(String.format("  %-8s %-8s %-40s %12s %8s\n", "tid", "pid", "线程(进程)", "CPU ms", "占比"));
+        List<Map.Entry<Integer, long[]>> threads = new ArrayList<>(cpuTimeByTid.entrySet());
+        threads.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        long totalCpu = span * Math.max(1, cpuCount);
+        for (int i = 0; i < Math.min(top, threads.size()); i++) {
+            int tid = threads.get(i).getKey();
+            long cpuTime = threads.get(i).getValue()[0];
+            int pid = threadGroups.getOrDefault(tid, 0);
+            String name = threadNames.getOrDefault(tid, "?");
+            String process = processNames.get(pid);
+            if (process != null) {
+                name += " (" + process + ")";
+            }
+            text.append(String.format("  %-8d %-8s %-40s %12.2f %7.2f%%\n", tid, pid != 0 ? String.valueOf(pid) : "-",
+                    name, cpuTime / 1e6, totalCpu > 0 ? cpuTime * 100.0 / totalCpu : 0));
+        }
+
+        text.append("\nSlice Top ").append(top).append("（按总时长）:\n");
+        text.append(String.format("  %-48s %10s %14s %12s\n", "名称", "次数", "总时长 ms", "最长 ms"));
+        List<Map.Entry<String, long[]>> slices = new ArrayList<>(slicesByName.entrySet());
+        slices.sort((a, b) -> Long.compare(b.getValue()[1], a.getValue()[1]));
+        for (int i = 0; i < Math.min(top, slices.size()); i++) {
+            long[] stats = slices.get(i).getValue();
+            text.append(String.format("  %-48s %10d %14.2f %12.2f\n", slices.get(i).getKey(),
+                    stats[0], stats[1] / 1e6, stats[2] / 1e6));
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,202 @@
+package Utils;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 最小的xlsx写入：只支持数字单元格和一行文本表头，边写边压缩，不在内存中构建整个表格
+ * 表头用内联字符串（inlineStr），不需要sharedStrings；NaN写成空单元格
+ * 用法：startSheet → addRow... → startSheet → ... → close
+ */
+public class XlsxWriter implements Closeable {
+    private static final int MAX_SHEET_NAME = 31;
+
+    private final ZipOutputStream zip;
+    private final Writer writer;
+    private final List<String> sheetNames = new ArrayList<>();
+    private boolean inSheet = false;
+    private int rowNumber = 0;
+
+    public XlsxWriter(Path output) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(output), 64 * 1024));
+        writer = new OutputStreamWriter(zip, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 开始一个新sheet并写入表头，名字会按Excel的规则清理并去重
+     */
+    public void startSheet(String name, String[] header) throws IOException {
+        endSheet();
+        String sheetName = uniqueName(sanitize(name));
+        sheetNames.add(sheetName);
+        zip.putNextEntry(new ZipEntry("xl/worksheets/sheet" + sheetNames.size() + ".xml"));
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><sheetData>");
+        inSheet = true;
+        rowNumber = 1;
+        writer.write("<row r=\"1\">");
+        for (String title : header) {
+            writer.write("<c t=\"inlineStr\"><is><t>");
+            writer.write(escape(title));
+            writer.write("</t></is></c>");
+        }
+        writer.write("</row>");
+    }
+
+    public void addRow(double[] values) throws IOException {
+        if (!inSheet) {
+            throw new IllegalStateException("startSheet not called");
+        }
+        rowNumber++;
+        writer.write("<row r=\"");
+        writer.write(Integer.toString(rowNumber));
+        writer.write("\">");
+        for (double value : values) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                writer.write("<c/>");
+            } else {
+                writer.write("<c><v>");
+                // 整数值不带小数点，文件更小
+                writer.write(value == Math.rint(value) && Math.abs(value) < 1e15
+                        ? Long.toString((long) value) : Double.toString(value));
+                writer.write("</v></c>");
+            }
+        }
+        writer.write("</row>");
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            endSheet();
+            if (sheetNames.isEmpty()) {
+                // 工作簿至少要有一个sheet
+                startSheet("Sheet1", new String[0]);
+                endSheet();
+            }
+            writeEntry("[Content_Types].xml", contentTypes());
+            writeEntry("_rels/.rels", "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                    + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">"
+                    + "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/"
+                    + "relationships/officeDocument\" Target=\"xl/workbook.xml\"/></Relationships>");
+            writeEntry("xl/workbook.xml", workbook());
+            writeEntry("xl/_rels/workbook.xml.rels", workbookRelationships());
+            writer.flush();
+        } finally {
+            zip.close();
+        }
+    }
+
+    private void endSheet() throws IOException {
+        if (inSheet) {
+            writer.write("</sheetData></worksheet>");
+            writer.flush();
+            zip.closeEntry();
+            inSheet = false;
+        }
+    }
+
+    private void writeEntry(String name, String content) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        writer.write(content);
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    private String contentTypes() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">"
+                + "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>"
+                + "<Default Extension=\"xml\" ContentType=\"application/xml\"/>"
+                + "<Override PartName=\"/xl/workbook.xml\" ContentType=\"application/"
+                + "vnd.openxmlformats-officedocument.spreadsheetml.sheet.main+xml\"/>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.append("<Override PartName=\"/xl/worksheets/sheet").append(i).append(".xml\" ContentType=\"")
+                    .append("application/vnd.openxmlformats-officedocument.spreadsheetml.worksheet+xml\"/>");
+        }
+        return xml.append("</Types>").toString();
+    }
+
+    private String workbook() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<workbook xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" "
+                + "xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\"><sheets>");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.append("<sheet name=\"").append(escape(sheetNames.get(i - 1))).append("\" sheetId=\"").append(i)
+                    .append("\" r:id=\"rId").append(i).append("\"/>");
+        }
+        return xml.append("</sheets></workbook>").toString();
+    }
+
+    private String workbookRelationships() {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+                + "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">");
+        for (int i = 1; i <= sheetNames.size(); i++) {
+            xml.append("<Relationship Id=\"rId").append(i).append("\" Type=\"http://schemas.openxmlformats.org/")
+                    .append("officeDocument/2006/relationships/worksheet\" Target=\"worksheets/sheet")
+                    .append(i).append(".xml\"/>");
+        }
+        return xml.append("</Relationships>").toString();
+    }
+
+    // sheet名不能包含 []:*?/\ ，最长31个字符，不能为空
+    private static String sanitize(String name) {
+        String cleaned = name == null ? "" : name.replaceAll("[\\[\\]:*?/\\\\]", "_").trim();
+        if (cleaned.isEmpty()) {
+            cleaned = "Sheet";
+        }
+        return cleaned.length() > MAX_SHEET_NAME ? cleaned.substring(0, MAX_SHEET_NAME) : cleaned;
+    }
+
+    private String uniqueName(String name) {
+        String candidate = name;
+        for (int suffix = 2; containsIgnoreCase(candidate); suffix++) {
+            String tail = "_" + suffix;
+            candidate = name.substring(0, Math.min(name.length(), MAX_SHEET_NAME - tail.length())) + tail;
+        }
+        return candidate;
+    }
+
+    private boolean containsIgnoreCase(String name) {
+        for (String existing : sheetNames) {
+            if (existing.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<': escaped.append("&lt;"); break;
+                case '>': escaped.append("&gt;"); break;
+                case '&': escaped.append("&amp;"); break;
+                case '"': escaped.append("&quot;"); break;
+                default:
+                    // XML 1.0不允许的控制字符直接丢弃
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') {
+                        escaped.append(c);
+                    }
+                    break;
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package interfaces;
+
+import Utils.CommandResult;
+
+/**
+ * 命令输出监听器，由CommandExecutor在IO线程上逐行回调
+ * 注意：回调不在EDT上执行，更新界面需要自行切换到EDT
+ */
+public interface CommandOutputListener {
+    // 标准输出的一行（不含换行符）
+    void onStdout(String line);
+
+    // 标准错误的一行，默认与标准输出同样处理
+    default void onStderr(String line) {
+        onStdout(line);
+    }
+
+    // 命令结束（包括启动失败），result中带有退出码和耗时
+    default void onComplete(CommandResult result) {
+    }
+}
@@ -0,0 +1,16 @@
+package interfaces;
+
+import Utils.AdbDevice;
+
+/**
+ * 设备增删和状态变化的监听器，只有真正变化的设备才会回调
+ * 回调在设备跟踪器的事件线程上按顺序执行
+ */
+public interface DeviceChangeListener {
+    void onDeviceAdded(AdbDevice device);
+
+    void onDeviceRemoved(AdbDevice device);
+
+    // 状态或属性发生变化，例如 unauthorized -> device
+    void onDeviceChanged(AdbDevice oldDevice, AdbDevice newDevice);
+}
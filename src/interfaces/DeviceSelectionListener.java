@@ -1,5 +1,11 @@
 package interfaces;
 
+import java.util.List;
+
 public interface DeviceSelectionListener {
     void onDeviceSelected(String newDeviceId);
+
+    // 多设备模式下选中的设备列表，退出多设备模式时为空列表
+    default void onDevicesSelected(List<String> deviceIds) {
+    }
 }
@@ -0,0 +1,15 @@
+package interfaces;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 目录内文件变化的监听器，事件经过合并去抖后批量回调，在监视线程上执行
+ */
+public interface FileChangeListener {
+    void onFilesChanged(List<Path> created, List<Path> modified, List<Path> deleted);
+
+    // 事件过多导致丢失时回调，此时应重新扫描整个目录
+    default void onOverflow() {
+    }
+}
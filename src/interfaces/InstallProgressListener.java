@@ -0,0 +1,10 @@
+package interfaces;
+
+import Utils.InstallTask;
+
+/**
+ * 安装任务状态或进度变化时回调，在安装线程上执行
+ */
+public interface InstallProgressListener {
+    void onTaskUpdated(InstallTask task);
+}
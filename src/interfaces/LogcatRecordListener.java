@@ -0,0 +1,13 @@
+package interfaces;
+
+/**
+ * LogcatDecoder 解码出的日志回调，在抓取线程上按接收顺序执行
+ */
+public interface LogcatRecordListener {
+    /**
+     * @param timestamp 设备上的写入时间，纳秒（Unix时间）
+     * @param priority 级别，2=V 3=D 4=I 5=W 6=E 7=F
+     * @param message 末尾的换行已去掉
+     */
+    void onRecord(long timestamp, int pid, int tid, int priority, String tag, String message);
+}
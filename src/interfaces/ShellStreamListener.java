@@ -0,0 +1,17 @@
+package interfaces;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * shell v2 连接上收到的原始输出，由 AdbClient.readShellV2 在读取线程上按包回调
+ * 与 CommandOutputListener 不同，数据不按行拆分，适合trace等二进制输出
+ */
+public interface ShellStreamListener {
+    // 一个stdout包的内容，回调返回后缓冲区会被复用
+    void onStdout(ByteBuffer data) throws IOException;
+
+    // 一个stderr包的内容，默认丢弃
+    default void onStderr(ByteBuffer data) throws IOException {
+    }
+}
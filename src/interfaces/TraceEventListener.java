@@ -0,0 +1,39 @@
+package interfaces;
+
+/**
+ * Perfetto trace 解码事件的回调，在解码线程上按文件顺序执行
+ * 时间戳单位都是纳秒，字符串会被复用，同一个名字通常是同一个String实例
+ */
+public interface TraceEventListener {
+    /**
+     * 每个TracePacket回调一次
+     * @param payloadField 包中携带数据的字段号，例如 1=ftrace_events、11=track_event，没有数据时为0
+     * @param timestamp 包的时间戳，没有时为-1
+     */
+    default void onPacket(int payloadField, long timestamp) {
+    }
+
+    /**
+     * 线程在某个CPU上连续运行的一段时间，由相邻两次sched_switch得出
+     */
+    default void onSchedSlice(int cpu, long timestamp, long duration, int tid) {
+    }
+
+    /**
+     * 一个完整的slice（begin/end配对后回调），depth为嵌套深度，从0开始
+     */
+    default void onSlice(long trackId, int tid, long timestamp, long duration, String name, int depth) {
+    }
+
+    default void onCounter(String name, int pid, long timestamp, double value) {
+    }
+
+    /**
+     * 线程名，来自process_tree、track_descriptor或sched_switch的comm，tgid未知时为0
+     */
+    default void onThreadName(int tid, int tgid, String name) {
+    }
+
+    default void onProcess(int pid, String cmdline) {
+    }
+}